@@ -8,6 +8,10 @@
 package com.example.movieapp;
 
 public final class R {
+    public static final class array {
+        public static final int export_formats=0x7f090001;
+        public static final int sort_options=0x7f090000;
+    }
     public static final class attr {
     }
     public static final class dimen {
@@ -24,20 +28,38 @@ public final class R {
          */
         public static final int activity_horizontal_margin=0x7f040000;
         public static final int activity_vertical_margin=0x7f040001;
+        public static final int poster_detail_height=0x7f040002;
+        public static final int poster_detail_width=0x7f040003;
+        public static final int poster_thumb_height=0x7f040004;
+        public static final int poster_thumb_width=0x7f040005;
     }
     public static final class drawable {
         public static final int ic_launcher=0x7f020000;
     }
     public static final class id {
         public static final int action_add=0x7f08001d;
+        public static final int action_back_up=0x7f080037;
         public static final int action_delete=0x7f08001c;
         public static final int action_edit=0x7f08001b;
+        public static final int action_export=0x7f080036;
+        public static final int action_filter=0x7f080020;
+        public static final int action_find_duplicates=0x7f080042;
+        public static final int action_import=0x7f08001e;
+        public static final int action_rebuild_statistics=0x7f080029;
+        public static final int action_restore=0x7f080038;
+        public static final int action_search=0x7f08001f;
+        public static final int action_set_poster=0x7f08003d;
+        public static final int action_statistics=0x7f08002a;
         public static final int actorEditText=0x7f080007;
         public static final int actorLabelTextView=0x7f080013;
         public static final int actorTextView=0x7f080014;
+        public static final int actorsLabelTextView=0x7f08002b;
+        public static final int actorsTextView=0x7f08002c;
         public static final int actressEditText=0x7f080008;
         public static final int actressLabelTextView=0x7f080015;
         public static final int actressTextView=0x7f080016;
+        public static final int actressesLabelTextView=0x7f08002d;
+        public static final int actressesTextView=0x7f08002e;
         public static final int addEditScrollView=0x7f080003;
         public static final int budgetEditText=0x7f08000a;
         public static final int budgetLabelTextView=0x7f080019;
@@ -46,56 +68,156 @@ public final class R {
         public static final int directorEditText=0x7f080005;
         public static final int directorLabelTextView=0x7f08000f;
         public static final int directorTextView=0x7f080010;
+        public static final int directorsLabelTextView=0x7f08002f;
+        public static final int directorsTextView=0x7f080030;
+        public static final int filterDescendingCheckBox=0x7f080021;
+        public static final int filterDirectorEditText=0x7f080022;
+        public static final int filterMaxBudgetEditText=0x7f080023;
+        public static final int filterMaxYearEditText=0x7f080024;
+        public static final int filterMinBudgetEditText=0x7f080025;
+        public static final int filterMinYearEditText=0x7f080026;
+        public static final int filterPersonEditText=0x7f080027;
+        public static final int filterSortSpinner=0x7f080028;
         public static final int fragmentContainer=0x7f080000;
         public static final int movieListFragment=0x7f080001;
         public static final int nameEditText=0x7f080004;
         public static final int nameLabelTextView=0x7f08000d;
         public static final int nameTextView=0x7f08000e;
+        public static final int posterImageView=0x7f08003e;
         public static final int producerEditText=0x7f080006;
         public static final int producerLabelTextView=0x7f080011;
         public static final int producerTextView=0x7f080012;
+        public static final int relatedLabelTextView=0x7f080043;
+        public static final int relatedLinearLayout=0x7f080044;
+        public static final int relatedTextView=0x7f080045;
         public static final int releaseEditText=0x7f080009;
         public static final int releaseLabelTextView=0x7f080017;
         public static final int releaseTextView=0x7f080018;
         public static final int rightPaneContainer=0x7f080002;
+        public static final int rowBudgetTextView=0x7f080039;
+        public static final int rowDirectorTextView=0x7f08003a;
+        public static final int rowNameTextView=0x7f08003b;
+        public static final int rowPosterImageView=0x7f08003f;
+        public static final int rowYearTextView=0x7f08003c;
         public static final int saveMovieButton=0x7f08000b;
+        public static final int statisticsScrollView=0x7f080031;
+        public static final int totalsLabelTextView=0x7f080032;
+        public static final int totalsTextView=0x7f080033;
+        public static final int undoButton=0x7f080040;
+        public static final int undoMessageTextView=0x7f080041;
+        public static final int yearsLabelTextView=0x7f080034;
+        public static final int yearsTextView=0x7f080035;
     }
     public static final class layout {
         public static final int activity_main=0x7f030000;
+        public static final int dialog_filter=0x7f030003;
         public static final int fragment_add_edit=0x7f030001;
         public static final int fragment_details=0x7f030002;
+        public static final int fragment_statistics=0x7f030004;
+        public static final int list_item_movie=0x7f030005;
+        public static final int list_item_related=0x7f030007;
+        public static final int undo_bar=0x7f030006;
     }
     public static final class menu {
         public static final int fragment_details_menu=0x7f070000;
         public static final int fragment_movie_list_menu=0x7f070001;
+        public static final int fragment_statistics_menu=0x7f070002;
     }
     public static final class string {
         public static final int app_name=0x7f050000;
+        public static final int back_up_complete=0x7f050042;
+        public static final int back_up_failed=0x7f050043;
+        public static final int button_apply=0x7f050024;
         public static final int button_cancel=0x7f050018;
+        public static final int button_clear=0x7f050025;
         public static final int button_delete=0x7f050019;
+        public static final int button_restore=0x7f050044;
+        public static final int button_save_anyway=0x7f050053;
         public static final int button_save_movie=0x7f050005;
+        public static final int button_undo=0x7f050050;
         public static final int confirm_message=0x7f050015;
         public static final int confirm_title=0x7f050014;
+        public static final int database_failed=0x7f05005c;
+        public static final int description_poster=0x7f05004c;
+        public static final int duplicate_message=0x7f050054;
+        public static final int duplicate_title=0x7f050055;
+        public static final int duplicates_none=0x7f050056;
+        public static final int duplicates_searching=0x7f050057;
+        public static final int duplicates_title=0x7f050058;
+        public static final int error_budget=0x7f050020;
+        public static final int error_filter=0x7f050026;
         public static final int error_message=0x7f050017;
+        public static final int error_release=0x7f050021;
+        public static final int export_cancelled=0x7f05003a;
+        public static final int export_complete=0x7f05003b;
+        public static final int export_failed=0x7f05003c;
+        public static final int export_format_title=0x7f05003d;
+        public static final int export_no_folder=0x7f05003e;
+        public static final int export_progress=0x7f05003f;
+        public static final int export_title=0x7f050040;
+        public static final int filter_title=0x7f050027;
         public static final int hint_actor=0x7f050009;
         public static final int hint_actress=0x7f05000a;
         public static final int hint_budget=0x7f05000c;
         public static final int hint_director=0x7f050008;
+        public static final int hint_filter_director=0x7f050028;
+        public static final int hint_filter_max_budget=0x7f050029;
+        public static final int hint_filter_max_year=0x7f05002a;
+        public static final int hint_filter_min_budget=0x7f05002b;
+        public static final int hint_filter_min_year=0x7f05002c;
+        public static final int hint_filter_person=0x7f05002d;
         public static final int hint_name=0x7f050006;
         public static final int hint_producer=0x7f050007;
         public static final int hint_release=0x7f05000b;
+        public static final int import_complete=0x7f05001a;
+        public static final int import_failed=0x7f05001b;
+        public static final int import_no_file=0x7f05001c;
+        public static final int import_progress=0x7f05001d;
+        public static final int import_title=0x7f05001e;
         public static final int label_actor=0x7f050010;
         public static final int label_actress=0x7f050011;
         public static final int label_budget=0x7f050013;
+        public static final int label_descending=0x7f05002e;
         public static final int label_director=0x7f05000f;
         public static final int label_name=0x7f05000d;
         public static final int label_producer=0x7f05000e;
+        public static final int label_related=0x7f05005a;
         public static final int label_release=0x7f050012;
+        public static final int label_top_actors=0x7f050030;
+        public static final int label_top_actresses=0x7f050031;
+        public static final int label_top_directors=0x7f050032;
+        public static final int label_totals=0x7f050033;
+        public static final int label_years=0x7f050034;
         public static final int menuitem_add=0x7f050002;
+        public static final int menuitem_back_up=0x7f050045;
         public static final int menuitem_delete=0x7f050004;
         public static final int menuitem_edit=0x7f050003;
+        public static final int menuitem_export=0x7f050041;
+        public static final int menuitem_filter=0x7f05002f;
+        public static final int menuitem_find_duplicates=0x7f050059;
+        public static final int menuitem_import=0x7f05001f;
+        public static final int menuitem_rebuild_statistics=0x7f050035;
+        public static final int menuitem_restore=0x7f050046;
+        public static final int menuitem_search=0x7f050022;
+        public static final int menuitem_set_poster=0x7f05004d;
+        public static final int menuitem_statistics=0x7f050036;
+        public static final int movie_deleted=0x7f050051;
         public static final int no_movies=0x7f050001;
         public static final int ok=0x7f050016;
+        public static final int poster_chooser_title=0x7f05004e;
+        public static final int poster_failed=0x7f05004f;
+        public static final int related_movie=0x7f05005b;
+        public static final int restore_complete=0x7f050047;
+        public static final int restore_confirm_message=0x7f050048;
+        public static final int restore_failed=0x7f050049;
+        public static final int restore_title=0x7f05004a;
+        public static final int search_hint=0x7f050023;
+        public static final int snapshot_no_folder=0x7f05004b;
+        public static final int stats_line=0x7f050037;
+        public static final int stats_totals=0x7f050038;
+        public static final int stats_unknown=0x7f050039;
+        public static final int undelete_failed=0x7f050052;
+        public static final int writes_failed=0x7f05005d;
     }
     public static final class style {
         /** 
@@ -0,0 +1,59 @@
+package com.example.movieapp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.example.movieapp.JdbcMovieRepository;
+
+// temporary database files for the benchmarks, configured like the app's
+final class Databases
+{
+   private Databases()
+   {
+   }
+
+   // return a new empty temporary file or, with an empty suffix, the
+   // name of a folder to create
+   static File createFile(String suffix) throws IOException
+   {
+      File file = File.createTempFile("movies", suffix);
+      file.delete(); // let SQLite or the caller create it
+      return file;
+   }
+
+   // open a connection in WAL mode with full syncs, as on the device
+   static Connection open(File file) throws SQLException
+   {
+      Connection connection =
+         DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+      Statement statement = connection.createStatement();
+      statement.execute("PRAGMA journal_mode=WAL");
+      statement.execute("PRAGMA synchronous=FULL");
+      statement.close();
+      return connection;
+   }
+
+   // open a repository over a new database file
+   static JdbcMovieRepository openRepository(File file) throws SQLException
+   {
+      return new JdbcMovieRepository(open(file));
+   }
+
+   // remove a database file and its WAL files, or a folder and its files
+   static void delete(File file)
+   {
+      File[] files = file.listFiles();
+
+      if (files != null)
+         for (File child : files)
+            child.delete();
+
+      file.delete();
+      new File(file.getPath() + "-wal").delete();
+      new File(file.getPath() + "-shm").delete();
+   }
+} // end class Databases
@@ -0,0 +1,246 @@
+package com.example.movieapp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.example.movieapp.JdbcMovieRepository;
+import com.example.movieapp.Movie;
+import com.example.movieapp.MovieDuplicates;
+import com.example.movieapp.MovieReader;
+import com.example.movieapp.MovieSchema;
+
+// Measures MovieDuplicates over a synthetic catalog whose titles are a
+// few made-up words each (SyntheticMovies' numbered titles are all alike
+// but for their digits), with a near-duplicate of every planted-th movie
+// ("The Kobe Tanuris" saved again as "Kobe Tanuris, The (1932)"): the
+// indexing of every title, the check made when a movie is saved and the
+// whole-catalog pass. The save check and the pass also count, as
+// secondary results, the planted duplicates they look for and find:
+//
+//   ./gradlew jmh -Pjmh.includes=DuplicateBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DuplicateBenchmark
+{
+   // rows per transaction while loading the database
+   private static final int LOAD_BATCH_SIZE = 1000;
+
+   // most matches the save check asks for, as AddEditFragment does
+   private static final int MATCH_LIMIT = 3;
+
+   // letters the syllables of titles' words are made of
+   private static final String CONSONANTS = "bcdfghklmnprstvz";
+   private static final String VOWELS = "aeiou";
+
+   @Param({ "100000" })
+   public int rows;
+
+   @Param({ "1000" })
+   public int planted;
+
+   private File file;
+   private Connection connection;
+   private JdbcMovieRepository repository;
+   private int step; // catalog numbers between planted duplicates
+   private final Set<String> plantedPairs = new HashSet<String>();
+   private long nextLookup; // catalog number the save check tries next
+
+   // load the catalog, plant the duplicates and index every title
+   @Setup(Level.Trial)
+   public void load() throws IOException, SQLException
+   {
+      file = Databases.createFile(".db");
+      connection = Databases.open(file);
+      repository = new JdbcMovieRepository(connection);
+      step = Math.max(1, rows / Math.max(1, planted));
+
+      final SyntheticMovies movies = new SyntheticMovies(0, rows);
+      repository.insertMovies(new MovieReader()
+         {
+            private long next;
+
+            @Override
+            public Movie read()
+            {
+               Movie movie = movies.read();
+               return movie == null ? null : withName(movie, title(next++));
+            }
+
+            @Override
+            public void close()
+            {
+            }
+         }, LOAD_BATCH_SIZE, null);
+
+      // movie i of the catalog has _id i + 1
+      for (long i = 0; i < rows; i += step)
+      {
+         long id = repository.insertMovie(duplicate(i));
+         plantedPairs.add(pair(i + 1, id));
+      }
+
+      repository.indexTitles(0);
+   } // end method load
+
+   @TearDown(Level.Trial)
+   public void unload()
+   {
+      repository.close();
+      Databases.delete(file);
+   }
+
+   // the planted duplicates a benchmark looked for and found, reported
+   // per iteration; their ratio is its recall
+   @State(Scope.Thread)
+   @AuxCounters(AuxCounters.Type.EVENTS)
+   public static class Found
+   {
+      public long sought;
+      public long found;
+   }
+
+   // every movie logged to be indexed again, as after a restore, before
+   // each indexTitles iteration
+   @State(Scope.Thread)
+   public static class Logged
+   {
+      @Setup(Level.Iteration)
+      public void logTitles(DuplicateBenchmark benchmark) throws SQLException
+      {
+         Statement statement = benchmark.connection.createStatement();
+         statement.execute(MovieSchema.REINDEX_TITLES);
+         statement.close();
+      }
+   }
+
+   // index every title logged
+   @Benchmark
+   @BenchmarkMode(Mode.SingleShotTime)
+   public long indexTitles(Logged logged)
+   {
+      return repository.indexTitles(0);
+   }
+
+   // the save check, for a new movie duplicating a planted one
+   @Benchmark
+   public List<MovieDuplicates.Match> saveCheck(Found found)
+   {
+      long number = nextLookup;
+      nextLookup = (nextLookup + step) % rows;
+      List<MovieDuplicates.Match> matches =
+         repository.findDuplicates(duplicate(number), MATCH_LIMIT);
+      ++found.sought;
+
+      for (MovieDuplicates.Match match : matches)
+      {
+         if (match.otherId == number + 1)
+         {
+            ++found.found;
+            break;
+         }
+      }
+
+      return matches;
+   } // end method saveCheck
+
+   // the whole-catalog pass
+   @Benchmark
+   public List<MovieDuplicates.Match> findAll(Found found)
+   {
+      List<MovieDuplicates.Match> matches =
+         repository.findAllDuplicates(plantedPairs.size() * 2);
+      found.sought += plantedPairs.size();
+
+      for (MovieDuplicates.Match match : matches)
+         if (plantedPairs.contains(pair(match.id, match.otherId)))
+            ++found.found;
+
+      return matches;
+   }
+
+   // return the title of movie number i: one to four words of two or
+   // three syllables, after "The" one time in four; a syllable is a
+   // consonant and a vowel, and a consonant after them one time in three
+   private static String title(long i)
+   {
+      Random random = new Random(i);
+      StringBuilder title =
+         new StringBuilder(random.nextInt(4) == 0 ? "The" : "");
+
+      for (int words = 1 + random.nextInt(4); words > 0; --words)
+      {
+         if (title.length() > 0)
+            title.append(' ');
+
+         int start = title.length();
+
+         for (int syllables = 2 + random.nextInt(2); syllables > 0;
+            --syllables)
+         {
+            title.append(CONSONANTS.charAt(
+               random.nextInt(CONSONANTS.length())));
+            title.append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+
+            if (random.nextInt(3) == 0)
+               title.append(CONSONANTS.charAt(
+                  random.nextInt(CONSONANTS.length())));
+         }
+
+         title.setCharAt(start, Character.toUpperCase(title.charAt(start)));
+      }
+
+      return title.toString();
+   } // end method title
+
+   // return movie number i of the catalog as it might be entered again:
+   // its leading "The" moved to the end and its year added, or else its
+   // last letter doubled
+   private static Movie duplicate(long i)
+   {
+      Movie movie = SyntheticMovies.movie(i);
+      String title = title(i);
+
+      if (title.startsWith("The "))
+         title = title.substring(4) + ", The (" +
+            movie.getRelease() / 10000 + ")";
+      else
+         title += title.charAt(title.length() - 1);
+
+      return withName(movie, title);
+   }
+
+   // return movie with the given name
+   private static Movie withName(Movie movie, String name)
+   {
+      return new Movie(movie.getId(), name, movie.getDirector(),
+         movie.getProducer(), movie.getActor(), movie.getActress(),
+         movie.getRelease(), movie.getBudget());
+   }
+
+   // return the _ids of a pair in a fixed order
+   private static String pair(long id, long otherId)
+   {
+      return Math.min(id, otherId) + "/" + Math.max(id, otherId);
+   }
+} // end class DuplicateBenchmark
@@ -0,0 +1,77 @@
+package com.example.movieapp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.example.movieapp.JdbcMovieRepository;
+import com.example.movieapp.MovieExporter;
+
+// Measures MovieExporter in each of its formats, chosen by the file
+// name as in MovieListFragment. Run it with a small heap to confirm
+// memory use doesn't grow with the table; JdbcMovieRepositoryTest checks
+// that an export imports again intact:
+//
+//   ./gradlew jmh -Pjmh.includes=ExportBenchmark -Pjmh.jvmArgs=-Xmx16m
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExportBenchmark
+{
+   // rows per transaction while loading the database
+   private static final int LOAD_BATCH_SIZE = 1000;
+
+   @Param({ "1000000" })
+   public int rows;
+
+   @Param({ "export.csv", "export.csv.gz", "export.jsonl",
+      "export.jsonl.gz" })
+   public String fileName;
+
+   @Param({ "" + MovieExporter.DEFAULT_BATCH_SIZE })
+   public int batchSize; // rows per read transaction
+
+   private File databaseFile;
+   private File folder; // holds the exported file
+   private JdbcMovieRepository repository;
+
+   @Setup(Level.Trial)
+   public void load() throws IOException, SQLException
+   {
+      databaseFile = Databases.createFile(".db");
+      repository = Databases.openRepository(databaseFile);
+      repository.insertMovies(new SyntheticMovies(0, rows),
+         LOAD_BATCH_SIZE, null);
+
+      folder = Databases.createFile("");
+      folder.mkdir();
+   }
+
+   @TearDown(Level.Trial)
+   public void unload()
+   {
+      repository.close();
+      Databases.delete(databaseFile);
+      Databases.delete(folder);
+   }
+
+   // write every row to the file, replacing the one written before
+   @Benchmark
+   public long export() throws IOException
+   {
+      return new MovieExporter(repository, batchSize).exportFile(
+         new File(folder, fileName), null);
+   }
+} // end class ExportBenchmark
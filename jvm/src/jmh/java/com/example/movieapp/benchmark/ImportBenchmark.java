@@ -0,0 +1,193 @@
+package com.example.movieapp.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.example.movieapp.CsvMovieReader;
+import com.example.movieapp.Movie;
+import com.example.movieapp.MovieReader;
+import com.example.movieapp.MovieSchema;
+
+// Compares the old one-row-per-open insert path with the batched bulk
+// import, using the same SQLite engine through JDBC. Both report rows
+// per second read from a synthetic CSV catalog:
+//
+//   ./gradlew jmh -Pjmh.includes=ImportBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ImportBenchmark
+{
+   // rows per transaction, matching MovieImporter.DEFAULT_BATCH_SIZE
+   private static final int BATCH_SIZE = 1000;
+
+   // rows in the CSV catalog; read again from the start once used up
+   private static final int CATALOG_ROWS = 100000;
+
+   private File csvFile;
+   private File databaseFile;
+   private MovieReader reader;
+
+   // write the catalog and create an empty database holding the movies
+   // table
+   @Setup(Level.Trial)
+   public void create() throws IOException, SQLException
+   {
+      csvFile = Databases.createFile(".csv");
+      writeCatalog(csvFile, CATALOG_ROWS);
+      reader = openReader(csvFile);
+
+      databaseFile = Databases.createFile(".db");
+      Connection connection = Databases.open(databaseFile);
+      Statement statement = connection.createStatement();
+
+      for (String sql : MovieSchema.CREATE_STATEMENTS)
+         statement.execute(sql);
+
+      statement.close();
+      connection.close();
+   }
+
+   @TearDown(Level.Trial)
+   public void delete() throws IOException
+   {
+      reader.close();
+      csvFile.delete();
+      Databases.delete(databaseFile);
+   }
+
+   // the original path: open, insert in an implicit transaction, close
+   @Benchmark
+   public void perRowInsert() throws IOException, SQLException
+   {
+      Connection connection = Databases.open(databaseFile);
+      PreparedStatement insert =
+         connection.prepareStatement(MovieSchema.INSERT_MOVIE);
+      bind(insert, nextMovie());
+      insert.executeUpdate();
+      insert.close();
+      connection.close();
+   }
+
+   // a connection kept open across bulk import batches
+   @State(Scope.Thread)
+   public static class Bulk
+   {
+      Connection connection;
+      PreparedStatement insert;
+
+      @Setup(Level.Trial)
+      public void open(ImportBenchmark benchmark) throws SQLException
+      {
+         connection = Databases.open(benchmark.databaseFile);
+         connection.setAutoCommit(false);
+         insert = connection.prepareStatement(MovieSchema.INSERT_MOVIE);
+      }
+
+      @TearDown(Level.Trial)
+      public void close() throws SQLException
+      {
+         insert.close();
+         connection.close();
+      }
+   } // end class Bulk
+
+   // the bulk path: one statement, one transaction per batch
+   @Benchmark
+   @OperationsPerInvocation(BATCH_SIZE)
+   public void bulkImport(Bulk bulk) throws IOException, SQLException
+   {
+      for (int i = 0; i < BATCH_SIZE; ++i)
+      {
+         bind(bulk.insert, nextMovie());
+         bulk.insert.executeUpdate();
+      }
+
+      bulk.connection.commit();
+   }
+
+   // return the next movie of the catalog, starting again at its end
+   private Movie nextMovie() throws IOException
+   {
+      Movie movie = reader.read();
+
+      if (movie == null)
+      {
+         reader.close();
+         reader = openReader(csvFile);
+         movie = reader.read();
+      }
+
+      return movie;
+   }
+
+   // write a synthetic catalog of rows movies as CSV
+   private static void writeCatalog(File file, int rows) throws IOException
+   {
+      Writer out = new BufferedWriter(new OutputStreamWriter(
+         new FileOutputStream(file), "UTF-8"));
+
+      try
+      {
+         out.write("name,director,producer,actor,actress,release,budget\n");
+
+         for (int i = 0; i < rows; ++i)
+         {
+            out.write("\"Movie " + i + ", Part " + (i % 7) + "\",");
+            out.write("Director " + (i % 5000) + ",");
+            out.write("Producer " + (i % 3000) + ",");
+            out.write("Actor " + (i % 20000) + ",");
+            out.write("Actress " + (i % 20000) + ",");
+            out.write((1920 + i % 100) + "-01-01,");
+            out.write((i % 200) + "000000\n");
+         }
+      }
+      finally
+      {
+         out.close();
+      }
+   } // end method writeCatalog
+
+   // open a streaming reader over the CSV catalog
+   private static MovieReader openReader(File file) throws IOException
+   {
+      return new CsvMovieReader(new BufferedReader(new InputStreamReader(
+         new FileInputStream(file), "UTF-8"), 64 * 1024));
+   }
+
+   // bind the seven movie columns starting at parameter 1
+   private static void bind(PreparedStatement statement, Movie movie)
+      throws SQLException
+   {
+      statement.setString(1, movie.getName());
+      statement.setString(2, movie.getDirector());
+      statement.setString(3, movie.getProducer());
+      statement.setString(4, movie.getActor());
+      statement.setString(5, movie.getActress());
+      statement.setInt(6, movie.getRelease());
+      statement.setLong(7, movie.getBudget());
+   }
+} // end class ImportBenchmark
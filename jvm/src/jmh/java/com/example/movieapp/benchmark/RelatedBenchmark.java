@@ -0,0 +1,74 @@
+package com.example.movieapp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.example.movieapp.JdbcMovieRepository;
+import com.example.movieapp.MovieRelations;
+
+// Measures MovieRepository.findRelatedMovies over a synthetic catalog,
+// for a spread of movies in turn; JdbcMovieRepositoryTest checks that
+// edits and deletes show in the next lookup:
+//
+//   ./gradlew jmh -Pjmh.includes=RelatedBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RelatedBenchmark
+{
+   // rows per transaction while loading the database
+   private static final int LOAD_BATCH_SIZE = 1000;
+
+   // movies looked up in turn, spread over the catalog
+   private static final int LOOKUPS = 1000;
+
+   // related movies asked for, as DetailsFragment does
+   private static final int RELATED_LIMIT = 5;
+
+   @Param({ "100000" })
+   public int rows;
+
+   private File file;
+   private JdbcMovieRepository repository;
+   private int lookup; // the lookup made next
+
+   @Setup(Level.Trial)
+   public void load() throws IOException, SQLException
+   {
+      file = Databases.createFile(".db");
+      repository = Databases.openRepository(file);
+      repository.insertMovies(new SyntheticMovies(0, rows), LOAD_BATCH_SIZE,
+         null);
+   }
+
+   @TearDown(Level.Trial)
+   public void unload()
+   {
+      repository.close();
+      Databases.delete(file);
+   }
+
+   // the related movies of the next movie of the spread; movie i of the
+   // catalog has _id i + 1
+   @Benchmark
+   public List<MovieRelations.Related> findRelated()
+   {
+      long id = 1 + (long) lookup * rows / LOOKUPS;
+      lookup = (lookup + 1) % LOOKUPS;
+      return repository.findRelatedMovies(id, RELATED_LIMIT);
+   }
+} // end class RelatedBenchmark
@@ -0,0 +1,263 @@
+package com.example.movieapp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.example.movieapp.JdbcMovieRepository;
+import com.example.movieapp.Movie;
+import com.example.movieapp.MovieQuery;
+import com.example.movieapp.MovieStatistics;
+import com.example.movieapp.MovieSummary;
+
+// Measures each MovieRepository operation against tables of several sizes
+// through JdbcMovieRepository, for tracking regressions between releases:
+//
+//   ./gradlew jmh -Pjmh.includes=RepositoryBenchmark
+//
+// Each benchmark returns its result, so JMH keeps it from being discarded.
+// Work that isn't part of an operation, e.g. removing the row an insert
+// added, runs in per-invocation setup and isn't timed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RepositoryBenchmark
+{
+   // rows per bulk insert operation and per import transaction
+   private static final int BULK_ROWS = 1000;
+
+   // rows per page of the sorted list, matching PagedMovieAdapter
+   private static final int PAGE_SIZE = 50;
+
+   // most results kept by the search benchmark, as in MovieListFragment
+   private static final int SEARCH_LIMIT = 200;
+
+   // people listed per role by the statistics benchmark
+   private static final int STATISTICS_TOP = 10;
+
+   // a page of a filtered list in another order: one decade, highest
+   // budget first
+   private static final MovieQuery DECADE_BY_BUDGET =
+      new MovieQuery.Builder()
+         .setYears(1990, 1999)
+         .setSort(MovieQuery.SORT_BUDGET, true)
+         .build();
+
+   @Param({ "1000", "100000", "1000000" })
+   public int rows; // rows loaded before the benchmarks run
+
+   private File file;
+   private Connection connection;
+   private JdbcMovieRepository repository;
+   private List<MovieSummary> decade; // the rows of DECADE_BY_BUDGET
+   private final Random random = new Random(42); // same choices every run
+
+   // load rows synthetic movies into a new database file
+   @Setup(Level.Trial)
+   public void load() throws IOException, SQLException
+   {
+      file = Databases.createFile(".db");
+      connection = Databases.open(file);
+      repository = new JdbcMovieRepository(connection);
+      repository.insertMovies(new SyntheticMovies(0, rows), BULK_ROWS, null);
+      decade = repository.queryMovies(DECADE_BY_BUDGET, null, null, 0);
+   }
+
+   @TearDown(Level.Trial)
+   public void unload()
+   {
+      repository.close();
+      Databases.delete(file);
+   }
+
+   // return a random row ID among the loaded rows
+   private long randomID()
+   {
+      return 1 + random.nextInt(rows);
+   }
+
+   // delete every row added after the loaded ones
+   private void deleteAddedRows() throws SQLException
+   {
+      PreparedStatement delete =
+         connection.prepareStatement("DELETE FROM movies WHERE _id>?");
+      delete.setLong(1, rows);
+      delete.executeUpdate();
+      delete.close();
+   }
+
+   // removes the row the previous insert added, so the table keeps its
+   // size
+   @State(Scope.Thread)
+   public static class Inserted
+   {
+      long lastID = -1;
+
+      @Setup(Level.Invocation)
+      public void prepare(RepositoryBenchmark benchmark)
+      {
+         if (lastID != -1)
+            benchmark.repository.deleteMovie(lastID);
+      }
+   }
+
+   // one row per transaction, as AddEditFragment saves
+   @Benchmark
+   public long insert(Inserted inserted)
+   {
+      inserted.lastID = repository.insertMovie(
+         SyntheticMovies.movie(rows + random.nextInt(rows)));
+      return inserted.lastID;
+   }
+
+   // the batch a bulk insert reads, rewound and its rows removed each time
+   @State(Scope.Thread)
+   public static class Batch
+   {
+      SyntheticMovies movies;
+
+      @Setup(Level.Invocation)
+      public void prepare(RepositoryBenchmark benchmark) throws SQLException
+      {
+         benchmark.deleteAddedRows();
+
+         if (movies == null)
+            movies = new SyntheticMovies(benchmark.rows, BULK_ROWS);
+         else
+            movies.rewind();
+      }
+   }
+
+   // BULK_ROWS rows in one transaction, as an import batch does
+   @Benchmark
+   public long bulkInsert(Batch batch) throws IOException
+   {
+      return repository.insertMovies(batch.movies, BULK_ROWS, null);
+   }
+
+   // rename a random row, moving it in the name index and FTS index
+   @Benchmark
+   public Movie update()
+   {
+      long id = randomID();
+      Movie movie = SyntheticMovies.movie(random.nextInt(rows));
+      Movie updated = new Movie(id, movie.getName(), movie.getDirector(),
+         movie.getProducer(), movie.getActor(), movie.getActress(),
+         movie.getRelease(), movie.getBudget());
+      repository.updateMovie(updated);
+      return updated;
+   }
+
+   // a row added, untimed, before each delete
+   @State(Scope.Thread)
+   public static class Added
+   {
+      long id;
+
+      @Setup(Level.Invocation)
+      public void prepare(RepositoryBenchmark benchmark)
+      {
+         id = benchmark.repository.insertMovie(
+            SyntheticMovies.movie(benchmark.random.nextInt(benchmark.rows)));
+      }
+   }
+
+   @Benchmark
+   public long delete(Added added)
+   {
+      repository.deleteMovie(added.id);
+      return added.id;
+   }
+
+   @Benchmark
+   public Movie getById()
+   {
+      return repository.getMovie(randomID());
+   }
+
+   // the row of the name-ordered list a page starts after
+   @State(Scope.Thread)
+   public static class SortedPosition
+   {
+      MovieSummary after;
+
+      @Setup(Level.Invocation)
+      public void prepare(RepositoryBenchmark benchmark)
+      {
+         Movie movie = benchmark.repository.getMovie(benchmark.randomID());
+         after = new MovieSummary(movie.getId(), movie.getName());
+      }
+   }
+
+   // one page of the name-ordered list after a random row, as the list
+   // fetches while scrolling
+   @Benchmark
+   public List<MovieSummary> sortedPage(SortedPosition position)
+   {
+      return repository.queryMovies(MovieQuery.ALL, position.after, null,
+         PAGE_SIZE);
+   }
+
+   // the row of DECADE_BY_BUDGET a page starts after
+   @State(Scope.Thread)
+   public static class FilteredPosition
+   {
+      MovieSummary after;
+
+      @Setup(Level.Invocation)
+      public void prepare(RepositoryBenchmark benchmark)
+      {
+         after = benchmark.decade.get(
+            benchmark.random.nextInt(benchmark.decade.size()));
+      }
+   }
+
+   // a page of DECADE_BY_BUDGET after a random row of it
+   @Benchmark
+   public List<MovieSummary> filteredPage(FilteredPosition position)
+   {
+      return repository.queryMovies(DECADE_BY_BUDGET, position.after, null,
+         PAGE_SIZE);
+   }
+
+   // the first page of rows whose actor or actress starts with a name
+   @Benchmark
+   public List<MovieSummary> personFilter()
+   {
+      MovieQuery query = new MovieQuery.Builder()
+         .setPerson("Actress " + random.nextInt(20000))
+         .build();
+      return repository.queryMovies(query, null, null, PAGE_SIZE);
+   }
+
+   // a two-word prefix search, as typed in the list's search box
+   @Benchmark
+   public List<MovieSummary> search()
+   {
+      return repository.searchMovies("director " + random.nextInt(5000),
+         SEARCH_LIMIT);
+   }
+
+   // the statistics screen, read from the totals tables
+   @Benchmark
+   public MovieStatistics statistics()
+   {
+      return repository.getStatistics(STATISTICS_TOP);
+   }
+} // end class RepositoryBenchmark
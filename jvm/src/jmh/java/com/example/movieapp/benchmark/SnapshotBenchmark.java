@@ -0,0 +1,143 @@
+package com.example.movieapp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.movieapp.JdbcMovieRepository;
+import com.example.movieapp.Movie;
+import com.example.movieapp.MovieSnapshots;
+
+// Measures MovieSnapshots: a full snapshot, a changes file after a share
+// of the movies is saved, and a restore of the chain. Each is timed once
+// per iteration, after the untimed setup it needs:
+//
+//   ./gradlew jmh -Pjmh.includes=SnapshotBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SnapshotBenchmark
+{
+   // rows per transaction while loading the database
+   private static final int LOAD_BATCH_SIZE = 1000;
+
+   @Param({ "1000000" })
+   public int rows;
+
+   @Param({ "10000" })
+   public int changed; // movies saved before a changes file is written
+
+   private File databaseFile;
+   private File folder; // holds the snapshot files
+   private JdbcMovieRepository repository;
+   private MovieSnapshots snapshots;
+   private int edits; // times the spread of movies has been saved
+
+   @Setup(Level.Trial)
+   public void load() throws IOException, SQLException
+   {
+      databaseFile = Databases.createFile(".db");
+      repository = Databases.openRepository(databaseFile);
+      repository.insertMovies(new SyntheticMovies(0, rows),
+         LOAD_BATCH_SIZE, null);
+
+      folder = Databases.createFile("");
+      snapshots = new MovieSnapshots(repository, folder);
+   }
+
+   @TearDown(Level.Trial)
+   public void unload()
+   {
+      repository.close();
+      Databases.delete(databaseFile);
+      Databases.delete(folder);
+   }
+
+   // an empty folder, so the next backUp writes a full snapshot
+   @State(Scope.Thread)
+   public static class Empty
+   {
+      @Setup(Level.Iteration)
+      public void clear(SnapshotBenchmark benchmark)
+      {
+         Databases.delete(benchmark.folder);
+      }
+   }
+
+   @Benchmark
+   public File fullSnapshot(Empty empty) throws IOException
+   {
+      return snapshots.backUp();
+   }
+
+   // a full snapshot, then changed movies saved, so the next backUp
+   // writes a changes file
+   @State(Scope.Thread)
+   public static class Edited
+   {
+      @Setup(Level.Iteration)
+      public void edit(SnapshotBenchmark benchmark) throws IOException
+      {
+         Databases.delete(benchmark.folder);
+         benchmark.snapshots.backUp();
+         benchmark.saveChanged();
+      }
+   }
+
+   @Benchmark
+   public File changesFile(Edited edited) throws IOException
+   {
+      return snapshots.backUp();
+   }
+
+   // a full snapshot and a changes file to restore
+   @State(Scope.Thread)
+   public static class Chain
+   {
+      @Setup(Level.Iteration)
+      public void write(SnapshotBenchmark benchmark) throws IOException
+      {
+         Databases.delete(benchmark.folder);
+         benchmark.snapshots.backUp();
+         benchmark.saveChanged();
+         benchmark.snapshots.backUp();
+      }
+   }
+
+   @Benchmark
+   public long restore(Chain chain) throws IOException
+   {
+      return snapshots.restore();
+   }
+
+   // save every movie with an _id in a spread of changed values
+   private void saveChanged()
+   {
+      int step = Math.max(1, rows / Math.max(1, changed));
+      String suffix = " (" + ++edits + ")";
+
+      for (long id = 1; id <= rows; id += step)
+      {
+         Movie movie = repository.getMovie(id);
+         repository.updateMovie(new Movie(id, movie.getName() + suffix,
+            movie.getDirector(), movie.getProducer(), movie.getActor(),
+            movie.getActress(), movie.getRelease(), movie.getBudget()));
+      }
+   }
+} // end class SnapshotBenchmark
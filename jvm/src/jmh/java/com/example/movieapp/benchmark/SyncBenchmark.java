@@ -0,0 +1,248 @@
+package com.example.movieapp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.movieapp.JdbcMovieRepository;
+import com.example.movieapp.Movie;
+import com.example.movieapp.MovieRepository;
+import com.example.movieapp.MovieSnapshots;
+import com.example.movieapp.MovieSync;
+import com.example.movieapp.MovieWriter;
+import com.example.movieapp.StubSyncServer;
+
+// Measures MovieSync with two devices and a StubSyncServer: the first
+// upload of a catalog, a download to the second device that lost its
+// connection part way and resumes, and a round of edits made on both
+// devices, some to the same movies, synced as deltas. Each is timed once
+// per iteration, after the untimed syncs it follows. A delta sync that
+// leaves the devices with different catalogs fails the run; MovieSyncTest
+// checks conflicts, resuming and what the syncs send:
+//
+//   ./gradlew jmh -Pjmh.includes=SyncBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SyncBenchmark
+{
+   // rows per transaction while loading the database
+   private static final int LOAD_BATCH_SIZE = 1000;
+
+   // requests the second device's first download gets through
+   private static final int REQUESTS_BEFORE_FAILURE = 3;
+
+   @Param({ "100000" })
+   public int rows;
+
+   @Param({ "1000" })
+   public int changed; // movies each device edits before the delta sync
+
+   private File catalogFile; // the first device's catalog, never synced
+   private File firstFile;
+   private File secondFile;
+   private JdbcMovieRepository first;
+   private JdbcMovieRepository second;
+   private StubSyncServer server;
+   private MovieSync firstSync;
+   private MovieSync secondSync;
+
+   // load the catalog once; each iteration starts from a copy of it
+   @Setup(Level.Trial)
+   public void load() throws IOException, SQLException
+   {
+      catalogFile = Databases.createFile(".db");
+      JdbcMovieRepository catalog = Databases.openRepository(catalogFile);
+      catalog.insertMovies(new SyntheticMovies(0, rows), LOAD_BATCH_SIZE,
+         null);
+      catalog.close();
+   }
+
+   @TearDown(Level.Trial)
+   public void unload()
+   {
+      Databases.delete(catalogFile);
+   }
+
+   // open the first device over a copy of the catalog and the second
+   // over an empty database, both syncing with a new, empty server
+   @Setup(Level.Iteration)
+   public void open() throws IOException, SQLException
+   {
+      firstFile = Databases.createFile(".db");
+      MovieSnapshots.copyFile(catalogFile, firstFile);
+      secondFile = Databases.createFile(".db");
+
+      first = Databases.openRepository(firstFile);
+      second = Databases.openRepository(secondFile);
+      server = new StubSyncServer();
+      firstSync = new MovieSync(first, server, MovieSync.DEFAULT_BATCH_SIZE);
+      secondSync =
+         new MovieSync(second, server, MovieSync.DEFAULT_BATCH_SIZE);
+   }
+
+   @TearDown(Level.Iteration)
+   public void close()
+   {
+      first.close();
+      second.close();
+      Databases.delete(firstFile);
+      Databases.delete(secondFile);
+   }
+
+   // the first device's catalog sent to the empty server
+   @Benchmark
+   public long fullUpload() throws IOException
+   {
+      return firstSync.sync();
+   }
+
+   // the catalog uploaded, and the second device's download of it cut off
+   @State(Scope.Thread)
+   public static class Interrupted
+   {
+      @Setup(Level.Iteration)
+      public void interrupt(SyncBenchmark benchmark) throws IOException
+      {
+         benchmark.firstSync.sync();
+         benchmark.interruptDownload();
+      }
+   }
+
+   // the rest of the second device's download
+   @Benchmark
+   public long resumedDownload(Interrupted interrupted) throws IOException
+   {
+      return secondSync.sync();
+   }
+
+   // both devices holding the catalog, then each editing some movies;
+   // after the delta sync both must hold the same catalog again
+   @State(Scope.Thread)
+   public static class Edited
+   {
+      @Setup(Level.Iteration)
+      public void edit(SyncBenchmark benchmark) throws IOException
+      {
+         benchmark.firstSync.sync();
+         benchmark.secondSync.sync();
+         benchmark.edit();
+      }
+
+      @TearDown(Level.Iteration)
+      public void check(SyncBenchmark benchmark) throws IOException
+      {
+         if (!contents(benchmark.first).equals(contents(benchmark.second)))
+            throw new IllegalStateException("devices did not converge");
+      }
+   }
+
+   // the first device's edits pushed, the second's pushed with the
+   // first's pulled, then the second's pulled by the first
+   @Benchmark
+   public long deltaSync(Edited edited) throws IOException
+   {
+      return firstSync.sync() + secondSync.sync() + firstSync.sync();
+   }
+
+   // start the second device's download and lose the connection after
+   // REQUESTS_BEFORE_FAILURE requests
+   private void interruptDownload()
+   {
+      server.failAfter(REQUESTS_BEFORE_FAILURE);
+
+      try
+      {
+         secondSync.sync();
+         throw new IllegalStateException("download was not interrupted");
+      }
+      catch (IOException e)
+      {
+         // the lost connection, as meant
+      }
+   }
+
+   // edit a spread of movies on both devices, half of them the same ones,
+   // and on each delete a few and add a few
+   private void edit()
+   {
+      int step = Math.max(2, rows / Math.max(1, changed));
+
+      for (long id = 1; id <= rows; id += step)
+      {
+         rename(first, id, " (first)");
+         rename(second, id + (id / step % 2) * (step / 2), " (second)");
+      }
+
+      for (long id = 3; id <= rows; id += step * 10)
+      {
+         first.deleteMovie(id);
+         second.deleteMovie(id + 1);
+      }
+
+      for (int i = 0; i < changed / 10; ++i)
+      {
+         first.insertMovie(SyntheticMovies.movie(rows + i));
+         second.insertMovie(SyntheticMovies.movie(rows * 2 + i));
+      }
+   } // end method edit
+
+   // return every movie of repository without its _id, which differs
+   // between devices, in a fixed order
+   private static List<String> contents(MovieRepository repository)
+      throws IOException
+   {
+      final List<String> movies = new ArrayList<String>();
+
+      repository.exportMovies(new MovieWriter()
+         {
+            @Override
+            public void write(Movie movie)
+            {
+               movies.add(movie.getName() + "|" + movie.getDirector() + "|" +
+                  movie.getProducer() + "|" + movie.getActor() + "|" +
+                  movie.getActress() + "|" + movie.getRelease() + "|" +
+                  movie.getBudget());
+            }
+
+            @Override
+            public void close()
+            {
+            }
+         }, LOAD_BATCH_SIZE, null);
+
+      Collections.sort(movies);
+      return movies;
+   } // end method contents
+
+   // save the movie with the given _id, if any, with suffix on its name
+   private static void rename(MovieRepository repository, long id,
+      String suffix)
+   {
+      Movie movie = repository.getMovie(id);
+
+      if (movie != null)
+         repository.updateMovie(new Movie(id, movie.getName() + suffix,
+            movie.getDirector(), movie.getProducer(), movie.getActor(),
+            movie.getActress(), movie.getRelease(), movie.getBudget()));
+   }
+} // end class SyncBenchmark
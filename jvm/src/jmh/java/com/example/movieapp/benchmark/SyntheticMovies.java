@@ -0,0 +1,52 @@
+package com.example.movieapp.benchmark;
+
+import com.example.movieapp.Movie;
+import com.example.movieapp.MovieReader;
+
+// a MovieReader supplying a reproducible synthetic catalog, with names,
+// people, releases and budgets spread like ImportBenchmark's CSV
+public class SyntheticMovies implements MovieReader
+{
+   private final long first; // number of the first movie supplied
+   private final long end; // one past the number of the last
+
+   private long next;
+
+   // constructor; supplies movies numbered first to first + count - 1
+   public SyntheticMovies(long first, long count)
+   {
+      this.first = first;
+      this.end = first + count;
+      next = first;
+   }
+
+   // return movie number i of the catalog
+   public static Movie movie(long i)
+   {
+      return new Movie(Movie.NO_ID, 
+         "Movie " + i + ", Part " + (i % 7),
+         "Director " + (i % 5000),
+         "Producer " + (i % 3000),
+         "Actor " + (i % 20000),
+         "Actress " + (i % 20000),
+         (int) (1920 + i % 100) * 10000 + 101,
+         (i % 200) * 100000000L);
+   }
+
+   // start again from the first movie
+   public void rewind()
+   {
+      next = first;
+   }
+
+   @Override
+   public Movie read()
+   {
+      return next < end ? movie(next++) : null;
+   }
+
+   @Override
+   public void close()
+   {
+   }
+} // end class SyntheticMovies
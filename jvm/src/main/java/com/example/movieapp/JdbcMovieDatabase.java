@@ -0,0 +1,524 @@
+package com.example.movieapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// MovieDatabase over a JDBC connection to SQLite, so MovieStore runs the
+// same SQL on a plain JVM as on the device, over the sqlite-jdbc driver
+// jvm/build.gradle depends on. The connection stays in
+// auto-commit mode and transactions are begun with BEGIN IMMEDIATE, as
+// SQLiteDatabase.beginTransactionNonExclusive does, since
+// setAutoCommit(false) starts a deferred one that wouldn't hold off
+// writers. Not thread-safe beyond the statement locks MovieStore takes.
+public class JdbcMovieDatabase implements MovieDatabase
+{
+   // compiled statements kept, as SQLiteDatabase.setMaxSqlCacheSize does
+   // for DatabaseConnector
+   private static final int SQL_CACHE_SIZE = 50;
+
+   private final Connection connection;
+
+   // nested transactions begun and not yet ended; whether the innermost
+   // was marked successful, and whether any ended without being
+   private int transactionDepth;
+   private boolean transactionSuccessful;
+   private boolean transactionFailed;
+
+   // compiled statements, keyed by their SQL, least recently used first;
+   // IN lists of every length get their own entry, so the oldest are closed
+   private final Map<String, JdbcStatement> statementCache =
+      new LinkedHashMap<String, JdbcStatement>(16, 0.75f, true)
+      {
+         @Override
+         protected boolean removeEldestEntry(
+            Map.Entry<String, JdbcStatement> eldest)
+         {
+            if (size() <= SQL_CACHE_SIZE)
+               return false;
+
+            eldest.getValue().close();
+            return true;
+         }
+      };
+
+   // constructor
+   public JdbcMovieDatabase(Connection connection)
+   {
+      this.connection = connection;
+   }
+
+   // wrap a JDBC error in the unchecked exception callers expect
+   private static RuntimeException failure(SQLException e)
+   {
+      return new IllegalStateException(e.getMessage(), e);
+   }
+
+   // bind args as text, as rawQuery does
+   private static void bindArgs(PreparedStatement statement, String[] args)
+      throws SQLException
+   {
+      for (int i = 0; args != null && i < args.length; ++i)
+         statement.setString(i + 1, args[i]);
+   }
+
+   @Override
+   public synchronized Rows query(String sql, String... args)
+   {
+      try
+      {
+         PreparedStatement statement = prepare(sql).statement;
+         bindArgs(statement, args);
+         return new ResultSetRows(statement.executeQuery());
+      }
+      catch (SQLException e)
+      {
+         throw failure(e);
+      }
+   }
+
+   @Override
+   public long queryLong(String sql, String... args)
+   {
+      Rows rows = query(sql, args);
+
+      try
+      {
+         if (!rows.next())
+            throw new IllegalStateException("no rows: " + sql);
+
+         return rows.getLong(0);
+      }
+      finally
+      {
+         rows.close();
+      }
+   } // end method queryLong
+
+   @Override
+   public String queryString(String sql, String... args)
+   {
+      Rows rows = query(sql, args);
+
+      try
+      {
+         if (!rows.next())
+            throw new IllegalStateException("no rows: " + sql);
+
+         return rows.getString(0);
+      }
+      finally
+      {
+         rows.close();
+      }
+   } // end method queryString
+
+   @Override
+   public void execute(String sql, Object... args)
+   {
+      if (args.length == 0)
+      {
+         JdbcStatement statement = compile(sql);
+
+         try
+         {
+            statement.execute(); // schema changes and pragmas run once
+         }
+         finally
+         {
+            statement.close();
+         }
+
+         return;
+      }
+
+      JdbcStatement statement = prepare(sql);
+
+      synchronized (statement)
+      {
+         for (int i = 0; i < args.length; ++i)
+            statement.bindObject(i + 1, args[i]);
+
+         statement.execute();
+      }
+   } // end method execute
+
+   @Override
+   public Statement getStatement(String sql)
+   {
+      return prepare(sql);
+   }
+
+   @Override
+   public Statement compileStatement(String sql)
+   {
+      return compile(sql);
+   }
+
+   // return the cached compiled statement for sql, compiling it if needed
+   private synchronized JdbcStatement prepare(String sql)
+   {
+      JdbcStatement statement = statementCache.get(sql);
+
+      if (statement == null)
+      {
+         statement = compile(sql);
+         statementCache.put(sql, statement);
+      }
+
+      return statement;
+   }
+
+   // compile sql into a statement that isn't cached
+   private JdbcStatement compile(String sql)
+   {
+      try
+      {
+         return new JdbcStatement(connection.prepareStatement(sql));
+      }
+      catch (SQLException e)
+      {
+         throw failure(e);
+      }
+   }
+
+   @Override
+   public synchronized void beginTransaction()
+   {
+      if (transactionDepth == 0)
+      {
+         execute("BEGIN IMMEDIATE"); // holds off writers only
+         transactionFailed = false;
+      }
+
+      ++transactionDepth;
+      transactionSuccessful = false;
+   }
+
+   @Override
+   public synchronized void setTransactionSuccessful()
+   {
+      transactionSuccessful = true;
+   }
+
+   @Override
+   public synchronized void endTransaction()
+   {
+      if (!transactionSuccessful)
+         transactionFailed = true;
+
+      transactionSuccessful = false; // the enclosing one isn't marked yet
+
+      if (--transactionDepth > 0)
+         return;
+
+      boolean committed = false;
+
+      try
+      {
+         if (!transactionFailed)
+         {
+            execute("COMMIT");
+            committed = true;
+         }
+      }
+      finally
+      {
+         if (!committed)
+            execute("ROLLBACK"); // also ends a transaction COMMIT couldn't
+      }
+   } // end method endTransaction
+
+   @Override
+   public File getFile()
+   {
+      Rows rows = query("PRAGMA database_list");
+
+      try
+      {
+         while (rows.next())
+         {
+            if ("main".equals(rows.getString(1)))
+               return new File(rows.getString(2));
+         }
+
+         throw new IllegalStateException("no main database");
+      }
+      finally
+      {
+         rows.close();
+      }
+   } // end method getFile
+
+   @Override
+   public MovieDatabase openFile(File file, boolean readOnly)
+      throws IOException
+   {
+      Properties properties = new Properties();
+
+      if (readOnly)
+         properties.setProperty("open_mode", "1"); // SQLITE_OPEN_READONLY
+
+      try
+      {
+         return new JdbcMovieDatabase(DriverManager.getConnection(
+            "jdbc:sqlite:" + file.getPath(), properties));
+      }
+      catch (SQLException e)
+      {
+         throw new IOException("Cannot open " + file, e);
+      }
+   } // end method openFile
+
+   // close the cached statements and the connection
+   @Override
+   public synchronized void close()
+   {
+      for (JdbcStatement statement : statementCache.values())
+         statement.close();
+      statementCache.clear();
+
+      try
+      {
+         connection.close();
+      }
+      catch (SQLException e)
+      {
+         throw failure(e);
+      }
+   } // end method close
+
+   // the rows of a ResultSet, whose columns are numbered from 1
+   private static class ResultSetRows implements Rows
+   {
+      private final ResultSet result;
+
+      // constructor
+      public ResultSetRows(ResultSet result)
+      {
+         this.result = result;
+      }
+
+      @Override
+      public boolean next()
+      {
+         try
+         {
+            return result.next();
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public int getColumnCount()
+      {
+         try
+         {
+            return result.getMetaData().getColumnCount();
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public boolean isNull(int column)
+      {
+         return getObject(column) == null;
+      }
+
+      @Override
+      public int getInt(int column)
+      {
+         try
+         {
+            return result.getInt(column + 1);
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public long getLong(int column)
+      {
+         try
+         {
+            return result.getLong(column + 1);
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public String getString(int column)
+      {
+         try
+         {
+            return result.getString(column + 1);
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public byte[] getBlob(int column)
+      {
+         try
+         {
+            return result.getBytes(column + 1);
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public Object getObject(int column)
+      {
+         try
+         {
+            return result.getObject(column + 1);
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public void close()
+      {
+         try
+         {
+            result.close();
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+   } // end class ResultSetRows
+
+   // a PreparedStatement, whose parameters are also numbered from 1
+   private static class JdbcStatement implements Statement
+   {
+      private final PreparedStatement statement;
+
+      // constructor
+      public JdbcStatement(PreparedStatement statement)
+      {
+         this.statement = statement;
+      }
+
+      @Override
+      public void bindLong(int index, long value)
+      {
+         try
+         {
+            statement.setLong(index, value);
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public void bindString(int index, String value)
+      {
+         try
+         {
+            statement.setString(index, value);
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public void bindNull(int index)
+      {
+         try
+         {
+            statement.setNull(index, Types.NULL);
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public void bindObject(int index, Object value)
+      {
+         try
+         {
+            statement.setObject(index, value);
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public void execute()
+      {
+         try
+         {
+            statement.execute();
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      @Override
+      public int executeUpdateDelete()
+      {
+         try
+         {
+            return statement.executeUpdate();
+         }
+         catch (SQLException e)
+         {
+            throw failure(e);
+         }
+      }
+
+      // a statement dropped from the cache is closed either way
+      @Override
+      public void close()
+      {
+         try
+         {
+            statement.close();
+         }
+         catch (SQLException e)
+         {
+            // nothing more to release
+         }
+      }
+   } // end class JdbcStatement
+} // end class JdbcMovieDatabase
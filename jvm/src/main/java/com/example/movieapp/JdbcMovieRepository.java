@@ -0,0 +1,284 @@
+package com.example.movieapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// MovieRepository over a JDBC connection to SQLite, so the data layer can
+// be tested and measured on a plain JVM: every operation runs through the
+// same MovieStore as DatabaseConnector, over JdbcMovieDatabase, and an
+// older database is upgraded by the same MovieMigrations. Part of the
+// JVM module in jvm/, which the app doesn't include. Writes are committed
+// at once, with no cache or queue in front of them. Not thread-safe
+// beyond the serialization its methods do.
+public class JdbcMovieRepository implements MovieRepository
+{
+   private final JdbcMovieDatabase database;
+   private final MovieStore store = new MovieStore();
+   private final NamePool names = new NamePool(); // shares people's names
+
+   // constructor; creates the schema if the database is empty and
+   // brings one created by an older version up to date, as
+   // DatabaseOpenHelper does
+   public JdbcMovieRepository(Connection connection) throws SQLException
+   {
+      Statement statement = connection.createStatement();
+      int version;
+
+      try
+      {
+         ResultSet result = statement.executeQuery("PRAGMA user_version");
+         version = result.next() ? result.getInt(1) : 0;
+         result.close();
+
+         if (version == 0)
+            statement.execute(MovieSchema.SET_INCREMENTAL_VACUUM);
+         else if (version > MovieSchema.VERSION)
+            throw new SQLException("unsupported schema version " + version);
+      }
+      finally
+      {
+         statement.close();
+      }
+
+      database = new JdbcMovieDatabase(connection);
+
+      if (version == MovieSchema.VERSION)
+         return;
+
+      database.beginTransaction();
+
+      try
+      {
+         if (version == 0)
+         {
+            for (String sql : MovieSchema.CREATE_STATEMENTS)
+               database.execute(sql);
+         }
+         else
+            MovieMigrations.upgrade(database, version, MovieSchema.VERSION);
+
+         database.execute("PRAGMA user_version=" + MovieSchema.VERSION);
+         database.setTransactionSuccessful();
+      }
+      finally
+      {
+         database.endTransaction();
+      }
+   } // end constructor
+
+   // close the cached statements and the connection
+   public synchronized void close()
+   {
+      database.close();
+   }
+
+   // write one movie in its own transaction, as a commit of one queued
+   // write does in DatabaseConnector
+   private void commitWrite(int type, long id, Movie movie)
+   {
+      store.commitWrites(database, Collections.singletonList(
+         new PendingWrites.Write(type, id, movie)));
+   }
+
+   @Override
+   public synchronized long insertMovie(Movie movie)
+   {
+      long id = store.allocateID(database);
+      commitWrite(MovieChange.INSERTED, id, MovieStore.withID(movie, id));
+      return id;
+   }
+
+   @Override
+   public synchronized void updateMovie(Movie movie)
+   {
+      commitWrite(MovieChange.UPDATED, movie.getId(), movie);
+   }
+
+   @Override
+   public synchronized void deleteMovie(long id)
+   {
+      commitWrite(MovieChange.DELETED, id, null);
+   }
+
+   @Override
+   public synchronized boolean undeleteMovie(long id)
+   {
+      return store.undeleteMovie(database, id);
+   }
+
+   @Override
+   public synchronized long purgeDeletedMovies(long deletedBefore, 
+      int batchSize)
+   {
+      return store.purgeDeletedMovies(database, deletedBefore, batchSize);
+   }
+
+   @Override
+   public synchronized long compactDatabase(double fragmentation)
+   {
+      return store.compactDatabase(database, fragmentation);
+   }
+
+   @Override
+   public synchronized long insertMovies(MovieReader reader, int batchSize,
+      ProgressListener listener) throws IOException
+   {
+      return store.insertMovies(database, reader, batchSize, listener);
+   }
+
+   @Override
+   public synchronized long exportMovies(MovieWriter writer, int batchSize,
+      ProgressListener listener) throws IOException
+   {
+      return store.exportMovies(database, writer, batchSize, listener);
+   }
+
+   @Override
+   public synchronized long writeSnapshot(File file) throws IOException
+   {
+      return store.writeSnapshot(database, file);
+   }
+
+   @Override
+   public synchronized long writeSnapshotChanges(File file, long since) 
+      throws IOException
+   {
+      return store.writeSnapshotChanges(database, file, since);
+   }
+
+   @Override
+   public synchronized long restoreSnapshot(File snapshot, 
+      List<File> changes) throws IOException
+   {
+      return store.restoreSnapshot(database, snapshot, changes);
+   }
+
+   @Override
+   public synchronized Movie getMovie(long id)
+   {
+      return store.readMovie(database, id, names);
+   }
+
+   @Override
+   public synchronized List<Movie> getMovies(long[] ids)
+   {
+      String[] args = new String[ids.length];
+
+      for (int i = 0; i < ids.length; ++i)
+         args[i] = String.valueOf(ids[i]);
+
+      return store.readMovies(database, args, names);
+   }
+
+   @Override
+   public synchronized void setPoster(long id, String path)
+   {
+      store.setPoster(database, id, path);
+   }
+
+   @Override
+   public synchronized Map<Long, String> getPosters(long[] ids)
+   {
+      return store.getPosters(database, ids);
+   }
+
+   @Override
+   public synchronized List<String> getPosterPaths()
+   {
+      return store.getPosterPaths(database);
+   }
+
+   @Override
+   public synchronized List<SyncRecord> getSyncChanges(int limit)
+   {
+      return store.getSyncChanges(database, limit);
+   }
+
+   @Override
+   public synchronized String getSyncDevice()
+   {
+      return store.getSyncDevice(database);
+   }
+
+   @Override
+   public synchronized long getSyncVersion()
+   {
+      return store.getSyncVersion(database);
+   }
+
+   @Override
+   public synchronized void applySyncChanges(List<SyncRecord> records, 
+      long pushed, long pulled)
+   {
+      store.applySyncChanges(database, records, pushed, pulled);
+   }
+
+   @Override
+   public synchronized MovieStatistics getStatistics(int topCount)
+   {
+      return store.getStatistics(database, topCount);
+   }
+
+   @Override
+   public synchronized void rebuildStatistics()
+   {
+      store.rebuildStatistics(database);
+   }
+
+   @Override
+   public synchronized List<MovieSummary> queryMovies(MovieQuery query, 
+      MovieSummary after, MovieSummary last, int limit)
+   {
+      return store.querySummaries(database, "queryMovies", query,
+         query.toSql(after, last, limit),
+         query.toSelectionArgs(after, last, limit));
+   }
+
+   @Override
+   public synchronized List<MovieSummary> queryMovieRows(MovieQuery query, 
+      long[] ids)
+   {
+      return store.queryMovieRows(database, query, ids);
+   }
+
+   @Override
+   public synchronized List<MovieSummary> searchMovies(String text, 
+      int limit)
+   {
+      return store.searchMovies(database, text, limit);
+   }
+
+   @Override
+   public synchronized long indexTitles(int limit)
+   {
+      return store.indexTitles(database, limit);
+   }
+
+   @Override
+   public synchronized List<MovieDuplicates.Match> findDuplicates(
+      Movie movie, int limit)
+   {
+      return store.findDuplicates(database, movie, limit);
+   }
+
+   @Override
+   public synchronized List<MovieDuplicates.Match> findAllDuplicates(
+      int limit)
+   {
+      return store.findAllDuplicates(database, limit);
+   }
+
+   @Override
+   public synchronized List<MovieRelations.Related> findRelatedMovies(
+      long id, int limit)
+   {
+      return store.findRelatedMovies(database, id, limit);
+   }
+} // end class JdbcMovieRepository
@@ -0,0 +1,120 @@
+package com.example.movieapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// an in-process SyncServer holding the catalog in memory, for trying
+// MovieSync without a network: it resolves conflicts as the catalog
+// server does, counts the bytes that would have been sent each way, and
+// can drop a response to stand in for a lost connection
+public class StubSyncServer implements SyncServer
+{
+   // the latest record of each uid, by uid and by version
+   private final Map<String, SyncRecord> recordsByUid =
+      new HashMap<String, SyncRecord>();
+   private final TreeMap<Long, SyncRecord> recordsByVersion =
+      new TreeMap<Long, SyncRecord>();
+
+   private long lastVersion; // given to the last record stored
+   private long bytesReceived;
+   private long bytesSent;
+   private int requestsUntilFailure = -1; // -1 never fails
+
+   // a record pushed with the version the server has is stored, since
+   // its device had seen the latest write; otherwise the newer write of
+   // the two is kept. A record pushed again after a lost response is
+   // found stored already and returned as it is.
+   @Override
+   public synchronized byte[] push(byte[] batch) throws IOException
+   {
+      bytesReceived += batch.length;
+      List<SyncRecord> results = new ArrayList<SyncRecord>();
+
+      for (SyncRecord record : SyncBatch.fromBytes(batch).getRecords())
+      {
+         SyncRecord current = recordsByUid.get(record.getUid());
+
+         if (current != null &&
+            (current.isSameWrite(record.getModified(), record.getDevice()) ||
+            (current.getVersion() != record.getVersion() &&
+            current.isNewerThan(record.getModified(), record.getDevice()))))
+         {
+            results.add(current);
+            continue;
+         }
+
+         if (current != null)
+            recordsByVersion.remove(current.getVersion());
+
+         SyncRecord stored = record.withVersion(++lastVersion);
+         recordsByUid.put(stored.getUid(), stored);
+         recordsByVersion.put(stored.getVersion(), stored);
+         results.add(stored);
+      }
+
+      return respond(new SyncBatch(results, lastVersion));
+   } // end method push
+
+   @Override
+   public synchronized byte[] pull(String device, long after, int limit)
+      throws IOException
+   {
+      List<SyncRecord> results = new ArrayList<SyncRecord>();
+      long through = lastVersion;
+
+      for (SyncRecord record :
+         recordsByVersion.tailMap(after, false).values())
+      {
+         if (results.size() == limit)
+         {
+            through = record.getVersion() - 1;
+            break;
+         }
+
+         if (!record.getDevice().equals(device))
+            results.add(record);
+      }
+
+      return respond(new SyncBatch(results, through));
+   } // end method pull
+
+   // lose the response to the request after the next count requests, as
+   // if the connection dropped once the server had acted on it
+   public synchronized void failAfter(int count)
+   {
+      requestsUntilFailure = count;
+   }
+
+   // return the number of records held, deletes included
+   public synchronized int getRecordCount()
+   {
+      return recordsByUid.size();
+   }
+
+   // return the bytes pushed to the server and sent back by it
+   public synchronized long getBytesReceived()
+   {
+      return bytesReceived;
+   }
+
+   public synchronized long getBytesSent()
+   {
+      return bytesSent;
+   }
+
+   // send response unless this is the request failAfter chose
+   private byte[] respond(SyncBatch response) throws IOException
+   {
+      byte[] bytes = response.toBytes();
+      bytesSent += bytes.length;
+
+      if (requestsUntilFailure >= 0 && requestsUntilFailure-- == 0)
+         throw new IOException("Connection lost");
+
+      return bytes;
+   }
+} // end class StubSyncServer
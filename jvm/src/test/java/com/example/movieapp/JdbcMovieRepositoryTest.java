@@ -0,0 +1,416 @@
+package com.example.movieapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// round trips through JdbcMovieRepository, and so through the MovieStore
+// the app runs, over databases in a temporary folder
+public class JdbcMovieRepositoryTest
+{
+   // rows per transaction while loading a catalog
+   private static final int BATCH_SIZE = 100;
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   private JdbcMovieRepository repository;
+
+   @Before
+   public void open() throws IOException, SQLException
+   {
+      repository = openRepository(folder.newFile("movies.db"));
+   }
+
+   @After
+   public void close()
+   {
+      repository.close();
+   }
+
+   // open a repository over file, creating the schema if it's empty
+   static JdbcMovieRepository openRepository(File file) throws SQLException
+   {
+      return new JdbcMovieRepository(
+         DriverManager.getConnection("jdbc:sqlite:" + file.getPath()));
+   }
+
+   // return movie number i of a small catalog
+   static Movie movie(long i)
+   {
+      return new Movie(Movie.NO_ID, "Movie " + i, "Director " + (i % 5),
+         "Producer " + (i % 3), "Actor " + (i % 7), "Actress " + (i % 11),
+         (int) (1950 + i % 50) * 10000 + 101, i * 1000000L);
+   }
+
+   // a MovieReader over movies 0 to count - 1 of the small catalog
+   static MovieReader catalog(final int count)
+   {
+      return new MovieReader()
+         {
+            private int next;
+
+            @Override
+            public Movie read()
+            {
+               return next < count ? movie(next++) : null;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+         };
+   }
+
+   // return movie's columns other than its _id, for comparing movies
+   static String columns(Movie movie)
+   {
+      return movie.getName() + "|" + movie.getDirector() + "|" +
+         movie.getProducer() + "|" + movie.getActor() + "|" +
+         movie.getActress() + "|" + movie.getRelease() + "|" +
+         movie.getBudget();
+   }
+
+   // return the columns of every movie of repository, sorted
+   static List<String> contents(MovieRepository repository)
+      throws IOException
+   {
+      final List<String> movies = new ArrayList<String>();
+
+      repository.exportMovies(new MovieWriter()
+         {
+            @Override
+            public void write(Movie movie)
+            {
+               movies.add(columns(movie));
+            }
+
+            @Override
+            public void close()
+            {
+            }
+         }, BATCH_SIZE, null);
+
+      Collections.sort(movies);
+      return movies;
+   } // end method contents
+
+   // return movie with the given _id and name
+   private static Movie withName(Movie movie, long id, String name)
+   {
+      return new Movie(id, name, movie.getDirector(), movie.getProducer(),
+         movie.getActor(), movie.getActress(), movie.getRelease(),
+         movie.getBudget());
+   }
+
+   @Test
+   public void insertUpdateDeleteRoundTrip()
+   {
+      Movie movie = movie(1);
+      long id = repository.insertMovie(movie);
+      assertEquals(columns(movie), columns(repository.getMovie(id)));
+
+      Movie renamed = withName(movie, id, "Renamed");
+      repository.updateMovie(renamed);
+      assertEquals(columns(renamed), columns(repository.getMovie(id)));
+
+      repository.deleteMovie(id);
+      assertNull(repository.getMovie(id));
+
+      assertTrue(repository.undeleteMovie(id));
+      assertEquals(columns(renamed), columns(repository.getMovie(id)));
+   }
+
+   @Test
+   public void insertedIdsAreNotReused()
+   {
+      long first = repository.insertMovie(movie(1));
+      repository.deleteMovie(first);
+      long second = repository.insertMovie(movie(2));
+      assertTrue(second > first);
+   }
+
+   @Test
+   public void getMoviesReadsEveryIdAsked() throws IOException
+   {
+      repository.insertMovies(catalog(50), BATCH_SIZE, null);
+      long[] ids = { 3, 17, 42, 999 }; // 999 doesn't exist
+      Set<Long> read = new HashSet<Long>();
+
+      for (Movie movie : repository.getMovies(ids))
+      {
+         assertEquals(columns(movie(movie.getId() - 1)), columns(movie));
+         read.add(movie.getId());
+      }
+
+      assertEquals(new HashSet<Long>(Arrays.asList(3L, 17L, 42L)),
+         read);
+   }
+
+   @Test
+   public void idListsLongerThanAQueryAreReadInChunks() throws IOException
+   {
+      int count = MovieSchema.MAX_IDS_PER_QUERY * 2 + 200; // over 999
+      repository.insertMovies(catalog(count), BATCH_SIZE, null);
+      repository.setPoster(count, "posters/last.jpg");
+      long[] ids = new long[count + 1]; // the last doesn't exist
+
+      for (int i = 0; i < ids.length; ++i)
+         ids[i] = i + 1;
+
+      assertEquals(count, repository.getMovies(ids).size());
+      assertEquals(count, repository.queryMovieRows(MovieQuery.ALL, ids)
+         .size());
+      assertEquals("posters/last.jpg",
+         repository.getPosters(ids).get((long) count));
+   }
+
+   @Test
+   public void pagesCoverEveryRowOnceInOrder() throws IOException
+   {
+      int rows = 237;
+      repository.insertMovies(catalog(rows), BATCH_SIZE, null);
+      MovieQuery query = new MovieQuery.Builder()
+         .setSort(MovieQuery.SORT_BUDGET, true)
+         .build();
+      List<MovieSummary> all = new ArrayList<MovieSummary>();
+      MovieSummary after = null;
+      List<MovieSummary> page;
+
+      do
+      {
+         page = repository.queryMovies(query, after, null, 50);
+         all.addAll(page);
+
+         if (!page.isEmpty())
+            after = page.get(page.size() - 1);
+      } while (page.size() == 50);
+
+      assertEquals(rows, all.size());
+
+      for (int i = 1; i < all.size(); ++i)
+         assertTrue(query.compare(all.get(i - 1), all.get(i)) < 0);
+   } // end method pagesCoverEveryRowOnceInOrder
+
+   @Test
+   public void filtersMatchWhatTheyName() throws IOException
+   {
+      repository.insertMovies(catalog(100), BATCH_SIZE, null);
+      MovieQuery query = new MovieQuery.Builder()
+         .setDirector("Director 3")
+         .setYears(1960, 1969)
+         .build();
+      List<MovieSummary> rows = repository.queryMovies(query, null, null, 0);
+      assertFalse(rows.isEmpty());
+
+      for (MovieSummary row : rows)
+      {
+         Movie movie = repository.getMovie(row.getId());
+         assertEquals("Director 3", movie.getDirector());
+         assertEquals(196, movie.getRelease() / 100000);
+      }
+   }
+
+   @Test
+   public void nameFiltersMatchTheStartInAnyCase() throws IOException
+   {
+      repository.insertMovies(catalog(20), BATCH_SIZE, null);
+      Movie movie = movie(20);
+      long id = repository.insertMovie(new Movie(Movie.NO_ID,
+         movie.getName(), "Christopher Nolan", movie.getProducer(),
+         movie.getActor(), "Carrie-Anne Moss", movie.getRelease(),
+         movie.getBudget()));
+
+      for (String director : new String[] { "chris", "CHRISTOPHER N" })
+      {
+         List<MovieSummary> rows = repository.queryMovies(
+            new MovieQuery.Builder().setDirector(director).build(), null,
+            null, 0);
+         assertEquals(1, rows.size());
+         assertEquals(id, rows.get(0).getId());
+      }
+
+      assertTrue(repository.queryMovies(new MovieQuery.Builder()
+         .setDirector("nolan").build(), null, null, 0).isEmpty());
+      assertEquals(id, repository.queryMovies(new MovieQuery.Builder()
+         .setPerson("carrie").build(), null, null, 0).get(0).getId());
+   } // end method nameFiltersMatchTheStartInAnyCase
+
+   @Test
+   public void searchFindsWordPrefixes() throws IOException
+   {
+      repository.insertMovies(catalog(20), BATCH_SIZE, null);
+      long id = repository.insertMovie(withName(movie(20), Movie.NO_ID,
+         "The Searchers"));
+      List<MovieSummary> found = repository.searchMovies("search", 10);
+      assertEquals(1, found.size());
+      assertEquals(id, found.get(0).getId());
+   }
+
+   @Test
+   public void exportImportsAgainIntact() throws IOException, SQLException
+   {
+      repository.insertMovies(catalog(300), BATCH_SIZE, null);
+      File file = new File(folder.getRoot(), "export.csv.gz");
+      assertEquals(300, new MovieExporter(repository, BATCH_SIZE)
+         .exportFile(file, null));
+
+      JdbcMovieRepository copy =
+         openRepository(folder.newFile("copy.db"));
+      MovieReader reader = new CsvMovieReader(new InputStreamReader(
+         new GZIPInputStream(new FileInputStream(file)), "UTF-8"));
+
+      try
+      {
+         assertEquals(300, copy.insertMovies(reader, BATCH_SIZE, null));
+         assertEquals(contents(repository), contents(copy));
+      }
+      finally
+      {
+         reader.close();
+         copy.close();
+      }
+   } // end method exportImportsAgainIntact
+
+   @Test
+   public void restoreReturnsTheBackedUpCatalog() throws IOException
+   {
+      repository.insertMovies(catalog(200), BATCH_SIZE, null);
+      MovieSnapshots snapshots =
+         new MovieSnapshots(repository, folder.newFolder("snapshots"));
+      snapshots.backUp();
+
+      repository.updateMovie(withName(movie(4), 5, "Changed"));
+      repository.deleteMovie(6);
+      snapshots.backUp(); // a changes file
+      List<String> backedUp = contents(repository);
+
+      repository.updateMovie(withName(movie(9), 10, "Not backed up"));
+      repository.deleteMovie(11);
+      repository.insertMovie(movie(500));
+
+      assertEquals(199, snapshots.restore());
+      assertEquals(backedUp, contents(repository));
+   }
+
+   @Test
+   public void postersRoundTrip() throws IOException
+   {
+      repository.insertMovies(catalog(5), BATCH_SIZE, null);
+      repository.setPoster(2, "posters/2.jpg");
+      repository.setPoster(4, "posters/4.jpg");
+
+      Map<Long, String> posters = repository.getPosters(new long[] { 1, 2,
+         4 });
+      assertEquals(2, posters.size());
+      assertEquals("posters/2.jpg", posters.get(2L));
+      assertEquals("posters/4.jpg", posters.get(4L));
+      assertEquals(2, repository.getPosterPaths().size());
+   }
+
+   @Test
+   public void relatedMoviesFollowEditsAndDeletes() throws IOException
+   {
+      repository.insertMovies(catalog(100), BATCH_SIZE, null);
+      Movie first = repository.getMovie(1);
+      Movie second = repository.getMovie(2);
+      String director = "A Director Of Their Own";
+
+      repository.updateMovie(new Movie(1, first.getName(), director,
+         first.getProducer(), first.getActor(), first.getActress(),
+         first.getRelease(), first.getBudget()));
+      repository.updateMovie(new Movie(2, second.getName(), director,
+         second.getProducer(), second.getActor(), second.getActress(),
+         second.getRelease(), second.getBudget()));
+      assertTrue(isRelated(1, 2));
+
+      repository.deleteMovie(2);
+      assertFalse(isRelated(1, 2));
+   }
+
+   // return true if the movie with _id otherId is among those related to
+   // the one with _id id
+   private boolean isRelated(long id, long otherId)
+   {
+      for (MovieRelations.Related movie :
+         repository.findRelatedMovies(id, 5))
+      {
+         if (movie.id == otherId)
+            return true;
+      }
+
+      return false;
+   }
+
+   @Test
+   public void savedDuplicateIsFound() throws IOException
+   {
+      repository.insertMovies(catalog(50), BATCH_SIZE, null);
+      long id = repository.insertMovie(withName(movie(50), Movie.NO_ID,
+         "The Maltese Falcon"));
+      repository.indexTitles(0);
+
+      List<MovieDuplicates.Match> matches = repository.findDuplicates(
+         withName(movie(50), Movie.NO_ID, "Maltese Falcon, The"), 3);
+      assertFalse(matches.isEmpty());
+      assertEquals(id, matches.get(0).otherId);
+   }
+
+   @Test
+   public void statisticsMatchARebuild() throws IOException
+   {
+      repository.insertMovies(catalog(120), BATCH_SIZE, null);
+      repository.deleteMovie(7);
+      repository.updateMovie(withName(movie(8), 9, "Renamed"));
+      String kept = describe(repository.getStatistics(3));
+      assertEquals(119, repository.getStatistics(3).getMovies());
+
+      repository.rebuildStatistics();
+      assertEquals(kept, describe(repository.getStatistics(3)));
+   }
+
+   // return every total of statistics as text, for comparing them
+   private static String describe(MovieStatistics statistics)
+   {
+      StringBuilder text = new StringBuilder();
+      text.append(statistics.getMovies()).append(' ')
+         .append(statistics.getBudget()).append(' ')
+         .append(statistics.getBudgeted());
+
+      for (List<MovieStatistics.Group> groups : Arrays.asList(
+         statistics.getYears(), statistics.getDirectors(),
+         statistics.getActors(), statistics.getActresses()))
+      {
+         for (MovieStatistics.Group group : groups)
+            text.append('\n').append(group.getName()).append(' ')
+               .append(group.getMovies()).append(' ')
+               .append(group.getBudget()).append(' ')
+               .append(group.getBudgeted());
+      }
+
+      return text.toString();
+   } // end method describe
+} // end class JdbcMovieRepositoryTest
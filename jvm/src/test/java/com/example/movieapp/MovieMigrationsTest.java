@@ -0,0 +1,218 @@
+package com.example.movieapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// a database created by the first version of the app, upgraded through
+// every MovieMigrations step, must end with the schema CREATE_STATEMENTS
+// gives a new one and keep its movies
+public class MovieMigrationsTest
+{
+   // the first version's table, as its onCreate made it
+   private static final String CREATE_VERSION_1 = "CREATE TABLE movies" +
+      "(_id integer primary key autoincrement," +
+      "name TEXT, director TEXT, producer TEXT, " +
+      "actor TEXT, actress TEXT, release TEXT, budget TEXT);";
+
+   // movies as the first version stored them, with release and budget as
+   // typed; the last release and budget can't be converted
+   private static final String[][] VERSION_1_MOVIES = {
+      { "Vertigo", "Alfred Hitchcock", "Alfred Hitchcock", "James Stewart",
+         "Kim Novak", "1958-05-09", "$2,479,000" },
+      { "Rear Window", "Alfred Hitchcock", "Alfred Hitchcock",
+         "James Stewart", "Grace Kelly", "1954", "1 million" },
+      { "Deleted", "Nobody", "", "", "", "", "" },
+      { "Rope", "Alfred Hitchcock", null, "James Stewart", "", "", "" },
+      { "Lost Film", "", "", "", "", "someday", "a lot" } };
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   // write a version 1 database holding VERSION_1_MOVIES, the third of
+   // them deleted so its _id must stay unused
+   private static void createVersion1(File file) throws SQLException
+   {
+      Connection connection =
+         DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+      Statement statement = connection.createStatement();
+
+      try
+      {
+         statement.execute(CREATE_VERSION_1);
+
+         for (String[] movie : VERSION_1_MOVIES)
+         {
+            StringBuilder values = new StringBuilder();
+
+            for (String value : movie)
+               values.append(values.length() == 0 ? "" : ", ")
+                  .append(value == null ? "NULL" : "'" + value + "'");
+
+            statement.execute("INSERT INTO movies (name, director, " +
+               "producer, actor, actress, release, budget) VALUES (" +
+               values + ")");
+         }
+
+         statement.execute("DELETE FROM movies WHERE _id=3");
+         statement.execute("PRAGMA user_version=1");
+      }
+      finally
+      {
+         statement.close();
+         connection.close();
+      }
+   } // end method createVersion1
+
+   // return everything sqlite_master and the table pragmas say about the
+   // schema of file, one line per object or column, sorted
+   private static List<String> describeSchema(File file) throws SQLException
+   {
+      Connection connection =
+         DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+      Statement statement = connection.createStatement();
+      List<String> schema = new ArrayList<String>();
+
+      try
+      {
+         ResultSet objects = statement.executeQuery(
+            "SELECT type, name, tbl_name, sql FROM sqlite_master");
+         List<String> tables = new ArrayList<String>();
+
+         while (objects.next())
+         {
+            String type = objects.getString(1);
+            String name = objects.getString(2);
+
+            if (type.equals("table"))
+               tables.add(name); // compared by column, as ALTER TABLE
+                                 // rewrites the sql of a table it changes
+            else
+               schema.add(type + " " + name + " on " + objects.getString(3) +
+                  ": " + normalize(objects.getString(4)));
+         }
+
+         objects.close();
+
+         for (String table : tables)
+         {
+            schema.add("table " + table);
+            schema.addAll(describe(statement, table, "table_info"));
+            schema.addAll(describe(statement, table, "index_list"));
+         }
+      }
+      finally
+      {
+         statement.close();
+         connection.close();
+      }
+
+      Collections.sort(schema);
+      return schema;
+   } // end method describeSchema
+
+   // return the rows of a table pragma, each prefixed with table
+   private static List<String> describe(Statement statement, String table,
+      String pragma) throws SQLException
+   {
+      List<String> rows = new ArrayList<String>();
+      ResultSet result =
+         statement.executeQuery("PRAGMA " + pragma + "(\"" + table + "\")");
+      ResultSetMetaData columns = result.getMetaData();
+
+      while (result.next())
+      {
+         StringBuilder row = new StringBuilder(table + " " + pragma);
+
+         for (int i = 1; i <= columns.getColumnCount(); ++i)
+         {
+            // an index's position in the list depends on when it was made
+            if (!columns.getColumnName(i).equals("seq"))
+               row.append(' ').append(result.getString(i));
+         }
+
+         rows.add(row.toString());
+      }
+
+      result.close();
+      return rows;
+   } // end method describe
+
+   // sql with its layout and letter case made uniform, or "" for none
+   private static String normalize(String sql)
+   {
+      return sql == null ? "" :
+         sql.replaceAll("\\s+", " ").replaceAll(" ?([(),]) ?", "$1")
+            .replaceAll(";$", "").toLowerCase();
+   }
+
+   @Test
+   public void upgradeFromVersion1MatchesANewDatabase()
+      throws IOException, SQLException
+   {
+      File upgraded = folder.newFile("upgraded.db");
+      createVersion1(upgraded);
+      JdbcMovieRepositoryTest.openRepository(upgraded).close();
+
+      File created = folder.newFile("created.db");
+      JdbcMovieRepositoryTest.openRepository(created).close();
+
+      assertEquals(describeSchema(created), describeSchema(upgraded));
+   }
+
+   @Test
+   public void upgradeKeepsTheMovies() throws IOException, SQLException
+   {
+      File file = folder.newFile("upgraded.db");
+      createVersion1(file);
+      JdbcMovieRepository repository =
+         JdbcMovieRepositoryTest.openRepository(file);
+
+      try
+      {
+         Movie vertigo = repository.getMovie(1);
+         assertEquals("Alfred Hitchcock", vertigo.getDirector());
+         assertEquals("Kim Novak", vertigo.getActress());
+         assertEquals(19580509, vertigo.getRelease());
+         assertEquals(247900000L, vertigo.getBudget());
+         assertEquals(100000000L, repository.getMovie(2).getBudget());
+         assertEquals("", repository.getMovie(4).getProducer());
+         assertNull(repository.getMovie(3));
+
+         Movie lost = repository.getMovie(5); // text kept in movies_legacy
+         assertEquals(Movie.NO_RELEASE, lost.getRelease());
+         assertEquals(Movie.NO_BUDGET, lost.getBudget());
+
+         // the full-text index and the totals cover the old movies
+         assertEquals(3, repository.searchMovies("stewart", 10).size());
+         long budget = repository.getStatistics(3).getBudget();
+         assertEquals(4, repository.getStatistics(3).getMovies());
+         repository.rebuildStatistics();
+         assertEquals(budget, repository.getStatistics(3).getBudget());
+
+         // the deleted movie's _id stays unused
+         assertTrue(repository.insertMovie(JdbcMovieRepositoryTest.movie(1))
+            > 5);
+      }
+      finally
+      {
+         repository.close();
+      }
+   } // end method upgradeKeepsTheMovies
+} // end class MovieMigrationsTest
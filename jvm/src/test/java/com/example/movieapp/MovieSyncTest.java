@@ -0,0 +1,287 @@
+package com.example.movieapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// MovieSync between two devices, each a JdbcMovieRepository, through a
+// StubSyncServer: the devices must end with the same catalog, of two
+// conflicting writes the later must win on both, a cut-off sync must
+// resume where it stopped, and a sync must only send what changed
+public class MovieSyncTest
+{
+   // records per request, small so the catalogs take several batches
+   private static final int BATCH_SIZE = 100;
+
+   // movies in the first device's catalog
+   private static final int ROWS = 450;
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   private StubSyncServer server;
+   private JdbcMovieRepository first;
+   private JdbcMovieRepository second;
+   private MovieSync firstSync;
+   private MovieSync secondSync;
+
+   @Before
+   public void open() throws IOException, SQLException
+   {
+      server = new StubSyncServer();
+      first = JdbcMovieRepositoryTest.openRepository(
+         folder.newFile("first.db"));
+      second = JdbcMovieRepositoryTest.openRepository(
+         folder.newFile("second.db"));
+      firstSync = new MovieSync(first, server, BATCH_SIZE);
+      secondSync = new MovieSync(second, server, BATCH_SIZE);
+
+      first.insertMovies(JdbcMovieRepositoryTest.catalog(ROWS), BATCH_SIZE,
+         null);
+   }
+
+   @After
+   public void close()
+   {
+      first.close();
+      second.close();
+   }
+
+   // sync both devices so each holds the first's catalog
+   private void syncBoth() throws IOException
+   {
+      firstSync.sync();
+      secondSync.sync();
+   }
+
+   // fail unless both devices hold the same movies
+   private void assertConverged() throws IOException
+   {
+      assertEquals(JdbcMovieRepositoryTest.contents(first),
+         JdbcMovieRepositoryTest.contents(second));
+   }
+
+   // return the _id the movie named name has on repository
+   private static long findId(MovieRepository repository, String name)
+   {
+      for (MovieSummary row :
+         repository.queryMovies(MovieQuery.ALL, null, null, 0))
+      {
+         if (row.getName().equals(name))
+            return row.getId();
+      }
+
+      throw new AssertionError("no movie named " + name);
+   }
+
+   // save the movie with the given _id under a new name
+   private static void rename(MovieRepository repository, long id,
+      String name)
+   {
+      Movie movie = repository.getMovie(id);
+      repository.updateMovie(new Movie(id, name, movie.getDirector(),
+         movie.getProducer(), movie.getActor(), movie.getActress(),
+         movie.getRelease(), movie.getBudget()));
+   }
+
+   // let the clock move on, so the next write is later to the millisecond
+   private static void tick() throws InterruptedException
+   {
+      Thread.sleep(5);
+   }
+
+   @Test
+   public void firstSyncCopiesTheCatalog() throws IOException
+   {
+      assertEquals(ROWS, firstSync.sync());
+      assertEquals(ROWS, secondSync.sync());
+      assertEquals(ROWS, server.getRecordCount());
+      assertConverged();
+   }
+
+   @Test
+   public void editsOnBothDevicesConverge() throws IOException
+   {
+      syncBoth();
+
+      for (int i = 0; i < ROWS; i += 9)
+      {
+         rename(first, findId(first, "Movie " + i), "Movie " + i + " (1)");
+         rename(second, findId(second, "Movie " + (i + i % 2)),
+            "Movie " + (i + i % 2) + " (2)");
+      }
+
+      first.deleteMovie(findId(first, "Movie 3"));
+      second.deleteMovie(findId(second, "Movie 4"));
+      first.insertMovie(JdbcMovieRepositoryTest.movie(1000));
+      second.insertMovie(JdbcMovieRepositoryTest.movie(2000));
+
+      firstSync.sync();
+      secondSync.sync();
+      firstSync.sync();
+      assertConverged();
+      assertEquals(ROWS, JdbcMovieRepositoryTest.contents(first).size());
+   }
+
+   @Test
+   public void olderLocalEditLosesToNewerPushedFirst()
+      throws IOException, InterruptedException
+   {
+      syncBoth();
+      long secondId = findId(second, "Movie 5");
+      rename(second, secondId, "Older edit");
+      tick();
+      long firstId = findId(first, "Movie 5");
+      rename(first, firstId, "Newer edit");
+
+      firstSync.sync();
+      secondSync.sync(); // pushes its older edit, which must not win
+      firstSync.sync();
+
+      assertEquals("Newer edit", first.getMovie(firstId).getName());
+      assertEquals("Newer edit", second.getMovie(secondId).getName());
+      assertConverged();
+   }
+
+   @Test
+   public void newerEditWinsWhenPushedLast()
+      throws IOException, InterruptedException
+   {
+      syncBoth();
+      long firstId = findId(first, "Movie 6");
+      rename(first, firstId, "Older edit");
+      tick();
+      long secondId = findId(second, "Movie 6");
+      rename(second, secondId, "Newer edit");
+
+      firstSync.sync();
+      secondSync.sync();
+      firstSync.sync();
+
+      assertEquals("Newer edit", first.getMovie(firstId).getName());
+      assertEquals("Newer edit", second.getMovie(secondId).getName());
+      assertConverged();
+   }
+
+   @Test
+   public void newerDeleteWinsOverOlderEdit()
+      throws IOException, InterruptedException
+   {
+      syncBoth();
+      long firstId = findId(first, "Movie 7");
+      rename(first, firstId, "Older edit");
+      tick();
+      long secondId = findId(second, "Movie 7");
+      second.deleteMovie(secondId);
+
+      secondSync.sync();
+      firstSync.sync(); // pushes its older edit, which must not win
+      secondSync.sync();
+
+      assertNull(first.getMovie(firstId));
+      assertNull(second.getMovie(secondId));
+      assertConverged();
+   }
+
+   @Test
+   public void editMadeAfterSeeingAnotherIsKept()
+      throws IOException, InterruptedException
+   {
+      syncBoth();
+      long firstId = findId(first, "Movie 8");
+      rename(first, firstId, "Seen edit");
+      firstSync.sync();
+      secondSync.sync();
+
+      // the second device saw the first's edit, so its own replaces it
+      long secondId = findId(second, "Seen edit");
+      tick();
+      rename(second, secondId, "Edit after it");
+      secondSync.sync();
+      firstSync.sync();
+
+      assertEquals("Edit after it", first.getMovie(firstId).getName());
+      assertConverged();
+   }
+
+   @Test
+   public void cutOffDownloadResumesWhereItStopped() throws IOException
+   {
+      firstSync.sync();
+      server.failAfter(2); // the third request's response is lost
+
+      try
+      {
+         secondSync.sync();
+         fail("the download wasn't cut off");
+      }
+      catch (IOException e)
+      {
+         // the lost connection
+      }
+
+      // the second device had nothing to push, and the two pulls that
+      // got through were applied, so the sync resumes after them
+      assertEquals(ROWS - 2 * BATCH_SIZE, secondSync.sync());
+      assertConverged();
+   }
+
+   @Test
+   public void cutOffUploadIsPushedAgainHarmlessly() throws IOException
+   {
+      server.failAfter(1); // the second push's response is lost
+
+      try
+      {
+         firstSync.sync();
+         fail("the upload wasn't cut off");
+      }
+      catch (IOException e)
+      {
+         // the lost connection
+      }
+
+      // the batch whose response was lost is pushed again, and found
+      // stored already
+      assertEquals(ROWS - BATCH_SIZE, firstSync.push());
+      assertEquals(ROWS, server.getRecordCount());
+
+      secondSync.sync();
+      assertConverged();
+      assertEquals(0, firstSync.sync()); // nothing came back as new
+   }
+
+   @Test
+   public void syncsSendOnlyWhatChanged() throws IOException
+   {
+      syncBoth();
+      long fullBytes = server.getBytesReceived() + server.getBytesSent();
+      assertEquals(0, firstSync.sync());
+      assertEquals(0, secondSync.sync());
+
+      rename(first, findId(first, "Movie 10"), "Changed 10");
+      rename(first, findId(first, "Movie 11"), "Changed 11");
+      first.deleteMovie(findId(first, "Movie 12"));
+
+      long bytesBefore = server.getBytesReceived() + server.getBytesSent();
+      assertEquals(3, firstSync.push());
+      assertEquals(0, firstSync.pull()); // not its own writes back
+      assertEquals(3, secondSync.sync());
+      long deltaBytes =
+         server.getBytesReceived() + server.getBytesSent() - bytesBefore;
+
+      assertTrue(deltaBytes + " of " + fullBytes + " bytes",
+         deltaBytes * 20 < fullBytes);
+      assertConverged();
+   }
+} // end class MovieSyncTest
@@ -1,12 +1,14 @@
 package com.example.movieapp;
 
+import java.util.List;
+
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.app.DialogFragment;
 import android.app.Fragment;
 import android.content.Context;
-import android.os.AsyncTask;
+import android.content.DialogInterface;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -15,6 +17,7 @@ import android.view.ViewGroup;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.Toast;
 
 public class AddEditFragment extends Fragment
 {
@@ -26,9 +29,14 @@ public class AddEditFragment extends Fragment
    }
    
    private AddEditFragmentListener listener; 
+   private DatabaseConnector databaseConnector; // shared database access
    
+   // most possible duplicates listed when a movie is saved
+   private static final int MAX_DUPLICATES = 3;
+
    private long rowID; // database row ID of the movie
    private Bundle movieInfoBundle; // arguments for editing a movie
+   private boolean checkingDuplicates; // a save waits for checkDuplicates
 
    // EditTexts for movie information
    private EditText nameEditText;
@@ -45,6 +53,7 @@ public class AddEditFragment extends Fragment
    {
       super.onAttach(activity);
       listener = (AddEditFragmentListener) activity; 
+      databaseConnector = DatabaseConnector.getInstance(activity);
    }
 
    // remove AddEditFragmentListener when Fragment detached
@@ -53,6 +62,25 @@ public class AddEditFragment extends Fragment
    {
       super.onDetach();
       listener = null; 
+      DatabaseExecutor.getInstance().cancelAll(this); // drop pending check
+      checkingDuplicates = false;
+   }
+
+   // hold a reference to the shared connection while created; the
+   // fragment is retained, so a configuration change doesn't release it
+   @Override
+   public void onCreate(Bundle savedInstanceState)
+   {
+      super.onCreate(savedInstanceState);
+      databaseConnector.open();
+   }
+
+   // release the shared connection once the fragment is gone for good
+   @Override
+   public void onDestroy()
+   {
+      super.onDestroy();
+      databaseConnector.close();
    }
    
    // called when Fragment's view needs to be created
@@ -102,86 +130,211 @@ public class AddEditFragment extends Fragment
       @Override
       public void onClick(View v) 
       {
-         if (nameEditText.getText().toString().trim().length() != 0)
-         {
-            // AsyncTask to save movie, then notify listener 
-            AsyncTask<Object, Object, Object> saveMovieTask = 
-               new AsyncTask<Object, Object, Object>() 
-               {
-                  @Override
-                  protected Object doInBackground(Object... params) 
-                  {
-                     saveMovie(); // save movie to the database
-                     return null;
-                  } 
-      
-                  @Override
-                  protected void onPostExecute(Object result) 
-                  {
-                     // hide soft keyboard
-                     InputMethodManager imm = (InputMethodManager) 
-                        getActivity().getSystemService(
-                           Context.INPUT_METHOD_SERVICE);
-                     imm.hideSoftInputFromWindow(
-                        getView().getWindowToken(), 0);
-
-                     listener.onAddEditCompleted(rowID);
-                  } 
-               }; // end AsyncTask
-               
-            // save the movie to the database using a separate thread
-            saveMovieTask.execute((Object[]) null); 
-         } 
-         else // required movie name is blank, so display error dialog
+         final int release = 
+            MovieFormat.parseRelease(releaseEditText.getText().toString());
+         final long budget = 
+            MovieFormat.parseBudget(budgetEditText.getText().toString());
+
+         if (nameEditText.getText().toString().trim().length() == 0)
+            showErrorDialog(R.string.error_message); // name is required
+         else if (release == MovieFormat.UNPARSEABLE)
+            showErrorDialog(R.string.error_release);
+         else if (budget == MovieFormat.UNPARSEABLE)
+            showErrorDialog(R.string.error_budget);
+         else if (!checkingDuplicates) // ignore taps while checking
          {
-            DialogFragment errorSaving = 
-               new DialogFragment()
-               {
-                  @Override
-                  public Dialog onCreateDialog(Bundle savedInstanceState)
-                  {
-                     AlertDialog.Builder builder = 
-                        new AlertDialog.Builder(getActivity());
-                     builder.setMessage(R.string.error_message);
-                     builder.setPositiveButton(R.string.ok, null);                     
-                     return builder.create();
-                  }               
-               };
-            
-            errorSaving.show(getFragmentManager(), "error saving movie");
+            Movie movie = createMovie(release, budget);
+
+            // an edit that keeps the title, director and release can't
+            // have become a duplicate
+            if (isTitleUnchanged())
+               completeSave(movie);
+            else
+               checkDuplicates(movie);
          } 
       } // end method onClick
    }; // end OnClickListener saveMovieButtonClicked
 
-   // saves movie information to the database
-   private void saveMovie() 
+   // return true if the movie being edited still has the name, director
+   // and release it was opened with
+   private boolean isTitleUnchanged()
+   {
+      return movieInfoBundle != null &&
+         nameEditText.getText().toString().equals(
+            movieInfoBundle.getString("name")) &&
+         directorEditText.getText().toString().equals(
+            movieInfoBundle.getString("director")) &&
+         releaseEditText.getText().toString().equals(
+            movieInfoBundle.getString("release"));
+   }
+
+   // look for saved movies movie may duplicate outside GUI thread, then
+   // save it if there are none, or ask the user first; a new movie gets
+   // its row ID here too, so the GUI thread never reads it
+   private void checkDuplicates(final Movie movie)
    {
-      // get DatabaseConnector to interact with the SQLite database
-      DatabaseConnector databaseConnector = 
-         new DatabaseConnector(getActivity());
+      checkingDuplicates = true;
+      DatabaseExecutor.getInstance().executeRead(
+         new DatabaseExecutor.Task<List<Movie>>(this, 
+            DatabaseExecutor.PRIORITY_VISIBLE)
+         {
+            private Movie checked = movie; // with its row ID
+
+            @Override
+            protected List<Movie> doInBackground()
+            {
+               if (checked.getId() == Movie.NO_ID)
+                  checked = new Movie(databaseConnector.reserveID(), 
+                     movie.getName(), movie.getDirector(), 
+                     movie.getProducer(), movie.getActor(), 
+                     movie.getActress(), movie.getRelease(), 
+                     movie.getBudget());
+
+               List<MovieDuplicates.Match> matches = 
+                  databaseConnector.findDuplicates(movie, MAX_DUPLICATES);
+               long[] ids = new long[matches.size()];
+
+               for (int i = 0; i < ids.length; ++i)
+                  ids[i] = matches.get(i).otherId;
+
+               return databaseConnector.getMovies(ids);
+            }
+
+            @Override
+            protected void onResult(List<Movie> result)
+            {
+               checkingDuplicates = false;
 
+               if (result.isEmpty())
+                  completeSave(checked);
+               else
+                  showDuplicateDialog(checked, result);
+            }
+
+            // nothing is saved; the user can press Save again
+            @Override
+            protected void onFailed(Exception error)
+            {
+               checkingDuplicates = false;
+               Toast.makeText(getActivity(), getString(
+                  R.string.database_failed, error.getMessage()), 
+                  Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            protected void onCancelled()
+            {
+               checkingDuplicates = false;
+            }
+         });
+   } // end method checkDuplicates
+
+   // list the movies movie may duplicate and let the user save it anyway
+   private void showDuplicateDialog(final Movie movie, 
+      List<Movie> duplicates)
+   {
+      StringBuilder names = new StringBuilder();
+
+      for (Movie duplicate : duplicates)
+      {
+         if (names.length() > 0)
+            names.append('\n');
+
+         names.append(duplicate.getName());
+
+         if (duplicate.getRelease() != Movie.NO_RELEASE)
+            names.append(" (").append(
+               MovieFormat.formatRelease(duplicate.getRelease())).append(')');
+      }
+
+      final String message = getString(R.string.duplicate_message, names);
+      DialogFragment duplicateDialog = 
+         new DialogFragment()
+         {
+            @Override
+            public Dialog onCreateDialog(Bundle savedInstanceState)
+            {
+               AlertDialog.Builder builder = 
+                  new AlertDialog.Builder(getActivity());
+               builder.setTitle(R.string.duplicate_title);
+               builder.setMessage(message);
+               builder.setPositiveButton(R.string.button_save_anyway, 
+                  new DialogInterface.OnClickListener()
+                  {
+                     @Override
+                     public void onClick(DialogInterface dialog, int button)
+                     {
+                        completeSave(movie);
+                     }
+                  });
+               builder.setNegativeButton(R.string.button_cancel, null);
+               return builder.create();
+            }
+         };
+
+      duplicateDialog.show(getFragmentManager(), "duplicate movie");
+   } // end method showDuplicateDialog
+
+   // save movie and return to the movie it shows
+   private void completeSave(Movie movie)
+   {
+      // queue the save; it returns at once and is committed with
+      // any other saves made in the next few milliseconds
+      saveMovie(movie);
+
+      // hide soft keyboard
+      InputMethodManager imm = (InputMethodManager) 
+         getActivity().getSystemService(Context.INPUT_METHOD_SERVICE);
+      imm.hideSoftInputFromWindow(getView().getWindowToken(), 0);
+
+      listener.onAddEditCompleted(rowID);
+   } // end method completeSave
+
+   // display an error dialog explaining why the movie can't be saved
+   private void showErrorDialog(final int messageID)
+   {
+      DialogFragment errorSaving = 
+         new DialogFragment()
+         {
+            @Override
+            public Dialog onCreateDialog(Bundle savedInstanceState)
+            {
+               AlertDialog.Builder builder = 
+                  new AlertDialog.Builder(getActivity());
+               builder.setMessage(messageID);
+               builder.setPositiveButton(R.string.ok, null);                     
+               return builder.create();
+            }               
+         };
+      
+      errorSaving.show(getFragmentManager(), "error saving movie");
+   } 
+
+   // build a Movie from the EditTexts; called on the GUI thread
+   private Movie createMovie(int release, long budget) 
+   {
+      return new Movie(
+         movieInfoBundle == null ? Movie.NO_ID : rowID,
+         nameEditText.getText().toString(),
+         directorEditText.getText().toString(), 
+         producerEditText.getText().toString(), 
+         actorEditText.getText().toString(),
+         actressEditText.getText().toString(), 
+         release, budget);
+   }
+
+   // queues movie information to be saved to the database
+   private void saveMovie(Movie movie) 
+   {
       if (movieInfoBundle == null)
       {
-         // insert the movie information into the database
-         rowID = databaseConnector.insertMovie(
-            nameEditText.getText().toString(),
-            directorEditText.getText().toString(), 
-            producerEditText.getText().toString(), 
-            actorEditText.getText().toString(),
-            actressEditText.getText().toString(), 
-            releaseEditText.getText().toString(), 
-            budgetEditText.getText().toString());
+         // the new movie's row ID was reserved by checkDuplicates
+         rowID = movie.getId();
+         databaseConnector.queueInsertMovie(movie);
       } 
       else
       {
-         databaseConnector.updateMovie(rowID,
-            nameEditText.getText().toString(),
-            directorEditText.getText().toString(), 
-            producerEditText.getText().toString(), 
-            actorEditText.getText().toString(),
-            actressEditText.getText().toString(), 
-            releaseEditText.getText().toString(), 
-            budgetEditText.getText().toString());
+         databaseConnector.queueUpdateMovie(movie);
       }
    } // end method saveMovie
 } // end class AddEditFragment
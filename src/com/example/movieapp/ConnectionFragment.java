@@ -0,0 +1,34 @@
+package com.example.movieapp;
+
+import android.app.Fragment;
+import android.os.Bundle;
+
+// a fragment without views that holds MainActivity's reference to the
+// shared DatabaseConnector. It is retained across configuration changes,
+// so the reference is taken when the activity first starts and released
+// only when it finishes, never while it is recreated
+public class ConnectionFragment extends Fragment
+{
+   // tag the fragment is added under
+   public static final String TAG = "ConnectionFragment";
+
+   private DatabaseConnector databaseConnector; // shared database access
+
+   // take the reference; called once, as the fragment is retained
+   @Override
+   public void onCreate(Bundle savedInstanceState)
+   {
+      super.onCreate(savedInstanceState);
+      setRetainInstance(true);
+      databaseConnector = DatabaseConnector.getInstance(getActivity());
+      databaseConnector.open(); // the database itself opens on first use
+   }
+
+   // release the reference once the activity is finished
+   @Override
+   public void onDestroy()
+   {
+      super.onDestroy();
+      databaseConnector.close();
+   }
+} // end class ConnectionFragment
@@ -1,102 +1,976 @@
 package com.example.movieapp;
 
-import android.content.ContentValues;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
-public class DatabaseConnector 
+public class DatabaseConnector implements MovieRepository
 {
+   private static final String TAG = "DatabaseConnector"; // for logging
+
+   // notified after writes made through this connector are committed
+   public interface MovieChangeListener
+   {
+      // called on the GUI thread with the rows that changed
+      public void onMoviesChanged(MovieChange change);
+
+      // called on the GUI thread when the queued writes couldn't be
+      // committed; they stay queued and are tried again with the next
+      // commit
+      public void onWritesFailed(Exception error);
+   }
+
    // database name
    private static final String DATABASE_NAME = "UserMoviesBino";
       
+   // current schema version; see DatabaseOpenHelper.onUpgrade
+   private static final int DATABASE_VERSION = MovieSchema.VERSION;
+
+   // titles indexed per background task, so writes the user waits for
+   // get the writer thread in between
+   private static final int TITLE_BATCH_SIZE = 100;
+      
+   // number of compiled query statements SQLite keeps per connection
+   private static final int SQL_CACHE_SIZE = 50;
+
+   // queued writes wait this long for others to share their transaction,
+   // unless this many rows are waiting
+   private static final long WRITE_DELAY_MS = 30;
+   private static final int MAX_PENDING_WRITES = 64;
+
+   private static DatabaseConnector instance; // shared by the whole process
+
    private SQLiteDatabase database; // for interacting with the database
+   private SQLiteMovieDatabase movieDatabase; // database, for store
    private DatabaseOpenHelper databaseOpenHelper; // creates the database
+   private int openCount; // open() calls not yet matched by close()
+
+   // timings and counters for every operation; see dump
+   private final QueryMetrics metrics = new QueryMetrics();
+
+   // the SQL behind each operation, shared with JdbcMovieRepository; its
+   // timings go to metrics
+   private final MovieStore store = new MovieStore()
+      {
+         @Override
+         protected void record(String operation, long startNanos, 
+            long rows, String sql, String[] selectionArgs)
+         {
+            DatabaseConnector.this.record(operation, startNanos, rows, sql,
+               selectionArgs);
+         }
+      };
+
+   // recently read Movies, so repeat visits don't touch the database
+   private final MovieCache movieCache = MovieCache.forHeap();
+
+   // one String per person's name in the Movies read
+   private final NamePool names = new NamePool();
+
+   // writes accepted by the queue methods but not yet committed
+   private final PendingWrites pendingWrites = new PendingWrites();
+   private final Object commitLock = new Object(); // one commit at a time
+   private boolean flushPosted; // a delayed flush is waiting; GUI thread
+
+   // the first page of a list read ahead by prefetchFirstPage, kept until
+   // the queryMovies call that asks for it takes it or a write makes it
+   // stale; guarded by firstPageLock
+   private final Object firstPageLock = new Object();
+   private MovieQuery firstPageQuery; // null when there is none
+   private int firstPageLimit;
+   private List<MovieSummary> firstPage; // null while being read
+
+   // coalesces the background title indexing tasks
+   private final Object titleIndexing = new Object();
 
-   // public constructor for DatabaseConnector
-   public DatabaseConnector(Context context) 
+   // listeners for committed changes, called on the GUI thread
+   private final List<MovieChangeListener> changeListeners =
+      new CopyOnWriteArrayList<MovieChangeListener>();
+   private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+   // return the process-wide DatabaseConnector, creating it if necessary
+   public static synchronized DatabaseConnector getInstance(Context context)
+   {
+      if (instance == null)
+         instance = new DatabaseConnector(context.getApplicationContext());
+      return instance;
+   }
+
+   // private constructor; use getInstance to get the shared connector
+   private DatabaseConnector(Context context)
    {
       // create a new DatabaseOpenHelper
       databaseOpenHelper = 
-         new DatabaseOpenHelper(context, DATABASE_NAME, null, 1);
+         new DatabaseOpenHelper(context, DATABASE_NAME, null, 
+            DATABASE_VERSION);
+
+      // let readers proceed while a write is in progress
+      databaseOpenHelper.setWriteAheadLoggingEnabled(true);
    }
 
-   // open the database connection
-   public void open() throws SQLException 
+   // add a reference to the connection; the database itself is opened
+   // lazily by the first query, so this is safe to call on the GUI thread
+   public synchronized void open() throws SQLException 
    {
-      // create or open a database for reading/writing
-      database = databaseOpenHelper.getWritableDatabase();
+      ++openCount;
    }
 
-   // close the database connection
-   public void close() 
+   // release a reference; the connection closes with the last one
+   public synchronized void close() 
    {
-      if (database != null)
-         database.close(); // close the database connection
+      if (openCount == 0 || --openCount > 0)
+         return; // no references taken or connection still in use
+
+      if (database == null)
+         return; // database was never opened
+
+      // release the compiled statements, then the connection
+      movieDatabase.close();
+      movieDatabase = null;
+      database = null;
+      metrics.countClose();
    } 
 
-   // inserts a new Movie in the database
-   public long insertMovie(String name, String director, String producer,  
-      String actor, String actress, String release, String budget) 
-   {
-      ContentValues newMovie = new ContentValues();
-      newMovie.put("name", name);
-      newMovie.put("director", director);
-      newMovie.put("producer", producer);
-      newMovie.put("actor", actor);
-      newMovie.put("actress", actress);
-      newMovie.put("release", release);
-      newMovie.put("budget", budget);
-
-      open(); // open the database
-      long rowID = database.insert("movies", null, newMovie);
-      close(); // close the database
+   // return the open database, opening it on first use
+   private synchronized SQLiteDatabase getDatabase()
+   {
+      if (database == null)
+      {
+         // create or open a database for reading/writing
+         StartupTrace.begin("DatabaseConnector.openDatabase");
+         database = databaseOpenHelper.getWritableDatabase();
+         database.setMaxSqlCacheSize(SQL_CACHE_SIZE);
+         movieDatabase = new SQLiteMovieDatabase(database, metrics);
+         metrics.countOpen();
+         StartupTrace.end();
+      }
+
+      return database;
+   }
+
+   // return the open database for store, opening it on first use
+   private synchronized MovieDatabase getMovieDatabase()
+   {
+      getDatabase();
+      return movieDatabase;
+   }
+
+   // register a listener for changes to the movies table
+   public void addMovieChangeListener(MovieChangeListener listener)
+   {
+      changeListeners.add(listener);
+   }
+
+   // unregister a listener added with addMovieChangeListener
+   public void removeMovieChangeListener(MovieChangeListener listener)
+   {
+      changeListeners.remove(listener);
+   }
+
+   // deliver change to the listeners on the GUI thread
+   private void publishChange(final MovieChange change)
+   {
+      synchronized (firstPageLock)
+      {
+         firstPageQuery = null; // a page read ahead may be stale now
+         firstPageLock.notifyAll();
+      }
+
+      scheduleTitleIndexing(); // the change was logged in title_changes
+      mainHandler.post(new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               for (MovieChangeListener listener : changeListeners)
+                  listener.onMoviesChanged(change);
+            }
+         });
+   }
+
+   // tell the listeners on the GUI thread that queued writes failed
+   private void publishFailure(final Exception error)
+   {
+      mainHandler.post(new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               for (MovieChangeListener listener : changeListeners)
+                  listener.onWritesFailed(error);
+            }
+         });
+   }
+
+   // return the timings and counters kept for this connector's operations
+   public QueryMetrics getMetrics()
+   {
+      return metrics;
+   }
+
+   // print the operation metrics and cache counters, e.g. from
+   // Activity.dump for "adb shell dumpsys activity"
+   public void dump(String prefix, PrintWriter writer)
+   {
+      writer.println(prefix + "DatabaseConnector:");
+      metrics.dump(prefix + "  ", writer);
+      writer.printf("%s  movieCache hits=%d misses=%d evictions=%d %s%n", 
+         prefix, movieCache.hitCount(), movieCache.missCount(), 
+         movieCache.evictionCount(), movieCache.sizeString());
+      writer.printf("%s  names pooled=%d%n", prefix, names.size());
+   }
+
+   // record an operation that began at startNanos; if it was slow, log
+   // it along with the query plan for sql, the query it ran (if any)
+   private void record(String operation, long startNanos, long rows, 
+      String sql, String[] selectionArgs)
+   {
+      long nanos = System.nanoTime() - startNanos;
+      metrics.record(operation, nanos, rows);
+
+      if (!metrics.checkSlow(nanos))
+         return;
+
+      StringBuilder message = new StringBuilder();
+      message.append(String.format(Locale.US, "slow %s: %.1f ms, %d rows", 
+         operation, nanos / 1e6, rows));
+
+      if (sql != null)
+      {
+         message.append("\n  ").append(sql);
+
+         // the detail column describes each step SQLite takes
+         Cursor plan = getDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, 
+            selectionArgs);
+
+         try
+         {
+            while (plan.moveToNext())
+               message.append("\n  plan: ").append(plan.getString(3));
+         }
+         finally
+         {
+            plan.close();
+         }
+      }
+
+      Log.w(TAG, message.toString());
+   } // end method record
+
+   // inserts a new Movie in the database, along with any queued writes,
+   // and returns its row ID
+   @Override
+   public long insertMovie(Movie movie) 
+   {
+      long rowID = store.allocateID(getMovieDatabase());
+      pendingWrites.insert(MovieStore.withID(movie, rowID));
+      commitPendingWrites();
       return rowID;
    } 
 
-   // updates an existing Movie in the database
-   public void updateMovie(long id, String name, String director, 
-      String producer, String actor, String actress, String release, String budget) 
-   {
-      ContentValues editMovie = new ContentValues();
-      editMovie.put("name", name);
-      editMovie.put("director", director);
-      editMovie.put("producer", producer);
-      editMovie.put("actor", actor);
-      editMovie.put("actress", actress);
-      editMovie.put("release", release);
-      editMovie.put("budget", budget);
-
-      open(); // open the database
-      database.update("movies", editMovie, "_id=" + id, null);
-      close(); // close the database
+   // updates an existing Movie in the database, along with queued writes
+   @Override
+   public void updateMovie(Movie movie) 
+   {
+      pendingWrites.update(movie);
+      commitPendingWrites();
    } // end method updateMovie
 
-   // return a Cursor with all Movie names in the database
-   public Cursor getAllMovies() 
+   // return a new row ID for a movie to be queued by queueInsertMovie;
+   // reads the last row ID if no database access has done so yet, so it
+   // runs off the GUI thread
+   public long reserveID() 
+   {
+      return store.allocateID(getMovieDatabase());
+   }
+
+   // queue an insert of movie, whose row ID came from reserveID; called
+   // on the GUI thread. getMovie sees the row straight away, the database
+   // and change listeners once the queue is committed.
+   public void queueInsertMovie(Movie movie) 
+   {
+      pendingWrites.insert(movie);
+      scheduleFlush();
+   }
+
+   // queue an update of movie; called on the GUI thread. Repeated updates
+   // to a row waiting in the queue are merged into one.
+   public void queueUpdateMovie(Movie movie) 
+   {
+      pendingWrites.update(movie);
+      scheduleFlush();
+   }
+
+   // queue a delete of row id; called on the GUI thread
+   public void queueDeleteMovie(long id) 
+   {
+      pendingWrites.delete(id);
+      scheduleFlush();
+   }
+
+   // commit the queued writes on the database writer thread now rather than
+   // after WRITE_DELAY_MS; GUI thread only
+   public void flushPendingWrites() 
+   {
+      mainHandler.removeCallbacks(flushRunnable);
+      flushPosted = false;
+
+      DatabaseExecutor.getInstance().executeWrite(
+         new DatabaseExecutor.Task<Object>(
+            null, DatabaseExecutor.PRIORITY_VISIBLE)
+         {
+            @Override
+            protected Object doInBackground()
+            {
+               commitPendingWrites();
+               return null;
+            }
+         });
+   }
+
+   // commit the queued writes on the calling thread before returning, for
+   // when the app is paused and its process may be killed before the
+   // writer thread gets to them; a failed commit leaves them queued and
+   // the listeners are told. GUI thread only
+   public void commitPendingWritesNow() 
+   {
+      mainHandler.removeCallbacks(flushRunnable);
+      flushPosted = false;
+
+      try
+      {
+         commitPendingWrites(); // waits for a commit already under way
+      }
+      catch (RuntimeException e)
+      {
+         Log.e(TAG, "Cannot commit queued writes", e);
+      }
+   }
+
+   // flushes the queue once WRITE_DELAY_MS has passed
+   private final Runnable flushRunnable = new Runnable()
    {
-      return database.query("movies", new String[] {"_id", "name"}, 
-         null, null, null, null, "name");
+      @Override
+      public void run()
+      {
+         flushPendingWrites();
+      }
+   };
+
+   // commit soon, so that writes made close together share a transaction
+   private void scheduleFlush()
+   {
+      if (pendingWrites.size() >= MAX_PENDING_WRITES)
+         flushPendingWrites();
+      else if (!flushPosted)
+      {
+         flushPosted = true;
+         mainHandler.postDelayed(flushRunnable, WRITE_DELAY_MS);
+      }
    } 
 
-   // return a Cursor containing specified Movie's information 
-   public Cursor getOneMovie(long id) 
+   // write every queued write in one transaction, then update the cache
+   // and tell the listeners; if the commit fails, the writes stay queued
+   // and the listeners are told
+   private void commitPendingWrites()
+   {
+      try
+      {
+         commitWrites(pendingWrites);
+      }
+      catch (RuntimeException e)
+      {
+         publishFailure(e);
+         throw e;
+      }
+   }
+
+   // write every write in queue in one transaction, as above; the writes
+   // go back into queue if the transaction fails
+   private void commitWrites(PendingWrites queue)
    {
-      return database.query(
-         "movies", null, "_id=" + id, null, null, null, null);
+      synchronized (commitLock)
+      {
+         List<PendingWrites.Write> writes = queue.startCommit();
+
+         if (writes.isEmpty())
+         {
+            queue.finishCommit();
+            return;
+         }
+
+         open(); // keep the connection open during the commit
+         boolean committed = false;
+
+         try
+         {
+            store.commitWrites(getMovieDatabase(), writes);
+            committed = true;
+            publishWrites(writes);
+         }
+         finally
+         {
+            if (committed)
+               queue.finishCommit();
+            else
+               queue.abortCommit(); // getMovie keeps seeing them
+
+            close(); // release our reference
+         }
+      }
+   } // end method commitWrites
+
+   // bring the cache up to date with committed writes and tell the
+   // listeners, one change per kind of write
+   private void publishWrites(List<PendingWrites.Write> writes)
+   {
+      long[][] ids = new long[MovieChange.DELETED + 1][writes.size()];
+      int[] counts = new int[ids.length];
+
+      for (PendingWrites.Write write : writes)
+      {
+         if (write.type == MovieChange.DELETED)
+            movieCache.invalidate(write.id);
+         else
+            movieCache.put(write.movie); // the cache holds the saved values
+
+         ids[write.type][counts[write.type]++] = write.id;
+      }
+
+      for (int type = 0; type < ids.length; ++type)
+      {
+         if (counts[type] > 0)
+            publishChange(new MovieChange(type, 
+               Arrays.copyOf(ids[type], counts[type])));
+      }
+   } // end method publishWrites
+
+   // inserts every Movie supplied by reader through one compiled statement,
+   // committing a transaction every batchSize rows; rows without a name
+   // are skipped. Batches committed before an IOException are kept.
+   @Override
+   public long insertMovies(MovieReader reader, int batchSize,
+      ProgressListener listener) throws IOException
+   {
+      open(); // keep the connection open during the import
+
+      try
+      {
+         return store.insertMovies(getMovieDatabase(), reader, batchSize, 
+            listener);
+      }
+      finally
+      {
+         // committed batches are kept even if reading failed
+         publishChange(new MovieChange(MovieChange.RESET));
+         close(); // release our reference
+      }
+   } // end method insertMovies
+
+   // writes every committed Movie to writer in row ID order, batchSize
+   // rows per query (see MovieStore.exportMovies)
+   @Override
+   public long exportMovies(MovieWriter writer, int batchSize,
+      ProgressListener listener) throws IOException
+   {
+      open(); // keep the connection open during the export
+
+      try
+      {
+         return store.exportMovies(getMovieDatabase(), writer, batchSize, 
+            listener);
+      }
+      finally
+      {
+         close(); // release our reference
+      }
+   } // end method exportMovies
+
+   // copies the database file inside a write transaction, so readers
+   // keep going (see MovieStore.writeSnapshot)
+   @Override
+   public long writeSnapshot(File file) throws IOException
+   {
+      open(); // keep the connection open during the snapshot
+
+      try
+      {
+         return store.writeSnapshot(getMovieDatabase(), file);
+      }
+      finally
+      {
+         close(); // release our reference
+      }
+   } // end method writeSnapshot
+
+   // writes the movies changed after generation since to a new database
+   // file (see MovieStore.writeSnapshotChanges)
+   @Override
+   public long writeSnapshotChanges(File file, long since) 
+      throws IOException
+   {
+      open(); // keep the connection open during the snapshot
+
+      try
+      {
+         return store.writeSnapshotChanges(getMovieDatabase(), file, since);
+      }
+      finally
+      {
+         close(); // release our reference
+      }
+   } // end method writeSnapshotChanges
+
+   // replaces every movie with the snapshot's and the changes files' in
+   // one transaction (see MovieStore.restoreSnapshot), then drops the
+   // cached Movies and tells the listeners every row may have changed
+   @Override
+   public long restoreSnapshot(File snapshot, List<File> changes) 
+      throws IOException
+   {
+      open(); // keep the connection open during the restore
+
+      try
+      {
+         long rowCount = 
+            store.restoreSnapshot(getMovieDatabase(), snapshot, changes);
+         movieCache.invalidateAll();
+         publishChange(new MovieChange(MovieChange.RESET));
+         return rowCount;
+      }
+      finally
+      {
+         close(); // release our reference
+      }
+   } // end method restoreSnapshot
+
+   // return the limit Movies that best match text, best first; every
+   // word of text is matched as a prefix of a word in the name, director,
+   // producer, actor or actress
+   @Override
+   public List<MovieSummary> searchMovies(String text, int limit) 
+   {
+      return store.searchMovies(getMovieDatabase(), text, limit);
    } 
 
-   // delete the Movie specified by the given String name
+   // index the titles of the movies changed since they were last indexed
+   // on the writer thread, TITLE_BATCH_SIZE per task; tasks queued
+   // together are coalesced into one
+   public void scheduleTitleIndexing()
+   {
+      DatabaseExecutor.getInstance().executeWrite(
+         new DatabaseExecutor.Task<Long>(null, 
+            DatabaseExecutor.PRIORITY_BACKGROUND, titleIndexing)
+         {
+            @Override
+            protected Long doInBackground()
+            {
+               open(); // keep the connection open during the batch
+
+               try
+               {
+                  return indexTitles(TITLE_BATCH_SIZE);
+               }
+               finally
+               {
+                  close(); // release our reference
+               }
+            }
+
+            @Override
+            protected void onResult(Long rowCount)
+            {
+               if (rowCount == TITLE_BATCH_SIZE)
+                  scheduleTitleIndexing(); // there may be more
+            }
+
+            // the titles left are indexed the next time indexing is
+            // scheduled, or by Find Duplicates
+            @Override
+            protected void onFailed(Exception error)
+            {
+               Log.e(TAG, "Cannot index titles", error);
+            }
+         });
+   } // end method scheduleTitleIndexing
+
+   // index the titles logged in title_changes in one transaction (see
+   // MovieStore.indexTitles)
+   @Override
+   public long indexTitles(int limit) 
+   {
+      return store.indexTitles(getMovieDatabase(), limit);
+   } 
+
+   // score the movies sharing the rarest trigrams of movie's title (see
+   // MovieStore.findDuplicates)
+   @Override
+   public List<MovieDuplicates.Match> findDuplicates(Movie movie, 
+      int limit) 
+   {
+      return store.findDuplicates(getMovieDatabase(), movie, limit);
+   }
+
+   // find the pairs among every title_keys row in memory (see
+   // MovieStore.findAllDuplicates)
+   @Override
+   public List<MovieDuplicates.Match> findAllDuplicates(int limit) 
+   {
+      return store.findAllDuplicates(getMovieDatabase(), limit);
+   } 
+
+   // score the movies of the movie's people (see
+   // MovieStore.findRelatedMovies)
+   @Override
+   public List<MovieRelations.Related> findRelatedMovies(long id, 
+      int limit) 
+   {
+      return store.findRelatedMovies(getMovieDatabase(), id, limit);
+   } 
+
+   // return the rows matching query in its order that come after after
+   // (or from the start if null), up to and including last (if not
+   // null), at most limit of them (or all if 0); the keyset conditions
+   // are answered from the sort column's index without counting skipped
+   // rows, and queries of one shape share one compiled statement
+   @Override
+   public List<MovieSummary> queryMovies(MovieQuery query, 
+      MovieSummary after, MovieSummary last, int limit) 
+   {
+      if (after == null && last == null)
+      {
+         List<MovieSummary> rows = takeFirstPage(query, limit);
+
+         if (rows != null)
+            return rows;
+      }
+
+      return store.querySummaries(getMovieDatabase(), "queryMovies", query, 
+         query.toSql(after, last, limit), 
+         query.toSelectionArgs(after, last, limit));
+   } 
+
+   // open the database and read the first limit rows of query, so that
+   // the queryMovies call asking for them gets them at once; queryMovies
+   // calls made while the read is running wait for it. Call on a
+   // database reader thread, early in the app's start.
+   public void prefetchFirstPage(MovieQuery query, int limit)
+   {
+      synchronized (firstPageLock)
+      {
+         firstPageQuery = query;
+         firstPageLimit = limit;
+         firstPage = null;
+      }
+
+      List<MovieSummary> rows = null;
+
+      try
+      {
+         rows = store.querySummaries(getMovieDatabase(), 
+            "prefetchFirstPage", query,
+            query.toSql(null, null, limit),
+            query.toSelectionArgs(null, null, limit));
+      }
+      finally
+      {
+         synchronized (firstPageLock)
+         {
+            if (firstPageQuery == query && firstPageLimit == limit)
+            {
+               if (rows == null)
+                  firstPageQuery = null; // the read failed
+               else
+                  firstPage = rows;
+            }
+
+            firstPageLock.notifyAll();
+         }
+      }
+   } // end method prefetchFirstPage
+
+   // return the page prefetchFirstPage read ahead if it is the first
+   // limit rows of query (the same MovieQuery object), waiting for it if
+   // it is being read, and forget it; else return null
+   private List<MovieSummary> takeFirstPage(MovieQuery query, int limit)
+   {
+      synchronized (firstPageLock)
+      {
+         while (firstPageQuery == query && firstPageLimit == limit &&
+            firstPage == null)
+         {
+            try
+            {
+               firstPageLock.wait();
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+               return null; // read it again instead
+            }
+         }
+
+         if (firstPageQuery != query || firstPageLimit != limit)
+            return null;
+
+         List<MovieSummary> rows = firstPage;
+         firstPageQuery = null;
+         firstPage = null;
+         return rows;
+      }
+   } // end method takeFirstPage
+
+   // return the current rows among ids that match query, in no order;
+   // rows that no longer exist or no longer match are left out
+   @Override
+   public List<MovieSummary> queryMovieRows(MovieQuery query, long[] ids) 
+   {
+      return store.queryMovieRows(getMovieDatabase(), query, ids);
+   }
+
+   // return the Movie with the given row ID, or null if there is none;
+   // repeat lookups are answered from the cache without touching disk
+   @Override
+   public Movie getMovie(long id) 
+   {
+      PendingWrites.Write write = pendingWrites.get(id);
+
+      if (write != null) // saved but maybe not yet committed
+         return write.movie; // null if deleted
+
+      Movie movie = movieCache.get(id);
+
+      if (movie != null)
+         return movie;
+
+      int generation = movieCache.getGeneration();
+      movie = store.readMovie(getMovieDatabase(), id, names);
+
+      if (movie == null)
+         return null; // Movie was deleted
+
+      movieCache.putIfCurrent(movie, generation); // unless a write raced us
+      return movie;
+   } // end method getMovie
+
+   // returns the Movies among ids as getMovie would, reading the ones
+   // that aren't saved or cached in one query
+   @Override
+   public List<Movie> getMovies(long[] ids) 
+   {
+      List<Movie> movies = new ArrayList<Movie>(ids.length);
+      String[] missing = new String[ids.length]; // ids to read, as text
+      int missingCount = 0;
+
+      for (long id : ids)
+      {
+         PendingWrites.Write write = pendingWrites.get(id);
+         Movie movie = write != null ? write.movie : movieCache.get(id);
+
+         if (movie != null)
+            movies.add(movie);
+         else if (write == null) // not deleted by a queued write
+            missing[missingCount++] = String.valueOf(id);
+      }
+
+      if (missingCount == 0)
+         return movies;
+
+      int generation = movieCache.getGeneration();
+
+      for (Movie movie : store.readMovies(getMovieDatabase(), 
+         Arrays.copyOf(missing, missingCount), names))
+      {
+         movieCache.putIfCurrent(movie, generation);
+         movies.add(movie);
+      }
+
+      return movies;
+   } // end method getMovies
+
+   // sets the poster of the Movie with the given row ID, after any queued
+   // writes so a queued insert of the Movie is committed first
+   @Override
+   public void setPoster(long id, String path) 
+   {
+      commitPendingWrites();
+      open(); // keep the connection open during the update
+
+      try
+      {
+         store.setPoster(getMovieDatabase(), id, path);
+         publishChange(new MovieChange(MovieChange.UPDATED, id));
+      }
+      finally
+      {
+         close(); // release our reference
+      }
+   } // end method setPoster
+
+   // return the poster paths of the Movies among ids that have one
+   @Override
+   public Map<Long, String> getPosters(long[] ids) 
+   {
+      return store.getPosters(getMovieDatabase(), ids);
+   } 
+
+   // return every poster path in use
+   @Override
+   public List<String> getPosterPaths() 
+   {
+      return store.getPosterPaths(getMovieDatabase());
+   } 
+
+   // return the cache of Movies read by getMovie, e.g. for its counters
+   public MovieCache getMovieCache() 
+   {
+      return movieCache;
+   } 
+
+   // return the per-year totals and the topCount directors by budget and
+   // actors and actresses by movies; the statistics tables are kept
+   // current as movies are written, so this reads one row per group
+   @Override
+   public MovieStatistics getStatistics(int topCount) 
+   {
+      return store.getStatistics(getMovieDatabase(), topCount);
+   } 
+
+   // recompute the statistics tables from scratch in one transaction
+   @Override
+   public void rebuildStatistics() 
+   {
+      store.rebuildStatistics(getMovieDatabase());
+   } 
+
+   // delete the Movie with the given row ID, along with queued writes
+   @Override
    public void deleteMovie(long id) 
    {
-      open(); // open the database
-      database.delete("movies", "_id=" + id, null);
-      close(); // close the database
+      pendingWrites.delete(id);
+      commitPendingWrites();
    } 
    
+   // put back a deleted Movie from its tombstone, after any queued writes
+   // so that a queued delete of it is committed first
+   @Override
+   public boolean undeleteMovie(long id) 
+   {
+      commitPendingWrites();
+      open(); // keep the connection open during the transaction
+
+      try
+      {
+         if (!store.undeleteMovie(getMovieDatabase(), id))
+            return false; // purged, or undone already
+
+         movieCache.invalidate(id);
+         publishChange(new MovieChange(MovieChange.INSERTED, id));
+         return true;
+      }
+      finally
+      {
+         close(); // release our reference
+      }
+   } // end method undeleteMovie
+
+   // delete old tombstones batchSize at a time; each batch commits on its
+   // own, so queued writes wait for one batch at most
+   @Override
+   public long purgeDeletedMovies(long deletedBefore, int batchSize) 
+   {
+      open(); // keep the connection open between batches
+
+      try
+      {
+         return store.purgeDeletedMovies(getMovieDatabase(), deletedBefore, 
+            batchSize);
+      }
+      finally
+      {
+         close(); // release our reference
+      }
+   } // end method purgeDeletedMovies
+
+   // free the database file's unused pages once there are enough of them:
+   // a file made before incremental auto-vacuum is rewritten by one
+   // VACUUM, which also switches it over; later the free pages are given
+   // back a step at a time, each step a short write of its own
+   @Override
+   public long compactDatabase(double fragmentation) 
+   {
+      open(); // keep the connection open during the upkeep
+
+      try
+      {
+         return store.compactDatabase(getMovieDatabase(), fragmentation);
+      }
+      finally
+      {
+         close(); // release our reference
+      }
+   } // end method compactDatabase
+   
+   // return the oldest local changes not yet pushed, after committing
+   // any queued writes so they go out with them
+   @Override
+   public List<SyncRecord> getSyncChanges(int limit) 
+   {
+      commitPendingWrites();
+      return store.getSyncChanges(getMovieDatabase(), limit);
+   } 
+
+   @Override
+   public String getSyncDevice() 
+   {
+      return store.getSyncDevice(getMovieDatabase());
+   }
+
+   @Override
+   public long getSyncVersion() 
+   {
+      return store.getSyncVersion(getMovieDatabase());
+   }
+
+   // apply records from the sync server through movie_details in one
+   // transaction, which the triggers leave out of the change log; a
+   // record already held, or losing to a local change not yet pushed,
+   // only updates the version. A queued write is committed first, so it
+   // counts as a local change.
+   @Override
+   public void applySyncChanges(List<SyncRecord> records, long pushed,
+      long pulled) 
+   {
+      commitPendingWrites();
+      open(); // keep the connection open during the transaction
+
+      try
+      {
+         publishWrites(store.applySyncChanges(getMovieDatabase(), records, 
+            pushed, pulled));
+      }
+      finally
+      {
+         close(); // release our reference
+      }
+   } // end method applySyncChanges
+
    private class DatabaseOpenHelper extends SQLiteOpenHelper 
    {
       // constructor
@@ -106,24 +980,41 @@ public class DatabaseConnector
          super(context, name, factory, version);
       }
 
-      // creates the Movies table when the database is created
+      // a new database uses incremental auto-vacuum (see compactDatabase);
+      // this must run before its first table is created, and does
+      // nothing to an existing database
+      @Override
+      public void onConfigure(SQLiteDatabase db)
+      {
+         db.execSQL(MovieSchema.SET_INCREMENTAL_VACUUM);
+      }
+
+      // creates the current schema when the database is created;
+      // onUpgrade brings older databases to the same schema
       @Override
       public void onCreate(SQLiteDatabase db) 
       {
-         // query to create a new table named Movies
-         String createQuery = "CREATE TABLE movies" +
-            "(_id integer primary key autoincrement," +
-            "name TEXT, director TEXT, producer TEXT, " +
-            "actor TEXT, actress TEXT, release TEXT, budget TEXT);";
-                  
-         db.execSQL(createQuery); // execute query to create the database
+         for (String sql : MovieSchema.CREATE_STATEMENTS)
+            db.execSQL(sql);
       } 
 
+      // read the last row ID while the database is being opened anyway, so
+      // queueInsertMovie doesn't have to
+      @Override
+      public void onOpen(SQLiteDatabase db)
+      {
+         store.readLastID(new SQLiteMovieDatabase(db, null));
+      } 
+
+      // brings an older database to the current schema (see
+      // MovieMigrations); SQLiteOpenHelper runs the whole upgrade in one
+      // transaction
       @Override
       public void onUpgrade(SQLiteDatabase db, int oldVersion, 
           int newVersion) 
       {
+         MovieMigrations.upgrade(new SQLiteMovieDatabase(db, null), 
+            oldVersion, newVersion);
       }
    } // end class DatabaseOpenHelper
 } // end class DatabaseConnector
-
@@ -0,0 +1,271 @@
+package com.example.movieapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+// runs database work off the GUI thread: writes on one writer thread in
+// order of priority, reads on a small pool of reader threads (WAL lets
+// them run while a write is in progress), with results delivered on the
+// GUI thread. Tasks can be cancelled by owner and coalesced by key.
+public class DatabaseExecutor
+{
+   // task priorities, most urgent first
+   public static final int PRIORITY_VISIBLE = 0; // the user is waiting
+   public static final int PRIORITY_PREFETCH = 1; // needed soon
+   public static final int PRIORITY_BACKGROUND = 2; // imports, upkeep
+
+   // threads running read-only work
+   private static final int READER_THREADS = 2;
+
+   private static DatabaseExecutor instance; // shared by the whole process
+
+   // a unit of database work: doInBackground runs on a database thread,
+   // then onResult runs on the GUI thread unless the task was cancelled,
+   // or onFailed if doInBackground threw
+   public abstract static class Task<Result> 
+      implements Runnable, Comparable<Task<?>>
+   {
+      private final Object owner; // for cancelAll; null if not cancellable
+      private final int priority;
+      private final Object coalesceKey; // null if never coalesced
+      private DatabaseExecutor executor; // set when the task is queued
+      private long sequence; // keeps tasks of equal priority in order
+      private volatile boolean cancelled;
+
+      // constructor for a task that is never coalesced
+      public Task(Object owner, int priority)
+      {
+         this(owner, priority, null);
+      }
+
+      // constructor; a queued task with the same coalesceKey is replaced
+      // by this one, since only the newest result is wanted
+      public Task(Object owner, int priority, Object coalesceKey)
+      {
+         this.owner = owner;
+         this.priority = priority;
+         this.coalesceKey = coalesceKey;
+      }
+
+      // performs the database work on a database thread
+      protected abstract Result doInBackground();
+
+      // receives the result on the GUI thread
+      protected void onResult(Result result)
+      {
+      }
+
+      // receives, on the GUI thread instead of onResult, what
+      // doInBackground threw, e.g. a SQLiteException for a full, locked or
+      // damaged database
+      protected void onFailed(Exception error)
+      {
+      }
+
+      // called on the GUI thread instead of onResult after cancel
+      protected void onCancelled()
+      {
+      }
+
+      // receives values passed to publishProgress on the GUI thread
+      protected void onProgressUpdate(long... values)
+      {
+      }
+
+      // report progress from doInBackground
+      protected final void publishProgress(final long... values)
+      {
+         executor.mainHandler.post(new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  if (!cancelled)
+                     onProgressUpdate(values);
+               }
+            });
+      }
+
+      // stop the task: it is skipped if it hasn't started, and its result
+      // is dropped if it has; the database work itself is not interrupted
+      public final void cancel()
+      {
+         cancelled = true;
+      }
+
+      public final boolean isCancelled()
+      {
+         return cancelled;
+      }
+
+      @Override
+      public final void run()
+      {
+         executor.onStarted(this);
+         Result result = null;
+         RuntimeException error = null;
+
+         try
+         {
+            if (!cancelled)
+               result = doInBackground();
+         }
+         catch (RuntimeException e)
+         {
+            error = e; // onFailed reports it
+         }
+         finally
+         {
+            deliver(result, error);
+         }
+      }
+
+      // hand the result, or what doInBackground threw, to the GUI thread
+      private void deliver(final Result result, 
+         final RuntimeException error)
+      {
+         executor.mainHandler.post(new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  executor.onFinished(Task.this);
+
+                  if (cancelled)
+                     onCancelled();
+                  else if (error != null)
+                     onFailed(error);
+                  else
+                     onResult(result);
+               }
+            });
+      }
+
+      // order by priority, then by the order the tasks were queued
+      @Override
+      public final int compareTo(Task<?> other)
+      {
+         if (priority != other.priority)
+            return priority < other.priority ? -1 : 1;
+         return sequence < other.sequence ? -1 : 
+            (sequence == other.sequence ? 0 : 1);
+      }
+   } // end class Task
+
+   private final ThreadPoolExecutor writer;
+   private final ThreadPoolExecutor readers;
+   private final Handler mainHandler = new Handler(Looper.getMainLooper());
+   private final AtomicLong nextSequence = new AtomicLong();
+
+   // queued or running tasks, and the queued task for each coalesce key
+   private final List<Task<?>> activeTasks = new ArrayList<Task<?>>();
+   private final Map<Object, Task<?>> queuedByKey = 
+      new HashMap<Object, Task<?>>();
+
+   // return the process-wide DatabaseExecutor, creating it if necessary
+   public static synchronized DatabaseExecutor getInstance()
+   {
+      if (instance == null)
+         instance = new DatabaseExecutor();
+      return instance;
+   }
+
+   // private constructor; use getInstance to get the shared executor
+   private DatabaseExecutor()
+   {
+      writer = createPool(1, "db-writer");
+      readers = createPool(READER_THREADS, "db-reader");
+   }
+
+   // create a fixed-size pool taking tasks in priority order
+   private static ThreadPoolExecutor createPool(int threads, 
+      final String name)
+   {
+      ThreadFactory threadFactory = new ThreadFactory()
+         {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(final Runnable runnable)
+            {
+               return new Thread(new Runnable()
+                  {
+                     @Override
+                     public void run()
+                     {
+                        Process.setThreadPriority(
+                           Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                     }
+                  }, name + "-" + ++count);
+            }
+         };
+
+      return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, 
+         new PriorityBlockingQueue<Runnable>(), threadFactory);
+   }
+
+   // queue a task that only reads the database
+   public void executeRead(Task<?> task)
+   {
+      enqueue(task, readers);
+   }
+
+   // queue a task that writes to the database
+   public void executeWrite(Task<?> task)
+   {
+      enqueue(task, writer);
+   }
+
+   // cancel every queued or running task belonging to owner
+   public synchronized void cancelAll(Object owner)
+   {
+      for (Task<?> task : activeTasks)
+      {
+         if (task.owner == owner)
+            task.cancel();
+      }
+   }
+
+   // add a task to pool, replacing a queued task with the same key
+   private synchronized void enqueue(Task<?> task, ThreadPoolExecutor pool)
+   {
+      task.executor = this;
+      task.sequence = nextSequence.getAndIncrement();
+
+      if (task.coalesceKey != null)
+      {
+         Task<?> replaced = queuedByKey.put(task.coalesceKey, task);
+
+         if (replaced != null)
+            replaced.cancel(); // skipped when it reaches a thread
+      }
+
+      activeTasks.add(task);
+      pool.execute(task);
+   }
+
+   // a task left the queue and began running
+   private synchronized void onStarted(Task<?> task)
+   {
+      if (task.coalesceKey != null && queuedByKey.get(task.coalesceKey) == task)
+         queuedByKey.remove(task.coalesceKey);
+   }
+
+   // a task delivered its result
+   private synchronized void onFinished(Task<?> task)
+   {
+      activeTasks.remove(task);
+   }
+} // end class DatabaseExecutor
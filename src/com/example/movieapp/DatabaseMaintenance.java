@@ -0,0 +1,88 @@
+package com.example.movieapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+// upkeep run on the database writer thread a while after the app starts:
+// purges the tombstones of movies deleted too long ago to be undone,
+// deletes the posters only they used, then compacts the database file
+// and refreshes the query planner's statistics if enough of the file
+// has become free pages
+public final class DatabaseMaintenance
+{
+   // a deleted movie's tombstone is kept this long
+   public static final long TOMBSTONE_RETENTION_MS = 24 * 60 * 60 * 1000L;
+
+   // tombstones deleted per transaction
+   private static final int PURGE_BATCH_SIZE = 500;
+
+   // the file is compacted once this fraction of it is free pages
+   public static final double FRAGMENTATION_THRESHOLD = 0.2;
+
+   // the upkeep waits this long so it doesn't slow the app's start
+   private static final long START_DELAY_MS = 10 * 1000;
+
+   private static boolean scheduled; // once per process; GUI thread only
+
+   // run the upkeep once START_DELAY_MS has passed, unless it has run in
+   // this process already; called on the GUI thread
+   public static void schedule(Context context)
+   {
+      if (scheduled)
+         return;
+
+      scheduled = true;
+      final Context appContext = context.getApplicationContext();
+
+      new Handler(Looper.getMainLooper()).postDelayed(new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               // no owner: the upkeep is never cancelled
+               DatabaseExecutor.getInstance().executeWrite(
+                  new DatabaseExecutor.Task<Object>(null,
+                     DatabaseExecutor.PRIORITY_BACKGROUND)
+                  {
+                     @Override
+                     protected Object doInBackground()
+                     {
+                        maintain(appContext);
+                        return null;
+                     }
+                  });
+            }
+         }, START_DELAY_MS);
+   } // end method schedule
+
+   // purge, then compact; runs on the database writer thread
+   private static void maintain(Context context)
+   {
+      DatabaseConnector databaseConnector =
+         DatabaseConnector.getInstance(context);
+      databaseConnector.open(); // keep the connection open throughout
+
+      try
+      {
+         long purged = databaseConnector.purgeDeletedMovies(
+            System.currentTimeMillis() - TOMBSTONE_RETENTION_MS,
+            PURGE_BATCH_SIZE);
+
+         if (purged > 0)
+            new PosterStore(context).removeUnused(
+               databaseConnector.getPosterPaths());
+
+         databaseConnector.compactDatabase(FRAGMENTATION_THRESHOLD);
+      }
+      finally
+      {
+         databaseConnector.close(); // release our reference
+      }
+   } // end method maintain
+
+   // not instantiable
+   private DatabaseMaintenance()
+   {
+   }
+} // end class DatabaseMaintenance
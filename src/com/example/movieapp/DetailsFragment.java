@@ -1,35 +1,53 @@
 package com.example.movieapp;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import android.app.Activity;
-import android.app.AlertDialog;
-import android.app.Dialog;
-import android.app.DialogFragment;
 import android.app.Fragment;
-import android.content.DialogInterface;
-import android.database.Cursor;
-import android.os.AsyncTask;
+import android.content.Context;
+import android.content.Intent;
+import android.database.ContentObserver;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 
 public class DetailsFragment extends Fragment
 {
    // callback methods implemented by MainActivity  
    public interface DetailsFragmentListener
    {
-      // called when a Movie is deleted
-      public void onMovieDeleted();
+      // called when the Movie with the given row ID is deleted
+      public void onMovieDeleted(long rowID);
       
       // called to pass Bundle of Movie's info for editing
       public void onEditMovie(Bundle arguments);
+
+      // called when the user picks one of the related Movies
+      public void onRelatedMovieSelected(long rowID);
    }
    
+   // identifies the image picked in onActivityResult
+   private static final int PICK_POSTER_REQUEST = 1;
+
+   // most related Movies shown
+   private static final int RELATED_LIMIT = 5;
+
    private DetailsFragmentListener listener;
+   private DatabaseConnector databaseConnector; // shared database access
    
    private long rowID = -1; // selected Movie's rowID
    private TextView nameTextView; // displays Movie's name 
@@ -39,6 +57,12 @@ public class DetailsFragment extends Fragment
    private TextView actressTextView; // displays Movie's city
    private TextView releaseTextView; // displays Movie's state
    private TextView budgetTextView; // displays Movie's zip
+   private ImageView posterImageView; // displays Movie's poster
+   private TextView relatedLabelTextView; // heads the related Movies
+   private LinearLayout relatedLinearLayout; // one row per related Movie
+   private final Object relatedLoad = new Object(); // coalesces their loads
+   private boolean stale = true; // the Movie must be loaded when resumed
+   private long observedRowID = -1; // row movieObserver is registered for
    
    // set DetailsFragmentListener when fragment attached   
    @Override
@@ -46,14 +70,34 @@ public class DetailsFragment extends Fragment
    {
       super.onAttach(activity);
       listener = (DetailsFragmentListener) activity;
+      databaseConnector = DatabaseConnector.getInstance(activity);
    }
    
    // remove DetailsFragmentListener when fragment detached
    @Override
    public void onDetach()
    {
+      observeMovie(-1); // stop watching the Movie
       super.onDetach();
       listener = null;
+      DatabaseExecutor.getInstance().cancelAll(this); // drop pending load
+   }
+
+   // hold a reference to the shared connection while created; the
+   // fragment is retained, so a configuration change doesn't release it
+   @Override
+   public void onCreate(Bundle savedInstanceState)
+   {
+      super.onCreate(savedInstanceState);
+      databaseConnector.open();
+   }
+
+   // release the shared connection once the fragment is gone for good
+   @Override
+   public void onDestroy()
+   {
+      super.onDestroy();
+      databaseConnector.close();
    }
 
    // called when DetailsFragmentListener's view needs to be created
@@ -89,17 +133,70 @@ public class DetailsFragment extends Fragment
       actressTextView = (TextView) view.findViewById(R.id.actressTextView);
       releaseTextView = (TextView) view.findViewById(R.id.releaseTextView);
       budgetTextView = (TextView) view.findViewById(R.id.budgetTextView);
+      posterImageView = (ImageView) view.findViewById(R.id.posterImageView);
+      relatedLabelTextView = 
+         (TextView) view.findViewById(R.id.relatedLabelTextView);
+      relatedLinearLayout = 
+         (LinearLayout) view.findViewById(R.id.relatedLinearLayout);
+      observeMovie(rowID);
+      stale = true; // the new views are empty
       return view;
    }
    
-   // called when the DetailsFragment resumes
+   // called when the DetailsFragment resumes; the Movie is loaded again
+   // only if it changed, or was never shown
    @Override
    public void onResume()
    {
       super.onResume();
-      new LoadMovieTask().execute(rowID); // load Movie at rowID
+
+      if (stale)
+         loadMovie();
+   } 
+
+   // load Movie at rowID, then the Movies related to it, replacing loads
+   // still waiting in the queue
+   private void loadMovie()
+   {
+      stale = false;
+      DatabaseExecutor.getInstance().executeRead(new LoadMovieTask(rowID));
+      DatabaseExecutor.getInstance().executeRead(
+         new LoadRelatedTask(rowID));
    } 
 
+   // watch the Movie with the given row ID through MovieProvider, or no
+   // Movie if it is -1
+   private void observeMovie(long id)
+   {
+      if (id == observedRowID)
+         return;
+
+      if (observedRowID != -1)
+         getActivity().getContentResolver().unregisterContentObserver(
+            movieObserver);
+
+      if (id != -1)
+         getActivity().getContentResolver().registerContentObserver(
+            MovieProvider.movieUri(id), false, movieObserver);
+
+      observedRowID = id;
+   } // end method observeMovie
+
+   // reloads the Movie when MovieProvider says it changed, at once if it
+   // is shown and otherwise when the fragment resumes
+   private final ContentObserver movieObserver = 
+      new ContentObserver(new Handler())
+      {
+         @Override
+         public void onChange(boolean selfChange)
+         {
+            if (isResumed())
+               loadMovie();
+            else
+               stale = true;
+         }
+      }; // end movieObserver
+
    // save currently displayed Movie's row ID
    @Override
    public void onSaveInstanceState(Bundle outState) 
@@ -138,115 +235,237 @@ public class DetailsFragment extends Fragment
          case R.id.action_delete:
             deleteMovie();
             return true;
+         case R.id.action_set_poster:
+            Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+            intent.setType("image/*");
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            startActivityForResult(Intent.createChooser(intent, 
+               getString(R.string.poster_chooser_title)), 
+               PICK_POSTER_REQUEST);
+            return true;
       }
       
       return super.onOptionsItemSelected(item);
    } 
    
+   // set the image the user picked as the Movie's poster
+   @Override
+   public void onActivityResult(int requestCode, int resultCode, 
+      Intent data)
+   {
+      if (requestCode == PICK_POSTER_REQUEST && 
+         resultCode == Activity.RESULT_OK && data != null && 
+         data.getData() != null)
+         setPoster(data.getData());
+      else
+         super.onActivityResult(requestCode, resultCode, data);
+   }
+
+   // copy the image at uri into the PosterStore and make it the Movie's
+   // poster outside GUI thread, then show it
+   private void setPoster(final Uri uri)
+   {
+      final Context context = getActivity();
+      final PosterStore posterStore = new PosterStore(context);
+      final long id = rowID;
+
+      // no owner: once the image is copied, the poster is always set
+      DatabaseExecutor.getInstance().executeWrite(
+         new DatabaseExecutor.Task<Void>(null, 
+            DatabaseExecutor.PRIORITY_VISIBLE)
+         {
+            private IOException error; // set if the image can't be copied
+
+            @Override
+            protected Void doInBackground()
+            {
+               try
+               {
+                  databaseConnector.setPoster(id, posterStore.addPoster(uri));
+
+                  // delete the Movie's old poster unless it is still used
+                  posterStore.removeUnused(databaseConnector.getPosterPaths());
+               }
+               catch (IOException e)
+               {
+                  error = e;
+               }
+
+               return null;
+            }
+
+            @Override
+            protected void onResult(Void result)
+            {
+               // movieObserver shows the new poster
+               if (error != null)
+                  Toast.makeText(context, context.getString(
+                     R.string.poster_failed, error.getMessage()), 
+                     Toast.LENGTH_LONG).show();
+            }
+         });
+   } // end method setPoster
+   
    // performs database query outside GUI thread
-   private class LoadMovieTask extends AsyncTask<Long, Object, Cursor> 
+   private class LoadMovieTask extends DatabaseExecutor.Task<Movie> 
    {
-      DatabaseConnector databaseConnector = 
-         new DatabaseConnector(getActivity());
+      private final long id; // row ID of the Movie to load
+      private String poster; // path of the Movie's poster, null for none
 
-      // open database & get Cursor representing specified Movie's data
+      // constructor
+      public LoadMovieTask(long id)
+      {
+         super(DetailsFragment.this, DatabaseExecutor.PRIORITY_VISIBLE, 
+            DetailsFragment.this);
+         this.id = id;
+      }
+
+      // get the specified Movie, from the cache if it was read recently
       @Override
-      protected Cursor doInBackground(Long... params)
+      protected Movie doInBackground()
       {
-         databaseConnector.open();
-         return databaseConnector.getOneMovie(params[0]);
+         poster = databaseConnector.getPosters(new long[] { id }).get(id);
+         return databaseConnector.getMovie(id);
       } 
 
-      // use the Cursor returned from the doInBackground method
+      // use the Movie returned from the doInBackground method
       @Override
-      protected void onPostExecute(Cursor result)
+      protected void onResult(Movie result)
       {
-         super.onPostExecute(result);
-         result.moveToFirst(); // move to the first item 
-   
-         // get the column index for each data item
-         int nameIndex = result.getColumnIndex("name");
-         int directorIndex = result.getColumnIndex("director");
-         int producerIndex = result.getColumnIndex("producer");
-         int actorIndex = result.getColumnIndex("actor");
-         int actressIndex = result.getColumnIndex("actress");
-         int releaseIndex = result.getColumnIndex("release");
-         int budgetIndex = result.getColumnIndex("budget");
+         if (result == null)
+            return; // Movie was deleted
    
          // fill TextViews with the retrieved data
-         nameTextView.setText(result.getString(nameIndex));
-         directorTextView.setText(result.getString(directorIndex));
-         producerTextView.setText(result.getString(producerIndex));
-         actorTextView.setText(result.getString(actorIndex));
-         actressTextView.setText(result.getString(actressIndex));
-         releaseTextView.setText(result.getString(releaseIndex));
-         budgetTextView.setText(result.getString(budgetIndex));
-   
-         result.close(); // close the result cursor
-         databaseConnector.close(); // close database connection
-      } // end method onPostExecute
+         nameTextView.setText(result.getName());
+         directorTextView.setText(result.getDirector());
+         producerTextView.setText(result.getProducer());
+         actorTextView.setText(result.getActor());
+         actressTextView.setText(result.getActress());
+         releaseTextView.setText(
+            MovieFormat.formatRelease(result.getRelease()));
+         budgetTextView.setText(
+            MovieFormat.formatBudget(result.getBudget()));
+
+         // the poster is decoded in the background at the size shown
+         if (poster == null)
+         {
+            PosterLoader.getInstance(getActivity()).cancel(posterImageView);
+            posterImageView.setVisibility(View.GONE);
+         }
+         else
+         {
+            posterImageView.setVisibility(View.VISIBLE);
+            PosterLoader.getInstance(getActivity()).load(poster, 
+               posterImageView, posterImageView.getLayoutParams().width, 
+               posterImageView.getLayoutParams().height);
+         }
+      } // end method onResult
+
+      @Override
+      protected void onFailed(Exception error)
+      {
+         showFailure(error);
+      }
    } // end class LoadMovieTask
 
-   // delete a Movie
-   private void deleteMovie()
-   {         
-      // use FragmentManager to display the confirmDelete DialogFragment
-      confirmDelete.show(getFragmentManager(), "confirm delete");
-   } 
+   // finds the Movies sharing people with a Movie outside GUI thread,
+   // after the Movie itself is shown
+   private class LoadRelatedTask extends DatabaseExecutor.Task<List<Movie>>
+   {
+      private final long id; // row ID of the Movie they are related to
 
-   // DialogFragment to confirm deletion of Movie
-   private DialogFragment confirmDelete = 
-      new DialogFragment()
+      // constructor
+      public LoadRelatedTask(long id)
       {
-         // create an AlertDialog and return it
-         @Override
-         public Dialog onCreateDialog(Bundle bundle)
+         super(DetailsFragment.this, DatabaseExecutor.PRIORITY_PREFETCH, 
+            relatedLoad);
+         this.id = id;
+      }
+
+      // get the related Movies, most related first
+      @Override
+      protected List<Movie> doInBackground()
+      {
+         List<MovieRelations.Related> related = 
+            databaseConnector.findRelatedMovies(id, RELATED_LIMIT);
+         long[] ids = new long[related.size()];
+
+         for (int i = 0; i < ids.length; ++i)
+            ids[i] = related.get(i).id;
+
+         // getMovies returns them in no order
+         Map<Long, Movie> movies = new HashMap<Long, Movie>();
+
+         for (Movie movie : databaseConnector.getMovies(ids))
+            movies.put(movie.getId(), movie);
+
+         List<Movie> result = new ArrayList<Movie>(ids.length);
+
+         for (long relatedID : ids)
          {
-            // create a new AlertDialog Builder
-            AlertDialog.Builder builder = 
-               new AlertDialog.Builder(getActivity());
-      
-            builder.setTitle(R.string.confirm_title); 
-            builder.setMessage(R.string.confirm_message);
-      
-            // provide an OK button that simply dismisses the dialog
-            builder.setPositiveButton(R.string.button_delete,
-               new DialogInterface.OnClickListener()
+            Movie movie = movies.get(relatedID);
+
+            if (movie != null) // not deleted meanwhile
+               result.add(movie);
+         }
+
+         return result;
+      } // end method doInBackground
+
+      // show a row for each related Movie; tapping it shows that Movie
+      @Override
+      protected void onResult(List<Movie> result)
+      {
+         relatedLinearLayout.removeAllViews();
+         relatedLabelTextView.setVisibility(
+            result.isEmpty() ? View.GONE : View.VISIBLE);
+         LayoutInflater inflater = getActivity().getLayoutInflater();
+
+         for (final Movie movie : result)
+         {
+            TextView relatedTextView = (TextView) inflater.inflate(
+               R.layout.list_item_related, relatedLinearLayout, false);
+            int year = MovieFormat.getYear(movie.getRelease());
+            relatedTextView.setText(year > 0 ? 
+               getString(R.string.related_movie, movie.getName(), year) : 
+               movie.getName());
+            relatedTextView.setOnClickListener(new View.OnClickListener()
                {
                   @Override
-                  public void onClick(
-                     DialogInterface dialog, int button)
+                  public void onClick(View view)
                   {
-                     final DatabaseConnector databaseConnector = 
-                        new DatabaseConnector(getActivity());
-      
-                     // AsyncTask deletes Movie and notifies listener
-                     AsyncTask<Long, Object, Object> deleteTask =
-                        new AsyncTask<Long, Object, Object>()
-                        {
-                           @Override
-                           protected Object doInBackground(Long... params)
-                           {
-                              databaseConnector.deleteMovie(params[0]); 
-                              return null;
-                           } 
-      
-                           @Override
-                           protected void onPostExecute(Object result)
-                           {                                 
-                              listener.onMovieDeleted();
-                           }
-                        }; // end new AsyncTask
-      
-                     // execute the AsyncTask to delete Movie at rowID
-                     deleteTask.execute(new Long[] { rowID });               
-                  } // end method onClick
-               } // end anonymous inner class
-            ); // end call to method setPositiveButton
-            
-            builder.setNegativeButton(R.string.button_cancel, null);
-            return builder.create(); // return the AlertDialog
+                     if (listener != null)
+                        listener.onRelatedMovieSelected(movie.getId());
+                  }
+               });
+            relatedLinearLayout.addView(relatedTextView);
          }
-      }; // end DialogFragment anonymous inner class
+      } // end method onResult
+
+      // leave the panel hidden
+      @Override
+      protected void onFailed(Exception error)
+      {
+         relatedLinearLayout.removeAllViews();
+         relatedLabelTextView.setVisibility(View.GONE);
+         showFailure(error);
+      }
+   } // end class LoadRelatedTask
+
+   // tell the user the Movie couldn't be read
+   private void showFailure(Exception error)
+   {
+      Toast.makeText(getActivity(), getString(R.string.database_failed, 
+         error.getMessage()), Toast.LENGTH_LONG).show();
+   }
+
+   // delete the Movie at once; MainActivity offers to undo the delete,
+   // which keeps the Movie as a tombstone in the meantime
+   private void deleteMovie()
+   {         
+      // queue the delete; the list drops the row when it is committed
+      databaseConnector.queueDeleteMovie(rowID);
+      listener.onMovieDeleted(rowID);
+   } 
 } // end class DetailsFragment
 
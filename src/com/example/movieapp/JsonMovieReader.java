@@ -0,0 +1,98 @@
+package com.example.movieapp;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+// reads Movies from a JSON array of objects or from JSON Lines
+public class JsonMovieReader implements MovieReader
+{
+   private final JsonReader reader;
+   private boolean started; // true once the opening token has been read
+   private boolean inArray; // true if the records are wrapped in an array
+
+   // constructor
+   public JsonMovieReader(Reader reader)
+   {
+      this.reader = new JsonReader(reader);
+      this.reader.setLenient(true); // allow one object per line
+   }
+
+   // return the next Movie, or null at the end of the input
+   @Override
+   public Movie read() throws IOException
+   {
+      if (!started)
+      {
+         started = true;
+
+         if (reader.peek() == JsonToken.BEGIN_ARRAY)
+         {
+            reader.beginArray();
+            inArray = true;
+         }
+      }
+
+      if (inArray ? !reader.hasNext() :
+         reader.peek() == JsonToken.END_DOCUMENT)
+         return null;
+
+      String name = null;
+      String director = null;
+      String producer = null;
+      String actor = null;
+      String actress = null;
+      String release = null;
+      String budget = null;
+
+      reader.beginObject();
+
+      while (reader.hasNext())
+      {
+         String key = reader.nextName();
+
+         if (reader.peek() == JsonToken.NULL)
+         {
+            reader.nextNull();
+            continue;
+         }
+
+         if (key.equals("name"))
+            name = reader.nextString();
+         else if (key.equals("director"))
+            director = reader.nextString();
+         else if (key.equals("producer"))
+            producer = reader.nextString();
+         else if (key.equals("actor"))
+            actor = reader.nextString();
+         else if (key.equals("actress"))
+            actress = reader.nextString();
+         else if (key.equals("release"))
+            release = reader.nextString(); // numbers are read as text
+         else if (key.equals("budget"))
+            budget = reader.nextString();
+         else
+            reader.skipValue(); // ignore unknown fields
+      }
+
+      reader.endObject();
+
+      // a release or budget that cannot be converted is imported as unknown
+      int releaseValue = MovieFormat.parseRelease(release);
+      long budgetValue = MovieFormat.parseBudget(budget);
+
+      return new Movie(Movie.NO_ID, name, director, producer, actor,
+         actress, releaseValue == MovieFormat.UNPARSEABLE ?
+            Movie.NO_RELEASE : releaseValue,
+         budgetValue == MovieFormat.UNPARSEABLE ?
+            Movie.NO_BUDGET : budgetValue);
+   } // end method read
+
+   @Override
+   public void close() throws IOException
+   {
+      reader.close();
+   }
+} // end class JsonMovieReader
@@ -1,8 +1,14 @@
 package com.example.movieapp;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import android.app.Activity;
 import android.os.Bundle;
 import android.app.FragmentTransaction;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.Toast;
 
 public class MainActivity extends Activity 
    implements MovieListFragment.MovieListFragmentListener,
@@ -13,17 +19,44 @@ public class MainActivity extends Activity
    public static final String ROW_ID = "row_id"; 
    
    MovieListFragment movieListFragment; // displays Movie list
+   private UndoBar undoBar; // offers to undo a delete; null until needed
+   private DatabaseConnector databaseConnector; // shared database access
    
-   // display MovieListFragment when MainActivity first loads
+   // display MovieListFragment when MainActivity first loads; on a fresh
+   // start the database opens and the list's first page is read on a
+   // reader thread while the views are inflated, and work the first
+   // screen doesn't need waits until it has been drawn
    @Override
    protected void onCreate(Bundle savedInstanceState)
    {
+      StartupTrace.begin("MainActivity.onCreate");
       super.onCreate(savedInstanceState);
+
+      // hold a reference to the shared connection until finished; the
+      // retained ConnectionFragment keeps it across configuration changes
+      databaseConnector = DatabaseConnector.getInstance(this);
+
+      if (getFragmentManager().findFragmentByTag(ConnectionFragment.TAG) 
+         == null)
+         getFragmentManager().beginTransaction()
+            .add(new ConnectionFragment(), ConnectionFragment.TAG).commit();
+
+      databaseConnector.addMovieChangeListener(writeFailureListener);
+
+      if (savedInstanceState == null)
+         prefetchMovieList();
+
+      StartupTrace.begin("MainActivity.setContentView");
       setContentView(R.layout.activity_main);
+      StartupTrace.end();
+      deferUntilDrawn();
 
       // return if Activity is being restored, no need to recreate GUI
       if (savedInstanceState != null) 
+      {
+         StartupTrace.end();
          return;
+      }
 
       // check whether layout contains fragmentContainer (phone layout);
       // MovieListFragment is always displayed
@@ -38,6 +71,106 @@ public class MainActivity extends Activity
          transaction.add(R.id.fragmentContainer, movieListFragment);
          transaction.commit(); // causes MovieListFragment to display
       }
+
+      StartupTrace.end();
+   } // end method onCreate
+
+   // stop listening; ConnectionFragment releases the shared connection
+   @Override
+   protected void onDestroy()
+   {
+      super.onDestroy();
+      DatabaseExecutor.getInstance().cancelAll(this); // drop the prefetch
+      databaseConnector.removeMovieChangeListener(writeFailureListener);
+   }
+
+   // tells the user when saves already shown couldn't be committed
+   private final DatabaseConnector.MovieChangeListener 
+      writeFailureListener = new DatabaseConnector.MovieChangeListener()
+      {
+         // the fragments show committed changes themselves
+         @Override
+         public void onMoviesChanged(MovieChange change)
+         {
+         }
+
+         @Override
+         public void onWritesFailed(Exception error)
+         {
+            Toast.makeText(MainActivity.this, getString(
+               R.string.writes_failed, error.getMessage()), 
+               Toast.LENGTH_LONG).show();
+         }
+      }; // end writeFailureListener
+
+   // open the database and read the first page of the unfiltered list on
+   // a reader thread; the list's first query takes the page rather than
+   // reading it again, or waits for it if it is still being read
+   private void prefetchMovieList()
+   {
+      DatabaseExecutor.getInstance().executeRead(
+         new DatabaseExecutor.Task<Object>(this, 
+            DatabaseExecutor.PRIORITY_VISIBLE)
+         {
+            @Override
+            protected Object doInBackground()
+            {
+               StartupTrace.begin("MainActivity.prefetchMovieList");
+               
+               try
+               {
+                  databaseConnector.prefetchFirstPage(MovieQuery.ALL, 
+                     PagedMovieAdapter.PAGE_SIZE);
+               }
+               finally
+               {
+                  StartupTrace.end();
+               }
+
+               return null;
+            }
+         });
+   } // end method prefetchMovieList
+
+   // start the work the first screen doesn't need once it is drawn
+   private void deferUntilDrawn()
+   {
+      final View content = findViewById(android.R.id.content);
+      content.getViewTreeObserver().addOnPreDrawListener(
+         new ViewTreeObserver.OnPreDrawListener()
+         {
+            @Override
+            public boolean onPreDraw()
+            {
+               content.getViewTreeObserver().removeOnPreDrawListener(this);
+               StartupTrace.mark("MainActivity.firstFrame");
+
+               // run after the frame about to be drawn
+               content.post(new Runnable()
+                  {
+                     @Override
+                     public void run()
+                     {
+                        // purge and compact later on
+                        DatabaseMaintenance.schedule(MainActivity.this);
+
+                        // index titles left over from a migration or a
+                        // process that died before indexing them
+                        databaseConnector.scheduleTitleIndexing();
+                     }
+                  });
+               return true;
+            }
+         });
+   } // end method deferUntilDrawn
+   
+   // return the bar offering to undo a delete, adding it when first used
+   private UndoBar getUndoBar()
+   {
+      if (undoBar == null)
+         undoBar = new UndoBar(this);
+
+      return undoBar;
    }
    
    // called when MainActivity resumes
@@ -56,6 +189,26 @@ public class MainActivity extends Activity
       }
    }
    
+   // commit queued saves before returning; the app may be stopped and
+   // killed next, before a writer thread task would run
+   @Override
+   protected void onPause()
+   {
+      super.onPause();
+      databaseConnector.commitPendingWritesNow();
+   }
+   
+   // add the database metrics and the startup trace to "adb shell 
+   // dumpsys activity" output
+   @Override
+   public void dump(String prefix, FileDescriptor fd, PrintWriter writer, 
+      String[] args)
+   {
+      super.dump(prefix, fd, writer, args);
+      databaseConnector.dump(prefix, writer);
+      StartupTrace.dump(prefix, writer);
+   }
+   
    // display DetailsFragment for selected Movie
    @Override
    public void onMovieSelected(long rowID)
@@ -97,6 +250,21 @@ public class MainActivity extends Activity
          displayAddEditFragment(R.id.rightPaneContainer, null);
    }
    
+   // display the StatisticsFragment
+   @Override
+   public void onShowStatistics()
+   {
+      int viewID = findViewById(R.id.fragmentContainer) != null ?
+         R.id.fragmentContainer : R.id.rightPaneContainer;
+
+      // use a FragmentTransaction to display the StatisticsFragment
+      FragmentTransaction transaction = 
+         getFragmentManager().beginTransaction();
+      transaction.replace(viewID, new StatisticsFragment());
+      transaction.addToBackStack(null);
+      transaction.commit(); // causes StatisticsFragment to display
+   }
+   
    // display fragment for adding a new or editing an existing Movie
    private void displayAddEditFragment(int viewID, Bundle arguments)
    {
@@ -113,15 +281,51 @@ public class MainActivity extends Activity
       transaction.commit(); // causes AddEditFragment to display
    }
    
-   // return to Movie list when displayed movie deleted
+   // return to Movie list when displayed movie deleted and offer to
+   // undo the delete; the list removes the row itself when the delete is
+   // committed, and inserts it again if the delete is undone
    @Override
-   public void onMovieDeleted()
+   public void onMovieDeleted(final long rowID)
    {
       getFragmentManager().popBackStack(); // removes top of back stack
-      
-      if (findViewById(R.id.fragmentContainer) == null) // tablet
-         movieListFragment.updateMovieList();
-   }
+
+      getUndoBar().show(getString(R.string.movie_deleted), 
+         new UndoBar.UndoListener()
+         {
+            @Override
+            public void onUndo()
+            {
+               // no owner: an undo that has started is always finished
+               DatabaseExecutor.getInstance().executeWrite(
+                  new DatabaseExecutor.Task<Boolean>(null, 
+                     DatabaseExecutor.PRIORITY_VISIBLE)
+                  {
+                     @Override
+                     protected Boolean doInBackground()
+                     {
+                        return databaseConnector.undeleteMovie(rowID);
+                     }
+
+                     @Override
+                     protected void onResult(Boolean restored)
+                     {
+                        if (!restored)
+                           Toast.makeText(MainActivity.this, 
+                              R.string.undelete_failed, 
+                              Toast.LENGTH_LONG).show();
+                     }
+
+                     @Override
+                     protected void onFailed(Exception error)
+                     {
+                        Toast.makeText(MainActivity.this, getString(
+                           R.string.database_failed, error.getMessage()), 
+                           Toast.LENGTH_LONG).show();
+                     }
+                  });
+            } // end method onUndo
+         }); // end call to method show
+   } // end method onMovieDeleted
 
    // display the AddEditFragment to edit an existing movie
    @Override
@@ -133,7 +337,19 @@ public class MainActivity extends Activity
          displayAddEditFragment(R.id.rightPaneContainer, arguments);
    }
 
-   // update GUI after new movie or updated movie saved
+   // display a Movie related to the one shown in its place; Back returns
+   // to the one shown
+   @Override
+   public void onRelatedMovieSelected(long rowID)
+   {
+      if (findViewById(R.id.fragmentContainer) != null) // phone
+         displayMovie(rowID, R.id.fragmentContainer);
+      else // tablet
+         displayMovie(rowID, R.id.rightPaneContainer);
+   }
+
+   // update GUI after new movie or updated movie saved; the list picks up
+   // the saved row through MovieProvider's change notifications
    @Override
    public void onAddEditCompleted(long rowID)
    {
@@ -142,7 +358,6 @@ public class MainActivity extends Activity
       if (findViewById(R.id.fragmentContainer) == null) // tablet
       {
          getFragmentManager().popBackStack(); // removes top of back stack
-         movieListFragment.updateMovieList(); // refresh Movies
 
          // on tablet, display Movie that was just added or edited
          displayMovie(rowID, R.id.rightPaneContainer); 
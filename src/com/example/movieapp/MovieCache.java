@@ -0,0 +1,116 @@
+package com.example.movieapp;
+
+import android.util.LruCache;
+
+// bounded least-recently-used cache of immutable Movies keyed by row ID,
+// sized by an estimate of the memory the Movies use
+public class MovieCache
+{
+   // share of the heap the cache may use
+   private static final int HEAP_FRACTION = 64;
+
+   // rough size of a Movie and of a String without its characters
+   private static final int MOVIE_OVERHEAD = 48;
+   private static final int STRING_OVERHEAD = 40;
+
+   private final LruCache<Long, Movie> cache;
+   private int generation; // bumped by every invalidation
+
+   // constructor; maxBytes bounds the estimated size of the cached Movies
+   public MovieCache(int maxBytes)
+   {
+      cache = new LruCache<Long, Movie>(maxBytes)
+         {
+            @Override
+            protected int sizeOf(Long id, Movie movie)
+            {
+               return estimateSize(movie);
+            }
+         };
+   }
+
+   // return a cache sized as a fraction of this process's heap
+   public static MovieCache forHeap()
+   {
+      return new MovieCache(
+         (int) (Runtime.getRuntime().maxMemory() / HEAP_FRACTION));
+   }
+
+   // return the cached Movie for id, or null on a miss
+   public Movie get(long id)
+   {
+      return cache.get(id);
+   }
+
+   // return the current generation; pass it to putIfCurrent after
+   // reading a Movie from the database
+   public synchronized int getGeneration()
+   {
+      return generation;
+   }
+
+   // cache a Movie read from the database unless a write invalidated
+   // the cache since generation was taken, which could make it stale
+   public synchronized void putIfCurrent(Movie movie, int generation)
+   {
+      if (generation == this.generation)
+         cache.put(movie.getId(), movie);
+   }
+
+   // cache a Movie that was just written
+   public synchronized void put(Movie movie)
+   {
+      ++generation; // reads started before this write may be stale
+      cache.put(movie.getId(), movie);
+   }
+
+   // forget the Movie for id after it changed or was deleted
+   public synchronized void invalidate(long id)
+   {
+      ++generation;
+      cache.remove(id);
+   }
+
+   // forget every Movie
+   public synchronized void invalidateAll()
+   {
+      ++generation;
+      cache.evictAll();
+   }
+
+   public int hitCount()
+   {
+      return cache.hitCount();
+   }
+
+   public int missCount()
+   {
+      return cache.missCount();
+   }
+
+   public int evictionCount()
+   {
+      return cache.evictionCount();
+   }
+
+   // return the estimated bytes used and the limit, e.g. "12345/1048576"
+   public String sizeString()
+   {
+      return cache.size() + "/" + cache.maxSize();
+   }
+
+   // estimate the memory used by a Movie and its Strings
+   private static int estimateSize(Movie movie)
+   {
+      return MOVIE_OVERHEAD + estimateSize(movie.getName()) +
+         estimateSize(movie.getDirector()) +
+         estimateSize(movie.getProducer()) +
+         estimateSize(movie.getActor()) +
+         estimateSize(movie.getActress());
+   }
+
+   private static int estimateSize(String text)
+   {
+      return text == null ? 0 : STRING_OVERHEAD + 2 * text.length();
+   }
+} // end class MovieCache
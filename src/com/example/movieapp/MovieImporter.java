@@ -0,0 +1,71 @@
+package com.example.movieapp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+// streams Movies from a CSV or JSON file into the database in batches
+public class MovieImporter
+{
+   // rows committed per transaction unless a caller chooses otherwise
+   public static final int DEFAULT_BATCH_SIZE = 1000;
+
+   // size of the buffer used to read the import file
+   private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+   private final MovieRepository repository; // receives the rows
+   private final int batchSize; // rows committed per transaction
+
+   // constructor
+   public MovieImporter(MovieRepository repository, int batchSize)
+   {
+      this.repository = repository;
+      this.batchSize = batchSize;
+   }
+
+   // import every Movie in file and return the number of rows inserted
+   public long importFile(File file, 
+      MovieRepository.ProgressListener listener)
+      throws IOException
+   {
+      MovieReader reader = openReader(file);
+
+      try
+      {
+         return repository.insertMovies(reader, batchSize, listener);
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   // return a MovieReader for file, chosen by its extension; a file
+   // ending in .gz is decompressed first, as MovieExporter writes them
+   public static MovieReader openReader(File file) throws IOException
+   {
+      InputStream stream = new FileInputStream(file);
+      String fileName = file.getName().toLowerCase(Locale.US);
+
+      if (fileName.endsWith(".gz"))
+      {
+         fileName = fileName.substring(0, fileName.length() - 3);
+         stream = new GZIPInputStream(stream, READ_BUFFER_SIZE);
+      }
+
+      Reader in = new BufferedReader(new InputStreamReader(stream, "UTF-8"),
+         READ_BUFFER_SIZE);
+
+      if (fileName.endsWith(".json") || fileName.endsWith(".jsonl") ||
+         fileName.endsWith(".ndjson"))
+         return new JsonMovieReader(in);
+
+      return new CsvMovieReader(in);
+   }
+} // end class MovieImporter
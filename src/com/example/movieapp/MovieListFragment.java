@@ -1,19 +1,44 @@
 package com.example.movieapp;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
 import android.app.ListFragment;
-import android.database.Cursor;
-import android.os.AsyncTask;
+import android.app.ProgressDialog;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.database.ContentObserver;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
-import android.widget.CursorAdapter;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.ListView;
-import android.widget.SimpleCursorAdapter;
+import android.widget.SearchView;
+import android.widget.SearchView.OnQueryTextListener;
+import android.widget.Spinner;
+import android.widget.Toast;
 
 public class MovieListFragment extends ListFragment
 {
@@ -25,12 +50,44 @@ public class MovieListFragment extends ListFragment
 
       // called when user decides to add a Movie
       public void onAddMovie();
+
+      // called when user asks for the collection's statistics
+      public void onShowStatistics();
    }
    
+   // files looked for in the app's external files folder by Import
+   private static final String[] IMPORT_FILE_NAMES = 
+      { "movies.csv", "movies.json", "movies.jsonl" };
+
+   // files written to the app's external files folder by Export, one
+   // per entry of R.array.export_formats
+   private static final String[] EXPORT_FILE_NAMES = { "export.csv", 
+      "export.csv.gz", "export.jsonl", "export.jsonl.gz" };
+
+   // folder in the app's external files folder holding Back Up's snapshots
+   private static final String SNAPSHOT_FOLDER = "snapshots";
+
+   // most search results shown, best matches first
+   private static final int SEARCH_LIMIT = 200;
+
+   // most pairs Find Duplicates lists, likeliest first
+   private static final int DUPLICATES_LIMIT = 200;
+
+   // notifications arriving this close together are applied as one change
+   private static final long CHANGE_DELAY_MS = 30;
+
    private MovieListFragmentListener listener; 
+   private DatabaseConnector databaseConnector; // shared database access
    
    private ListView movieListView; // the ListActivity's ListView
-   private CursorAdapter movieAdapter; // adapter for ListView
+   private PagedMovieAdapter movieAdapter; // adapter for ListView
+   private String searchQuery = ""; // text in the search box, "" for all
+   private MovieQuery movieQuery = MovieQuery.ALL; // filters and sort order
+
+   private final Handler handler = new Handler(); // GUI thread
+   private final Set<Long> changedIDs = new HashSet<Long>(); // not yet shown
+   private boolean resetPending; // every row may have changed
+   private boolean changePosted; // applyChanges is waiting to run
    
    // set movieListFragmentListener when fragment attached   
    @Override
@@ -38,20 +95,47 @@ public class MovieListFragment extends ListFragment
    {
       super.onAttach(activity);
       listener = (MovieListFragmentListener) activity;
+
+      databaseConnector = DatabaseConnector.getInstance(activity);
+      activity.getContentResolver().registerContentObserver(
+         MovieProvider.CONTENT_URI, true, movieObserver);
    }
 
    // remove MovieListFragmentListener when Fragment detached
    @Override
    public void onDetach()
    {
+      getActivity().getContentResolver().unregisterContentObserver(
+         movieObserver);
       super.onDetach();
+      handler.removeCallbacks(applyChanges);
+      changePosted = false;
       listener = null;
+      DatabaseExecutor.getInstance().cancelAll(this); // drop pending loads
+   }
+
+   // hold a reference to the shared connection while created; the
+   // fragment is retained, so a configuration change doesn't release it
+   @Override
+   public void onCreate(Bundle savedInstanceState)
+   {
+      super.onCreate(savedInstanceState);
+      databaseConnector.open();
+   }
+
+   // release the shared connection once the fragment is gone for good
+   @Override
+   public void onDestroy()
+   {
+      super.onDestroy();
+      databaseConnector.close();
    }
 
    // called after View is created
    @Override
    public void onViewCreated(View view, Bundle savedInstanceState)
    {
+      StartupTrace.begin("MovieListFragment.onViewCreated");
       super.onViewCreated(view, savedInstanceState);
       setRetainInstance(true); // save fragment across config changes
       setHasOptionsMenu(true); // this fragment has menu items to display
@@ -64,12 +148,17 @@ public class MovieListFragment extends ListFragment
       movieListView.setOnItemClickListener(viewMovieListener);      
       movieListView.setChoiceMode(ListView.CHOICE_MODE_SINGLE);
       
-      // map each Movie's name to a TextView in the ListView layout
-      String[] from = new String[] { "name" };
-      int[] to = new int[] { android.R.id.text1 };
-      movieAdapter = new SimpleCursorAdapter(getActivity(), 
-         android.R.layout.simple_list_item_1, null, from, to, 0);
+      // adapter loads pages of Movies as the user scrolls; it is kept when
+      // the view is recreated so the loaded pages and edits survive
+      if (movieAdapter == null)
+         movieAdapter = new PagedMovieAdapter(DatabaseExecutor.getInstance(),
+            databaseConnector, this, PosterLoader.getInstance(getActivity()),
+            getResources().getDimensionPixelSize(R.dimen.poster_thumb_width),
+            getResources().getDimensionPixelSize(
+               R.dimen.poster_thumb_height));
       setListAdapter(movieAdapter); // set adapter that supplies data
+      movieListView.setOnScrollListener(scrollListener);
+      StartupTrace.end();
    }
 
    // responds to the user touching a Movie's name in the ListView
@@ -83,49 +172,169 @@ public class MovieListFragment extends ListFragment
       } 
    }; // end viewMovieListener
 
-   // when fragment resumes, use a GetMoviesTask to load Movies 
+   // tells the adapter when the list is flung, so rows flying past
+   // aren't given details
+   private final OnScrollListener scrollListener = new OnScrollListener()
+   {
+      @Override
+      public void onScrollStateChanged(AbsListView view, int scrollState)
+      {
+         movieAdapter.setFlinging(
+            scrollState == OnScrollListener.SCROLL_STATE_FLING);
+      }
+
+      @Override
+      public void onScroll(AbsListView view, int firstVisibleItem, 
+         int visibleItemCount, int totalItemCount)
+      {
+      }
+   }; // end scrollListener
+
+   // when fragment first resumes, load the first page of Movies; after
+   // that the list is kept current by movieObserver
    @Override
    public void onResume() 
    {
       super.onResume(); 
-      new GetMoviesTask().execute((Object[]) null);
+      
+      if (!movieAdapter.hasSource())
+         updateMovieList();
    }
 
-   // performs database query outside GUI thread
-   private class GetMoviesTask extends AsyncTask<Object, Object, Cursor> 
+   // collects the rows MovieProvider says were inserted, updated or
+   // deleted, and has them applied to the list shortly after, together
+   private final ContentObserver movieObserver = new ContentObserver(handler)
+   {
+      @Override
+      public void onChange(boolean selfChange)
+      {
+         onChange(selfChange, null);
+      }
+
+      @Override
+      public void onChange(boolean selfChange, Uri uri)
+      {
+         if (uri == null || uri.equals(MovieProvider.CONTENT_URI))
+            resetPending = true; // too many rows changed to name them
+         else
+            changedIDs.add(ContentUris.parseId(uri));
+
+         if (!changePosted)
+         {
+            changePosted = true;
+            handler.postDelayed(applyChanges, CHANGE_DELAY_MS);
+         }
+      }
+   }; // end movieObserver
+
+   // applies the changes movieObserver collected; the adapter reads each
+   // changed row again, which finds whether it was inserted, updated or
+   // deleted
+   private final Runnable applyChanges = new Runnable()
+   {
+      @Override
+      public void run()
+      {
+         changePosted = false;
+
+         if (movieAdapter != null && resetPending)
+            movieAdapter.applyChange(new MovieChange(MovieChange.RESET));
+         else if (movieAdapter != null && !changedIDs.isEmpty())
+         {
+            long[] ids = new long[changedIDs.size()];
+            int i = 0;
+
+            for (long id : changedIDs)
+               ids[i++] = id;
+
+            movieAdapter.applyChange(
+               new MovieChange(MovieChange.UPDATED, ids));
+         }
+
+         resetPending = false;
+         changedIDs.clear();
+      }
+   }; // end applyChanges
+
+   // pages through the Movies matching a MovieQuery, in its order
+   private class QuerySource implements MoviePageSource
    {
-      DatabaseConnector databaseConnector = 
-         new DatabaseConnector(getActivity());
+      private final MovieQuery query;
+
+      // constructor
+      public QuerySource(MovieQuery query)
+      {
+         this.query = query;
+      }
 
-      // open database and return Cursor for all Movies
       @Override
-      protected Cursor doInBackground(Object... params)
+      public List<MovieSummary> loadPage(MovieSummary after, int limit)
       {
-         databaseConnector.open();
-         return databaseConnector.getAllMovies(); 
+         return databaseConnector.queryMovies(query, after, null, limit);
       } 
 
-      // use the Cursor returned from the doInBackground method
       @Override
-      protected void onPostExecute(Cursor result)
+      public List<MovieSummary> loadRange(MovieSummary after, 
+         MovieSummary last)
       {
-         movieAdapter.changeCursor(result); // set the adapter's Cursor
-         databaseConnector.close();
+         return databaseConnector.queryMovies(query, after, last, 0);
       } 
-   } // end class GetMoviesTask
 
-   // when fragment stops, close Cursor and remove from MovieAdapter 
-   @Override
-   public void onStop() 
+      // rows that no longer match the filters are left out, so an edit
+      // can move a row out of the list
+      @Override
+      public List<MovieSummary> loadRows(long[] ids)
+      {
+         return databaseConnector.queryMovieRows(query, ids);
+      } 
+
+      @Override
+      public int compare(MovieSummary first, MovieSummary second)
+      {
+         return query.compare(first, second);
+      }
+   } // end class QuerySource
+
+   // the best matches for a search, ranked, as a single page
+   private class SearchSource implements MoviePageSource
    {
-      Cursor cursor = movieAdapter.getCursor(); // get current Cursor
-      movieAdapter.changeCursor(null); // adapter now has no Cursor
+      private final String query;
       
-      if (cursor != null) 
-         cursor.close(); // release the Cursor's resources
+      // constructor
+      public SearchSource(String query)
+      {
+         this.query = query;
+      }
       
-      super.onStop();
-   } 
+      @Override
+      public List<MovieSummary> loadPage(MovieSummary after, int limit)
+      {
+         if (after != null)
+            return Collections.emptyList(); // all results are on page one
+
+         return databaseConnector.searchMovies(query, SEARCH_LIMIT);
+      }
+
+      @Override
+      public List<MovieSummary> loadRange(MovieSummary after, 
+         MovieSummary last)
+      {
+         return loadPage(after, SEARCH_LIMIT);
+      }
+
+      // ranking depends on the whole result, so changes rerun the search
+      @Override
+      public List<MovieSummary> loadRows(long[] ids)
+      {
+         return null;
+      }
+
+      @Override
+      public int compare(MovieSummary first, MovieSummary second)
+      {
+         return 0; // never used; loadRows always asks for a reload
+      }
+   } // end class SearchSource
 
    // display this fragment's menu items
    @Override
@@ -133,8 +342,32 @@ public class MovieListFragment extends ListFragment
    {
       super.onCreateOptionsMenu(menu, inflater);
       inflater.inflate(R.menu.fragment_movie_list_menu, menu);
+
+      // search the list as the user types
+      SearchView searchView = 
+         (SearchView) menu.findItem(R.id.action_search).getActionView();
+      searchView.setQueryHint(getString(R.string.search_hint));
+      searchView.setOnQueryTextListener(searchListener);
    }
 
+   // re-runs the query each time the search text changes
+   OnQueryTextListener searchListener = new OnQueryTextListener()
+   {
+      @Override
+      public boolean onQueryTextChange(String newText)
+      {
+         searchQuery = newText.trim();
+         updateMovieList();
+         return true;
+      }
+
+      @Override
+      public boolean onQueryTextSubmit(String query)
+      {
+         return onQueryTextChange(query);
+      }
+   }; // end searchListener
+
    // handle choice from options menu
    @Override
    public boolean onOptionsItemSelected(MenuItem item) 
@@ -144,15 +377,708 @@ public class MovieListFragment extends ListFragment
          case R.id.action_add:
             listener.onAddMovie();
             return true;
+         case R.id.action_filter:
+            showFilterDialog();
+            return true;
+         case R.id.action_statistics:
+            listener.onShowStatistics();
+            return true;
+         case R.id.action_import:
+            importMovies();
+            return true;
+         case R.id.action_export:
+            showExportDialog();
+            return true;
+         case R.id.action_back_up:
+            backUpMovies();
+            return true;
+         case R.id.action_restore:
+            showRestoreDialog();
+            return true;
+         case R.id.action_find_duplicates:
+            findDuplicates();
+            return true;
       }
       
       return super.onOptionsItemSelected(item); // call super's method
    }
    
+   // import a movie file from the app's external files folder
+   private void importMovies()
+   {
+      File folder = getActivity().getExternalFilesDir(null);
+      File importFile = null;
+
+      if (folder != null)
+      {
+         for (String fileName : IMPORT_FILE_NAMES)
+         {
+            File file = new File(folder, fileName);
+
+            if (file.isFile())
+            {
+               importFile = file;
+               break;
+            }
+         }
+      }
+
+      if (importFile == null) // nothing to import, tell the user where
+      {
+         Toast.makeText(getActivity(), 
+            getString(R.string.import_no_file, folder), 
+            Toast.LENGTH_LONG).show();
+         return;
+      }
+
+      ImportMoviesTask task = new ImportMoviesTask(getActivity(), importFile);
+      task.showProgress();
+      DatabaseExecutor.getInstance().executeWrite(task);
+   } // end method importMovies
+
+   // performs a bulk import outside GUI thread, reporting progress; it has
+   // no owner, so leaving the fragment doesn't stop a half-done import
+   private class ImportMoviesTask extends DatabaseExecutor.Task<Long> 
+   {
+      private final Context context;
+      private final File file;
+      private ProgressDialog progressDialog;
+      private IOException error; // set if the import failed
+
+      // constructor
+      public ImportMoviesTask(Context context, File file)
+      {
+         super(null, DatabaseExecutor.PRIORITY_BACKGROUND);
+         this.context = context;
+         this.file = file;
+      }
+
+      // show a progress dialog while the import runs
+      public void showProgress()
+      {
+         progressDialog = new ProgressDialog(context);
+         progressDialog.setTitle(R.string.import_title);
+         progressDialog.setCancelable(false);
+         progressDialog.show();
+      }
+
+      // stream the file into the database in batched transactions
+      @Override
+      protected Long doInBackground()
+      {
+         MovieImporter importer = new MovieImporter(databaseConnector, 
+            MovieImporter.DEFAULT_BATCH_SIZE);
+
+         try
+         {
+            return importer.importFile(file, 
+               new MovieRepository.ProgressListener()
+               {
+                  @Override
+                  public void onProgress(long rowCount, double rowsPerSecond)
+                  {
+                     publishProgress(rowCount, (long) rowsPerSecond);
+                  }
+               });
+         }
+         catch (IOException e)
+         {
+            error = e;
+            return null;
+         }
+      } 
+
+      // display the number of rows imported so far
+      @Override
+      protected void onProgressUpdate(long... values)
+      {
+         progressDialog.setMessage(context.getString(
+            R.string.import_progress, values[0], values[1]));
+      }
+
+      // report the result; the list reloads itself after the import
+      @Override
+      protected void onResult(Long result)
+      {
+         progressDialog.dismiss();
+
+         String message = error == null ? 
+            context.getString(R.string.import_complete, result) :
+            context.getString(R.string.import_failed, error.getMessage());
+         Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+      } 
+
+      // the batches committed before the failure remain
+      @Override
+      protected void onFailed(Exception error)
+      {
+         progressDialog.dismiss();
+         Toast.makeText(context, context.getString(R.string.import_failed, 
+            error.getMessage()), Toast.LENGTH_LONG).show();
+      }
+   } // end class ImportMoviesTask
+
+   // let the user choose the format to export the movies in
+   private void showExportDialog()
+   {
+      DialogFragment exportDialog = 
+         new DialogFragment()
+         {
+            @Override
+            public Dialog onCreateDialog(Bundle savedInstanceState)
+            {
+               AlertDialog.Builder builder = 
+                  new AlertDialog.Builder(getActivity());
+               builder.setTitle(R.string.export_format_title);
+               builder.setItems(R.array.export_formats, 
+                  new DialogInterface.OnClickListener()
+                  {
+                     @Override
+                     public void onClick(DialogInterface dialog, int which)
+                     {
+                        exportMovies(EXPORT_FILE_NAMES[which]);
+                     }
+                  });
+               builder.setNegativeButton(R.string.button_cancel, null);
+               return builder.create();
+            }
+         };
+
+      exportDialog.show(getFragmentManager(), "export movies");
+   } // end method showExportDialog
+
+   // export every movie to fileName in the app's external files folder
+   private void exportMovies(String fileName)
+   {
+      File folder = getActivity().getExternalFilesDir(null);
+
+      if (folder == null) // external storage isn't mounted
+      {
+         Toast.makeText(getActivity(), R.string.export_no_folder, 
+            Toast.LENGTH_LONG).show();
+         return;
+      }
+
+      ExportMoviesTask task = 
+         new ExportMoviesTask(getActivity(), new File(folder, fileName));
+      task.showProgress();
+      DatabaseExecutor.getInstance().executeRead(task);
+   } // end method exportMovies
+
+   // streams the movies to a file outside GUI thread, reporting progress;
+   // like ImportMoviesTask it has no owner, and only the dialog's Cancel
+   // button stops it
+   private class ExportMoviesTask extends DatabaseExecutor.Task<Long> 
+   {
+      private final Context context;
+      private final File file;
+      private final MovieExporter exporter;
+      private ProgressDialog progressDialog;
+      private IOException error; // set if the export failed or was cancelled
+
+      // constructor
+      public ExportMoviesTask(Context context, File file)
+      {
+         super(null, DatabaseExecutor.PRIORITY_BACKGROUND);
+         this.context = context;
+         this.file = file;
+         exporter = new MovieExporter(databaseConnector, 
+            MovieExporter.DEFAULT_BATCH_SIZE);
+      }
+
+      // show a progress dialog with a Cancel button while the export runs
+      public void showProgress()
+      {
+         progressDialog = new ProgressDialog(context);
+         progressDialog.setTitle(R.string.export_title);
+         progressDialog.setCancelable(false);
+         progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, 
+            context.getString(R.string.button_cancel), 
+            new DialogInterface.OnClickListener()
+            {
+               @Override
+               public void onClick(DialogInterface dialog, int button)
+               {
+                  exporter.cancel(); // onResult reports the cancellation
+               }
+            });
+         progressDialog.show();
+      }
+
+      // write the movies to the file in batches
+      @Override
+      protected Long doInBackground()
+      {
+         try
+         {
+            return exporter.exportFile(file, 
+               new MovieRepository.ProgressListener()
+               {
+                  @Override
+                  public void onProgress(long rowCount, double rowsPerSecond)
+                  {
+                     publishProgress(rowCount, (long) rowsPerSecond);
+                  }
+               });
+         }
+         catch (IOException e)
+         {
+            error = e;
+            return null;
+         }
+      } 
+
+      // display the number of rows exported so far
+      @Override
+      protected void onProgressUpdate(long... values)
+      {
+         progressDialog.setMessage(context.getString(
+            R.string.export_progress, values[0], values[1]));
+      }
+
+      // report the result
+      @Override
+      protected void onResult(Long result)
+      {
+         progressDialog.dismiss();
+
+         String message;
+
+         if (error == null)
+            message = context.getString(R.string.export_complete, result, 
+               file.getPath());
+         else if (error instanceof InterruptedIOException)
+            message = context.getString(R.string.export_cancelled);
+         else
+            message = context.getString(R.string.export_failed, 
+               error.getMessage());
+
+         Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+      } 
+
+      @Override
+      protected void onFailed(Exception error)
+      {
+         progressDialog.dismiss();
+         Toast.makeText(context, context.getString(R.string.export_failed, 
+            error.getMessage()), Toast.LENGTH_LONG).show();
+      }
+   } // end class ExportMoviesTask
+
+   // return the snapshots in the app's external files folder, or null,
+   // after telling the user, if external storage isn't mounted
+   private MovieSnapshots getSnapshots()
+   {
+      File folder = getActivity().getExternalFilesDir(SNAPSHOT_FOLDER);
+
+      if (folder == null)
+      {
+         Toast.makeText(getActivity(), R.string.snapshot_no_folder, 
+            Toast.LENGTH_LONG).show();
+         return null;
+      }
+
+      return new MovieSnapshots(databaseConnector, folder);
+   } // end method getSnapshots
+
+   // write a snapshot of the database outside GUI thread
+   private void backUpMovies()
+   {
+      final MovieSnapshots snapshots = getSnapshots();
+
+      if (snapshots == null)
+         return;
+
+      final Context context = getActivity();
+
+      // no owner: a backup that has started is always finished
+      DatabaseExecutor.getInstance().executeWrite(
+         new DatabaseExecutor.Task<File>(null, 
+            DatabaseExecutor.PRIORITY_BACKGROUND)
+         {
+            private IOException error; // set if the backup failed
+
+            @Override
+            protected File doInBackground()
+            {
+               try
+               {
+                  return snapshots.backUp();
+               }
+               catch (IOException e)
+               {
+                  error = e;
+                  return null;
+               }
+            }
+
+            @Override
+            protected void onResult(File result)
+            {
+               String message = error == null ? 
+                  context.getString(R.string.back_up_complete, 
+                     result.getPath()) :
+                  context.getString(R.string.back_up_failed, 
+                     error.getMessage());
+               Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            protected void onFailed(Exception error)
+            {
+               Toast.makeText(context, context.getString(
+                  R.string.back_up_failed, error.getMessage()), 
+                  Toast.LENGTH_LONG).show();
+            }
+         });
+   } // end method backUpMovies
+
+   // ask the user to confirm before the movies are replaced
+   private void showRestoreDialog()
+   {
+      DialogFragment restoreDialog = 
+         new DialogFragment()
+         {
+            @Override
+            public Dialog onCreateDialog(Bundle savedInstanceState)
+            {
+               AlertDialog.Builder builder = 
+                  new AlertDialog.Builder(getActivity());
+               builder.setTitle(R.string.confirm_title);
+               builder.setMessage(R.string.restore_confirm_message);
+               builder.setPositiveButton(R.string.button_restore, 
+                  new DialogInterface.OnClickListener()
+                  {
+                     @Override
+                     public void onClick(DialogInterface dialog, int button)
+                     {
+                        restoreMovies();
+                     }
+                  });
+               builder.setNegativeButton(R.string.button_cancel, null);
+               return builder.create();
+            }
+         };
+
+      restoreDialog.show(getFragmentManager(), "restore movies");
+   } // end method showRestoreDialog
+
+   // replace the movies with the latest backup outside GUI thread; the
+   // list reloads itself after the restore
+   private void restoreMovies()
+   {
+      final MovieSnapshots snapshots = getSnapshots();
+
+      if (snapshots == null)
+         return;
+
+      final Context context = getActivity();
+      final ProgressDialog progressDialog = new ProgressDialog(context);
+      progressDialog.setTitle(R.string.restore_title);
+      progressDialog.setIndeterminate(true);
+      progressDialog.setCancelable(false);
+      progressDialog.show();
+
+      DatabaseExecutor.getInstance().executeWrite(
+         new DatabaseExecutor.Task<Long>(null, 
+            DatabaseExecutor.PRIORITY_BACKGROUND)
+         {
+            private IOException error; // set if the restore failed
+
+            @Override
+            protected Long doInBackground()
+            {
+               try
+               {
+                  return snapshots.restore();
+               }
+               catch (IOException e)
+               {
+                  error = e;
+                  return null;
+               }
+            }
+
+            @Override
+            protected void onResult(Long result)
+            {
+               progressDialog.dismiss();
+
+               String message = error == null ? 
+                  context.getString(R.string.restore_complete, result) :
+                  context.getString(R.string.restore_failed, 
+                     error.getMessage());
+               Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            protected void onFailed(Exception error)
+            {
+               progressDialog.dismiss();
+               Toast.makeText(context, context.getString(
+                  R.string.restore_failed, error.getMessage()), 
+                  Toast.LENGTH_LONG).show();
+            }
+         });
+   } // end method restoreMovies
+
+   // look for likely duplicates across the whole collection outside GUI
+   // thread, indexing any titles not yet indexed first, then list them
+   private void findDuplicates()
+   {
+      final Context context = getActivity();
+      final ProgressDialog progressDialog = new ProgressDialog(context);
+      progressDialog.setTitle(R.string.duplicates_searching);
+      progressDialog.setIndeterminate(true);
+      progressDialog.setCancelable(false);
+      progressDialog.show();
+
+      // a write task, so the index can't change while it is read
+      DatabaseExecutor.getInstance().executeWrite(
+         new DatabaseExecutor.Task<String[]>(this, 
+            DatabaseExecutor.PRIORITY_BACKGROUND)
+         {
+            private long[] ids; // the first Movie of each pair
+
+            @Override
+            protected String[] doInBackground()
+            {
+               databaseConnector.indexTitles(0);
+               List<MovieDuplicates.Match> matches = 
+                  databaseConnector.findAllDuplicates(DUPLICATES_LIMIT);
+               long[] pairIds = new long[matches.size() * 2];
+
+               for (int i = 0; i < matches.size(); ++i)
+               {
+                  pairIds[i * 2] = matches.get(i).id;
+                  pairIds[i * 2 + 1] = matches.get(i).otherId;
+               }
+
+               Map<Long, String> names = new HashMap<Long, String>();
+
+               for (Movie movie : databaseConnector.getMovies(pairIds))
+                  names.put(movie.getId(), movie.getName());
+
+               // "first / second" for each pair whose Movies both remain
+               List<String> pairs = new ArrayList<String>();
+               List<Long> pairFirstIds = new ArrayList<Long>();
+
+               for (MovieDuplicates.Match match : matches)
+               {
+                  String name = names.get(match.id);
+                  String otherName = names.get(match.otherId);
+
+                  if (name != null && otherName != null)
+                  {
+                     pairs.add(name + " / " + otherName);
+                     pairFirstIds.add(match.id);
+                  }
+               }
+
+               ids = new long[pairFirstIds.size()];
+
+               for (int i = 0; i < ids.length; ++i)
+                  ids[i] = pairFirstIds.get(i);
+
+               return pairs.toArray(new String[pairs.size()]);
+            } // end method doInBackground
+
+            @Override
+            protected void onResult(String[] result)
+            {
+               progressDialog.dismiss();
+
+               if (result.length == 0)
+                  Toast.makeText(context, R.string.duplicates_none, 
+                     Toast.LENGTH_SHORT).show();
+               else
+                  showDuplicatesDialog(result, ids);
+            }
+
+            @Override
+            protected void onFailed(Exception error)
+            {
+               progressDialog.dismiss();
+               Toast.makeText(context, context.getString(
+                  R.string.database_failed, error.getMessage()), 
+                  Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            protected void onCancelled()
+            {
+               progressDialog.dismiss();
+            }
+         });
+   } // end method findDuplicates
+
+   // list the likely duplicate pairs; choosing one shows its first Movie
+   private void showDuplicatesDialog(final String[] pairs, 
+      final long[] ids)
+   {
+      DialogFragment duplicatesDialog = 
+         new DialogFragment()
+         {
+            @Override
+            public Dialog onCreateDialog(Bundle savedInstanceState)
+            {
+               AlertDialog.Builder builder = 
+                  new AlertDialog.Builder(getActivity());
+               builder.setTitle(R.string.duplicates_title);
+               builder.setItems(pairs, 
+                  new DialogInterface.OnClickListener()
+                  {
+                     @Override
+                     public void onClick(DialogInterface dialog, int which)
+                     {
+                        if (listener != null)
+                           listener.onMovieSelected(ids[which]);
+                     }
+                  });
+               builder.setNegativeButton(R.string.button_cancel, null);
+               return builder.create();
+            }
+         };
+
+      duplicatesDialog.show(getFragmentManager(), "duplicates");
+   } // end method showDuplicatesDialog
+
+   // let the user choose filters and a sort order for the list
+   private void showFilterDialog()
+   {
+      DialogFragment filterDialog = 
+         new DialogFragment()
+         {
+            @Override
+            public Dialog onCreateDialog(Bundle savedInstanceState)
+            {
+               final View view = getActivity().getLayoutInflater().inflate(
+                  R.layout.dialog_filter, null);
+               showQuery(view, movieQuery);
+
+               AlertDialog.Builder builder = 
+                  new AlertDialog.Builder(getActivity());
+               builder.setTitle(R.string.filter_title);
+               builder.setView(view);
+               builder.setPositiveButton(R.string.button_apply, 
+                  new DialogInterface.OnClickListener()
+                  {
+                     @Override
+                     public void onClick(DialogInterface dialog, int button)
+                     {
+                        MovieQuery query = readQuery(view);
+
+                        if (query == null) // a number couldn't be read
+                           Toast.makeText(getActivity(), 
+                              R.string.error_filter, Toast.LENGTH_LONG).show();
+                        else
+                           setMovieQuery(query);
+                     }
+                  });
+               builder.setNeutralButton(R.string.button_clear, 
+                  new DialogInterface.OnClickListener()
+                  {
+                     @Override
+                     public void onClick(DialogInterface dialog, int button)
+                     {
+                        setMovieQuery(MovieQuery.ALL);
+                     }
+                  });
+               builder.setNegativeButton(R.string.button_cancel, null);
+               return builder.create();
+            }
+         };
+
+      filterDialog.show(getFragmentManager(), "filter movies");
+   } // end method showFilterDialog
+
+   // fill the filter dialog's fields from query
+   private static void showQuery(View view, MovieQuery query)
+   {
+      setText(view, R.id.filterDirectorEditText, query.getDirector());
+      setText(view, R.id.filterPersonEditText, query.getPerson());
+      setText(view, R.id.filterMinYearEditText, 
+         query.getMinYear() == MovieQuery.NO_YEAR ? 
+            "" : String.valueOf(query.getMinYear()));
+      setText(view, R.id.filterMaxYearEditText, 
+         query.getMaxYear() == MovieQuery.NO_YEAR ? 
+            "" : String.valueOf(query.getMaxYear()));
+      setText(view, R.id.filterMinBudgetEditText, 
+         MovieFormat.formatBudget(query.getMinBudget()));
+      setText(view, R.id.filterMaxBudgetEditText, 
+         MovieFormat.formatBudget(query.getMaxBudget()));
+      ((Spinner) view.findViewById(R.id.filterSortSpinner)).setSelection(
+         query.getSort());
+      ((CheckBox) view.findViewById(R.id.filterDescendingCheckBox))
+         .setChecked(query.isDescending());
+   }
+
+   // return the MovieQuery described by the filter dialog's fields, or
+   // null if a year or budget can't be read
+   private static MovieQuery readQuery(View view)
+   {
+      try
+      {
+         int minYear = readYear(view, R.id.filterMinYearEditText);
+         int maxYear = readYear(view, R.id.filterMaxYearEditText);
+         long minBudget = MovieFormat.parseBudget(
+            getText(view, R.id.filterMinBudgetEditText));
+         long maxBudget = MovieFormat.parseBudget(
+            getText(view, R.id.filterMaxBudgetEditText));
+
+         if (minBudget == MovieFormat.UNPARSEABLE || 
+            maxBudget == MovieFormat.UNPARSEABLE)
+            return null;
+
+         return new MovieQuery.Builder()
+            .setDirector(getText(view, R.id.filterDirectorEditText))
+            .setPerson(getText(view, R.id.filterPersonEditText))
+            .setYears(minYear, maxYear)
+            .setBudgets(minBudget, maxBudget)
+            .setSort(((Spinner) view.findViewById(
+               R.id.filterSortSpinner)).getSelectedItemPosition(),
+               ((CheckBox) view.findViewById(
+                  R.id.filterDescendingCheckBox)).isChecked())
+            .build();
+      }
+      catch (NumberFormatException e)
+      {
+         return null;
+      }
+   } // end method readQuery
+
+   // return the year typed in field viewID, or NO_YEAR if it is empty
+   private static int readYear(View view, int viewID)
+   {
+      String text = getText(view, viewID);
+      return text.length() == 0 ? MovieQuery.NO_YEAR : Integer.parseInt(text);
+   }
+
+   // return the trimmed text of the EditText viewID
+   private static String getText(View view, int viewID)
+   {
+      return ((EditText) view.findViewById(viewID)).getText().toString()
+         .trim();
+   }
+
+   // set the text of the EditText viewID
+   private static void setText(View view, int viewID, String text)
+   {
+      ((EditText) view.findViewById(viewID)).setText(text);
+   }
+
+   // show the Movies matching query, in its order
+   private void setMovieQuery(MovieQuery query)
+   {
+      movieQuery = query;
+      updateMovieList();
+   }
+
    // update data set
    public void updateMovieList()
    {
-      new GetMoviesTask().execute((Object[]) null);
+      movieAdapter.setSource(searchQuery.length() == 0 ? 
+         new QuerySource(movieQuery) : new SearchSource(searchQuery));
    }
 } // end class MovieListFragment
 
@@ -0,0 +1,24 @@
+package com.example.movieapp;
+
+import java.util.List;
+
+// supplies the movie list one page at a time; rows are in a fixed order
+// and a page starts just after a known row (keyset pagination), so
+// loading a page never depends on how many rows come before it
+public interface MoviePageSource
+{
+   // return up to limit rows that sort after after, or from the first
+   // row if after is null
+   public List<MovieSummary> loadPage(MovieSummary after, int limit);
+
+   // return the rows that sort after after (or from the first row if
+   // null) up to and including last; used to reload a dropped page
+   public List<MovieSummary> loadRange(MovieSummary after, MovieSummary last);
+
+   // return the current rows with the given ids that belong in this list,
+   // or null if the list can't be updated row by row and must be reloaded
+   public List<MovieSummary> loadRows(long[] ids);
+
+   // compare two rows by the order of this list
+   public int compare(MovieSummary first, MovieSummary second);
+}
@@ -0,0 +1,133 @@
+package com.example.movieapp;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.net.Uri;
+
+// the notification channel for the movies: every committed write, whoever
+// made it, is announced on movieUri(id) for each row it changed, or on
+// CONTENT_URI for a large change, so an observer of one movie hears only
+// about that movie and an observer of CONTENT_URI with descendants about
+// every change. The app reads and writes the movies through the shared
+// DatabaseConnector, so the URIs carry no data: query, insert, update and
+// delete are refused.
+public class MovieProvider extends ContentProvider
+{
+   public static final String AUTHORITY = "com.example.movieapp.provider";
+   public static final Uri CONTENT_URI =
+      Uri.parse("content://" + AUTHORITY + "/movies");
+
+   // MIME types of CONTENT_URI and of a movieUri
+   public static final String CONTENT_TYPE =
+      ContentResolver.CURSOR_DIR_BASE_TYPE +
+      "/vnd.com.example.movieapp.movie";
+   public static final String CONTENT_ITEM_TYPE =
+      ContentResolver.CURSOR_ITEM_BASE_TYPE +
+      "/vnd.com.example.movieapp.movie";
+
+   // a change to more rows than this is announced on CONTENT_URI alone
+   private static final int MAX_ROW_NOTIFICATIONS = 64;
+
+   // kinds of URI
+   private static final int MOVIES = 1;
+   private static final int MOVIE_ID = 2;
+   private static final UriMatcher uriMatcher =
+      new UriMatcher(UriMatcher.NO_MATCH);
+
+   static
+   {
+      uriMatcher.addURI(AUTHORITY, "movies", MOVIES);
+      uriMatcher.addURI(AUTHORITY, "movies/#", MOVIE_ID);
+   }
+
+   // return the URI of the Movie with the given row ID
+   public static Uri movieUri(long id)
+   {
+      return ContentUris.withAppendedId(CONTENT_URI, id);
+   }
+
+   // announces each committed change; runs on the GUI thread
+   private final DatabaseConnector.MovieChangeListener notifier =
+      new DatabaseConnector.MovieChangeListener()
+      {
+         @Override
+         public void onMoviesChanged(MovieChange change)
+         {
+            ContentResolver resolver = getContext().getContentResolver();
+            long[] ids = change.getIds();
+
+            if (change.getType() == MovieChange.RESET ||
+               ids.length > MAX_ROW_NOTIFICATIONS)
+            {
+               resolver.notifyChange(CONTENT_URI, null, false);
+               return;
+            }
+
+            for (long id : ids)
+               resolver.notifyChange(movieUri(id), null, false);
+         }
+
+         // nothing changed, so there is nothing to announce
+         @Override
+         public void onWritesFailed(Exception error)
+         {
+         }
+      }; // end notifier
+
+   // a provider lives as long as its process, so notifier stays
+   // registered with the shared connector throughout
+   @Override
+   public boolean onCreate()
+   {
+      StartupTrace.begin("MovieProvider.onCreate");
+      DatabaseConnector.getInstance(getContext())
+         .addMovieChangeListener(notifier);
+      StartupTrace.end();
+      return true;
+   }
+
+   @Override
+   public String getType(Uri uri)
+   {
+      switch (uriMatcher.match(uri))
+      {
+         case MOVIES:
+            return CONTENT_TYPE;
+         case MOVIE_ID:
+            return CONTENT_ITEM_TYPE;
+         default:
+            return null;
+      }
+   }
+
+   // the URIs name movies but hold no data
+   @Override
+   public Cursor query(Uri uri, String[] projection, String selection,
+      String[] selectionArgs, String sortOrder)
+   {
+      throw new UnsupportedOperationException("Cannot query " + uri);
+   }
+
+   @Override
+   public Uri insert(Uri uri, ContentValues values)
+   {
+      throw new UnsupportedOperationException("Cannot insert into " + uri);
+   }
+
+   @Override
+   public int update(Uri uri, ContentValues values, String selection,
+      String[] selectionArgs)
+   {
+      throw new UnsupportedOperationException("Cannot update " + uri);
+   }
+
+   @Override
+   public int delete(Uri uri, String selection, String[] selectionArgs)
+   {
+      throw new UnsupportedOperationException("Cannot delete " + uri);
+   }
+} // end class MovieProvider
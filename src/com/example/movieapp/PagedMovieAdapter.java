@@ -0,0 +1,675 @@
+package com.example.movieapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.util.LongSparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+// ListView adapter that keeps only the pages of rows near the part of the
+// list being shown; pages are fetched by keyset from a MoviePageSource as
+// the user scrolls, the next page is prefetched in the background, and
+// pages far off-screen are dropped and reloaded if the user comes back.
+// Edits are applied to the loaded pages row by row (see applyChange) so
+// the list keeps its scroll position instead of being reloaded. Each row
+// shows the name from its page plus the director, year and budget, which
+// are read for a page only once one of its rows is shown, and not at all
+// while the list is flung past; they are formatted in the background so
+// binding a recycled row just sets its text. A row's poster path is read
+// with its details, so no poster is decoded for a row flung past, and
+// posters are decoded off the GUI thread by a PosterLoader.
+public class PagedMovieAdapter extends BaseAdapter
+{
+   public static final int PAGE_SIZE = 50; // rows fetched per query
+
+   // start loading the next page when this close to the end of the list
+   private static final int PREFETCH_ROWS = 20;
+
+   // pages kept in memory on either side of the page being shown
+   private static final int KEEP_PAGES = 3;
+
+   // a run of consecutive rows; rows is null while the page is dropped
+   private static class Page
+   {
+      MovieSummary after; // last row of the previous page, null for first
+      MovieSummary last; // last row of this page
+      List<MovieSummary> rows;
+      int size; // number of rows, known even while dropped
+      int index; // position of this page in pages
+      boolean loading;
+      LongSparseArray<RowDetails> details; // by row ID; null while dropped
+      boolean loadingDetails;
+   }
+
+   // a row's second line, formatted ready to show, and its poster
+   private static class RowDetails
+   {
+      final String director;
+      final String year;
+      final String budget;
+      final String poster; // path of the poster image, null for none
+      final String posterKey; // its PosterLoader key, made once
+
+      RowDetails(String director, String year, String budget, String poster,
+         String posterKey)
+      {
+         this.director = director;
+         this.year = year;
+         this.budget = budget;
+         this.poster = poster;
+         this.posterKey = posterKey;
+      }
+   }
+
+   // shown for a row whose movie was deleted before its details were read
+   private static final RowDetails NO_DETAILS = 
+      new RowDetails("", "", "", null, null);
+
+   // a recycled row's views, found once when the row is inflated
+   private static class ViewHolder
+   {
+      TextView name;
+      TextView director;
+      TextView year;
+      TextView budget;
+      ImageView poster;
+      String posterKey; // of the poster shown or loading, null for none
+   }
+
+   private final DatabaseExecutor executor; // runs the page queries
+   private final MovieRepository repository; // reads the rows' details
+   private final Object owner; // cancels this adapter's queries
+   private final PosterLoader posterLoader; // decodes the rows' posters
+   private final int posterWidth; // size of a row's poster in pixels
+   private final int posterHeight;
+
+   private final List<Page> pages = new ArrayList<Page>();
+   private final List<Page> loadedPages = new ArrayList<Page>();
+   private int[] pageStarts = new int[0]; // list position of each page
+   private int count; // rows in all pages
+
+   private MoviePageSource source;
+   private boolean hasMore; // rows may follow the last page
+   private boolean loadingNext; // the next page is being fetched
+   private boolean stale; // a change was missed; setSource must be called
+   private int generation; // changes on setSource so stale loads are ignored
+   private boolean flinging; // details wait until the list settles
+
+   // constructor; the adapter outlives the ListView, so it takes no Context;
+   // queries are queued on executor on behalf of owner, rows' details
+   // are read from repository, and their posters are loaded by
+   // posterLoader at posterWidth by posterHeight pixels
+   public PagedMovieAdapter(DatabaseExecutor executor, 
+      MovieRepository repository, Object owner, PosterLoader posterLoader,
+      int posterWidth, int posterHeight)
+   {
+      this.executor = executor;
+      this.repository = repository;
+      this.owner = owner;
+      this.posterLoader = posterLoader;
+      this.posterWidth = posterWidth;
+      this.posterHeight = posterHeight;
+   }
+
+   // called by the ListView's scroll listener; while the list is flung,
+   // rows are bound without their details, which are read for the rows
+   // shown once it stops
+   public void setFlinging(boolean flinging)
+   {
+      if (this.flinging == flinging)
+         return;
+
+      this.flinging = flinging;
+
+      if (!flinging)
+         notifyDataSetChanged(); // bind the rows now shown with details
+   }
+
+   // return true once setSource has been called, unless a change to the
+   // rows was cancelled and the list needs to be loaded again
+   public boolean hasSource()
+   {
+      return source != null && !stale;
+   }
+
+   // show the rows of source, starting again from its first page
+   public void setSource(MoviePageSource source)
+   {
+      this.source = source;
+      stale = false;
+      ++generation;
+      pages.clear();
+      loadedPages.clear();
+      hasMore = true;
+      loadingNext = false;
+      updatePageStarts();
+      notifyDataSetChanged();
+      loadNextPage();
+   }
+
+   @Override
+   public int getCount()
+   {
+      return count;
+   }
+
+   // return the row at position, or null if its page is not loaded
+   @Override
+   public MovieSummary getItem(int position)
+   {
+      int index = findPage(position);
+      Page page = pages.get(index);
+
+      if (page.rows == null)
+         return null;
+
+      return page.rows.get(position - pageStarts[index]);
+   }
+
+   @Override
+   public long getItemId(int position)
+   {
+      MovieSummary movie = getItem(position);
+      return movie == null ? -1 : movie.getId();
+   }
+
+   @Override
+   public boolean hasStableIds()
+   {
+      return true; // row IDs let the ListView keep its selection
+   }
+
+   // bind a row; recycled rows keep their ViewHolder, and the text set
+   // was made when the page or its details were read, so binding a row
+   // allocates nothing
+   @Override
+   public View getView(int position, View convertView, ViewGroup parent)
+   {
+      int index = findPage(position);
+      onPageShown(index, position);
+
+      View view = convertView;
+      ViewHolder holder;
+
+      if (view == null)
+      {
+         view = LayoutInflater.from(parent.getContext()).inflate(
+            R.layout.list_item_movie, parent, false);
+         holder = new ViewHolder();
+         holder.name = (TextView) view.findViewById(R.id.rowNameTextView);
+         holder.director = 
+            (TextView) view.findViewById(R.id.rowDirectorTextView);
+         holder.year = (TextView) view.findViewById(R.id.rowYearTextView);
+         holder.budget = (TextView) view.findViewById(R.id.rowBudgetTextView);
+         holder.poster = 
+            (ImageView) view.findViewById(R.id.rowPosterImageView);
+         view.setTag(holder);
+      }
+      else
+         holder = (ViewHolder) view.getTag();
+
+      // a dropped page shows empty rows until it is reloaded
+      Page page = pages.get(index);
+      MovieSummary movie = page.rows == null ? null : 
+         page.rows.get(position - pageStarts[index]);
+      RowDetails details = movie == null || page.details == null ? null :
+         page.details.get(movie.getId());
+
+      if (movie != null && details == null)
+         loadDetails(page);
+
+      if (details == null)
+         details = NO_DETAILS;
+
+      holder.name.setText(movie == null ? "" : movie.getName());
+      holder.director.setText(details.director);
+      holder.year.setText(details.year);
+      holder.budget.setText(details.budget);
+
+      // a recycled row drops the poster it was loading for its old movie;
+      // a row bound again to the poster it shows or is loading keeps it
+      if (details.posterKey == null)
+      {
+         if (holder.posterKey != null)
+         {
+            posterLoader.cancel(holder.poster);
+            holder.poster.setImageDrawable(null);
+            holder.posterKey = null;
+         }
+      }
+      else if (!details.posterKey.equals(holder.posterKey))
+      {
+         posterLoader.load(details.poster, details.posterKey, holder.poster,
+            posterWidth, posterHeight);
+         holder.posterKey = details.posterKey;
+      }
+
+      return view;
+   } // end method getView
+
+   // read the details of the page's rows that lack them in one query,
+   // unless the list is being flung
+   private void loadDetails(final Page page)
+   {
+      if (flinging || page.loadingDetails)
+         return;
+
+      long[] ids = new long[page.rows.size()];
+      int idCount = 0;
+
+      for (MovieSummary row : page.rows)
+      {
+         if (page.details == null || page.details.get(row.getId()) == null)
+            ids[idCount++] = row.getId();
+      }
+
+      if (idCount == 0)
+         return;
+
+      page.loadingDetails = true;
+      final long[] requestIDs = Arrays.copyOf(ids, idCount);
+      final int requestGeneration = generation;
+
+      executor.executeRead(
+         new DatabaseExecutor.Task<LongSparseArray<RowDetails>>(
+            owner, DatabaseExecutor.PRIORITY_VISIBLE)
+      {
+         @Override
+         protected LongSparseArray<RowDetails> doInBackground()
+         {
+            LongSparseArray<RowDetails> details = 
+               new LongSparseArray<RowDetails>(requestIDs.length);
+
+            for (long id : requestIDs)
+               details.put(id, NO_DETAILS); // unless the movie is found
+
+            Map<Long, String> posters = repository.getPosters(requestIDs);
+
+            for (Movie movie : repository.getMovies(requestIDs))
+            {
+               int year = MovieFormat.getYear(movie.getRelease());
+               String poster = posters.get(movie.getId());
+               details.put(movie.getId(), new RowDetails(
+                  movie.getDirector() == null ? "" : movie.getDirector(),
+                  year > 0 ? String.valueOf(year) : "",
+                  MovieFormat.formatBudget(movie.getBudget()), poster,
+                  poster == null ? null :
+                     PosterLoader.key(poster, posterWidth, posterHeight)));
+            }
+
+            return details;
+         }
+
+         @Override
+         protected void onResult(LongSparseArray<RowDetails> details)
+         {
+            page.loadingDetails = false;
+
+            if (requestGeneration != generation || page.rows == null)
+               return; // the list was reset or the page dropped
+
+            if (page.details == null)
+               page.details = details;
+            else
+            {
+               for (int i = 0; i < details.size(); ++i)
+                  page.details.put(details.keyAt(i), details.valueAt(i));
+            }
+
+            notifyDataSetChanged();
+         }
+
+         @Override
+         protected void onFailed(Exception error)
+         {
+            page.loadingDetails = false;
+         }
+
+         @Override
+         protected void onCancelled()
+         {
+            page.loadingDetails = false;
+         }
+      });
+   } // end method loadDetails
+
+   // update the loaded pages for rows changed in the database: the changed
+   // rows are read in the background, then removed from wherever they were
+   // and inserted where they now sort, touching only those rows
+   public void applyChange(final MovieChange change)
+   {
+      if (source == null)
+         return;
+
+      if (change.getType() == MovieChange.RESET)
+      {
+         setSource(source); // too many rows changed; start again
+         return;
+      }
+
+      final MoviePageSource requestSource = source;
+      final int requestGeneration = generation;
+
+      executor.executeRead(new DatabaseExecutor.Task<List<MovieSummary>>(
+         owner, DatabaseExecutor.PRIORITY_VISIBLE)
+      {
+         @Override
+         protected List<MovieSummary> doInBackground()
+         {
+            if (change.getType() == MovieChange.DELETED)
+               return new ArrayList<MovieSummary>(); // nothing to insert
+
+            return requestSource.loadRows(change.getIds());
+         }
+
+         @Override
+         protected void onResult(List<MovieSummary> rows)
+         {
+            if (requestGeneration != generation)
+               return; // the list was reset while loading
+
+            if (rows == null)
+               setSource(source); // source can't be updated row by row
+            else
+            {
+               removeRows(change.getIds()); // and their details
+
+               for (MovieSummary row : rows)
+                  insertRow(row);
+
+               updatePageStarts();
+               notifyDataSetChanged();
+            }
+         }
+
+         // as after a cancel
+         @Override
+         protected void onFailed(Exception error)
+         {
+            onCancelled();
+         }
+
+         // the change was missed, so the loaded rows can't be trusted
+         @Override
+         protected void onCancelled()
+         {
+            if (requestGeneration == generation)
+               stale = true;
+         }
+      });
+   } // end method applyChange
+
+   // remove the rows with the given ids from the loaded pages; a dropped
+   // page corrects its size when it is reloaded
+   private void removeRows(long[] ids)
+   {
+      Set<Long> idSet = new HashSet<Long>();
+
+      for (long id : ids)
+         idSet.add(id);
+
+      for (Page page : loadedPages)
+      {
+         for (Iterator<MovieSummary> iterator = page.rows.iterator(); 
+            iterator.hasNext(); )
+         {
+            if (idSet.contains(iterator.next().getId()))
+            {
+               iterator.remove();
+               --page.size;
+            }
+         }
+
+         if (page.details != null)
+         {
+            for (long id : ids) // read again when the rows are shown
+               page.details.remove(id);
+         }
+      }
+   } // end method removeRows
+
+   // insert row into the page whose key range holds it
+   private void insertRow(MovieSummary row)
+   {
+      for (Page page : pages)
+      {
+         if (page.after != null && source.compare(row, page.after) <= 0)
+            continue; // row sorts before this page
+
+         if (source.compare(row, page.last) > 0)
+            continue; // row sorts after this page
+
+         if (page.rows != null)
+            page.rows.add(findInsertPosition(page.rows, row), row);
+
+         ++page.size; // a dropped page picks the row up when reloaded
+         return;
+      }
+
+      // the row sorts after every page; add it only if the list is complete
+      if (!hasMore && !loadingNext && !pages.isEmpty())
+      {
+         Page page = pages.get(pages.size() - 1);
+
+         if (page.rows != null)
+            page.rows.add(row);
+
+         page.last = row; // widen the page so a reload includes the row
+         ++page.size;
+      }
+      else if (pages.isEmpty() && !loadingNext)
+         setSource(source); // first row of an empty list
+   } // end method insertRow
+
+   // return the index at which row belongs in the sorted list rows
+   private int findInsertPosition(List<MovieSummary> rows, MovieSummary row)
+   {
+      int low = 0;
+      int high = rows.size();
+
+      while (low < high)
+      {
+         int middle = (low + high) >>> 1;
+
+         if (source.compare(rows.get(middle), row) < 0)
+            low = middle + 1;
+         else
+            high = middle;
+      }
+
+      return low;
+   }
+
+   // keep the pages around the one being shown loaded and drop the rest
+   private void onPageShown(int index, int position)
+   {
+      Page page = pages.get(index);
+
+      if (page.rows == null)
+         reloadPage(page);
+
+      if (hasMore && position >= count - PREFETCH_ROWS)
+         loadNextPage();
+
+      for (int i = loadedPages.size() - 1; i >= 0; --i)
+      {
+         Page loaded = loadedPages.get(i);
+
+         if (Math.abs(loaded.index - index) > KEEP_PAGES && !loaded.loading)
+         {
+            loaded.rows = null; // size and bounds are kept for reloading
+            loaded.details = null;
+            loadedPages.remove(i);
+         }
+      }
+   } // end method onPageShown
+
+   // fetch the page after the last one in the background; the first page
+   // is waited on, later pages are prefetched ahead of the user, and a
+   // queued first-page load is replaced when the source changes again
+   private void loadNextPage()
+   {
+      if (loadingNext || !hasMore || source == null)
+         return;
+
+      loadingNext = true;
+      final MovieSummary after = 
+         pages.isEmpty() ? null : pages.get(pages.size() - 1).last;
+      final MoviePageSource requestSource = source;
+      final int requestGeneration = generation;
+
+      executor.executeRead(new DatabaseExecutor.Task<List<MovieSummary>>(
+         owner, 
+         after == null ? DatabaseExecutor.PRIORITY_VISIBLE : 
+            DatabaseExecutor.PRIORITY_PREFETCH,
+         after == null ? this : null)
+      {
+         @Override
+         protected List<MovieSummary> doInBackground()
+         {
+            return requestSource.loadPage(after, PAGE_SIZE);
+         }
+
+         @Override
+         protected void onResult(List<MovieSummary> rows)
+         {
+            if (requestGeneration != generation)
+               return; // the list was reset while loading
+
+            loadingNext = false;
+            hasMore = rows.size() >= PAGE_SIZE;
+
+            if (!rows.isEmpty())
+            {
+               Page page = new Page();
+               page.after = after;
+               page.last = rows.get(rows.size() - 1);
+               page.rows = rows;
+               page.size = rows.size();
+               pages.add(page);
+               loadedPages.add(page);
+               updatePageStarts();
+            }
+
+            notifyDataSetChanged();
+
+            if (after == null)
+               StartupTrace.mark("PagedMovieAdapter.firstPageShown");
+         }
+
+         // as after a cancel
+         @Override
+         protected void onFailed(Exception error)
+         {
+            onCancelled();
+         }
+
+         // let the next getView ask for the page again
+         @Override
+         protected void onCancelled()
+         {
+            if (requestGeneration == generation)
+               loadingNext = false;
+         }
+      });
+   } // end method loadNextPage
+
+   // fetch the rows of a dropped page again, bounded by its first and
+   // last keys so the page lines up with its neighbours
+   private void reloadPage(final Page page)
+   {
+      if (page.loading)
+         return;
+
+      page.loading = true;
+      final MoviePageSource requestSource = source;
+      final int requestGeneration = generation;
+
+      executor.executeRead(new DatabaseExecutor.Task<List<MovieSummary>>(
+         owner, DatabaseExecutor.PRIORITY_VISIBLE)
+      {
+         @Override
+         protected List<MovieSummary> doInBackground()
+         {
+            return requestSource.loadRange(page.after, page.last);
+         }
+
+         @Override
+         protected void onResult(List<MovieSummary> rows)
+         {
+            page.loading = false;
+
+            if (requestGeneration != generation)
+               return; // the list was reset while loading
+
+            page.rows = rows;
+            loadedPages.add(page);
+
+            if (rows.size() != page.size) // rows changed while dropped
+            {
+               page.size = rows.size();
+               updatePageStarts();
+            }
+
+            notifyDataSetChanged();
+         }
+
+         @Override
+         protected void onFailed(Exception error)
+         {
+            page.loading = false;
+         }
+
+         @Override
+         protected void onCancelled()
+         {
+            page.loading = false;
+         }
+      });
+   } // end method reloadPage
+
+   // recompute page indexes, start positions and the row count
+   private void updatePageStarts()
+   {
+      pageStarts = new int[pages.size()];
+      count = 0;
+
+      for (int i = 0; i < pages.size(); ++i)
+      {
+         Page page = pages.get(i);
+         page.index = i;
+         pageStarts[i] = count;
+         count += page.size;
+      }
+   }
+
+   // return the index of the page holding position; empty pages share a
+   // start with the page after them, so they are never chosen
+   private int findPage(int position)
+   {
+      int low = 0;
+      int high = pageStarts.length - 1;
+
+      while (low < high) // find the last page starting at or before position
+      {
+         int middle = (low + high + 1) >>> 1;
+
+         if (pageStarts[middle] <= position)
+            low = middle;
+         else
+            high = middle - 1;
+      }
+
+      return low;
+   }
+} // end class PagedMovieAdapter
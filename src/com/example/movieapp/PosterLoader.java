@@ -0,0 +1,409 @@
+package com.example.movieapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+// loads poster images into ImageViews off the GUI thread. An image is
+// decoded at about the size of its view, never at full size, then held
+// in a memory cache sized in bytes and saved as a small thumbnail in a
+// disk cache, so showing a poster again costs a lookup, or after a
+// restart a thumbnail read rather than a decode of the original. Giving
+// a view a new poster cancels its last request, so a recycled list row
+// never shows, or waits for, the poster of the row it used to be; asking
+// again for the poster a view is waiting for leaves its request running.
+public class PosterLoader
+{
+   private static final String TAG = "PosterLoader";
+
+   // threads decoding images
+   private static final int DECODER_THREADS = 2;
+
+   // the memory cache gets this fraction of the heap
+   private static final int MEMORY_CACHE_DIVISOR = 8;
+
+   // the disk cache is trimmed to three quarters of this when it grows
+   // past it, dropping the thumbnails used least recently
+   private static final long DISK_CACHE_SIZE = 16 * 1024 * 1024;
+   private static final String DISK_CACHE_FOLDER = "posters";
+   private static final int THUMBNAIL_QUALITY = 85; // JPEG, 0-100
+
+   private static PosterLoader instance; // shared by the whole process
+
+   // a poster requested for a view; run on a decoder thread
+   private class Request implements Runnable
+   {
+      private final String path; // the original image
+      private final String key; // the path and the size decoded
+      private final int width;
+      private final int height;
+      private final ImageView view;
+      private Future<?> future; // set when the request is queued
+      private volatile boolean cancelled;
+
+      // constructor
+      public Request(String path, String key, int width, int height,
+         ImageView view)
+      {
+         this.path = path;
+         this.key = key;
+         this.width = width;
+         this.height = height;
+         this.view = view;
+      }
+
+      @Override
+      public void run()
+      {
+         if (cancelled)
+            return; // the view was given another poster while queued
+
+         final Bitmap bitmap = decode(path, key, width, height);
+
+         if (bitmap != null)
+            memoryCache.put(key, bitmap);
+
+         mainHandler.post(new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  // show the poster only if the view still wants it
+                  if (cancelled || requests.get(view) != Request.this)
+                     return;
+
+                  requests.remove(view);
+
+                  if (bitmap != null)
+                     view.setImageBitmap(bitmap);
+               }
+            });
+      } // end method run
+   } // end class Request
+
+   private final LruCache<String, Bitmap> memoryCache;
+   private final File diskCache; // folder of thumbnails
+   private final ThreadPoolExecutor decoders;
+   private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+   // the request each view is waiting for; used on the GUI thread only
+   private final Map<ImageView, Request> requests =
+      new WeakHashMap<ImageView, Request>();
+
+   private long diskCacheBytes = -1; // size of the thumbnails, -1 unknown
+
+   // return the process-wide PosterLoader, creating it if necessary
+   public static synchronized PosterLoader getInstance(Context context)
+   {
+      if (instance == null)
+         instance = new PosterLoader(context.getApplicationContext());
+      return instance;
+   }
+
+   // private constructor; use getInstance to get the shared loader
+   private PosterLoader(Context context)
+   {
+      int memoryCacheSize = (int) Math.min(Integer.MAX_VALUE,
+         Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR);
+
+      memoryCache = new LruCache<String, Bitmap>(memoryCacheSize)
+         {
+            // measure the cache in bytes rather than bitmaps
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap)
+            {
+               return bitmap.getByteCount();
+            }
+         };
+
+      diskCache = new File(context.getCacheDir(), DISK_CACHE_FOLDER);
+
+      ThreadFactory threadFactory = new ThreadFactory()
+         {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(final Runnable runnable)
+            {
+               return new Thread(new Runnable()
+                  {
+                     @Override
+                     public void run()
+                     {
+                        Process.setThreadPriority(
+                           Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                     }
+                  }, "poster-decoder-" + ++count);
+            }
+         };
+
+      decoders = new ThreadPoolExecutor(DECODER_THREADS, DECODER_THREADS,
+         0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+         threadFactory);
+   } // end PosterLoader constructor
+
+   // return the key the poster at path scaled to width by height pixels
+   // is cached under; a caller that shows it often can keep the key
+   public static String key(String path, int width, int height)
+   {
+      return path + "@" + width + "x" + height;
+   }
+
+   // show the image at path in view, scaled to cover width by height
+   // pixels; a cached poster is shown at once, otherwise view is cleared
+   // until the poster is decoded. Call on the GUI thread
+   public void load(String path, ImageView view, int width, int height)
+   {
+      load(path, key(path, width, height), view, width, height);
+   }
+
+   // as load, with key as key(path, width, height) returns it; a view
+   // already waiting for key keeps its request. Call on the GUI thread
+   public void load(String path, String key, ImageView view, int width,
+      int height)
+   {
+      Request pending = requests.get(view);
+
+      if (pending != null && pending.key.equals(key))
+         return; // still being decoded for view
+
+      cancel(view);
+      Bitmap bitmap = memoryCache.get(key);
+
+      if (bitmap != null)
+      {
+         view.setImageBitmap(bitmap);
+         return;
+      }
+
+      view.setImageDrawable(null);
+      Request request = new Request(path, key, width, height, view);
+      requests.put(view, request);
+      request.future = decoders.submit(request);
+   } // end method load
+
+   // drop the request view is waiting for, if any; a queued request is
+   // never decoded. Call on the GUI thread
+   public void cancel(ImageView view)
+   {
+      Request request = requests.remove(view);
+
+      if (request != null)
+      {
+         request.cancelled = true;
+         request.future.cancel(false);
+      }
+   }
+
+   // return the poster at path scaled to cover width by height, from the
+   // disk cache if it holds a thumbnail, or null if it can't be read
+   private Bitmap decode(String path, String key, int width, int height)
+   {
+      File original = new File(path);
+
+      // an image replaced under the same path gets a new thumbnail
+      File thumbnail = new File(diskCache,
+         hash(key + "@" + original.lastModified()) + ".jpg");
+
+      if (thumbnail.isFile())
+      {
+         Bitmap bitmap = BitmapFactory.decodeFile(thumbnail.getPath());
+
+         if (bitmap != null)
+         {
+            thumbnail.setLastModified(System.currentTimeMillis());
+            return bitmap;
+         }
+      }
+
+      Bitmap bitmap = decodeScaled(path, width, height);
+
+      if (bitmap != null)
+         saveThumbnail(bitmap, thumbnail);
+
+      return bitmap;
+   } // end method decode
+
+   // decode the image at path to the smallest size that still covers
+   // width by height; the decoder skips whole pixels by a power of two
+   // first, so a large image is never held in memory at full size
+   private static Bitmap decodeScaled(String path, int width, int height)
+   {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true; // read only the size
+      BitmapFactory.decodeFile(path, options);
+
+      if (options.outWidth <= 0 || options.outHeight <= 0)
+         return null; // missing or not an image
+
+      int sampleSize = 1;
+
+      while (options.outWidth / (sampleSize * 2) >= width &&
+         options.outHeight / (sampleSize * 2) >= height)
+         sampleSize *= 2;
+
+      options.inJustDecodeBounds = false;
+      options.inSampleSize = sampleSize;
+      Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+
+      if (bitmap == null)
+         return null;
+
+      // scale the rest of the way down, keeping the aspect ratio
+      float scale = Math.max((float) width / bitmap.getWidth(),
+         (float) height / bitmap.getHeight());
+
+      if (scale >= 1)
+         return bitmap;
+
+      Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+         Math.max(1, Math.round(bitmap.getWidth() * scale)),
+         Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+
+      if (scaled != bitmap)
+         bitmap.recycle();
+
+      return scaled;
+   } // end method decodeScaled
+
+   // write bitmap to the disk cache as thumbnail, then trim the cache if
+   // it has grown too large; a thumbnail that can't be written is skipped
+   private void saveThumbnail(Bitmap bitmap, File thumbnail)
+   {
+      if (!diskCache.isDirectory() && !diskCache.mkdirs())
+         return;
+
+      try
+      {
+         // written under another name so a reader never sees it partial
+         File partFile = File.createTempFile("thumbnail", ".part", diskCache);
+         OutputStream out = new FileOutputStream(partFile);
+
+         try
+         {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY,
+               out);
+         }
+         finally
+         {
+            out.close();
+         }
+
+         if (!partFile.renameTo(thumbnail))
+         {
+            partFile.delete();
+            return;
+         }
+
+         trimDiskCache(thumbnail.length());
+      }
+      catch (IOException e)
+      {
+         Log.w(TAG, "Cannot cache thumbnail " + thumbnail, e);
+      }
+   } // end method saveThumbnail
+
+   // count added bytes against the disk cache, deleting the thumbnails
+   // used least recently once it passes DISK_CACHE_SIZE
+   private synchronized void trimDiskCache(long added)
+   {
+      if (diskCacheBytes >= 0)
+      {
+         diskCacheBytes += added;
+
+         if (diskCacheBytes <= DISK_CACHE_SIZE)
+            return;
+      }
+
+      File[] files = diskCache.listFiles();
+
+      if (files == null)
+         return;
+
+      diskCacheBytes = 0;
+
+      for (File file : files)
+         diskCacheBytes += file.length();
+
+      if (diskCacheBytes <= DISK_CACHE_SIZE)
+         return;
+
+      // oldest first; a thumbnail's time is updated whenever it is read
+      final long[] times = new long[files.length];
+      Integer[] order = new Integer[files.length];
+
+      for (int i = 0; i < files.length; ++i)
+      {
+         times[i] = files[i].lastModified(); // read once for the sort
+         order[i] = i;
+      }
+
+      Arrays.sort(order, new Comparator<Integer>()
+         {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+               return times[a] < times[b] ? -1 :
+                  (times[a] == times[b] ? 0 : 1);
+            }
+         });
+
+      for (int i = 0;
+         i < order.length && diskCacheBytes > DISK_CACHE_SIZE * 3 / 4; ++i)
+      {
+         File file = files[order[i]];
+         long length = file.length();
+
+         if (file.delete())
+            diskCacheBytes -= length;
+      }
+   } // end method trimDiskCache
+
+   // return the hexadecimal MD5 of text, which names its thumbnail
+   private static String hash(String text)
+   {
+      try
+      {
+         byte[] digest =
+            MessageDigest.getInstance("MD5").digest(text.getBytes("UTF-8"));
+         StringBuilder hex = new StringBuilder(digest.length * 2);
+
+         for (byte b : digest)
+            hex.append(Character.forDigit(b >> 4 & 0xf, 16))
+               .append(Character.forDigit(b & 0xf, 16));
+
+         return hex.toString();
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IllegalStateException(e); // every platform has MD5
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException(e); // every platform has UTF-8
+      }
+   } // end method hash
+} // end class PosterLoader
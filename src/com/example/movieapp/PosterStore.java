@@ -0,0 +1,105 @@
+package com.example.movieapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+// keeps the app's own copies of poster images, so a poster stays after
+// the image it was picked from is moved or deleted; movies refer to the
+// copies by path (see MovieRepository.setPoster)
+public class PosterStore
+{
+   private static final String FOLDER = "posters";
+   private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+   private final ContentResolver resolver; // opens picked images
+   private final File folder; // holds the copies
+
+   // constructor
+   public PosterStore(Context context)
+   {
+      resolver = context.getContentResolver();
+      folder = new File(context.getFilesDir(), FOLDER);
+   }
+
+   // copy the image at uri into the store and return the copy's path;
+   // anything that isn't an image is refused. Call off the GUI thread
+   public String addPoster(Uri uri) throws IOException
+   {
+      if (!folder.isDirectory() && !folder.mkdirs())
+         throw new IOException("Cannot create " + folder);
+
+      InputStream in = resolver.openInputStream(uri);
+
+      if (in == null)
+         throw new IOException("Cannot open " + uri);
+
+      File file = File.createTempFile("poster", ".img", folder);
+      boolean complete = false;
+
+      try
+      {
+         OutputStream out = new FileOutputStream(file);
+
+         try
+         {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+            for (int count; (count = in.read(buffer)) != -1; )
+               out.write(buffer, 0, count);
+         }
+         finally
+         {
+            out.close();
+         }
+
+         // read only the size to check that the copy can be decoded
+         BitmapFactory.Options options = new BitmapFactory.Options();
+         options.inJustDecodeBounds = true;
+         BitmapFactory.decodeFile(file.getPath(), options);
+
+         if (options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException(uri + " is not an image");
+
+         complete = true;
+         return file.getPath();
+      }
+      finally
+      {
+         in.close();
+
+         if (!complete)
+            file.delete();
+      }
+   } // end method addPoster
+
+   // delete the copies whose paths aren't in used and return how many
+   // were deleted; called after a poster is replaced
+   public int removeUnused(Collection<String> used)
+   {
+      Set<String> usedPaths = new HashSet<String>(used);
+      File[] files = folder.listFiles();
+      int deleted = 0;
+
+      if (files == null)
+         return 0;
+
+      for (File file : files)
+      {
+         if (!usedPaths.contains(file.getPath()) && file.delete())
+            ++deleted;
+      }
+
+      return deleted;
+   } // end method removeUnused
+} // end class PosterStore
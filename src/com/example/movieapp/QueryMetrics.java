@@ -0,0 +1,166 @@
+package com.example.movieapp;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// counts and timings of database operations: a log2 latency histogram
+// and rows touched per operation, connection open/close counts and
+// statement cache hits. Thread-safe; recording costs a few counters.
+public class QueryMetrics
+{
+   // operations slower than this are reported as slow unless changed
+   public static final long DEFAULT_SLOW_QUERY_MS = 50;
+
+   // histogram bucket i counts operations taking [2^i, 2^(i+1))
+   // microseconds; bucket 0 also holds anything under a microsecond
+   private static final int BUCKETS = 32;
+
+   // percentiles reported by dump
+   private static final double[] PERCENTILES = { 0.5, 0.9, 0.99 };
+
+   // the figures for one kind of operation
+   private static final class Operation
+   {
+      long count;
+      long totalNanos;
+      long maxNanos;
+      long rows;
+      final long[] buckets = new long[BUCKETS];
+   }
+
+   private final Map<String, Operation> operations = 
+      new TreeMap<String, Operation>();
+   private long opens;
+   private long closes;
+   private long statementHits;
+   private long statementMisses;
+   private long slowQueries;
+   private volatile long slowQueryNanos = 
+      TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_QUERY_MS);
+
+   // record one run of operation that took nanos and touched rows rows
+   public synchronized void record(String name, long nanos, long rows)
+   {
+      Operation operation = operations.get(name);
+
+      if (operation == null)
+      {
+         operation = new Operation();
+         operations.put(name, operation);
+      }
+
+      ++operation.count;
+      operation.totalNanos += nanos;
+      operation.maxNanos = Math.max(operation.maxNanos, nanos);
+      operation.rows += rows;
+      ++operation.buckets[bucket(nanos)];
+   }
+
+   // return the histogram bucket for an operation taking nanos
+   private static int bucket(long nanos)
+   {
+      long micros = nanos / 1000;
+
+      if (micros <= 1)
+         return 0;
+
+      return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+   }
+
+   public synchronized void countOpen()
+   {
+      ++opens;
+   }
+
+   public synchronized void countClose()
+   {
+      ++closes;
+   }
+
+   public synchronized void countStatementHit()
+   {
+      ++statementHits;
+   }
+
+   public synchronized void countStatementMiss()
+   {
+      ++statementMisses;
+   }
+
+   // set the time above which an operation is slow
+   public void setSlowQueryThreshold(long millis)
+   {
+      slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+   }
+
+   // return true, and count it, if an operation taking nanos is slow
+   public boolean checkSlow(long nanos)
+   {
+      if (nanos < slowQueryNanos)
+         return false;
+
+      synchronized (this)
+      {
+         ++slowQueries;
+      }
+
+      return true;
+   }
+
+   // forget everything recorded so far
+   public synchronized void reset()
+   {
+      operations.clear();
+      opens = closes = statementHits = statementMisses = slowQueries = 0;
+   }
+
+   // print a snapshot of the figures, one line per operation; latencies
+   // are in milliseconds, percentiles rounded up to a histogram bucket
+   public synchronized void dump(String prefix, PrintWriter writer)
+   {
+      writer.printf(Locale.US, "%sopens=%d closes=%d statementCache " +
+         "hits=%d misses=%d slow=%d (over %d ms)%n", prefix, opens, closes, 
+         statementHits, statementMisses, slowQueries, 
+         TimeUnit.NANOSECONDS.toMillis(slowQueryNanos));
+
+      for (Map.Entry<String, Operation> entry : operations.entrySet())
+      {
+         Operation operation = entry.getValue();
+         StringBuilder line = new StringBuilder();
+         line.append(String.format(Locale.US, 
+            "%s%s: count=%d rows=%d mean=%.3f", prefix, entry.getKey(), 
+            operation.count, operation.rows, 
+            operation.totalNanos / 1e6 / operation.count));
+
+         for (double percentile : PERCENTILES)
+            line.append(String.format(Locale.US, " p%d<=%.3f", 
+               Math.round(percentile * 100), 
+               percentileMillis(operation, percentile)));
+
+         line.append(String.format(Locale.US, " max=%.3f", 
+            operation.maxNanos / 1e6));
+         writer.println(line);
+      }
+   } // end method dump
+
+   // return the upper bound, in ms, of the bucket holding percentile
+   private static double percentileMillis(Operation operation, 
+      double percentile)
+   {
+      long target = (long) Math.ceil(operation.count * percentile);
+      long seen = 0;
+
+      for (int i = 0; i < BUCKETS; ++i)
+      {
+         seen += operation.buckets[i];
+
+         if (seen >= target)
+            return Math.min((2L << i) / 1000.0, operation.maxNanos / 1e6);
+      }
+
+      return operation.maxNanos / 1e6;
+   }
+} // end class QueryMetrics
@@ -0,0 +1,291 @@
+package com.example.movieapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.database.Cursor;
+import android.database.DatabaseErrorHandler;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+// MovieDatabase over an open SQLiteDatabase, for MovieStore on the device
+public class SQLiteMovieDatabase implements MovieDatabase
+{
+   private static final String TAG = "SQLiteMovieDatabase"; // for logging
+
+   // leaves a damaged snapshot file in place
+   private static final DatabaseErrorHandler KEEP_DAMAGED_FILES =
+      new DatabaseErrorHandler()
+      {
+         @Override
+         public void onCorruption(SQLiteDatabase db)
+         {
+            Log.e(TAG, "Damaged snapshot file " + db.getPath());
+         }
+      };
+
+   private final SQLiteDatabase database;
+   private final QueryMetrics metrics; // counts statement cache use; or null
+
+   // compiled statements, keyed by their SQL
+   private final Map<String, Statement> statementCache =
+      new HashMap<String, Statement>();
+
+   // constructor; metrics, if not null, counts the statement cache's hits
+   // and misses
+   public SQLiteMovieDatabase(SQLiteDatabase database, QueryMetrics metrics)
+   {
+      this.database = database;
+      this.metrics = metrics;
+   }
+
+   @Override
+   public Rows query(String sql, String... args)
+   {
+      return new CursorRows(database.rawQuery(sql, args));
+   }
+
+   @Override
+   public long queryLong(String sql, String... args)
+   {
+      return DatabaseUtils.longForQuery(database, sql, args);
+   }
+
+   @Override
+   public String queryString(String sql, String... args)
+   {
+      return DatabaseUtils.stringForQuery(database, sql, args);
+   }
+
+   @Override
+   public void execute(String sql, Object... args)
+   {
+      database.execSQL(sql, args);
+   }
+
+   @Override
+   public synchronized Statement getStatement(String sql)
+   {
+      Statement statement = statementCache.get(sql);
+
+      if (statement == null)
+      {
+         if (metrics != null)
+            metrics.countStatementMiss();
+
+         statement = compileStatement(sql);
+         statementCache.put(sql, statement);
+      }
+      else if (metrics != null)
+         metrics.countStatementHit();
+
+      return statement;
+   } // end method getStatement
+
+   @Override
+   public Statement compileStatement(String sql)
+   {
+      return new CompiledStatement(database.compileStatement(sql));
+   }
+
+   @Override
+   public void beginTransaction()
+   {
+      database.beginTransactionNonExclusive();
+   }
+
+   @Override
+   public void setTransactionSuccessful()
+   {
+      database.setTransactionSuccessful();
+   }
+
+   @Override
+   public void endTransaction()
+   {
+      database.endTransaction();
+   }
+
+   @Override
+   public File getFile()
+   {
+      return new File(database.getPath());
+   }
+
+   // a damaged file is reported by the queries that read it rather than
+   // deleted, as the default handler would
+   @Override
+   public MovieDatabase openFile(File file, boolean readOnly)
+      throws IOException
+   {
+      int flags = readOnly ? SQLiteDatabase.OPEN_READONLY :
+         SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY;
+
+      try
+      {
+         return new SQLiteMovieDatabase(SQLiteDatabase.openDatabase(
+            file.getPath(), null, flags, KEEP_DAMAGED_FILES), null);
+      }
+      catch (SQLException e)
+      {
+         throw new IOException("Cannot open " + file, e);
+      }
+   } // end method openFile
+
+   // release the compiled statements, then close the connection
+   @Override
+   public synchronized void close()
+   {
+      for (Statement statement : statementCache.values())
+         statement.close();
+      statementCache.clear();
+
+      database.close();
+   }
+
+   // the rows of a Cursor
+   private static class CursorRows implements Rows
+   {
+      private final Cursor cursor;
+
+      // constructor
+      public CursorRows(Cursor cursor)
+      {
+         this.cursor = cursor;
+      }
+
+      @Override
+      public boolean next()
+      {
+         return cursor.moveToNext();
+      }
+
+      @Override
+      public int getColumnCount()
+      {
+         return cursor.getColumnCount();
+      }
+
+      @Override
+      public boolean isNull(int column)
+      {
+         return cursor.isNull(column);
+      }
+
+      @Override
+      public int getInt(int column)
+      {
+         return cursor.getInt(column);
+      }
+
+      @Override
+      public long getLong(int column)
+      {
+         return cursor.getLong(column);
+      }
+
+      @Override
+      public String getString(int column)
+      {
+         return cursor.getString(column);
+      }
+
+      @Override
+      public byte[] getBlob(int column)
+      {
+         return cursor.getBlob(column);
+      }
+
+      @Override
+      public Object getObject(int column)
+      {
+         switch (cursor.getType(column))
+         {
+            case Cursor.FIELD_TYPE_NULL:
+               return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+               return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+               return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_BLOB:
+               return cursor.getBlob(column);
+            default:
+               return cursor.getString(column);
+         }
+      } // end method getObject
+
+      @Override
+      public void close()
+      {
+         cursor.close();
+      }
+   } // end class CursorRows
+
+   // a compiled SQLiteStatement
+   private static class CompiledStatement implements Statement
+   {
+      private final SQLiteStatement statement;
+
+      // constructor
+      public CompiledStatement(SQLiteStatement statement)
+      {
+         this.statement = statement;
+      }
+
+      @Override
+      public void bindLong(int index, long value)
+      {
+         statement.bindLong(index, value);
+      }
+
+      @Override
+      public void bindString(int index, String value)
+      {
+         statement.bindString(index, value);
+      }
+
+      @Override
+      public void bindNull(int index)
+      {
+         statement.bindNull(index);
+      }
+
+      @Override
+      public void bindObject(int index, Object value)
+      {
+         if (value == null)
+            statement.bindNull(index);
+         else if (value instanceof Double)
+            statement.bindDouble(index, (Double) value);
+         else if (value instanceof Number)
+            statement.bindLong(index, ((Number) value).longValue());
+         else if (value instanceof byte[])
+            statement.bindBlob(index, (byte[]) value);
+         else
+            statement.bindString(index, value.toString());
+      } // end method bindObject
+
+      @Override
+      public void execute()
+      {
+         statement.execute();
+      }
+
+      @Override
+      public int executeUpdateDelete()
+      {
+         return statement.executeUpdateDelete();
+      }
+
+      @Override
+      public void close()
+      {
+         statement.close();
+      }
+   } // end class CompiledStatement
+} // end class SQLiteMovieDatabase
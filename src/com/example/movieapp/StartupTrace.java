@@ -0,0 +1,145 @@
+package com.example.movieapp;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import android.os.Trace;
+
+// named sections and marks timing each phase of the app's start. Every
+// section is also an android.os.Trace section, so it shows in systrace;
+// the first run of each name is recorded too, as offsets from the time
+// this class was first used (MovieProvider.onCreate, the first app code
+// a cold start runs), and dump prints them one per line in start order,
+// so the dumps of two builds can be compared with diff. Thread-safe.
+public final class StartupTrace
+{
+   // one recorded section, or a mark if it has no duration
+   private static final class Section
+   {
+      final String name;
+      final String thread;
+      final int depth; // sections open on the thread when it began
+      final boolean isMark;
+      final long startNanos;
+      long endNanos = -1; // -1 until ended
+
+      Section(String name, String thread, int depth, boolean isMark,
+         long startNanos)
+      {
+         this.name = name;
+         this.thread = thread;
+         this.depth = depth;
+         this.isMark = isMark;
+         this.startNanos = startNanos;
+      }
+   }
+
+   // a section begun again after this many are recorded is not recorded
+   private static final int MAX_SECTIONS = 64;
+
+   // stands in for a section that isn't recorded
+   private static final Section NOT_RECORDED =
+      new Section("", "", 0, false, 0);
+
+   private static final long originNanos = System.nanoTime();
+
+   private static final List<Section> sections = new ArrayList<Section>();
+   private static final Set<String> names = new HashSet<String>();
+
+   // the sections each thread has begun but not ended, innermost first
+   private static final ThreadLocal<Deque<Section>> openSections =
+      new ThreadLocal<Deque<Section>>()
+      {
+         @Override
+         protected Deque<Section> initialValue()
+         {
+            return new ArrayDeque<Section>();
+         }
+      };
+
+   private StartupTrace()
+   {
+   }
+
+   // begin section name on this thread; end it with end on the same
+   // thread, ending sections begun inside it first
+   public static void begin(String name)
+   {
+      Trace.beginSection(name);
+      Deque<Section> open = openSections.get();
+      Section section = record(name, open.size(), false);
+      open.push(section == null ? NOT_RECORDED : section);
+   }
+
+   // end the section this thread began last
+   public static void end()
+   {
+      Section section = openSections.get().pop();
+
+      if (section != NOT_RECORDED)
+      {
+         synchronized (StartupTrace.class)
+         {
+            section.endNanos = System.nanoTime();
+         }
+      }
+
+      Trace.endSection();
+   }
+
+   // record that the phase name has been reached, the first time it is
+   public static void mark(String name)
+   {
+      record(name, openSections.get().size(), true);
+   }
+
+   // add a section named name starting now, unless one by that name has
+   // been recorded already or there are MAX_SECTIONS; return it or null
+   private static synchronized Section record(String name, int depth,
+      boolean isMark)
+   {
+      if (sections.size() == MAX_SECTIONS || !names.add(name))
+         return null;
+
+      Section section = new Section(name, Thread.currentThread().getName(),
+         depth, isMark, System.nanoTime());
+      sections.add(section);
+      return section;
+   }
+
+   // print each recorded section with its start and duration in
+   // milliseconds, indented by its depth; "open" for a section still
+   // running and "mark" for a mark
+   public static synchronized void dump(String prefix, PrintWriter writer)
+   {
+      writer.println(prefix + "StartupTrace:");
+
+      for (Section section : sections)
+      {
+         StringBuilder line = new StringBuilder(prefix).append("  ");
+
+         for (int i = 0; i < section.depth; ++i)
+            line.append("  ");
+
+         line.append(String.format(Locale.US, "%s: start=%.1f",
+            section.name, (section.startNanos - originNanos) / 1e6));
+
+         if (section.isMark)
+            line.append(" mark");
+         else if (section.endNanos == -1)
+            line.append(" open");
+         else
+            line.append(String.format(Locale.US, " duration=%.1f",
+               (section.endNanos - section.startNanos) / 1e6));
+
+         writer.println(line.append(" [").append(section.thread)
+            .append(']'));
+      }
+   } // end method dump
+} // end class StartupTrace
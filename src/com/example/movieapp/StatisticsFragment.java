@@ -0,0 +1,234 @@
+package com.example.movieapp;
+
+import java.util.List;
+
+import android.app.Activity;
+import android.app.Fragment;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+// shows totals over the whole collection: movies and budget per release
+// year, the directors with the highest budgets and the actors and
+// actresses in the most movies; reloaded as saves are committed
+public class StatisticsFragment extends Fragment
+{
+   // directors, actors and actresses listed
+   private static final int TOP_COUNT = 10;
+
+   private DatabaseConnector databaseConnector; // shared database access
+
+   private TextView totalsTextView; // movies and total budget
+   private TextView yearsTextView; // one line per release year
+   private TextView directorsTextView; // directors by total budget
+   private TextView actorsTextView; // actors by number of movies
+   private TextView actressesTextView; // actresses by number of movies
+
+   // follow changes while attached
+   @Override
+   public void onAttach(Activity activity)
+   {
+      super.onAttach(activity);
+      databaseConnector = DatabaseConnector.getInstance(activity);
+      databaseConnector.addMovieChangeListener(movieChangeListener);
+   }
+
+   // stop following changes when detached
+   @Override
+   public void onDetach()
+   {
+      super.onDetach();
+      databaseConnector.removeMovieChangeListener(movieChangeListener);
+      DatabaseExecutor.getInstance().cancelAll(this); // drop pending loads
+   }
+
+   // hold a reference to the shared connection while created; the
+   // fragment is retained, so a configuration change doesn't release it
+   @Override
+   public void onCreate(Bundle savedInstanceState)
+   {
+      super.onCreate(savedInstanceState);
+      databaseConnector.open();
+   }
+
+   // release the shared connection once the fragment is gone for good
+   @Override
+   public void onDestroy()
+   {
+      super.onDestroy();
+      databaseConnector.close();
+   }
+
+   // called when StatisticsFragment's view needs to be created
+   @Override
+   public View onCreateView(LayoutInflater inflater, ViewGroup container,
+      Bundle savedInstanceState)
+   {
+      super.onCreateView(inflater, container, savedInstanceState);
+      setRetainInstance(true); // save fragment across config changes
+      setHasOptionsMenu(true); // this fragment has menu items to display
+
+      View view =
+         inflater.inflate(R.layout.fragment_statistics, container, false);
+      totalsTextView = (TextView) view.findViewById(R.id.totalsTextView);
+      yearsTextView = (TextView) view.findViewById(R.id.yearsTextView);
+      directorsTextView =
+         (TextView) view.findViewById(R.id.directorsTextView);
+      actorsTextView = (TextView) view.findViewById(R.id.actorsTextView);
+      actressesTextView =
+         (TextView) view.findViewById(R.id.actressesTextView);
+      return view;
+   }
+
+   // load the statistics each time the fragment is shown
+   @Override
+   public void onResume()
+   {
+      super.onResume();
+      loadStatistics();
+   }
+
+   // reloads the statistics after each committed change
+   private final DatabaseConnector.MovieChangeListener movieChangeListener =
+      new DatabaseConnector.MovieChangeListener()
+      {
+         @Override
+         public void onMoviesChanged(MovieChange change)
+         {
+            if (isResumed())
+               loadStatistics();
+         }
+
+         // the statistics are unchanged
+         @Override
+         public void onWritesFailed(Exception error)
+         {
+         }
+      }; // end movieChangeListener
+
+   // display this fragment's menu items
+   @Override
+   public void onCreateOptionsMenu(Menu menu, MenuInflater inflater)
+   {
+      super.onCreateOptionsMenu(menu, inflater);
+      inflater.inflate(R.menu.fragment_statistics_menu, menu);
+   }
+
+   // handle menu item selections
+   @Override
+   public boolean onOptionsItemSelected(MenuItem item)
+   {
+      switch (item.getItemId())
+      {
+         case R.id.action_rebuild_statistics:
+            rebuildStatistics();
+            return true;
+      }
+
+      return super.onOptionsItemSelected(item);
+   }
+
+   // read the statistics in the background, replacing a load still
+   // waiting in the queue
+   private void loadStatistics()
+   {
+      DatabaseExecutor.getInstance().executeRead(
+         new DatabaseExecutor.Task<MovieStatistics>(this,
+            DatabaseExecutor.PRIORITY_VISIBLE, this)
+         {
+            @Override
+            protected MovieStatistics doInBackground()
+            {
+               return databaseConnector.getStatistics(TOP_COUNT);
+            }
+
+            @Override
+            protected void onResult(MovieStatistics result)
+            {
+               showStatistics(result);
+            }
+
+            @Override
+            protected void onFailed(Exception error)
+            {
+               showFailure(error);
+            }
+         });
+   } // end method loadStatistics
+
+   // recompute the statistics from the movies, then show them again
+   private void rebuildStatistics()
+   {
+      DatabaseExecutor.getInstance().executeWrite(
+         new DatabaseExecutor.Task<Void>(this,
+            DatabaseExecutor.PRIORITY_VISIBLE)
+         {
+            @Override
+            protected Void doInBackground()
+            {
+               databaseConnector.rebuildStatistics();
+               return null;
+            }
+
+            @Override
+            protected void onResult(Void result)
+            {
+               loadStatistics();
+            }
+
+            @Override
+            protected void onFailed(Exception error)
+            {
+               showFailure(error);
+            }
+         });
+   } // end method rebuildStatistics
+
+   // tell the user the statistics couldn't be read or recalculated
+   private void showFailure(Exception error)
+   {
+      Toast.makeText(getActivity(), getString(R.string.database_failed, 
+         error.getMessage()), Toast.LENGTH_LONG).show();
+   }
+
+   // fill the TextViews from statistics
+   private void showStatistics(MovieStatistics statistics)
+   {
+      totalsTextView.setText(getString(R.string.stats_totals,
+         statistics.getMovies(),
+         MovieFormat.formatBudget(statistics.getBudget()),
+         statistics.getBudgeted()));
+      yearsTextView.setText(formatGroups(statistics.getYears()));
+      directorsTextView.setText(formatGroups(statistics.getDirectors()));
+      actorsTextView.setText(formatGroups(statistics.getActors()));
+      actressesTextView.setText(formatGroups(statistics.getActresses()));
+   }
+
+   // return one line per group: its name, movies and total budget
+   private String formatGroups(List<MovieStatistics.Group> groups)
+   {
+      if (groups.isEmpty())
+         return getString(R.string.no_movies);
+
+      StringBuilder lines = new StringBuilder();
+
+      for (MovieStatistics.Group group : groups)
+      {
+         if (lines.length() > 0)
+            lines.append('\n');
+
+         String name = group.getName();
+         lines.append(getString(R.string.stats_line,
+            name.length() == 0 ? getString(R.string.stats_unknown) : name,
+            group.getMovies(), MovieFormat.formatBudget(group.getBudget())));
+      }
+
+      return lines.toString();
+   } // end method formatGroups
+} // end class StatisticsFragment
@@ -0,0 +1,82 @@
+package com.example.movieapp;
+
+import android.app.Activity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+// a bar along the bottom of an activity that offers, for a few seconds,
+// to undo something just done, so the action itself needs no
+// confirmation first; showing another message replaces the last one
+public class UndoBar
+{
+   // the bar hides itself after this long
+   private static final long SHOW_MS = 5000;
+
+   // called on the GUI thread when the user touches Undo
+   public interface UndoListener
+   {
+      public void onUndo();
+   }
+
+   private final View bar;
+   private final TextView messageTextView;
+   private UndoListener listener; // null while hidden
+
+   // constructor; adds the hidden bar over the activity's content
+   public UndoBar(Activity activity)
+   {
+      ViewGroup content = 
+         (ViewGroup) activity.findViewById(android.R.id.content);
+      bar = LayoutInflater.from(activity).inflate(R.layout.undo_bar, 
+         content, false);
+      content.addView(bar);
+
+      messageTextView = 
+         (TextView) bar.findViewById(R.id.undoMessageTextView);
+      bar.findViewById(R.id.undoButton).setOnClickListener(
+         new View.OnClickListener()
+         {
+            @Override
+            public void onClick(View view)
+            {
+               UndoListener undoListener = listener;
+               hide();
+
+               if (undoListener != null)
+                  undoListener.onUndo();
+            }
+         });
+   } // end UndoBar constructor
+
+   // show message with an Undo button that calls listener
+   public void show(CharSequence message, UndoListener listener)
+   {
+      this.listener = listener;
+      messageTextView.setText(message);
+      bar.removeCallbacks(hideRunnable);
+      bar.setAlpha(0);
+      bar.setVisibility(View.VISIBLE);
+      bar.animate().alpha(1);
+      bar.postDelayed(hideRunnable, SHOW_MS);
+   }
+
+   // hide the bar; the action can no longer be undone from it
+   public void hide()
+   {
+      listener = null;
+      bar.removeCallbacks(hideRunnable);
+      bar.setVisibility(View.GONE);
+   }
+
+   // hides the bar once SHOW_MS has passed
+   private final Runnable hideRunnable = new Runnable()
+   {
+      @Override
+      public void run()
+      {
+         hide();
+      }
+   };
+} // end class UndoBar
@@ -0,0 +1,167 @@
+package com.example.movieapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// reads Movies from comma-separated values, one record per line
+public class CsvMovieReader implements MovieReader
+{
+   // column order used when the file has no header row; CsvMovieWriter
+   // writes these as its header
+   public static final String[] DEFAULT_COLUMNS = { "name", "director",
+      "producer", "actor", "actress", "release", "budget" };
+
+   private final BufferedReader reader;
+   private final List<String> fields = new ArrayList<String>();
+   private final StringBuilder field = new StringBuilder();
+
+   // position of each movie column in a record, -1 if absent
+   private final int[] columnIndexes = new int[DEFAULT_COLUMNS.length];
+   private boolean headerRead;
+   private long lineNumber; // for error messages
+
+   // constructor
+   public CsvMovieReader(Reader reader)
+   {
+      this.reader = reader instanceof BufferedReader ?
+         (BufferedReader) reader : new BufferedReader(reader);
+   }
+
+   // return the next Movie, or null at the end of the input
+   @Override
+   public Movie read() throws IOException
+   {
+      if (!headerRead)
+      {
+         headerRead = true;
+
+         if (!readRecord())
+            return null; // empty file
+
+         if (!mapHeader())
+            return toMovie(); // first line was data, not a header
+      }
+
+      while (readRecord())
+      {
+         if (fields.size() == 1 && fields.get(0).length() == 0)
+            continue; // skip blank lines
+
+         return toMovie();
+      }
+
+      return null;
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      reader.close();
+   }
+
+   // map header names to columns; return false if the line is not a header
+   private boolean mapHeader()
+   {
+      for (int column = 0; column < DEFAULT_COLUMNS.length; ++column)
+      {
+         columnIndexes[column] = -1;
+
+         for (int i = 0; i < fields.size(); ++i)
+         {
+            String header = fields.get(i).trim().toLowerCase(Locale.US);
+
+            if (header.equals(DEFAULT_COLUMNS[column]))
+               columnIndexes[column] = i;
+         }
+      }
+
+      if (columnIndexes[0] != -1)
+         return true; // the name column was found
+
+      // no header, so the columns are in the default order
+      for (int column = 0; column < DEFAULT_COLUMNS.length; ++column)
+         columnIndexes[column] = column;
+
+      return false;
+   }
+
+   // build a Movie from the fields of the current record; a release or
+   // budget that cannot be converted is imported as unknown
+   private Movie toMovie()
+   {
+      int release = MovieFormat.parseRelease(field(5));
+      long budget = MovieFormat.parseBudget(field(6));
+
+      return new Movie(Movie.NO_ID, field(0), field(1), field(2), field(3),
+         field(4), release == MovieFormat.UNPARSEABLE ?
+            Movie.NO_RELEASE : release,
+         budget == MovieFormat.UNPARSEABLE ? Movie.NO_BUDGET : budget);
+   }
+
+   // return the value of a movie column in the current record
+   private String field(int column)
+   {
+      int index = columnIndexes[column];
+      return index >= 0 && index < fields.size() ? fields.get(index) : null;
+   }
+
+   // read the fields of the next record; return false at end of input
+   private boolean readRecord() throws IOException
+   {
+      fields.clear();
+      field.setLength(0);
+
+      int c = reader.read();
+
+      if (c == -1)
+         return false;
+
+      ++lineNumber;
+      boolean quoted = false;
+
+      while (c != -1)
+      {
+         if (quoted)
+         {
+            if (c == '"')
+            {
+               c = reader.read();
+
+               if (c != '"') // closing quote; anything else is literal
+               {
+                  quoted = false;
+                  continue;
+               }
+            }
+            else if (c == '\n')
+               ++lineNumber;
+
+            field.append((char) c);
+         }
+         else if (c == '"')
+            quoted = true;
+         else if (c == ',')
+         {
+            fields.add(field.toString());
+            field.setLength(0);
+         }
+         else if (c == '\n')
+            break;
+         else if (c != '\r')
+            field.append((char) c);
+
+         c = reader.read();
+      }
+
+      if (quoted)
+         throw new IOException("Unterminated quoted field at line " +
+            lineNumber);
+
+      fields.add(field.toString());
+      return true;
+   }
+} // end class CsvMovieReader
@@ -0,0 +1,99 @@
+package com.example.movieapp;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// writes Movies as comma-separated values under a header row, in the
+// form CsvMovieReader reads back
+public class CsvMovieWriter implements MovieWriter
+{
+   private final Writer writer;
+   private final StringBuilder record = new StringBuilder();
+   private char[] chars = new char[256]; // record copied for writer
+   private boolean headerWritten;
+
+   // constructor; writer should be buffered
+   public CsvMovieWriter(Writer writer)
+   {
+      this.writer = writer;
+   }
+
+   // append movie as the next line
+   @Override
+   public void write(Movie movie) throws IOException
+   {
+      record.setLength(0);
+
+      if (!headerWritten)
+      {
+         headerWritten = true;
+
+         for (String column : CsvMovieReader.DEFAULT_COLUMNS)
+            record.append(column).append(',');
+
+         record.setCharAt(record.length() - 1, '\n');
+      }
+
+      appendField(movie.getName());
+      appendField(movie.getDirector());
+      appendField(movie.getProducer());
+      appendField(movie.getActor());
+      appendField(movie.getActress());
+      MovieFormat.appendRelease(record, movie.getRelease());
+      record.append(',');
+      MovieFormat.appendAmount(record, movie.getBudget());
+      record.append('\n');
+
+      // copy into a reused array rather than a new String per record
+      int length = record.length();
+
+      if (chars.length < length)
+         chars = new char[Math.max(length, chars.length * 2)];
+
+      record.getChars(0, length, chars, 0);
+      writer.write(chars, 0, length);
+   } // end method write
+
+   // append value and its trailing comma, quoted if it contains a comma,
+   // quote or line break
+   private void appendField(String value)
+   {
+      if (value != null)
+      {
+         boolean quote = false;
+
+         for (int i = 0; i < value.length() && !quote; ++i)
+         {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+         }
+
+         if (!quote)
+            record.append(value);
+         else
+         {
+            record.append('"');
+
+            for (int i = 0; i < value.length(); ++i)
+            {
+               char c = value.charAt(i);
+
+               if (c == '"')
+                  record.append('"'); // a quote inside quotes is doubled
+
+               record.append(c);
+            }
+
+            record.append('"');
+         }
+      }
+
+      record.append(',');
+   } // end method appendField
+
+   @Override
+   public void close() throws IOException
+   {
+      writer.close();
+   }
+} // end class CsvMovieWriter
@@ -0,0 +1,107 @@
+package com.example.movieapp;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// writes Movies as JSON Lines, one object per line, in the form
+// JsonMovieReader reads back; unknown releases and budgets are null
+public class JsonMovieWriter implements MovieWriter
+{
+   private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+   private final Writer writer;
+   private final StringBuilder record = new StringBuilder();
+   private char[] chars = new char[256]; // record copied for writer
+
+   // constructor; writer should be buffered
+   public JsonMovieWriter(Writer writer)
+   {
+      this.writer = writer;
+   }
+
+   // append movie as the next line
+   @Override
+   public void write(Movie movie) throws IOException
+   {
+      record.setLength(0);
+      record.append("{\"name\":");
+      appendString(movie.getName());
+      record.append(",\"director\":");
+      appendString(movie.getDirector());
+      record.append(",\"producer\":");
+      appendString(movie.getProducer());
+      record.append(",\"actor\":");
+      appendString(movie.getActor());
+      record.append(",\"actress\":");
+      appendString(movie.getActress());
+      record.append(",\"release\":");
+
+      if (movie.getRelease() <= 0)
+         record.append("null");
+      else
+      {
+         record.append('"');
+         MovieFormat.appendRelease(record, movie.getRelease());
+         record.append('"');
+      }
+
+      record.append(",\"budget\":");
+
+      if (movie.getBudget() < 0)
+         record.append("null");
+      else
+         MovieFormat.appendAmount(record, movie.getBudget());
+
+      record.append("}\n");
+
+      // copy into a reused array rather than a new String per record
+      int length = record.length();
+
+      if (chars.length < length)
+         chars = new char[Math.max(length, chars.length * 2)];
+
+      record.getChars(0, length, chars, 0);
+      writer.write(chars, 0, length);
+   } // end method write
+
+   // append value as a JSON string, or null; the line and paragraph
+   // separators are escaped too, as they end lines for some readers
+   private void appendString(String value)
+   {
+      if (value == null)
+      {
+         record.append("null");
+         return;
+      }
+
+      record.append('"');
+
+      for (int i = 0; i < value.length(); ++i)
+      {
+         char c = value.charAt(i);
+
+         if (c == '"' || c == '\\')
+            record.append('\\').append(c);
+         else if (c == '\n')
+            record.append("\\n");
+         else if (c == '\r')
+            record.append("\\r");
+         else if (c == '\t')
+            record.append("\\t");
+         else if (c < 0x20 || c == '\u2028' || c == '\u2029')
+            record.append("\\u").append(HEX_DIGITS[c >> 12])
+               .append(HEX_DIGITS[c >> 8 & 0xf])
+               .append(HEX_DIGITS[c >> 4 & 0xf]).append(HEX_DIGITS[c & 0xf]);
+         else
+            record.append(c);
+      }
+
+      record.append('"');
+   } // end method appendString
+
+   @Override
+   public void close() throws IOException
+   {
+      writer.close();
+   }
+} // end class JsonMovieWriter
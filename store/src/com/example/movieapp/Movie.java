@@ -0,0 +1,75 @@
+package com.example.movieapp;
+
+// immutable record holding one row of the movies table
+public final class Movie
+{
+   // rowID used for a Movie that has not been saved yet
+   public static final long NO_ID = -1;
+
+   // stored when the release date or budget is unknown
+   public static final int NO_RELEASE = 0;
+   public static final long NO_BUDGET = -1;
+
+   private final long id;
+   private final String name;
+   private final String director;
+   private final String producer;
+   private final String actor;
+   private final String actress;
+   private final int release; // yyyymmdd, see MovieFormat
+   private final long budget; // in cents
+
+   // constructor
+   public Movie(long id, String name, String director, String producer,
+      String actor, String actress, int release, long budget)
+   {
+      this.id = id;
+      this.name = name;
+      this.director = director;
+      this.producer = producer;
+      this.actor = actor;
+      this.actress = actress;
+      this.release = release;
+      this.budget = budget;
+   }
+
+   public long getId()
+   {
+      return id;
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public String getDirector()
+   {
+      return director;
+   }
+
+   public String getProducer()
+   {
+      return producer;
+   }
+
+   public String getActor()
+   {
+      return actor;
+   }
+
+   public String getActress()
+   {
+      return actress;
+   }
+
+   public int getRelease()
+   {
+      return release;
+   }
+
+   public long getBudget()
+   {
+      return budget;
+   }
+} // end class Movie
@@ -0,0 +1,31 @@
+package com.example.movieapp;
+
+// describes rows of the movies table changed by one committed write
+public final class MovieChange
+{
+   // kinds of change
+   public static final int INSERTED = 0;
+   public static final int UPDATED = 1;
+   public static final int DELETED = 2;
+   public static final int RESET = 3; // too many rows to list; reload all
+
+   private final int type;
+   private final long[] ids; // empty for RESET
+
+   // constructor
+   public MovieChange(int type, long... ids)
+   {
+      this.type = type;
+      this.ids = ids;
+   }
+
+   public int getType()
+   {
+      return type;
+   }
+
+   public long[] getIds()
+   {
+      return ids;
+   }
+} // end class MovieChange
@@ -0,0 +1,92 @@
+package com.example.movieapp;
+
+import java.io.File;
+import java.io.IOException;
+
+// the few SQLite calls MovieStore makes, so the SQL and the logic around
+// it are written once: SQLiteMovieDatabase implements them over
+// android.database.sqlite on the device and JdbcMovieDatabase over JDBC
+// for the JVM tests and benchmarks. Arguments are bound as text, as
+// rawQuery binds them, and errors are thrown unchecked, as
+// android.database does.
+public interface MovieDatabase
+{
+   // the rows of a query, read forward once; columns are numbered from 0,
+   // as MovieSchema's column constants are
+   public interface Rows
+   {
+      // move to the next row; false once there are no more
+      public boolean next();
+
+      public int getColumnCount();
+      public boolean isNull(int column);
+      public int getInt(int column);
+      public long getLong(int column);
+      public String getString(int column);
+      public byte[] getBlob(int column);
+
+      // return the column's value as a Long, String, Double, byte[] or null
+      public Object getObject(int column);
+
+      public void close();
+   }
+
+   // a compiled statement; parameters are numbered from 1. Cached
+   // statements are shared between threads, so callers hold the
+   // statement's lock from the first bind to the execute
+   public interface Statement
+   {
+      public void bindLong(int index, long value);
+      public void bindString(int index, String value);
+      public void bindNull(int index);
+
+      // bind a value returned by Rows.getObject
+      public void bindObject(int index, Object value);
+
+      // run an insert or other statement that returns no rows
+      public void execute();
+
+      // run an update or delete and return the number of rows it changed
+      public int executeUpdateDelete();
+
+      // release a statement from compileStatement
+      public void close();
+   }
+
+   // run a query; args may be null if it has no parameters
+   public Rows query(String sql, String... args);
+
+   // return the first column of the first row of a query
+   public long queryLong(String sql, String... args);
+
+   // return the first column of the first row of a query as text; both
+   // throw if the query returns no rows
+   public String queryString(String sql, String... args);
+
+   // run a statement that returns no rows, binding args unchanged
+   public void execute(String sql, Object... args);
+
+   // return the cached compiled statement for sql
+   public Statement getStatement(String sql);
+
+   // compile sql into a statement the caller closes
+   public Statement compileStatement(String sql);
+
+   // begin a transaction that holds off other writers but not readers;
+   // transactions nest, and the outermost one commits only if each was
+   // marked successful before it ended
+   public void beginTransaction();
+   public void setTransactionSuccessful();
+   public void endTransaction();
+
+   // return the main database file
+   public File getFile();
+
+   // open another database file, e.g. a snapshot, on its own connection,
+   // creating it if it doesn't exist unless readOnly
+   public MovieDatabase openFile(File file, boolean readOnly)
+      throws IOException;
+
+   // close a database from openFile
+   public void close();
+} // end interface MovieDatabase
@@ -0,0 +1,622 @@
+package com.example.movieapp;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// finds movies entered twice under slightly different titles, e.g. "The
+// Matrix" and "Matrix, The (1999)". Titles are normalized (case, accents,
+// punctuation, a leading or trailing article and a year in brackets are
+// dropped) and compared by the trigrams they share; the director and
+// year then confirm or rule out a match, so a remake years later isn't
+// one. Uses no Android classes, so the repositories and the benchmarks
+// share it.
+public final class MovieDuplicates
+{
+   // score from which two movies are reported as likely duplicates
+   public static final double LIKELY_SCORE = 0.65;
+
+   // titles sharing less than this fraction of their trigrams (Jaccard
+   // similarity) can't score LIKELY_SCORE, whatever their directors
+   public static final double MIN_TITLE_SIMILARITY = 0.55;
+
+   // a score is the titles' similarity times TITLE_WEIGHT, plus a bonus
+   // for directors alike, less a penalty for different ones, plus a bonus
+   // for the same year (or one apart, as release dates differ by
+   // country); only the same title, director and year score 1
+   private static final double TITLE_WEIGHT = 0.8;
+   private static final double DIRECTOR_BONUS = 0.15;
+   private static final double DIRECTOR_PENALTY = 0.25;
+   private static final double YEAR_BONUS = 0.05;
+
+   // findDuplicates looks up only a title's rarest trigrams (see
+   // probeTrigrams), skipping any more movies than this have, as they say
+   // little about which titles are alike, and scores the MAX_CANDIDATES
+   // movies sharing the most of those
+   public static final int MAX_TRIGRAM_MOVIES = 1000;
+   public static final int MAX_CANDIDATES = 50;
+
+   // year of a Key whose movie has no release date or year in its title
+   public static final int NO_YEAR = 0;
+
+   // trigrams are three characters of a normalized title, each mapped to
+   // one of SYMBOLS symbols: space, a-z, 0-9 and three buckets for the
+   // rest, so a trigram is a number below TRIGRAMS
+   private static final int SYMBOLS = 40;
+   public static final int TRIGRAMS = SYMBOLS * SYMBOLS * SYMBOLS;
+
+   // a title_trigrams row ID is the trigram shifted by ID_BITS plus the
+   // movie's _id (see MovieSchema.TITLE_STATEMENTS)
+   private static final int ID_BITS = 40;
+
+   private static final Pattern ACCENTS =
+      Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+   private static final Pattern BRACKETED_YEAR =
+      Pattern.compile("[(\\[]\\s*(\\d{4})\\s*[)\\]]");
+   private static final Pattern TRAILING_ARTICLE =
+      Pattern.compile(",\\s*(the|a|an)$");
+   private static final Pattern LEADING_ARTICLE =
+      Pattern.compile("^(the|a|an)\\s+");
+   private static final Pattern NOT_WORD =
+      Pattern.compile("[^\\p{L}\\p{N}]+");
+
+   // orders matches from lowest to highest score
+   private static final Comparator<Match> BY_SCORE = new Comparator<Match>()
+   {
+      @Override
+      public int compare(Match first, Match second)
+      {
+         return Double.compare(first.score, second.score);
+      }
+   };
+
+   // a movie's title, director and year as they are compared
+   public static final class Key
+   {
+      public final long id;
+      public final String title;
+      public final String director;
+      public final int year;
+      private final int[] trigrams; // distinct, ascending
+      private int[] directorTrigrams; // likewise, once first compared
+
+      // constructor; title and director are already normalized, as read
+      // back from title_keys
+      public Key(long id, String title, String director, int year)
+      {
+         this.id = id;
+         this.title = title;
+         this.director = director;
+         this.year = year;
+         trigrams = trigrams(title);
+      }
+
+      // return the key of the movie with the given _id and columns
+      public static Key of(long id, String name, String director,
+         int release)
+      {
+         int year = release != Movie.NO_RELEASE ? release / 10000 :
+            titleYear(name);
+         return new Key(id, normalizeTitle(name), normalizeName(director),
+            year);
+      }
+
+      // return movie's key
+      public static Key of(Movie movie)
+      {
+         return of(movie.getId(), movie.getName(), movie.getDirector(),
+            movie.getRelease());
+      }
+
+      // return the title's trigrams, distinct and in ascending order
+      public int[] getTrigrams()
+      {
+         return trigrams.clone();
+      }
+
+      // return the director's trigrams; a Key is compared with many
+      // others in findAll, so they are made once
+      private int[] getDirectorTrigrams()
+      {
+         if (directorTrigrams == null)
+            directorTrigrams = trigrams(director);
+
+         return directorTrigrams;
+      }
+   } // end class Key
+
+   // counts the trigrams each movie shares with a title being looked up
+   // in title_trigrams, to choose the movies worth scoring
+   public static final class Candidates
+   {
+      private final Map<Long, int[]> shared = new HashMap<Long, int[]>();
+
+      // count count more trigrams shared by the movie with the given _id
+      public void add(long id, int count)
+      {
+         int[] total = shared.get(id);
+
+         if (total == null)
+            shared.put(id, new int[] { count });
+         else
+            total[0] += count;
+      }
+
+      // return the _ids of up to limit movies other than excludedId,
+      // those sharing the most trigrams first
+      public long[] top(int limit, long excludedId)
+      {
+         List<Map.Entry<Long, int[]>> entries = 
+            new ArrayList<Map.Entry<Long, int[]>>(shared.entrySet());
+         Collections.sort(entries, new Comparator<Map.Entry<Long, int[]>>()
+            {
+               @Override
+               public int compare(Map.Entry<Long, int[]> first,
+                  Map.Entry<Long, int[]> second)
+               {
+                  return second.getValue()[0] - first.getValue()[0];
+               }
+            });
+
+         long[] ids = new long[Math.min(limit, entries.size())];
+         int count = 0;
+
+         for (Map.Entry<Long, int[]> entry : entries)
+         {
+            if (count == ids.length)
+               break;
+
+            if (entry.getKey() != excludedId)
+               ids[count++] = entry.getKey();
+         }
+
+         return Arrays.copyOf(ids, count);
+      } // end method top
+   } // end class Candidates
+
+   // two movies that are likely the same one, and how likely (at least
+   // LIKELY_SCORE, at most 1)
+   public static final class Match
+   {
+      public final long id;
+      public final long otherId;
+      public final double score;
+
+      // constructor
+      public Match(long id, long otherId, double score)
+      {
+         this.id = id;
+         this.otherId = otherId;
+         this.score = score;
+      }
+   }
+
+   private MovieDuplicates()
+   {
+   }
+
+   // return name lower-cased, without accents, with each run of
+   // punctuation and spaces made one space
+   public static String normalizeName(String name)
+   {
+      String text = Normalizer.normalize(name.toLowerCase(Locale.US),
+         Normalizer.Form.NFD);
+      text = ACCENTS.matcher(text).replaceAll("");
+      return NOT_WORD.matcher(text.replace("&", " and ")).replaceAll(" ")
+         .trim();
+   }
+
+   // return name normalized as normalizeName does, after dropping a year
+   // in brackets and a leading article or one moved to the end ("Matrix,
+   // The"); a title that is nothing but an article keeps it
+   public static String normalizeTitle(String name)
+   {
+      String text = BRACKETED_YEAR.matcher(name.toLowerCase(Locale.US))
+         .replaceAll(" ").trim();
+      text = TRAILING_ARTICLE.matcher(text).replaceFirst("");
+      text = normalizeName(text);
+      String withoutArticle = LEADING_ARTICLE.matcher(text).replaceFirst("");
+      return withoutArticle.length() > 0 ? withoutArticle : text;
+   }
+
+   // return the year in brackets in name, or NO_YEAR if there is none
+   public static int titleYear(String name)
+   {
+      Matcher matcher = BRACKETED_YEAR.matcher(name);
+      return matcher.find() ? Integer.parseInt(matcher.group(1)) : NO_YEAR;
+   }
+
+   // return the distinct trigrams of text padded with a space at each
+   // end, in ascending order; text is normalized, so mostly a-z, 0-9 and
+   // single spaces
+   public static int[] trigrams(String text)
+   {
+      String padded = " " + text + " ";
+      int[] trigrams = new int[Math.max(0, padded.length() - 2)];
+
+      for (int i = 0; i < trigrams.length; ++i)
+         trigrams[i] = (symbol(padded.charAt(i)) * SYMBOLS +
+            symbol(padded.charAt(i + 1))) * SYMBOLS +
+            symbol(padded.charAt(i + 2));
+
+      Arrays.sort(trigrams);
+      int count = 0;
+
+      for (int i = 0; i < trigrams.length; ++i)
+      {
+         if (count == 0 || trigrams[i] != trigrams[count - 1])
+            trigrams[count++] = trigrams[i];
+      }
+
+      return Arrays.copyOf(trigrams, count);
+   } // end method trigrams
+
+   // return the symbol for c in a trigram
+   private static int symbol(char c)
+   {
+      if (c >= 'a' && c <= 'z')
+         return 1 + c - 'a';
+      else if (c >= '0' && c <= '9')
+         return 27 + c - '0';
+      else if (c == ' ')
+         return 0;
+      else
+         return 37 + c % 3; // letters of other scripts share three
+   }
+
+   // return the title_trigrams row ID of trigram in movie id's title, and
+   // the first row ID of trigram, before every movie's
+   public static long trigramRowId(int trigram, long id)
+   {
+      return ((long) trigram << ID_BITS) + id;
+   }
+
+   public static long firstTrigramRowId(int trigram)
+   {
+      return (long) trigram << ID_BITS;
+   }
+
+   // return the movie _id in a title_trigrams row ID
+   public static long trigramMovieId(long rowId)
+   {
+      return rowId & ((1L << ID_BITS) - 1);
+   }
+
+   // return the fraction of the trigrams of either of two ascending
+   // arrays that both have
+   public static double similarity(int[] first, int[] second)
+   {
+      return similarity(first, second, 0);
+   }
+
+   // return similarity(first, second), or 0 if the arrays share fewer
+   // than atLeast trigrams; stops comparing as soon as that is certain
+   private static double similarity(int[] first, int[] second, 
+      int atLeast)
+   {
+      if (first.length == 0 || second.length == 0)
+         return 0;
+
+      int shared = 0;
+
+      for (int i = 0, j = 0; i < first.length && j < second.length; )
+      {
+         if (shared + Math.min(first.length - i, second.length - j) < 
+            atLeast)
+            return 0;
+
+         if (first[i] < second[j])
+            ++i;
+         else if (first[i] > second[j])
+            ++j;
+         else
+         {
+            ++shared;
+            ++i;
+            ++j;
+         }
+      }
+
+      if (shared < atLeast)
+         return 0;
+
+      return (double) shared / (first.length + second.length - shared);
+   } // end method similarity
+
+   // return how likely the movies of two keys are the same one, from 0
+   // up to 1; 0 if their titles are too far apart or their years are
+   // more than a year apart
+   public static double score(Key first, Key second)
+   {
+      int shorter = Math.min(first.trigrams.length, second.trigrams.length);
+      int longer = Math.max(first.trigrams.length, second.trigrams.length);
+
+      // too different in length to share enough trigrams
+      if (shorter < MIN_TITLE_SIMILARITY * longer)
+         return 0;
+
+      double similarity = similarity(first.trigrams, second.trigrams, 
+         minOverlap(first.trigrams.length, second.trigrams.length));
+
+      if (similarity < MIN_TITLE_SIMILARITY)
+         return 0;
+
+      double score = similarity * TITLE_WEIGHT;
+
+      if (first.year != NO_YEAR && second.year != NO_YEAR)
+      {
+         if (Math.abs(first.year - second.year) > 1)
+            return 0; // a remake, or a sequel with the same title
+
+         score += YEAR_BONUS;
+      }
+
+      if (first.director.length() > 0 && second.director.length() > 0)
+      {
+         // tolerate a misspelt director
+         if (first.director.equals(second.director) ||
+            similarity(first.getDirectorTrigrams(),
+               second.getDirectorTrigrams()) >= MIN_TITLE_SIMILARITY)
+            score += DIRECTOR_BONUS;
+         else
+            score -= DIRECTOR_PENALTY;
+      }
+
+      return score;
+   } // end method score
+
+   // return up to limit of the candidates that are likely duplicates of
+   // key's movie, most likely first; key's own movie is left out
+   public static List<Match> rank(Key key, List<Key> candidates, int limit)
+   {
+      TopMatches matches = new TopMatches(limit);
+
+      for (Key candidate : candidates)
+      {
+         if (candidate.id != key.id)
+            matches.offer(key.id, candidate.id, score(key, candidate));
+      }
+
+      return matches.toList();
+   }
+
+   // return the number of a title's count trigrams, rarest first, that
+   // another title at least MIN_TITLE_SIMILARITY alike must share one of:
+   // as many as it can miss, plus one
+   public static int prefixLength(int count)
+   {
+      return Math.min(count, 
+         count - (int) Math.ceil(MIN_TITLE_SIMILARITY * count) + 1);
+   }
+
+   // return the trigrams findDuplicates looks up for a title with the
+   // given trigrams, had by counts[i] movies each (counted up to just
+   // past MAX_TRIGRAM_MOVIES): the prefixLength rarest, less any more
+   // than MAX_TRIGRAM_MOVIES have
+   public static int[] probeTrigrams(int[] trigrams, int[] counts)
+   {
+      int prefix = prefixLength(trigrams.length);
+      long[] rarest = rarestFirst(trigrams, counts);
+      int[] probes = new int[prefix];
+      int count = 0;
+
+      for (int t = 0; t < prefix; ++t)
+      {
+         if (rarest[t] >>> 32 <= MAX_TRIGRAM_MOVIES)
+            probes[count++] = (int) rarest[t];
+      }
+
+      return Arrays.copyOf(probes, count);
+   } // end method probeTrigrams
+
+   // return trigrams, had by counts[i] movies each, rarest first and
+   // then in ascending order, each as its count shifted left 32 bits
+   // plus the trigram
+   private static long[] rarestFirst(int[] trigrams, int[] counts)
+   {
+      long[] rarest = new long[trigrams.length];
+
+      for (int t = 0; t < trigrams.length; ++t)
+         rarest[t] = (long) counts[t] << 32 | trigrams[t];
+
+      Arrays.sort(rarest);
+      return rarest;
+   }
+
+   // return the fewest trigrams titles with first and second trigrams
+   // must share to be MIN_TITLE_SIMILARITY alike
+   private static int minOverlap(int first, int second)
+   {
+      return (int) Math.ceil(MIN_TITLE_SIMILARITY / 
+         (1 + MIN_TITLE_SIMILARITY) * (first + second) - 1e-9);
+   }
+
+   // return up to limit pairs of likely duplicates among keys, most
+   // likely first. Rather than scoring every pair, each title is scored
+   // only against those sharing one of its probeTrigrams, as
+   // findDuplicates looks up, among their own probeTrigrams: two titles
+   // alike enough share one, as both are their rarest trigrams in the
+   // same order. Where two titles first share a trigram also bounds how
+   // many they can share, which rules out most of them unscored. Titles
+   // rarely have a common trigram among their rarest, and none has one of
+   // more than MAX_TRIGRAM_MOVIES movies, so the work grows with the
+   // catalog, not its square. Titles that are the very same are paired
+   // too.
+   public static List<Match> findAll(final List<Key> keys, int limit)
+   {
+      // the number of movies with each trigram
+      int[] frequencies = new int[TRIGRAMS];
+
+      for (Key key : keys)
+      {
+         for (int trigram : key.trigrams)
+            ++frequencies[trigram];
+      }
+
+      // each key's trigrams rarest first, and the keys with each trigram
+      // among their probeTrigrams, as indexes into keys, with their
+      // number of trigrams and how many follow this one in their order,
+      // in three arrays read in step
+      int[][] ordered = new int[keys.size()][];
+      int[] starts = new int[TRIGRAMS + 1];
+
+      for (int i = 0; i < ordered.length; ++i)
+      {
+         int[] trigrams = keys.get(i).trigrams;
+         int[] counts = new int[trigrams.length];
+
+         for (int t = 0; t < counts.length; ++t)
+            counts[t] = frequencies[trigrams[t]];
+
+         long[] rarest = rarestFirst(trigrams, counts);
+         ordered[i] = new int[rarest.length];
+
+         for (int t = 0; t < rarest.length; ++t)
+            ordered[i][t] = (int) rarest[t];
+
+         for (int t = 0; t < prefixLength(rarest.length); ++t)
+            ++starts[ordered[i][t] + 1];
+      }
+
+      for (int trigram = 0; trigram < TRIGRAMS; ++trigram)
+         starts[trigram + 1] += starts[trigram];
+
+      int[] postings = new int[starts[TRIGRAMS]];
+      int[] sizes = new int[postings.length];
+      int[] remaining = new int[postings.length];
+      int[] next = Arrays.copyOf(starts, TRIGRAMS);
+
+      for (int i = 0; i < ordered.length; ++i)
+      {
+         int size = ordered[i].length;
+
+         for (int t = 0; t < prefixLength(size); ++t)
+         {
+            int p = next[ordered[i][t]]++;
+            postings[p] = i;
+            sizes[p] = size;
+            remaining[p] = size - t - 1;
+         }
+      }
+
+      // the indexes into keys by title, then index, and where each is
+      Integer[] byTitle = new Integer[keys.size()];
+
+      for (int i = 0; i < byTitle.length; ++i)
+         byTitle[i] = i;
+
+      Arrays.sort(byTitle, new Comparator<Integer>()
+         {
+            @Override
+            public int compare(Integer first, Integer second)
+            {
+               int order = 
+                  keys.get(first).title.compareTo(keys.get(second).title);
+               return order != 0 ? order : first - second;
+            }
+         });
+
+      int[] titlePositions = new int[byTitle.length];
+
+      for (int p = 0; p < byTitle.length; ++p)
+         titlePositions[byTitle[p]] = p;
+
+      TopMatches matches = new TopMatches(limit);
+      int[] seenBy = new int[keys.size()]; // last key i + 1 that saw one
+
+      for (int i = 0; i < keys.size(); ++i)
+      {
+         Key key = keys.get(i);
+         int size = ordered[i].length;
+
+         for (int t = 0; t < prefixLength(size); ++t)
+         {
+            int trigram = ordered[i][t];
+
+            if (frequencies[trigram] > MAX_TRIGRAM_MOVIES)
+               break; // so are those after it
+
+            for (int p = starts[trigram]; p < starts[trigram + 1]; ++p)
+            {
+               // if this is the first trigram both have, at most it and
+               // those after it in the title with fewer left are shared;
+               // if not, the first had them both ruled out or offered
+               if (1 + Math.min(size - t - 1, remaining[p]) >= 
+                  minOverlap(size, sizes[p]))
+                  offer(keys, i, postings[p], seenBy, matches);
+            }
+         }
+
+         // the keys after it with the same title, up to as many as a
+         // trigram looked up may have
+         int last = Math.min(byTitle.length - 1, 
+            titlePositions[i] + MAX_TRIGRAM_MOVIES);
+
+         for (int p = titlePositions[i] + 1; p <= last && 
+            keys.get(byTitle[p]).title.equals(key.title); ++p)
+            offer(keys, i, byTitle[p], seenBy, matches);
+      }
+
+      return matches.toList();
+   } // end method findAll
+
+   // offer the pair of keys i and j to matches, unless j comes first (so
+   // each pair is offered once) or i has offered it already
+   private static void offer(List<Key> keys, int i, int j, int[] seenBy,
+      TopMatches matches)
+   {
+      if (j <= i || seenBy[j] == i + 1)
+         return;
+
+      seenBy[j] = i + 1;
+      Key key = keys.get(i);
+      Key other = keys.get(j);
+      matches.offer(key.id, other.id, score(key, other));
+   }
+
+   // keeps the limit best likely matches offered to it
+   private static final class TopMatches
+   {
+      private final int limit;
+      private final PriorityQueue<Match> matches; // lowest score first
+
+      // constructor
+      public TopMatches(int limit)
+      {
+         this.limit = limit;
+         matches = new PriorityQueue<Match>(limit + 1, BY_SCORE);
+      }
+
+      // consider a pair for the result, if it is likely a duplicate
+      public void offer(long id, long otherId, double score)
+      {
+         if (score < LIKELY_SCORE)
+            return;
+
+         if (matches.size() < limit)
+            matches.add(new Match(id, otherId, score));
+         else if (score > matches.peek().score)
+         {
+            matches.poll(); // drop the current least likely match
+            matches.add(new Match(id, otherId, score));
+         }
+      }
+
+      // return the kept matches, most likely first
+      public List<Match> toList()
+      {
+         List<Match> result = new ArrayList<Match>(matches);
+         Collections.sort(result, Collections.reverseOrder(BY_SCORE));
+         return result;
+      }
+   } // end class TopMatches
+} // end class MovieDuplicates
@@ -0,0 +1,137 @@
+package com.example.movieapp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+// streams every Movie from the database into a CSV or JSON Lines file,
+// gzip-compressed if its name ends in .gz; rows go straight from each
+// batch to the file, so memory use doesn't grow with the table
+public class MovieExporter
+{
+   // rows read per query unless a caller chooses otherwise
+   public static final int DEFAULT_BATCH_SIZE = 1000;
+
+   // size of the buffers between the rows and the file
+   private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+   // suffix of the file written until the export is complete
+   private static final String PART_SUFFIX = ".part";
+
+   private final MovieRepository repository; // supplies the rows
+   private final int batchSize; // rows read per query
+   private volatile boolean cancelled; // set by cancel on another thread
+
+   // constructor
+   public MovieExporter(MovieRepository repository, int batchSize)
+   {
+      this.repository = repository;
+      this.batchSize = batchSize;
+   }
+
+   // stop a running export; exportFile then throws InterruptedIOException
+   public void cancel()
+   {
+      cancelled = true;
+   }
+
+   // export every Movie to file and return the number of rows written;
+   // the rows are written to a temporary file that replaces file only
+   // once complete, so a failed or cancelled export leaves file as it was
+   public long exportFile(File file,
+      MovieRepository.ProgressListener listener)
+      throws IOException
+   {
+      File partFile = new File(file.getPath() + PART_SUFFIX);
+      final MovieWriter writer = openWriter(
+         new FileOutputStream(partFile).getChannel(), file.getName());
+      boolean complete = false;
+
+      try
+      {
+         // checks for cancel before each row
+         MovieWriter cancellableWriter = new MovieWriter()
+            {
+               @Override
+               public void write(Movie movie) throws IOException
+               {
+                  if (cancelled)
+                     throw new InterruptedIOException("Export cancelled");
+
+                  writer.write(movie);
+               }
+
+               @Override
+               public void close() throws IOException
+               {
+                  writer.close();
+               }
+            };
+
+         long rowCount = repository.exportMovies(cancellableWriter,
+            batchSize, listener);
+         writer.close(); // flush the buffers and finish the gzip stream
+
+         if (!partFile.renameTo(file))
+            throw new IOException("Cannot replace " + file);
+
+         complete = true;
+         return rowCount;
+      }
+      finally
+      {
+         if (!complete)
+         {
+            try
+            {
+               writer.close();
+            }
+            catch (IOException e)
+            {
+               // the partial file is deleted either way
+            }
+
+            partFile.delete();
+         }
+      }
+   } // end method exportFile
+
+   // return a buffered MovieWriter over channel in the format fileName
+   // names: JSON Lines for .json, .jsonl or .ndjson, otherwise CSV, and
+   // gzip-compressed if the name ends in .gz as well
+   public static MovieWriter openWriter(WritableByteChannel channel,
+      String fileName) throws IOException
+   {
+      String name = fileName.toLowerCase(Locale.US);
+      Writer out;
+
+      if (name.endsWith(".gz"))
+      {
+         name = name.substring(0, name.length() - 3);
+         out = new OutputStreamWriter(new GZIPOutputStream(
+            Channels.newOutputStream(channel), WRITE_BUFFER_SIZE), "UTF-8");
+      }
+      else
+         out = Channels.newWriter(channel, Charset.forName("UTF-8")
+            .newEncoder().onMalformedInput(CodingErrorAction.REPLACE),
+            WRITE_BUFFER_SIZE); // replaces bad text as OutputStreamWriter
+
+      out = new BufferedWriter(out, WRITE_BUFFER_SIZE);
+
+      if (name.endsWith(".json") || name.endsWith(".jsonl") ||
+         name.endsWith(".ndjson"))
+         return new JsonMovieWriter(out);
+
+      return new CsvMovieWriter(out);
+   } // end method openWriter
+} // end class MovieExporter
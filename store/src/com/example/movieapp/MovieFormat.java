@@ -0,0 +1,177 @@
+package com.example.movieapp;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// converts release dates and budgets between display text and the
+// integer forms stored in the database: releases as yyyymmdd (with 00
+// for an unknown month or day) and budgets as whole cents
+public final class MovieFormat
+{
+   // returned by the parse methods for text that cannot be converted
+   public static final int UNPARSEABLE = -2;
+
+   // yyyy-mm-dd, yyyy/mm/dd, yyyy.mm.dd, yyyy-mm or yyyy
+   private static final Pattern YEAR_FIRST = Pattern.compile(
+      "(\\d{4})(?:[-/.](\\d{1,2})(?:[-/.](\\d{1,2}))?)?");
+
+   // mm/dd/yyyy as typed on US devices
+   private static final Pattern YEAR_LAST = Pattern.compile(
+      "(\\d{1,2})/(\\d{1,2})/(\\d{4})");
+
+   // a plausible year anywhere in the text, e.g. "Released 1999"
+   private static final Pattern ANY_YEAR =
+      Pattern.compile("(?<!\\d)(1[89]\\d\\d|2\\d\\d\\d)(?!\\d)");
+
+   // amount with an optional scale word, e.g. "1.5 million" or "200k"
+   private static final Pattern AMOUNT = Pattern.compile(
+      "(\\d+(?:\\.\\d+)?)\\s*(k|thousand|m|mm|mil|million|b|bn|billion)?");
+
+   private MovieFormat()
+   {
+   }
+
+   // return text as yyyymmdd, Movie.NO_RELEASE if empty, or UNPARSEABLE
+   public static int parseRelease(String text)
+   {
+      if (text == null || text.trim().length() == 0)
+         return Movie.NO_RELEASE;
+
+      text = text.trim();
+      Matcher matcher = YEAR_FIRST.matcher(text);
+
+      if (matcher.matches())
+         return toRelease(matcher.group(1), matcher.group(2),
+            matcher.group(3));
+
+      matcher = YEAR_LAST.matcher(text);
+
+      if (matcher.matches())
+         return toRelease(matcher.group(3), matcher.group(1),
+            matcher.group(2));
+
+      matcher = ANY_YEAR.matcher(text);
+
+      if (matcher.find())
+         return toRelease(matcher.group(1), null, null);
+
+      return UNPARSEABLE;
+   } // end method parseRelease
+
+   // combine date parts into yyyymmdd, or UNPARSEABLE if out of range
+   private static int toRelease(String year, String month, String day)
+   {
+      int y = Integer.parseInt(year);
+      int m = month == null ? 0 : Integer.parseInt(month);
+      int d = day == null ? 0 : Integer.parseInt(day);
+
+      if (m > 12 || d > 31 || (m == 0 && d != 0))
+         return UNPARSEABLE;
+
+      return y * 10000 + m * 100 + d;
+   }
+
+   // return the year of a stored release, or 0 if unknown
+   public static int getYear(int release)
+   {
+      return release / 10000;
+   }
+
+   // return a stored release as yyyy-mm-dd, yyyy-mm, yyyy or ""
+   public static String formatRelease(int release)
+   {
+      if (release <= 0)
+         return "";
+
+      int year = release / 10000;
+      int month = release / 100 % 100;
+      int day = release % 100;
+
+      if (month == 0)
+         return String.valueOf(year);
+      if (day == 0)
+         return String.format(Locale.US, "%04d-%02d", year, month);
+      return String.format(Locale.US, "%04d-%02d-%02d", year, month, day);
+   }
+
+   // append a stored release to out as formatRelease returns it; used
+   // for every row of an export, so it avoids String.format
+   public static void appendRelease(StringBuilder out, int release)
+   {
+      if (release <= 0)
+         return;
+
+      out.append(release / 10000);
+      int month = release / 100 % 100;
+      int day = release % 100;
+
+      if (month != 0)
+      {
+         appendTwoDigits(out.append('-'), month);
+
+         if (day != 0)
+            appendTwoDigits(out.append('-'), day);
+      }
+   } // end method appendRelease
+
+   // append value, 0 to 99, as two digits
+   private static void appendTwoDigits(StringBuilder out, int value)
+   {
+      out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+   }
+
+   // return text as cents, Movie.NO_BUDGET if empty, or UNPARSEABLE
+   public static long parseBudget(String text)
+   {
+      if (text == null || text.trim().length() == 0)
+         return Movie.NO_BUDGET;
+
+      // drop currency symbols, codes and digit grouping
+      String amount = text.trim().toLowerCase(Locale.US)
+         .replaceAll("[$,_ ]|usd|dollars?", "");
+      Matcher matcher = AMOUNT.matcher(amount);
+
+      if (!matcher.matches())
+         return UNPARSEABLE;
+
+      double value = Double.parseDouble(matcher.group(1));
+      String scale = matcher.group(2);
+
+      if (scale != null)
+      {
+         if (scale.startsWith("k") || scale.startsWith("t"))
+            value *= 1e3;
+         else if (scale.startsWith("m"))
+            value *= 1e6;
+         else
+            value *= 1e9;
+      }
+
+      return Math.round(value * 100);
+   } // end method parseBudget
+
+   // append a stored budget to out as plain dollars that parseBudget
+   // reads back, e.g. 1500000 or 1500000.50; nothing if it is unknown
+   public static void appendAmount(StringBuilder out, long budget)
+   {
+      if (budget < 0)
+         return;
+
+      out.append(budget / 100);
+
+      if (budget % 100 != 0)
+         appendTwoDigits(out.append('.'), (int) (budget % 100));
+   }
+
+   // return a stored budget as dollars, e.g. "$1,500,000", or ""
+   public static String formatBudget(long budget)
+   {
+      if (budget < 0)
+         return "";
+
+      if (budget % 100 == 0)
+         return String.format(Locale.US, "$%,d", budget / 100);
+      return String.format(Locale.US, "$%,d.%02d", budget / 100, budget % 100);
+   }
+} // end class MovieFormat
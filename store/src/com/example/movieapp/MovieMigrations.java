@@ -0,0 +1,607 @@
+package com.example.movieapp;
+
+// brings a database created by an older version of the app to the
+// current schema. Each migration holds the statements of its own version
+// as literals, rather than MovieSchema's, which describe the current
+// schema and go on changing: a migration must create what its version
+// created, and a later migration changes that in turn. Uses no Android
+// classes, so DatabaseConnector and JdbcMovieRepository run the same
+// upgrade and the JVM tests can check it against CREATE_STATEMENTS.
+public final class MovieMigrations
+{
+   // rows converted per query while migrating existing data
+   private static final int BATCH_SIZE = 500;
+
+   private MovieMigrations()
+   {
+   }
+
+   // apply each migration after oldVersion up to newVersion in order;
+   // the caller runs the whole upgrade in one transaction
+   public static void upgrade(MovieDatabase db, int oldVersion,
+      int newVersion)
+   {
+      for (int version = oldVersion + 1; version <= newVersion; ++version)
+      {
+         switch (version)
+         {
+            case 2:
+               migrateToVersion2(db);
+               break;
+            case 3:
+               migrateToVersion3(db);
+               break;
+            case 4:
+               migrateToVersion4(db);
+               break;
+            case 5:
+               migrateToVersion5(db);
+               break;
+            case 6:
+               migrateToVersion6(db);
+               break;
+            case 7:
+               migrateToVersion7(db);
+               break;
+            case 8:
+               migrateToVersion8(db);
+               break;
+            case 9:
+               migrateToVersion9(db);
+               break;
+            case 10:
+               migrateToVersion10(db);
+               break;
+            case 11:
+               migrateToVersion11(db);
+               break;
+            case 12:
+               migrateToVersion12(db);
+               break;
+         }
+      }
+   } // end method upgrade
+
+   // bind a String; missing values are stored as empty text, as
+   // MovieStore stores them
+   private static void bindText(MovieDatabase.Statement statement, 
+      int index, String value)
+   {
+      statement.bindString(index, value == null ? "" : value);
+   }
+
+   // version 2: release becomes an integer yyyymmdd and budget integer
+   // cents, with indexes for sorting and filtering. Rows are converted
+   // in batches; text that cannot be converted is kept in movies_legacy.
+   private static void migrateToVersion2(MovieDatabase db)
+   {
+      db.execute("CREATE TABLE movies_v2" +
+         "(_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+         "name TEXT NOT NULL DEFAULT '', director TEXT NOT NULL DEFAULT ''," +
+         "producer TEXT NOT NULL DEFAULT '', actor TEXT NOT NULL DEFAULT ''," +
+         "actress TEXT NOT NULL DEFAULT ''," +
+         "release INTEGER NOT NULL DEFAULT 0," +
+         "budget INTEGER NOT NULL DEFAULT -1);");
+      db.execute("CREATE TABLE movies_legacy" +
+         "(movie_id INTEGER PRIMARY KEY, release TEXT, budget TEXT);");
+
+      // carry over the AUTOINCREMENT counter so deleted ids stay unused
+      db.execute("INSERT INTO sqlite_sequence (name, seq) " +
+         "SELECT 'movies_v2', seq FROM sqlite_sequence " +
+         "WHERE name='movies'");
+
+      MovieDatabase.Statement insert = db.compileStatement(
+         "INSERT INTO movies_v2 (_id, name, director, producer, actor, " +
+         "actress, release, budget) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+      MovieDatabase.Statement insertLegacy = db.compileStatement(
+         "INSERT INTO movies_legacy (movie_id, release, budget) " +
+         "VALUES (?, ?, ?)");
+      long lastID = 0;
+      int rowCount;
+
+      try
+      {
+         do // convert the next batch of rows after lastID
+         {
+            MovieDatabase.Rows rows = db.query("SELECT _id, name, " +
+               "director, producer, actor, actress, release, budget " +
+               "FROM movies WHERE _id>? ORDER BY _id LIMIT " + BATCH_SIZE,
+               String.valueOf(lastID));
+            rowCount = 0;
+
+            try
+            {
+               while (rows.next())
+               {
+                  ++rowCount;
+                  lastID = rows.getLong(0);
+                  String releaseText = rows.getString(6);
+                  String budgetText = rows.getString(7);
+                  int release = MovieFormat.parseRelease(releaseText);
+                  long budget = MovieFormat.parseBudget(budgetText);
+
+                  insert.bindLong(1, lastID);
+
+                  for (int column = 1; column <= 5; ++column)
+                     bindText(insert, column + 1, rows.getString(column));
+
+                  insert.bindLong(7, release == MovieFormat.UNPARSEABLE ?
+                     Movie.NO_RELEASE : release);
+                  insert.bindLong(8, budget == MovieFormat.UNPARSEABLE ?
+                     Movie.NO_BUDGET : budget);
+                  insert.execute();
+
+                  if (release == MovieFormat.UNPARSEABLE || 
+                     budget == MovieFormat.UNPARSEABLE)
+                  {
+                     insertLegacy.bindLong(1, lastID);
+                     bindText(insertLegacy, 2, releaseText);
+                     bindText(insertLegacy, 3, budgetText);
+                     insertLegacy.execute();
+                  }
+               }
+            }
+            finally
+            {
+               rows.close();
+            }
+         } while (rowCount == BATCH_SIZE);
+      }
+      finally
+      {
+         insert.close();
+         insertLegacy.close();
+      }
+
+      db.execute("DROP TABLE movies");
+      db.execute("ALTER TABLE movies_v2 RENAME TO movies");
+      db.execute("CREATE INDEX movies_name ON movies (name)");
+      db.execute("CREATE INDEX movies_director ON movies (director)");
+      db.execute("CREATE INDEX movies_release ON movies (release)");
+   } // end method migrateToVersion2
+
+   // version 3: full-text index over the people and title columns,
+   // kept in step with movies by triggers
+   private static void migrateToVersion3(MovieDatabase db)
+   {
+      // external content table: the text stays in movies, the FTS
+      // table holds only the index; prefix indexes speed up "mat*"
+      db.execute("CREATE VIRTUAL TABLE movies_fts USING fts4(" +
+         "content=\"movies\", prefix=\"2,3\", " +
+         "name, director, producer, actor, actress)");
+      db.execute("INSERT INTO movies_fts(movies_fts) VALUES('rebuild')");
+
+      String indexNew = "INSERT INTO movies_fts" +
+         "(docid, name, director, producer, actor, actress) " +
+         "VALUES (new._id, new.name, new.director, new.producer, " +
+         "new.actor, new.actress); END";
+      String removeOld = "DELETE FROM movies_fts WHERE docid=old._id; END";
+
+      db.execute("CREATE TRIGGER movies_fts_insert AFTER INSERT " +
+         "ON movies BEGIN " + indexNew);
+      db.execute("CREATE TRIGGER movies_fts_before_update BEFORE UPDATE " +
+         "ON movies BEGIN " + removeOld);
+      db.execute("CREATE TRIGGER movies_fts_after_update AFTER UPDATE " +
+         "ON movies BEGIN " + indexNew);
+      db.execute("CREATE TRIGGER movies_fts_delete BEFORE DELETE " +
+         "ON movies BEGIN " + removeOld);
+   } // end method migrateToVersion3
+
+   // version 4: indexes for the list's budget sort and its budget and
+   // actor/actress filters
+   private static void migrateToVersion4(MovieDatabase db)
+   {
+      db.execute("CREATE INDEX movies_budget ON movies (budget)");
+      db.execute("CREATE INDEX movies_actor ON movies (actor)");
+      db.execute("CREATE INDEX movies_actress ON movies (actress)");
+   }
+
+   // version 5: director, producer, actor and actress move out of movies
+   // into people, holding each name once, and movie_people, linking
+   // movies to people by role. Movies are read and written through the
+   // movie_details view, which also supplies the full-text index's text.
+   private static void migrateToVersion5(MovieDatabase db)
+   {
+      // the index and its triggers read columns that are going away
+      db.execute("DROP TRIGGER movies_fts_insert");
+      db.execute("DROP TRIGGER movies_fts_before_update");
+      db.execute("DROP TRIGGER movies_fts_after_update");
+      db.execute("DROP TRIGGER movies_fts_delete");
+      db.execute("DROP TABLE movies_fts");
+
+      db.execute("CREATE TABLE people" +
+         "(_id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)");
+      db.execute("CREATE TABLE movie_people" +
+         "(_id INTEGER PRIMARY KEY, movie_id INTEGER NOT NULL, " +
+         "role INTEGER NOT NULL, person_id INTEGER NOT NULL)");
+      db.execute("CREATE INDEX movie_people_person " +
+         "ON movie_people (person_id, role, movie_id)");
+
+      String[] columns = { "director", "producer", "actor", "actress" };
+
+      for (int role = 0; role < columns.length; ++role)
+      {
+         db.execute("INSERT OR IGNORE INTO people (name) SELECT " + 
+            columns[role] + " FROM movies WHERE " + columns[role] + 
+            "<>''");
+         db.execute("INSERT INTO movie_people (_id, movie_id, role, " +
+            "person_id) SELECT m._id*4+" + role + ", m._id, " + role + 
+            ", p._id FROM movies m JOIN people p ON p.name=m." + 
+            columns[role]);
+      }
+
+      db.execute("CREATE TABLE movies_v5" +
+         "(_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+         "name TEXT NOT NULL DEFAULT ''," +
+         "release INTEGER NOT NULL DEFAULT 0," +
+         "budget INTEGER NOT NULL DEFAULT -1)");
+
+      // carry over the AUTOINCREMENT counter so deleted ids stay unused
+      db.execute("INSERT INTO sqlite_sequence (name, seq) " +
+         "SELECT 'movies_v5', seq FROM sqlite_sequence " +
+         "WHERE name='movies'");
+      db.execute("INSERT INTO movies_v5 (_id, name, release, budget) " +
+         "SELECT _id, name, release, budget FROM movies");
+
+      db.execute("DROP TABLE movies"); // drops its indexes too
+      db.execute("ALTER TABLE movies_v5 RENAME TO movies");
+      db.execute("CREATE INDEX movies_name ON movies (name)");
+      db.execute("CREATE INDEX movies_release ON movies (release)");
+      db.execute("CREATE INDEX movies_budget ON movies (budget)");
+
+      // the view, read by the external content index through its rowid
+      // column, and the triggers writing through it
+      db.execute("CREATE VIEW movie_details AS SELECT m._id AS _id, m.name " +
+         "AS name, IFNULL(p0.name, '') AS director, IFNULL(p1.name, '') AS " +
+         "producer, IFNULL(p2.name, '') AS actor, IFNULL(p3.name, '') AS " +
+         "actress, m.release AS release, m.budget AS budget, m._id AS rowid " +
+         "FROM movies m LEFT JOIN movie_people r0 ON r0._id=m._id*4+0 LEFT " +
+         "JOIN people p0 ON p0._id=r0.person_id LEFT JOIN movie_people r1 ON " +
+         "r1._id=m._id*4+1 LEFT JOIN people p1 ON p1._id=r1.person_id LEFT " +
+         "JOIN movie_people r2 ON r2._id=m._id*4+2 LEFT JOIN people p2 ON " +
+         "p2._id=r2.person_id LEFT JOIN movie_people r3 ON r3._id=m._id*4+3 " +
+         "LEFT JOIN people p3 ON p3._id=r3.person_id");
+      db.execute("CREATE VIRTUAL TABLE movies_fts USING " +
+         "fts4(content=\"movie_details\", prefix=\"2,3\", name, director, " +
+         "producer, actor, actress)");
+      db.execute("CREATE TRIGGER movie_details_insert INSTEAD OF INSERT ON " +
+         "movie_details BEGIN " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.director WHERE " +
+         "new.director<>''; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.producer WHERE " +
+         "new.producer<>''; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.actor WHERE " +
+         "new.actor<>''; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.actress WHERE " +
+         "new.actress<>''; " +
+         "INSERT INTO movies (_id, name, release, budget) VALUES (new._id, " +
+         "new.name, new.release, new.budget); " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "IFNULL(new._id, (SELECT MAX(_id) FROM movies))*4+0, " +
+         "IFNULL(new._id, (SELECT MAX(_id) FROM movies)), 0, _id FROM people " +
+         "WHERE name=new.director; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "IFNULL(new._id, (SELECT MAX(_id) FROM movies))*4+1, " +
+         "IFNULL(new._id, (SELECT MAX(_id) FROM movies)), 1, _id FROM people " +
+         "WHERE name=new.producer; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "IFNULL(new._id, (SELECT MAX(_id) FROM movies))*4+2, " +
+         "IFNULL(new._id, (SELECT MAX(_id) FROM movies)), 2, _id FROM people " +
+         "WHERE name=new.actor; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "IFNULL(new._id, (SELECT MAX(_id) FROM movies))*4+3, " +
+         "IFNULL(new._id, (SELECT MAX(_id) FROM movies)), 3, _id FROM people " +
+         "WHERE name=new.actress; " +
+         "INSERT INTO movies_fts(docid, name, director, producer, actor, " +
+         "actress) VALUES (IFNULL(new._id, (SELECT MAX(_id) FROM movies)), " +
+         "new.name, new.director, new.producer, new.actor, new.actress); END");
+      db.execute("CREATE TRIGGER movie_details_update INSTEAD OF UPDATE ON " +
+         "movie_details BEGIN " +
+         "DELETE FROM movies_fts WHERE docid=old._id; " +
+         "UPDATE movies SET name=new.name, release=new.release, " +
+         "budget=new.budget WHERE _id=old._id; " +
+         "DELETE FROM movie_people WHERE _id BETWEEN old._id*4 AND " +
+         "old._id*4+3; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.director WHERE " +
+         "new.director<>''; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.producer WHERE " +
+         "new.producer<>''; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.actor WHERE " +
+         "new.actor<>''; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.actress WHERE " +
+         "new.actress<>''; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "old._id*4+0, old._id, 0, _id FROM people WHERE name=new.director; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "old._id*4+1, old._id, 1, _id FROM people WHERE name=new.producer; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "old._id*4+2, old._id, 2, _id FROM people WHERE name=new.actor; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "old._id*4+3, old._id, 3, _id FROM people WHERE name=new.actress; " +
+         "INSERT INTO movies_fts(docid, name, director, producer, actor, " +
+         "actress) VALUES (old._id, new.name, new.director, new.producer, " +
+         "new.actor, new.actress); " +
+         "DELETE FROM people WHERE name IN (old.director, old.producer, " +
+         "old.actor, old.actress) AND NOT EXISTS (SELECT 1 FROM movie_people " +
+         "WHERE person_id=people._id); END");
+      db.execute("CREATE TRIGGER movie_details_delete INSTEAD OF DELETE ON " +
+         "movie_details BEGIN " +
+         "DELETE FROM movies_fts WHERE docid=old._id; " +
+         "DELETE FROM movie_people WHERE _id BETWEEN old._id*4 AND " +
+         "old._id*4+3; " +
+         "DELETE FROM movies WHERE _id=old._id; " +
+         "DELETE FROM people WHERE name IN (old.director, old.producer, " +
+         "old.actor, old.actress) AND NOT EXISTS (SELECT 1 FROM movie_people " +
+         "WHERE person_id=people._id); END");
+
+      db.execute("INSERT INTO movies_fts(movies_fts) VALUES('rebuild')");
+   } // end method migrateToVersion5
+
+   // version 6: per-year and per-person totals for the statistics
+   // screen, filled from the existing movies; saves now rewrite only
+   // the links and index entries that changed, which also limits the
+   // totals they have to adjust
+   private static void migrateToVersion6(MovieDatabase db)
+   {
+      db.execute("DROP TRIGGER movie_details_update");
+      db.execute("CREATE TRIGGER movie_details_update INSTEAD OF UPDATE ON " +
+         "movie_details BEGIN " +
+         "DELETE FROM movies_fts WHERE docid=old._id AND (old.name IS NOT " +
+         "new.name OR old.director IS NOT new.director OR old.producer IS " +
+         "NOT new.producer OR old.actor IS NOT new.actor OR old.actress IS " +
+         "NOT new.actress); " +
+         "UPDATE movies SET name=new.name, release=new.release, " +
+         "budget=new.budget WHERE _id=old._id; " +
+         "DELETE FROM movie_people WHERE _id=old._id*4+0 AND old.director IS " +
+         "NOT new.director; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.director WHERE " +
+         "new.director<>'' AND old.director IS NOT new.director; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "old._id*4+0, old._id, 0, _id FROM people WHERE name=new.director " +
+         "AND old.director IS NOT new.director; " +
+         "DELETE FROM movie_people WHERE _id=old._id*4+1 AND old.producer IS " +
+         "NOT new.producer; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.producer WHERE " +
+         "new.producer<>'' AND old.producer IS NOT new.producer; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "old._id*4+1, old._id, 1, _id FROM people WHERE name=new.producer " +
+         "AND old.producer IS NOT new.producer; " +
+         "DELETE FROM movie_people WHERE _id=old._id*4+2 AND old.actor IS " +
+         "NOT new.actor; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.actor WHERE " +
+         "new.actor<>'' AND old.actor IS NOT new.actor; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "old._id*4+2, old._id, 2, _id FROM people WHERE name=new.actor AND " +
+         "old.actor IS NOT new.actor; " +
+         "DELETE FROM movie_people WHERE _id=old._id*4+3 AND old.actress IS " +
+         "NOT new.actress; " +
+         "INSERT OR IGNORE INTO people (name) SELECT new.actress WHERE " +
+         "new.actress<>'' AND old.actress IS NOT new.actress; " +
+         "INSERT INTO movie_people (_id, movie_id, role, person_id) SELECT " +
+         "old._id*4+3, old._id, 3, _id FROM people WHERE name=new.actress " +
+         "AND old.actress IS NOT new.actress; " +
+         "INSERT INTO movies_fts(docid, name, director, producer, actor, " +
+         "actress) SELECT old._id, new.name, new.director, new.producer, " +
+         "new.actor, new.actress WHERE (old.name IS NOT new.name OR " +
+         "old.director IS NOT new.director OR old.producer IS NOT " +
+         "new.producer OR old.actor IS NOT new.actor OR old.actress IS NOT " +
+         "new.actress); " +
+         "DELETE FROM people WHERE name IN (old.director, old.producer, " +
+         "old.actor, old.actress) AND NOT EXISTS (SELECT 1 FROM movie_people " +
+         "WHERE person_id=people._id); END");
+
+      db.execute("CREATE TABLE stats_years(year INTEGER PRIMARY KEY, movies " +
+         "INTEGER NOT NULL, budget INTEGER NOT NULL, budgeted INTEGER NOT " +
+         "NULL)");
+      db.execute("CREATE TABLE stats_people(role INTEGER NOT NULL, person_id " +
+         "INTEGER NOT NULL, movies INTEGER NOT NULL, budget INTEGER NOT " +
+         "NULL, budgeted INTEGER NOT NULL, PRIMARY KEY (role, person_id))");
+      db.execute("CREATE TRIGGER stats_movies_insert AFTER INSERT ON movies " +
+         "BEGIN " +
+         "INSERT OR IGNORE INTO stats_years (year, movies, budget, budgeted) " +
+         "VALUES (new.release/10000, 0, 0, 0); " +
+         "UPDATE stats_years SET movies=movies+1, " +
+         "budget=budget+MAX(new.budget, 0), " +
+         "budgeted=budgeted+(new.budget>=0) WHERE year=new.release/10000; END");
+      db.execute("CREATE TRIGGER stats_movies_update AFTER UPDATE OF " +
+         "release, budget ON movies WHEN old.release<>new.release OR " +
+         "old.budget<>new.budget BEGIN " +
+         "UPDATE stats_years SET movies=movies-1, " +
+         "budget=budget-MAX(old.budget, 0), " +
+         "budgeted=budgeted-(old.budget>=0) WHERE year=old.release/10000; " +
+         "DELETE FROM stats_years WHERE year=old.release/10000 AND movies=0; " +
+         "INSERT OR IGNORE INTO stats_years (year, movies, budget, budgeted) " +
+         "VALUES (new.release/10000, 0, 0, 0); " +
+         "UPDATE stats_years SET movies=movies+1, " +
+         "budget=budget+MAX(new.budget, 0), " +
+         "budgeted=budgeted+(new.budget>=0) WHERE year=new.release/10000; END");
+      db.execute("CREATE TRIGGER stats_movies_budget AFTER UPDATE OF budget " +
+         "ON movies WHEN old.budget<>new.budget BEGIN " +
+         "UPDATE stats_people SET budget=budget-MAX(old.budget, " +
+         "0)+MAX(new.budget, 0), " +
+         "budgeted=budgeted-(old.budget>=0)+(new.budget>=0) WHERE role=0 AND " +
+         "person_id=(SELECT person_id FROM movie_people WHERE " +
+         "_id=new._id*4+0); " +
+         "UPDATE stats_people SET budget=budget-MAX(old.budget, " +
+         "0)+MAX(new.budget, 0), " +
+         "budgeted=budgeted-(old.budget>=0)+(new.budget>=0) WHERE role=1 AND " +
+         "person_id=(SELECT person_id FROM movie_people WHERE " +
+         "_id=new._id*4+1); " +
+         "UPDATE stats_people SET budget=budget-MAX(old.budget, " +
+         "0)+MAX(new.budget, 0), " +
+         "budgeted=budgeted-(old.budget>=0)+(new.budget>=0) WHERE role=2 AND " +
+         "person_id=(SELECT person_id FROM movie_people WHERE " +
+         "_id=new._id*4+2); " +
+         "UPDATE stats_people SET budget=budget-MAX(old.budget, " +
+         "0)+MAX(new.budget, 0), " +
+         "budgeted=budgeted-(old.budget>=0)+(new.budget>=0) WHERE role=3 AND " +
+         "person_id=(SELECT person_id FROM movie_people WHERE " +
+         "_id=new._id*4+3); END");
+      db.execute("CREATE TRIGGER stats_movies_delete AFTER DELETE ON movies " +
+         "BEGIN " +
+         "UPDATE stats_years SET movies=movies-1, " +
+         "budget=budget-MAX(old.budget, 0), " +
+         "budgeted=budgeted-(old.budget>=0) WHERE year=old.release/10000; " +
+         "DELETE FROM stats_years WHERE year=old.release/10000 AND movies=0; " +
+         "END");
+      db.execute("CREATE TRIGGER stats_people_insert AFTER INSERT ON " +
+         "movie_people BEGIN " +
+         "INSERT OR IGNORE INTO stats_people (role, person_id, movies, " +
+         "budget, budgeted) VALUES (new.role, new.person_id, 0, 0, 0); " +
+         "UPDATE stats_people SET movies=movies+1, " +
+         "budget=budget+MAX(IFNULL((SELECT budget FROM movies WHERE " +
+         "_id=new.movie_id), -1), 0), budgeted=budgeted+(IFNULL((SELECT " +
+         "budget FROM movies WHERE _id=new.movie_id), -1)>=0) WHERE " +
+         "role=new.role AND person_id=new.person_id; END");
+      db.execute("CREATE TRIGGER stats_people_delete AFTER DELETE ON " +
+         "movie_people BEGIN " +
+         "UPDATE stats_people SET movies=movies-1, " +
+         "budget=budget-MAX(IFNULL((SELECT budget FROM movies WHERE " +
+         "_id=old.movie_id), -1), 0), budgeted=budgeted-(IFNULL((SELECT " +
+         "budget FROM movies WHERE _id=old.movie_id), -1)>=0) WHERE " +
+         "role=old.role AND person_id=old.person_id; " +
+         "DELETE FROM stats_people WHERE role=old.role AND " +
+         "person_id=old.person_id AND movies=0; END");
+
+      // the totals of the movies already there
+      db.execute("DELETE FROM stats_years");
+      db.execute("INSERT INTO stats_years (year, movies, budget, budgeted) " +
+         "SELECT release/10000, COUNT(*), SUM(MAX(budget, 0)), " +
+         "SUM(budget>=0) FROM movies GROUP BY release/10000");
+      db.execute("DELETE FROM stats_people");
+      db.execute("INSERT INTO stats_people (role, person_id, movies, budget, " +
+         "budgeted) SELECT l.role, l.person_id, COUNT(*), SUM(MAX(m.budget, " +
+         "0)), SUM(m.budget>=0) FROM movie_people l JOIN movies m ON " +
+         "m._id=l.movie_id GROUP BY l.role, l.person_id");
+   } // end method migrateToVersion6
+
+   // version 7: every saved movie is logged with the snapshot
+   // generation it changed in, so a backup can copy just those
+   private static void migrateToVersion7(MovieDatabase db)
+   {
+      db.execute("CREATE TABLE snapshot_state (generation INTEGER NOT NULL)");
+      db.execute("INSERT INTO snapshot_state (generation) VALUES (1)");
+      db.execute("CREATE TABLE snapshot_changes(movie_id INTEGER PRIMARY " +
+         "KEY, generation INTEGER NOT NULL)");
+      db.execute("CREATE TRIGGER snapshot_movies_insert AFTER INSERT ON " +
+         "movies BEGIN " +
+         "INSERT OR REPLACE INTO snapshot_changes (movie_id, generation) " +
+         "SELECT new._id, generation FROM snapshot_state; END");
+      db.execute("CREATE TRIGGER snapshot_movies_update AFTER UPDATE ON " +
+         "movies BEGIN " +
+         "INSERT OR REPLACE INTO snapshot_changes (movie_id, generation) " +
+         "SELECT new._id, generation FROM snapshot_state; END");
+      db.execute("CREATE TRIGGER snapshot_movies_delete AFTER DELETE ON " +
+         "movies BEGIN " +
+         "INSERT OR REPLACE INTO snapshot_changes (movie_id, generation) " +
+         "SELECT old._id, generation FROM snapshot_state; END");
+   }
+
+   // version 8: a poster image path for each movie, null for none
+   private static void migrateToVersion8(MovieDatabase db)
+   {
+      db.execute("ALTER TABLE movies ADD COLUMN poster TEXT");
+   }
+
+   // version 9: deleted movies are kept as tombstones until purged
+   private static void migrateToVersion9(MovieDatabase db)
+   {
+      db.execute("CREATE TABLE deleted_movies (_id INTEGER PRIMARY KEY, name " +
+         "TEXT NOT NULL, director TEXT NOT NULL, producer TEXT NOT NULL, " +
+         "actor TEXT NOT NULL, actress TEXT NOT NULL, release INTEGER NOT " +
+         "NULL, budget INTEGER NOT NULL, poster TEXT, deleted INTEGER NOT " +
+         "NULL)");
+      db.execute("CREATE INDEX deleted_movies_deleted ON deleted_movies " +
+         "(deleted)");
+   }
+
+   // version 10: the sync change log, starting with every movie
+   private static void migrateToVersion10(MovieDatabase db)
+   {
+      db.execute("CREATE TABLE IF NOT EXISTS sync_state (device TEXT NOT " +
+         "NULL, seq INTEGER NOT NULL, pushed INTEGER NOT NULL, pulled " +
+         "INTEGER NOT NULL, applying INTEGER NOT NULL)");
+      db.execute("INSERT INTO sync_state (device, seq, pushed, pulled, " +
+         "applying) SELECT lower(hex(randomblob(16))), 0, 0, 0, 0 WHERE NOT " +
+         "EXISTS (SELECT * FROM sync_state)");
+      db.execute("CREATE TABLE IF NOT EXISTS sync_rows (movie_id INTEGER " +
+         "PRIMARY KEY, uid TEXT NOT NULL UNIQUE, version INTEGER NOT NULL, " +
+         "modified INTEGER NOT NULL, device TEXT NOT NULL, seq INTEGER NOT " +
+         "NULL, deleted INTEGER NOT NULL)");
+      db.execute("CREATE INDEX IF NOT EXISTS sync_rows_seq ON sync_rows (seq)");
+      db.execute("CREATE TRIGGER sync_movies_insert AFTER INSERT ON movies " +
+         "WHEN (SELECT applying FROM sync_state)=0 BEGIN " +
+         "UPDATE sync_state SET seq=seq+1; " +
+         "INSERT OR REPLACE INTO sync_rows (movie_id, uid, version, " +
+         "modified, device, seq, deleted) SELECT new._id, IFNULL((SELECT uid " +
+         "FROM sync_rows WHERE movie_id=new._id), " +
+         "lower(hex(randomblob(16)))), IFNULL((SELECT version FROM sync_rows " +
+         "WHERE movie_id=new._id), 0), " +
+         "CAST((julianday('now')-2440587.5)*86400000 AS INTEGER), device, " +
+         "seq, 0 FROM sync_state; END");
+      db.execute("CREATE TRIGGER sync_movies_update AFTER UPDATE OF name, " +
+         "release, budget ON movies WHEN (SELECT applying FROM sync_state)=0 " +
+         "BEGIN " +
+         "UPDATE sync_state SET seq=seq+1; " +
+         "UPDATE sync_rows SET " +
+         "modified=CAST((julianday('now')-2440587.5)*86400000 AS INTEGER), " +
+         "device=(SELECT device FROM sync_state), seq=(SELECT seq FROM " +
+         "sync_state), deleted=0 WHERE movie_id=new._id; END");
+      db.execute("CREATE TRIGGER sync_movies_delete AFTER DELETE ON movies " +
+         "WHEN (SELECT applying FROM sync_state)=0 BEGIN " +
+         "UPDATE sync_state SET seq=seq+1; " +
+         "UPDATE sync_rows SET " +
+         "modified=CAST((julianday('now')-2440587.5)*86400000 AS INTEGER), " +
+         "device=(SELECT device FROM sync_state), seq=(SELECT seq FROM " +
+         "sync_state), deleted=1 WHERE movie_id=old._id; END");
+
+      // every movie becomes a local change
+      db.execute("UPDATE sync_rows SET deleted=1, " +
+         "modified=CAST((julianday('now')-2440587.5)*86400000 AS INTEGER), " +
+         "device=(SELECT device FROM sync_state), seq=(SELECT seq+1 FROM " +
+         "sync_state) WHERE deleted=0 AND movie_id NOT IN (SELECT _id FROM " +
+         "movies)");
+      db.execute("INSERT OR REPLACE INTO sync_rows (movie_id, uid, version, " +
+         "modified, device, seq, deleted) SELECT m._id, IFNULL(r.uid, " +
+         "lower(hex(randomblob(16)))), IFNULL(r.version, 0), " +
+         "CAST((julianday('now')-2440587.5)*86400000 AS INTEGER), s.device, " +
+         "s.seq+1+m._id, 0 FROM movies m LEFT JOIN sync_rows r ON " +
+         "r.movie_id=m._id, sync_state s");
+      db.execute("UPDATE sync_state SET seq=seq+1+IFNULL((SELECT MAX(_id) " +
+         "FROM movies), 0)");
+   } // end method migrateToVersion10
+
+   // version 11: the title index for finding duplicates; every movie
+   // is logged to be indexed once the app has started
+   private static void migrateToVersion11(MovieDatabase db)
+   {
+      db.execute("CREATE TABLE title_keys (movie_id INTEGER PRIMARY KEY, " +
+         "title TEXT NOT NULL, director TEXT NOT NULL, year INTEGER NOT NULL)");
+      db.execute("CREATE INDEX title_keys_title ON title_keys (title)");
+      db.execute("CREATE TABLE title_trigrams (_id INTEGER PRIMARY KEY)");
+      db.execute("CREATE TABLE title_changes (movie_id INTEGER PRIMARY KEY)");
+      db.execute("CREATE TRIGGER title_movies_insert AFTER INSERT ON movies " +
+         "BEGIN " +
+         "INSERT OR REPLACE INTO title_changes (movie_id) VALUES (new._id); " +
+         "END");
+      db.execute("CREATE TRIGGER title_movies_update AFTER UPDATE OF name, " +
+         "release ON movies BEGIN " +
+         "INSERT OR REPLACE INTO title_changes (movie_id) VALUES (new._id); " +
+         "END");
+      db.execute("CREATE TRIGGER title_movies_delete AFTER DELETE ON movies " +
+         "BEGIN " +
+         "INSERT OR REPLACE INTO title_changes (movie_id) VALUES (old._id); " +
+         "END");
+
+      db.execute("INSERT OR REPLACE INTO title_changes (movie_id) SELECT _id " +
+         "FROM movies");
+   } // end method migrateToVersion11
+
+   // version 12: the director and cast filters ignore case, so people's
+   // names are indexed without it too
+   private static void migrateToVersion12(MovieDatabase db)
+   {
+      db.execute("CREATE INDEX people_name_nocase " +
+         "ON people (name COLLATE NOCASE)");
+   }
+} // end class MovieMigrations
@@ -0,0 +1,412 @@
+package com.example.movieapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// which Movies the list shows and in what order: optional director,
+// actor/actress, release year and budget filters and a sort column. The
+// name filters match the start of a name in any case, as SQLite's NOCASE
+// folds it (ASCII letters only).
+// Immutable; build one with MovieQuery.Builder. Queries are turned into
+// parameterized SQL paged by keyset on (sort column, _id). Every query
+// of the same shape (the same filters set and sort) has the same SQL
+// text, built once and kept in a cache, so SQLite's statement cache can
+// reuse the compiled query whatever the values.
+public final class MovieQuery
+{
+   // sort columns
+   public static final int SORT_NAME = 0;
+   public static final int SORT_RELEASE = 1;
+   public static final int SORT_BUDGET = 2;
+
+   // column sorted by for each sort, and whether it holds numbers
+   private static final String[] SORT_COLUMNS = 
+      { "name", "release", "budget" };
+   private static final boolean[] NUMERIC_SORTS = { false, true, true };
+
+   // no limit on a year or budget range
+   public static final int NO_YEAR = 0;
+   public static final long NO_BUDGET = Movie.NO_BUDGET;
+
+   // after the last character of any text, for "starts with" ranges
+   private static final String MAX_CHARACTER = "\uDBFF\uDFFF"; // U+10FFFF
+
+   // every Movie by name, the list's default
+   public static final MovieQuery ALL = new Builder().build();
+
+   // bits of a query's shape
+   private static final int HAS_DIRECTOR = 1;
+   private static final int HAS_PERSON = 1 << 1;
+   private static final int HAS_MIN_YEAR = 1 << 2;
+   private static final int HAS_MAX_YEAR = 1 << 3;
+   private static final int HAS_MIN_BUDGET = 1 << 4;
+   private static final int HAS_MAX_BUDGET = 1 << 5;
+   private static final int HAS_AFTER = 1 << 6;
+   private static final int HAS_LAST = 1 << 7;
+   private static final int HAS_LIMIT = 1 << 8;
+   private static final int DESCENDING = 1 << 9;
+   private static final int SORT_SHIFT = 10;
+
+   // SQL text for each shape of page query
+   private static final Map<Integer, String> sqlCache = 
+      new ConcurrentHashMap<Integer, String>();
+
+   // builds a MovieQuery; unset filters match every Movie
+   public static final class Builder
+   {
+      private String director = "";
+      private String person = "";
+      private int minYear = NO_YEAR;
+      private int maxYear = NO_YEAR;
+      private long minBudget = NO_BUDGET;
+      private long maxBudget = NO_BUDGET;
+      private int sort = SORT_NAME;
+      private boolean descending;
+
+      // start from the filters and sort of query
+      public Builder from(MovieQuery query)
+      {
+         director = query.director;
+         person = query.person;
+         minYear = query.minYear;
+         maxYear = query.maxYear;
+         minBudget = query.minBudget;
+         maxBudget = query.maxBudget;
+         sort = query.sort;
+         descending = query.descending;
+         return this;
+      }
+
+      // Movies whose director starts with director, in any case
+      public Builder setDirector(String director)
+      {
+         this.director = director == null ? "" : director.trim();
+         return this;
+      }
+
+      // Movies whose actor or actress starts with person, in any case
+      public Builder setPerson(String person)
+      {
+         this.person = person == null ? "" : person.trim();
+         return this;
+      }
+
+      // Movies released from minYear through maxYear; NO_YEAR for no limit
+      public Builder setYears(int minYear, int maxYear)
+      {
+         this.minYear = minYear;
+         this.maxYear = maxYear;
+         return this;
+      }
+
+      // Movies with budgets, in cents, from minBudget through maxBudget;
+      // NO_BUDGET for no limit
+      public Builder setBudgets(long minBudget, long maxBudget)
+      {
+         this.minBudget = minBudget;
+         this.maxBudget = maxBudget;
+         return this;
+      }
+
+      // sort by one of the SORT_ columns, highest first if descending
+      public Builder setSort(int sort, boolean descending)
+      {
+         this.sort = sort;
+         this.descending = descending;
+         return this;
+      }
+
+      public MovieQuery build()
+      {
+         return new MovieQuery(this);
+      }
+   } // end class Builder
+
+   private final String director;
+   private final String person;
+   private final int minYear;
+   private final int maxYear;
+   private final long minBudget;
+   private final long maxBudget;
+   private final int sort;
+   private final boolean descending;
+   private final int shape; // filter and sort bits of the SQL shape
+
+   // constructor; use Builder
+   private MovieQuery(Builder builder)
+   {
+      director = builder.director;
+      person = builder.person;
+      minYear = builder.minYear;
+      maxYear = builder.maxYear;
+      minBudget = builder.minBudget;
+      maxBudget = builder.maxBudget;
+      sort = builder.sort;
+      descending = builder.descending;
+
+      shape = (director.length() > 0 ? HAS_DIRECTOR : 0) |
+         (person.length() > 0 ? HAS_PERSON : 0) |
+         (minYear != NO_YEAR ? HAS_MIN_YEAR : 0) |
+         (maxYear != NO_YEAR ? HAS_MAX_YEAR : 0) |
+         (minBudget != NO_BUDGET ? HAS_MIN_BUDGET : 0) |
+         (maxBudget != NO_BUDGET ? HAS_MAX_BUDGET : 0) |
+         (descending ? DESCENDING : 0) | sort << SORT_SHIFT;
+   }
+
+   public String getDirector()
+   {
+      return director;
+   }
+
+   public String getPerson()
+   {
+      return person;
+   }
+
+   public int getMinYear()
+   {
+      return minYear;
+   }
+
+   public int getMaxYear()
+   {
+      return maxYear;
+   }
+
+   public long getMinBudget()
+   {
+      return minBudget;
+   }
+
+   public long getMaxBudget()
+   {
+      return maxBudget;
+   }
+
+   public int getSort()
+   {
+      return sort;
+   }
+
+   public boolean isDescending()
+   {
+      return descending;
+   }
+
+   // return true if the query has any filter set
+   public boolean isFiltered()
+   {
+      return (shape & (HAS_DIRECTOR | HAS_PERSON | HAS_MIN_YEAR | 
+         HAS_MAX_YEAR | HAS_MIN_BUDGET | HAS_MAX_BUDGET)) != 0;
+   }
+
+   // return true if the sort key read by MovieRowMapper is a number
+   public boolean hasNumericSortKey()
+   {
+      return NUMERIC_SORTS[sort];
+   }
+
+   // return the SQL for the matching rows after after (if not null), up
+   // to and including last (if not null), at most limit of them (if not
+   // 0); columns are _id, name and the sort key. Bind toSelectionArgs.
+   public String toSql(MovieSummary after, MovieSummary last, int limit)
+   {
+      int key = shape | (after != null ? HAS_AFTER : 0) | 
+         (last != null ? HAS_LAST : 0) | (limit > 0 ? HAS_LIMIT : 0);
+      String sql = sqlCache.get(key);
+
+      if (sql == null)
+      {
+         sql = buildSql(key);
+         sqlCache.put(key, sql);
+      }
+
+      return sql;
+   }
+
+   // return the SQL for the matching rows among ids, at most
+   // MovieSchema.MAX_IDS_PER_QUERY of them, in any order; the columns are
+   // as for toSql. Bind toSelectionArgs(ids).
+   public String toSql(long[] ids)
+   {
+      StringBuilder sql = new StringBuilder(buildSelect());
+      String where = buildWhere(shape);
+      sql.append(where).append(where.length() == 0 ? " WHERE _id IN " :
+         " AND _id IN ");
+      return MovieSchema.appendIds(sql, ids.length).toString();
+   }
+
+   // build the SQL for shape key
+   private String buildSql(int key)
+   {
+      StringBuilder sql = new StringBuilder(buildSelect());
+      sql.append(buildWhere(key));
+
+      String column = SORT_COLUMNS[sort];
+      String direction = descending ? " DESC" : "";
+      sql.append(" ORDER BY ").append(column).append(direction)
+         .append(", _id").append(direction);
+
+      if ((key & HAS_LIMIT) != 0)
+         sql.append(" LIMIT ?");
+
+      return sql.toString();
+   }
+
+   // the SELECT clause: _id, name and the sort key
+   private String buildSelect()
+   {
+      return "SELECT _id, name, " + SORT_COLUMNS[sort] + " FROM movies";
+   }
+
+   // the WHERE clause for shape key, "" if there are no conditions;
+   // parameters are in the order toSelectionArgs supplies them
+   private String buildWhere(int key)
+   {
+      List<String> conditions = new ArrayList<String>();
+
+      if ((key & HAS_DIRECTOR) != 0)
+         conditions.add(peopleCondition("=" + MovieSchema.ROLE_DIRECTOR));
+
+      if ((key & HAS_PERSON) != 0)
+         conditions.add(peopleCondition(" IN (" + MovieSchema.ROLE_ACTOR + 
+            ", " + MovieSchema.ROLE_ACTRESS + ")"));
+
+      if ((key & HAS_MIN_YEAR) != 0)
+         conditions.add("release>=?");
+
+      if ((key & HAS_MAX_YEAR) != 0) // unknown dates are stored as 0
+         conditions.add("release>0 AND release<=?");
+
+      if ((key & HAS_MIN_BUDGET) != 0)
+         conditions.add("budget>=?");
+
+      if ((key & HAS_MAX_BUDGET) != 0) // unknown budgets are negative
+         conditions.add("budget>=0 AND budget<=?");
+
+      // keyset bounds on (sort column, _id), flipped for descending order
+      String column = SORT_COLUMNS[sort];
+      String before = descending ? ">" : "<";
+      String beyond = descending ? "<" : ">";
+
+      if ((key & HAS_AFTER) != 0)
+         conditions.add(column + beyond + "=? AND (" + column + beyond + 
+            "? OR _id" + beyond + "?)");
+
+      if ((key & HAS_LAST) != 0)
+         conditions.add(column + before + "=? AND (" + column + before + 
+            "? OR _id" + before + "=?)");
+
+      if (conditions.isEmpty())
+         return "";
+
+      StringBuilder where = new StringBuilder(" WHERE ");
+
+      for (int i = 0; i < conditions.size(); ++i)
+      {
+         if (i > 0)
+            where.append(" AND ");
+         where.append(conditions.get(i));
+      }
+
+      return where.toString();
+   } // end method buildWhere
+
+   // return the parameters for toSql(after, last, limit)
+   public String[] toSelectionArgs(MovieSummary after, MovieSummary last,
+      int limit)
+   {
+      List<String> args = filterArgs();
+
+      if (after != null)
+         addKeyArgs(args, after);
+
+      if (last != null)
+         addKeyArgs(args, last);
+
+      if (limit > 0)
+         args.add(String.valueOf(limit));
+
+      return args.toArray(new String[args.size()]);
+   }
+
+   // return the parameters for toSql(ids)
+   public String[] toSelectionArgs(long[] ids)
+   {
+      List<String> args = filterArgs();
+
+      for (long id : ids)
+         args.add(String.valueOf(id));
+
+      return args.toArray(new String[args.size()]);
+   }
+
+   // condition matching movies with a person whose name is in a range,
+   // compared without case, in a role matching roleTest; the range is
+   // looked up in people_name_nocase and the movies in movie_people's
+   // person index
+   private static String peopleCondition(String roleTest)
+   {
+      return "_id IN (SELECT movie_id FROM movie_people WHERE role" + 
+         roleTest + " AND person_id IN (SELECT _id FROM people " +
+         "WHERE name>=? COLLATE NOCASE AND name<? COLLATE NOCASE))";
+   }
+
+   // the parameters of the filter conditions, in buildWhere's order;
+   // numbers are passed as text and compared as numbers by SQLite
+   private List<String> filterArgs()
+   {
+      List<String> args = new ArrayList<String>();
+
+      if (director.length() > 0)
+      {
+         args.add(director);
+         args.add(director + MAX_CHARACTER);
+      }
+
+      if (person.length() > 0)
+      {
+         args.add(person);
+         args.add(person + MAX_CHARACTER);
+      }
+
+      if (minYear != NO_YEAR)
+         args.add(String.valueOf(minYear * 10000)); // yyyy0000
+
+      if (maxYear != NO_YEAR)
+         args.add(String.valueOf(maxYear * 10000 + 9999));
+
+      if (minBudget != NO_BUDGET)
+         args.add(String.valueOf(minBudget));
+
+      if (maxBudget != NO_BUDGET)
+         args.add(String.valueOf(maxBudget));
+
+      return args;
+   } // end method filterArgs
+
+   // add the three parameters of a keyset bound at row
+   private static void addKeyArgs(List<String> args, MovieSummary row)
+   {
+      String key = String.valueOf(row.getSortKey());
+      args.add(key);
+      args.add(key);
+      args.add(String.valueOf(row.getId()));
+   }
+
+   // compare two rows by this query's order: sort key, then _id
+   @SuppressWarnings("unchecked")
+   public int compare(MovieSummary first, MovieSummary second)
+   {
+      int result = ((Comparable<Object>) first.getSortKey()).compareTo(
+         second.getSortKey());
+
+      if (result == 0)
+         result = first.getId() < second.getId() ? -1 : 
+            (first.getId() == second.getId() ? 0 : 1);
+
+      return descending ? -result : result;
+   }
+} // end class MovieQuery
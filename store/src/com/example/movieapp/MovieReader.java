@@ -0,0 +1,11 @@
+package com.example.movieapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// source of Movie records read one at a time from a file
+public interface MovieReader extends Closeable
+{
+   // return the next Movie, or null when there are no more records
+   public Movie read() throws IOException;
+}
@@ -0,0 +1,117 @@
+package com.example.movieapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// ranks the movies related to one by the people they share with it. Each
+// person shared in the same role adds that role's weight, scaled down
+// the more movies the person is in, as a director of three movies says
+// more about them than one of three hundred does; the movies with the
+// highest totals are kept. A person's movies are a range of the
+// movie_people_person index and their number of movies a stats_people
+// row, both kept current by triggers as movies are saved and deleted, so
+// a lookup reads a few index ranges rather than joining the catalog.
+// Uses no Android classes, so the repositories and the benchmarks share
+// it.
+public final class MovieRelations
+{
+   // a person in more movies than this says little about which are
+   // related, so their movies aren't read
+   public static final int MAX_PERSON_MOVIES = 1000;
+
+   // weight of a shared person in each role, indexed by MovieSchema role
+   private static final double[] ROLE_WEIGHTS = { 3, 1, 2, 2 };
+
+   // orders related movies from least to most related
+   private static final Comparator<Related> BY_SCORE =
+      new Comparator<Related>()
+      {
+         @Override
+         public int compare(Related first, Related second)
+         {
+            int order = Double.compare(first.score, second.score);
+
+            // of two alike, the older (lower _id) is more related
+            return order != 0 ? order : Long.compare(second.id, first.id);
+         }
+      };
+
+   // a movie related to another and how strongly
+   public static final class Related
+   {
+      public final long id;
+      public final double score;
+
+      // constructor
+      public Related(long id, double score)
+      {
+         this.id = id;
+         this.score = score;
+      }
+   }
+
+   // totals the weights of the people each candidate movie shares, as
+   // the people's movies are read
+   public static final class Scores
+   {
+      private final Map<Long, double[]> scores =
+         new HashMap<Long, double[]>();
+
+      // add weight to the score of the movie with the given _id
+      public void add(long id, double weight)
+      {
+         double[] score = scores.get(id);
+
+         if (score == null)
+            scores.put(id, new double[] { weight });
+         else
+            score[0] += weight;
+      }
+
+      // return up to limit movies other than excludedId, most related
+      // first, keeping no more than limit of them at a time
+      public List<Related> top(int limit, long excludedId)
+      {
+         PriorityQueue<Related> top =
+            new PriorityQueue<Related>(limit + 1, BY_SCORE);
+
+         for (Map.Entry<Long, double[]> entry : scores.entrySet())
+         {
+            if (entry.getKey() == excludedId)
+               continue;
+
+            Related related =
+               new Related(entry.getKey(), entry.getValue()[0]);
+
+            if (top.size() < limit)
+               top.add(related);
+            else if (BY_SCORE.compare(related, top.peek()) > 0)
+            {
+               top.poll(); // drop the least related kept
+               top.add(related);
+            }
+         }
+
+         List<Related> result = new ArrayList<Related>(top);
+         Collections.sort(result, Collections.reverseOrder(BY_SCORE));
+         return result;
+      } // end method top
+   } // end class Scores
+
+   private MovieRelations()
+   {
+   }
+
+   // return the weight sharing a person in role adds, given the person
+   // is in movies movies in that role, of catalogSize in all
+   public static double weight(int role, long movies, long catalogSize)
+   {
+      return ROLE_WEIGHTS[role] *
+         Math.log(1 + (double) catalogSize / Math.max(1, movies));
+   }
+} // end class MovieRelations
@@ -0,0 +1,142 @@
+package com.example.movieapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+// storage for Movies; DatabaseConnector implements it on Android and
+// JdbcMovieRepository on a plain JVM, so the data layer can be measured
+// off the device. Implementations throw unchecked exceptions on
+// database errors, as android.database does.
+public interface MovieRepository
+{
+   // receives progress reports while insertMovies or exportMovies runs
+   public interface ProgressListener
+   {
+      // called after each batch with the rows inserted or written so far
+      public void onProgress(long rowCount, double rowsPerSecond);
+   }
+
+   // insert movie, ignoring its id, and return the new row ID
+   public long insertMovie(Movie movie);
+
+   // save movie over the row with its id
+   public void updateMovie(Movie movie);
+
+   // delete the row with the given id, if there is one, keeping it as a
+   // tombstone so the delete can be undone with undeleteMovie
+   public void deleteMovie(long id);
+
+   // put back the movie deleted with the given id, with its id, and
+   // return true, or return false if its tombstone has been purged
+   public boolean undeleteMovie(long id);
+
+   // delete the tombstones of movies deleted before deletedBefore, in
+   // milliseconds since the epoch, committing a transaction every
+   // batchSize tombstones, and return the number deleted
+   public long purgeDeletedMovies(long deletedBefore, int batchSize);
+
+   // if at least the fraction fragmentation of the database file is free
+   // pages, give them back to the file system and refresh the query
+   // planner's statistics; return the number of pages freed
+   public long compactDatabase(double fragmentation);
+
+   // insert every Movie supplied by reader, committing a transaction every
+   // batchSize rows, and return the number of rows inserted; rows without
+   // a name are skipped and batches committed before an IOException kept
+   public long insertMovies(MovieReader reader, int batchSize,
+      ProgressListener listener) throws IOException;
+
+   // pass every Movie to writer in row ID order, reading batchSize rows
+   // per query so memory use doesn't grow with the table, and return the
+   // number written; stops at the first IOException from writer
+   public long exportMovies(MovieWriter writer, int batchSize,
+      ProgressListener listener) throws IOException;
+
+   // copy the whole database to file as it is at one moment, without
+   // stopping readers, and return the snapshot generation it covers;
+   // later changes are recorded under the next generation
+   public long writeSnapshot(File file) throws IOException;
+
+   // write the movies changed after generation since to a new changes
+   // file and return the generation it covers, as writeSnapshot does
+   public long writeSnapshotChanges(File file, long since) 
+      throws IOException;
+
+   // replace every movie with those in a writeSnapshot file, then apply
+   // each writeSnapshotChanges file in order, all in one transaction;
+   // return the number of movies restored
+   public long restoreSnapshot(File snapshot, List<File> changes)
+      throws IOException;
+
+   // return the Movie with the given row ID, or null if there is none
+   public Movie getMovie(long id);
+
+   // return the Movies among ids that still exist, in no order
+   public List<Movie> getMovies(long[] ids);
+
+   // set the path of the poster image of the Movie with the given row
+   // ID, or null for none; edits to the Movie keep its poster
+   public void setPoster(long id, String path);
+
+   // return the poster paths of the Movies among ids that have one, by
+   // row ID
+   public Map<Long, String> getPosters(long[] ids);
+
+   // return every poster path in use
+   public List<String> getPosterPaths();
+
+   // return up to limit of the local changes not yet pushed to the sync
+   // server, oldest first (see MovieSync)
+   public List<SyncRecord> getSyncChanges(int limit);
+
+   // return this device's sync id and the last server version pulled
+   public String getSyncDevice();
+   public long getSyncVersion();
+
+   // apply records from the sync server in one transaction, along with
+   // the progress they make: the last local change pushed and the last
+   // server version pulled, 0 for either that didn't change. A local
+   // change not yet pushed is kept if it is newer than a record's
+   public void applySyncChanges(List<SyncRecord> records, long pushed,
+      long pulled);
+
+   // return the rows matching query in its order that come after after
+   // (or from the start if null), up to and including last (if not
+   // null), at most limit of them (or all if 0)
+   public List<MovieSummary> queryMovies(MovieQuery query, 
+      MovieSummary after, MovieSummary last, int limit);
+
+   // return the current rows among ids that match query, in no order
+   public List<MovieSummary> queryMovieRows(MovieQuery query, long[] ids);
+
+   // return the limit Movies that best match text, best first
+   public List<MovieSummary> searchMovies(String text, int limit);
+
+   // index the titles of up to limit (or all if 0) of the movies changed
+   // since they were last indexed, in one transaction, and return how
+   // many were; the duplicate lookups below only see indexed titles
+   public long indexTitles(int limit);
+
+   // return up to limit indexed movies that are likely duplicates of
+   // movie, most likely first; movie itself, if saved, is left out
+   public List<MovieDuplicates.Match> findDuplicates(Movie movie, 
+      int limit);
+
+   // return up to limit pairs of indexed movies that are likely
+   // duplicates of each other, most likely first
+   public List<MovieDuplicates.Match> findAllDuplicates(int limit);
+
+   // return up to limit movies sharing people with the movie with the
+   // given _id, most related first (see MovieRelations)
+   public List<MovieRelations.Related> findRelatedMovies(long id, 
+      int limit);
+
+   // return the per-year totals and the topCount directors by budget
+   // and actors and actresses by movies
+   public MovieStatistics getStatistics(int topCount);
+
+   // recompute the statistics from the movies
+   public void rebuildStatistics();
+} // end interface MovieRepository
@@ -0,0 +1,134 @@
+package com.example.movieapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// builds immutable Movies and MovieSummaries from query rows on the
+// thread running the query, so the GUI thread only receives finished
+// objects. Queries use MovieSchema's fixed projections, so each column
+// is read at a constant index rather than looked up by name per row;
+// rows come through MovieDatabase, so the mapping is the same on the
+// device and in the JVM benchmarks.
+public final class MovieRowMapper
+{
+   // return the current row of a MOVIE_COLUMNS query as a Movie, its
+   // people's names shared through names; pass null for rows that are
+   // written out and dropped, as by exportMovies, to skip the pool
+   public static Movie readMovie(MovieDatabase.Rows rows, NamePool names)
+   {
+      return new Movie(rows.getLong(MovieSchema.COLUMN_ID), 
+         rows.getString(MovieSchema.COLUMN_NAME),
+         intern(names, rows.getString(MovieSchema.COLUMN_DIRECTOR)),
+         intern(names, rows.getString(MovieSchema.COLUMN_PRODUCER)),
+         intern(names, rows.getString(MovieSchema.COLUMN_ACTOR)),
+         intern(names, rows.getString(MovieSchema.COLUMN_ACTRESS)),
+         rows.getInt(MovieSchema.COLUMN_RELEASE),
+         rows.getLong(MovieSchema.COLUMN_BUDGET));
+   }
+
+   // return name from names, or name itself if names is null
+   private static String intern(NamePool names, String name)
+   {
+      return names == null ? name : names.intern(name);
+   }
+
+   // return the current row of a SUMMARY_COLUMNS query as a MovieSummary
+   public static MovieSummary readSummary(MovieDatabase.Rows rows)
+   {
+      return new MovieSummary(rows.getLong(MovieSchema.COLUMN_ID), 
+         rows.getString(MovieSchema.COLUMN_NAME));
+   }
+
+   // return the current row of a SYNC_CHANGES query as a SyncRecord
+   public static SyncRecord readSyncRecord(MovieDatabase.Rows rows)
+   {
+      Movie movie = rows.getInt(MovieSchema.COLUMN_SYNC_DELETED) != 0 ?
+         null : readMovie(rows, null);
+
+      return new SyncRecord(rows.getString(MovieSchema.COLUMN_SYNC_UID),
+         rows.getLong(MovieSchema.COLUMN_SYNC_VERSION),
+         rows.getLong(MovieSchema.COLUMN_SYNC_MODIFIED),
+         rows.getString(MovieSchema.COLUMN_SYNC_DEVICE), movie,
+         rows.getLong(MovieSchema.COLUMN_SYNC_SEQ));
+   }
+
+   // return the current row of a title_keys query as a
+   // MovieDuplicates.Key
+   public static MovieDuplicates.Key readTitleKey(MovieDatabase.Rows rows)
+   {
+      return new MovieDuplicates.Key(
+         rows.getLong(MovieSchema.COLUMN_KEY_ID),
+         rows.getString(MovieSchema.COLUMN_KEY_TITLE),
+         rows.getString(MovieSchema.COLUMN_KEY_DIRECTOR),
+         rows.getInt(MovieSchema.COLUMN_KEY_YEAR));
+   }
+
+   // read the rows of a SUMMARY_COLUMNS query, then close them
+   public static List<MovieSummary> readSummaries(MovieDatabase.Rows rows)
+   {
+      List<MovieSummary> summaries = new ArrayList<MovieSummary>();
+
+      try
+      {
+         while (rows.next())
+            summaries.add(readSummary(rows));
+      }
+      finally
+      {
+         rows.close();
+      }
+
+      return summaries;
+   }
+
+   // read the rows of a MovieQuery, then close them
+   public static List<MovieSummary> readSummaries(MovieDatabase.Rows rows, 
+      MovieQuery query)
+   {
+      boolean numeric = query.hasNumericSortKey();
+      List<MovieSummary> summaries = new ArrayList<MovieSummary>();
+
+      try
+      {
+         while (rows.next())
+            summaries.add(new MovieSummary(rows.getLong(MovieSchema.COLUMN_ID),
+               rows.getString(MovieSchema.COLUMN_NAME), 
+               numeric ? (Object) rows.getLong(MovieSchema.COLUMN_SORT_KEY) :
+                  rows.getString(MovieSchema.COLUMN_SORT_KEY)));
+      }
+      finally
+      {
+         rows.close();
+      }
+
+      return summaries;
+   }
+
+   // read the rows of a statistics query, then close them
+   public static List<MovieStatistics.Group> readGroups(MovieDatabase.Rows rows)
+   {
+      List<MovieStatistics.Group> groups = 
+         new ArrayList<MovieStatistics.Group>();
+
+      try
+      {
+         while (rows.next())
+            groups.add(new MovieStatistics.Group(
+               rows.getString(MovieSchema.STATS_COLUMN_NAME),
+               rows.getInt(MovieSchema.STATS_COLUMN_MOVIES),
+               rows.getLong(MovieSchema.STATS_COLUMN_BUDGET),
+               rows.getInt(MovieSchema.STATS_COLUMN_BUDGETED)));
+      }
+      finally
+      {
+         rows.close();
+      }
+
+      return groups;
+   }
+
+   // not instantiable
+   private MovieRowMapper()
+   {
+   }
+} // end class MovieRowMapper
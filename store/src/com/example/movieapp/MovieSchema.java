@@ -0,0 +1,968 @@
+package com.example.movieapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// SQL for the movies database shared by the Android connector and the
+// plain-Java repository; uses no Android classes so it runs on any JVM
+public final class MovieSchema
+{
+   // schema version created by CREATE_STATEMENTS; MovieMigrations
+   // brings older databases to it
+   public static final int VERSION = 12;
+
+   // roles of the people linked to a movie in movie_people
+   public static final int ROLE_DIRECTOR = 0;
+   public static final int ROLE_PRODUCER = 1;
+   public static final int ROLE_ACTOR = 2;
+   public static final int ROLE_ACTRESS = 3;
+
+   // movie_details column holding the person in each role, by role
+   private static final String[] ROLE_COLUMNS = 
+      { "director", "producer", "actor", "actress" };
+
+   // movie_people's _id is movie_id * ROLES + role, so a movie's people
+   // are found by row ID and no (movie_id, role) index is needed
+   public static final int ROLES = ROLE_COLUMNS.length;
+
+   // _id of the row a movie_details trigger inserts; a row inserted
+   // without one was given the highest _id by AUTOINCREMENT
+   private static final String NEW_ID = 
+      "IFNULL(new._id, (SELECT MAX(_id) FROM movies))";
+
+   // true in a movie_details trigger if the row's text changed
+   private static final String TEXT_CHANGED = "(old.name IS NOT new.name " +
+      "OR old.director IS NOT new.director OR old.producer IS NOT " +
+      "new.producer OR old.actor IS NOT new.actor OR old.actress IS NOT " +
+      "new.actress)";
+
+   // a new random uid, as 32 hexadecimal digits, and the current time in
+   // milliseconds, for the sync tables
+   private static final String NEW_UID = "lower(hex(randomblob(16)))";
+   private static final String NOW_MS = 
+      "CAST((julianday('now')-2440587.5)*86400000 AS INTEGER)";
+
+   // rewrites a movie; only the people links that changed are replaced
+   // and the row is only indexed again if its text changed. The old text
+   // is read from the view to remove it from the index, so movies_fts is
+   // updated before the old links are changed. Part of
+   // DETAILS_STATEMENTS.
+   private static final String DETAILS_UPDATE_TRIGGER = 
+      "CREATE TRIGGER movie_details_update INSTEAD OF UPDATE " +
+      "ON movie_details BEGIN " + 
+      "DELETE FROM movies_fts WHERE docid=old._id AND " + TEXT_CHANGED + 
+      "; UPDATE movies SET name=new.name, release=new.release, " +
+      "budget=new.budget WHERE _id=old._id; " + relinkChangedPeople() +
+      "INSERT INTO movies_fts" +
+      "(docid, name, director, producer, actor, actress) SELECT old._id, " + 
+      "new.name, new.director, new.producer, new.actor, new.actress " +
+      "WHERE " + TEXT_CHANGED + "; " + removeUnusedPeople() + "END";
+
+   // the movie_details view, which joins each movie to its people and is
+   // written through INSTEAD OF triggers, and the full-text index whose
+   // text the view supplies; created by CREATE_STATEMENTS
+   public static final String[] DETAILS_STATEMENTS = {
+      "CREATE VIEW movie_details AS SELECT m._id AS _id, m.name AS name, " +
+      personColumns() + ", m.release AS release, m.budget AS budget, " +
+      "m._id AS rowid FROM movies m" + personJoins(),
+      // external content table: the text stays in movies and people and
+      // is read through the view by its rowid column; prefix indexes
+      // speed up "mat*"
+      "CREATE VIRTUAL TABLE movies_fts USING fts4(" +
+      "content=\"movie_details\", prefix=\"2,3\", " +
+      "name, director, producer, actor, actress)",
+      "CREATE TRIGGER movie_details_insert INSTEAD OF INSERT " +
+      "ON movie_details BEGIN " + internPeople() +
+      "INSERT INTO movies (_id, name, release, budget) " +
+      "VALUES (new._id, new.name, new.release, new.budget); " +
+      linkPeople(NEW_ID) + indexNew(NEW_ID) + "END",
+      DETAILS_UPDATE_TRIGGER,
+      "CREATE TRIGGER movie_details_delete INSTEAD OF DELETE " +
+      "ON movie_details BEGIN " + 
+      "DELETE FROM movies_fts WHERE docid=old._id; " +
+      unlinkPeople() + "DELETE FROM movies WHERE _id=old._id; " + 
+      removeUnusedPeople() + "END" };
+
+   // per-year and per-person totals for the statistics screen, kept
+   // current by triggers on movies and movie_people so the screen reads
+   // one row per group rather than every movie; budgets are summed over
+   // the movies that have one, counted in budgeted. Created by
+   // CREATE_STATEMENTS.
+   public static final String[] STATISTICS_STATEMENTS = {
+      "CREATE TABLE stats_years" +
+      "(year INTEGER PRIMARY KEY, movies INTEGER NOT NULL, " +
+      "budget INTEGER NOT NULL, budgeted INTEGER NOT NULL)",
+      "CREATE TABLE stats_people" +
+      "(role INTEGER NOT NULL, person_id INTEGER NOT NULL, " +
+      "movies INTEGER NOT NULL, budget INTEGER NOT NULL, " +
+      "budgeted INTEGER NOT NULL, PRIMARY KEY (role, person_id))",
+      "CREATE TRIGGER stats_movies_insert AFTER INSERT ON movies BEGIN " +
+      addTotals("stats_years", "year", "new.release/10000", 
+         "year=new.release/10000", "new.budget") +
+      "END",
+      "CREATE TRIGGER stats_movies_update AFTER UPDATE OF release, budget " +
+      "ON movies WHEN old.release<>new.release OR old.budget<>new.budget " +
+      "BEGIN " + 
+      removeTotals("stats_years", "year=old.release/10000", "old.budget") +
+      addTotals("stats_years", "year", "new.release/10000", 
+         "year=new.release/10000", "new.budget") +
+      "END",
+      // the movie's people keep their links, so only the budget moves
+      "CREATE TRIGGER stats_movies_budget AFTER UPDATE OF budget " +
+      "ON movies WHEN old.budget<>new.budget BEGIN " + 
+      changePeopleBudgets() + "END",
+      "CREATE TRIGGER stats_movies_delete AFTER DELETE ON movies BEGIN " +
+      removeTotals("stats_years", "year=old.release/10000", "old.budget") +
+      "END",
+      "CREATE TRIGGER stats_people_insert AFTER INSERT ON movie_people " +
+      "BEGIN " + addTotals("stats_people", "role, person_id", 
+         "new.role, new.person_id", 
+         "role=new.role AND person_id=new.person_id", linkedBudget("new")) + 
+      "END",
+      // movie_details removes a movie's links before the movie itself
+      "CREATE TRIGGER stats_people_delete AFTER DELETE ON movie_people " +
+      "BEGIN " + removeTotals("stats_people", 
+         "role=old.role AND person_id=old.person_id", linkedBudget("old")) +
+      "END" };
+
+   // recompute the statistics tables from movies and movie_people, should
+   // they have been changed other than through movie_details
+   public static final String[] REBUILD_STATISTICS = {
+      "DELETE FROM stats_years",
+      "INSERT INTO stats_years (year, movies, budget, budgeted) " +
+      "SELECT release/10000, COUNT(*), SUM(MAX(budget, 0)), " +
+      "SUM(budget>=0) FROM movies GROUP BY release/10000",
+      "DELETE FROM stats_people",
+      "INSERT INTO stats_people " +
+      "(role, person_id, movies, budget, budgeted) " +
+      "SELECT l.role, l.person_id, COUNT(*), SUM(MAX(m.budget, 0)), " +
+      "SUM(m.budget>=0) FROM movie_people l " +
+      "JOIN movies m ON m._id=l.movie_id GROUP BY l.role, l.person_id" };
+
+   // the change log for incremental snapshots: snapshot_state holds the
+   // current generation, which each snapshot advances, and
+   // snapshot_changes the generation in which each movie was last
+   // inserted, updated or deleted, so a snapshot can copy only the movies
+   // changed since an earlier one. movie_details updates movies for
+   // every write, including one that only changes people. Created by
+   // CREATE_STATEMENTS
+   public static final String[] SNAPSHOT_STATEMENTS = {
+      "CREATE TABLE snapshot_state (generation INTEGER NOT NULL)",
+      "INSERT INTO snapshot_state (generation) VALUES (1)",
+      "CREATE TABLE snapshot_changes" +
+      "(movie_id INTEGER PRIMARY KEY, generation INTEGER NOT NULL)",
+      "CREATE TRIGGER snapshot_movies_insert AFTER INSERT ON movies " +
+      "BEGIN " + logChange("new") + "END",
+      "CREATE TRIGGER snapshot_movies_update AFTER UPDATE ON movies " +
+      "BEGIN " + logChange("new") + "END",
+      "CREATE TRIGGER snapshot_movies_delete AFTER DELETE ON movies " +
+      "BEGIN " + logChange("old") + "END" };
+
+   // deleted movies are kept here for a while as tombstones, with the
+   // time of the delete in milliseconds, so a delete can be undone; only
+   // live movies are left in movies, so no query has to skip deleted
+   // ones. Created by CREATE_STATEMENTS
+   public static final String[] TOMBSTONE_STATEMENTS = {
+      "CREATE TABLE deleted_movies (_id INTEGER PRIMARY KEY, " +
+      "name TEXT NOT NULL, director TEXT NOT NULL, producer TEXT NOT NULL, " +
+      "actor TEXT NOT NULL, actress TEXT NOT NULL, " +
+      "release INTEGER NOT NULL, budget INTEGER NOT NULL, poster TEXT, " +
+      "deleted INTEGER NOT NULL)",
+      "CREATE INDEX deleted_movies_deleted ON deleted_movies (deleted)" };
+
+   // the change log for sync (see MovieSync). sync_state holds this
+   // device's random id, the number of the last local change, the last
+   // change pushed, the last server version pulled, and whether pulled
+   // changes are being applied, which the triggers then leave alone.
+   // sync_rows gives each movie a uid that is the same on every device,
+   // the server version it was last synced at, the time and device of
+   // its last write, which decide conflicts, and the number of the local
+   // change that made it, 0 for a pulled change; deleted movies keep
+   // their rows so the delete can be pushed. The tables aren't dropped
+   // by a restore, so a restored database keeps its uids and progress.
+   // Created by CREATE_STATEMENTS
+   public static final String[] SYNC_STATEMENTS = {
+      "CREATE TABLE IF NOT EXISTS sync_state (device TEXT NOT NULL, " +
+      "seq INTEGER NOT NULL, pushed INTEGER NOT NULL, " +
+      "pulled INTEGER NOT NULL, applying INTEGER NOT NULL)",
+      "INSERT INTO sync_state (device, seq, pushed, pulled, applying) " +
+      "SELECT " + NEW_UID + ", 0, 0, 0, 0 " +
+      "WHERE NOT EXISTS (SELECT * FROM sync_state)",
+      "CREATE TABLE IF NOT EXISTS sync_rows " +
+      "(movie_id INTEGER PRIMARY KEY, uid TEXT NOT NULL UNIQUE, " +
+      "version INTEGER NOT NULL, modified INTEGER NOT NULL, " +
+      "device TEXT NOT NULL, seq INTEGER NOT NULL, " +
+      "deleted INTEGER NOT NULL)",
+      "CREATE INDEX IF NOT EXISTS sync_rows_seq ON sync_rows (seq)",
+      // an insert of a movie deleted earlier keeps its uid and version
+      "CREATE TRIGGER sync_movies_insert AFTER INSERT ON movies " +
+      "WHEN (SELECT applying FROM sync_state)=0 BEGIN " +
+      "UPDATE sync_state SET seq=seq+1; " +
+      "INSERT OR REPLACE INTO sync_rows " +
+      "(movie_id, uid, version, modified, device, seq, deleted) " +
+      "SELECT new._id, " +
+      "IFNULL((SELECT uid FROM sync_rows WHERE movie_id=new._id), " + 
+      NEW_UID + "), " +
+      "IFNULL((SELECT version FROM sync_rows WHERE movie_id=new._id), 0), " +
+      NOW_MS + ", device, seq, 0 FROM sync_state; END",
+      // a poster is kept on its device, so setting one isn't a change
+      "CREATE TRIGGER sync_movies_update " +
+      "AFTER UPDATE OF name, release, budget ON movies " +
+      "WHEN (SELECT applying FROM sync_state)=0 BEGIN " +
+      "UPDATE sync_state SET seq=seq+1; " +
+      logSyncChange("new", 0) + "END",
+      "CREATE TRIGGER sync_movies_delete AFTER DELETE ON movies " +
+      "WHEN (SELECT applying FROM sync_state)=0 BEGIN " +
+      "UPDATE sync_state SET seq=seq+1; " +
+      logSyncChange("old", 1) + "END" };
+
+   // bring sync_rows up to date with movies after they were changed with
+   // the triggers missing, i.e. by the version 10 migration or a restore:
+   // every movie becomes a local change, keeping the uid it had, and
+   // every row whose movie is gone a delete
+   public static final String[] RESYNC_STATEMENTS = {
+      "UPDATE sync_rows SET deleted=1, modified=" + NOW_MS + ", " +
+      "device=(SELECT device FROM sync_state), " +
+      "seq=(SELECT seq+1 FROM sync_state) " +
+      "WHERE deleted=0 AND movie_id NOT IN (SELECT _id FROM movies)",
+      "INSERT OR REPLACE INTO sync_rows " +
+      "(movie_id, uid, version, modified, device, seq, deleted) " +
+      "SELECT m._id, IFNULL(r.uid, " + NEW_UID + "), " +
+      "IFNULL(r.version, 0), " + NOW_MS + ", s.device, s.seq+1+m._id, 0 " +
+      "FROM movies m LEFT JOIN sync_rows r ON r.movie_id=m._id, " +
+      "sync_state s",
+      "UPDATE sync_state SET " +
+      "seq=seq+1+IFNULL((SELECT MAX(_id) FROM movies), 0)" };
+
+   // the title index behind MovieRepository.findDuplicates. title_keys
+   // holds each movie's title, director and year as MovieDuplicates.Key
+   // normalizes them, and title_trigrams a row for each trigram of each
+   // title whose _id is the trigram and the movie's _id together (see
+   // MovieDuplicates.trigramRowId), so a trigram's movies are a range of
+   // row IDs and no index is needed. Titles are normalized in Java, so
+   // the triggers only log the movies to index again in title_changes,
+   // which MovieRepository.indexTitles works through. movie_details
+   // updates name for every write, so a new director is logged too.
+   // Created by CREATE_STATEMENTS
+   public static final String[] TITLE_STATEMENTS = {
+      "CREATE TABLE title_keys (movie_id INTEGER PRIMARY KEY, " +
+      "title TEXT NOT NULL, director TEXT NOT NULL, year INTEGER NOT NULL)",
+      "CREATE INDEX title_keys_title ON title_keys (title)",
+      "CREATE TABLE title_trigrams (_id INTEGER PRIMARY KEY)",
+      "CREATE TABLE title_changes (movie_id INTEGER PRIMARY KEY)",
+      "CREATE TRIGGER title_movies_insert AFTER INSERT ON movies BEGIN " +
+      "INSERT OR REPLACE INTO title_changes (movie_id) VALUES (new._id); " +
+      "END",
+      "CREATE TRIGGER title_movies_update AFTER UPDATE OF name, release " +
+      "ON movies BEGIN " +
+      "INSERT OR REPLACE INTO title_changes (movie_id) VALUES (new._id); " +
+      "END",
+      "CREATE TRIGGER title_movies_delete AFTER DELETE ON movies BEGIN " +
+      "INSERT OR REPLACE INTO title_changes (movie_id) VALUES (old._id); " +
+      "END" };
+
+   // logs every movie to be indexed, after the title tables were created
+   // empty by the version 11 migration or a restore
+   public static final String REINDEX_TITLES = 
+      "INSERT OR REPLACE INTO title_changes (movie_id) " +
+      "SELECT _id FROM movies";
+
+   // creates the current schema in an empty database
+   public static final String[] CREATE_STATEMENTS = concat(new String[] {
+      "CREATE TABLE movies" +
+      "(_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+      "name TEXT NOT NULL DEFAULT ''," +
+      "release INTEGER NOT NULL DEFAULT " + Movie.NO_RELEASE + "," +
+      "budget INTEGER NOT NULL DEFAULT " + Movie.NO_BUDGET + "," +
+      "poster TEXT)", // see SET_POSTER
+      "CREATE TABLE movies_legacy" +
+      "(movie_id INTEGER PRIMARY KEY, release TEXT, budget TEXT)",
+      // each distinct name is stored once, however many movies use it
+      "CREATE TABLE people" +
+      "(_id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)",
+      // MovieQuery's name filters, which ignore case
+      "CREATE INDEX people_name_nocase ON people (name COLLATE NOCASE)",
+      "CREATE TABLE movie_people" +
+      "(_id INTEGER PRIMARY KEY, movie_id INTEGER NOT NULL, " +
+      "role INTEGER NOT NULL, person_id INTEGER NOT NULL)",
+      // a person's movies, read from the index alone
+      "CREATE INDEX movie_people_person " +
+      "ON movie_people (person_id, role, movie_id)",
+      "CREATE INDEX movies_name ON movies (name)",
+      "CREATE INDEX movies_release ON movies (release)",
+      "CREATE INDEX movies_budget ON movies (budget)" }, 
+      concat(DETAILS_STATEMENTS, concat(STATISTICS_STATEMENTS, 
+         concat(SNAPSHOT_STATEMENTS, 
+         concat(TOMBSTONE_STATEMENTS, 
+         concat(SYNC_STATEMENTS, TITLE_STATEMENTS))))));
+
+   // drops everything CREATE_STATEMENTS creates, so a restore can create
+   // the schema again and fill it from a snapshot in the same transaction
+   public static final String[] DROP_STATEMENTS = {
+      "DROP VIEW movie_details", // and its triggers
+      "DROP TABLE movies_fts",
+      "DROP TABLE stats_years",
+      "DROP TABLE stats_people",
+      "DROP TABLE snapshot_state",
+      "DROP TABLE snapshot_changes",
+      "DROP TABLE deleted_movies",
+      "DROP TABLE title_keys",
+      "DROP TABLE title_trigrams",
+      "DROP TABLE title_changes",
+      "DROP TABLE movie_people",
+      "DROP TABLE people",
+      "DROP TABLE movies_legacy",
+      "DROP TABLE movies" };
+
+   // CREATE_STATEMENTS split for a restore, which fills the tables
+   // before creating the indexes and triggers: an index built once is
+   // faster to create than to keep sorted row by row, and what the
+   // triggers would have kept current is rebuilt instead
+   public static final String[] CREATE_TABLES = 
+      selectDeferred(CREATE_STATEMENTS, false);
+   public static final String[] CREATE_INDEXES_AND_TRIGGERS = 
+      selectDeferred(CREATE_STATEMENTS, true);
+
+   // oldest schema version whose snapshots can be restored: the first
+   // with the change log; and the first whose snapshots have posters
+   public static final int FIRST_SNAPSHOT_VERSION = 7;
+   public static final int FIRST_POSTER_VERSION = 8;
+
+   // a movie's poster is the path of an image file, or null; it is set
+   // on its own rather than saved with the other columns, so an edit made
+   // through movie_details keeps it. Binds the path, then _id
+   public static final String SET_POSTER = 
+      "UPDATE movies SET poster=? WHERE _id=?";
+
+   // every poster path in use, by a movie or by a tombstone
+   public static final String POSTER_PATHS = 
+      "SELECT poster FROM movies WHERE poster IS NOT NULL UNION " +
+      "SELECT poster FROM deleted_movies WHERE poster IS NOT NULL";
+
+   // statements run for every write, through movie_details; bindings are
+   // the seven movie columns in this order, then _id for
+   // INSERT_MOVIE_WITH_ID and UPDATE_MOVIE
+   public static final String INSERT_MOVIE =
+      "INSERT INTO movie_details (name, director, producer, actor, actress, " +
+      "release, budget) VALUES (?, ?, ?, ?, ?, ?, ?)";
+   public static final String INSERT_MOVIE_WITH_ID =
+      "INSERT INTO movie_details (name, director, producer, actor, actress, " +
+      "release, budget, _id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+   public static final String UPDATE_MOVIE =
+      "UPDATE movie_details SET name=?, director=?, producer=?, actor=?, " +
+      "actress=?, release=?, budget=? WHERE _id=?";
+   public static final String DELETE_MOVIE = 
+      "DELETE FROM movie_details WHERE _id=?";
+
+   // columns read into a Movie, and the index of each in a result row
+   public static final String[] MOVIE_COLUMNS = { "_id", "name", "director",
+      "producer", "actor", "actress", "release", "budget" };
+   public static final int COLUMN_ID = 0;
+   public static final int COLUMN_NAME = 1;
+   public static final int COLUMN_DIRECTOR = 2;
+   public static final int COLUMN_PRODUCER = 3;
+   public static final int COLUMN_ACTOR = 4;
+   public static final int COLUMN_ACTRESS = 5;
+   public static final int COLUMN_RELEASE = 6;
+   public static final int COLUMN_BUDGET = 7;
+
+   // columns read into a MovieSummary, at COLUMN_ID and COLUMN_NAME;
+   // MovieQuery adds the sort key at COLUMN_SORT_KEY
+   public static final String[] SUMMARY_COLUMNS = { "_id", "name" };
+   public static final int COLUMN_SORT_KEY = 2;
+
+   // the row with a given _id, in MOVIE_COLUMNS order
+   public static final String MOVIE_BY_ID = "SELECT " + 
+      columnList(MOVIE_COLUMNS) + " FROM movie_details WHERE _id=?";
+
+   // saves the movie with an _id as a tombstone before it is deleted;
+   // binds the _id, then the time of the delete
+   public static final String INSERT_TOMBSTONE = 
+      "INSERT OR REPLACE INTO deleted_movies (" + 
+      columnList(MOVIE_COLUMNS) + ", poster, deleted) SELECT " + 
+      columnList(MOVIE_COLUMNS) + 
+      ", (SELECT poster FROM movies WHERE _id=?1), ?2 " +
+      "FROM movie_details WHERE _id=?1";
+
+   // undo a delete: the tombstone is inserted through movie_details under
+   // its old _id, then given its poster, then deleted; each binds the _id
+   public static final String TOMBSTONE_EXISTS = 
+      "SELECT COUNT(*) FROM deleted_movies WHERE _id=?";
+   public static final String RESTORE_TOMBSTONE = 
+      "INSERT INTO movie_details (" + columnList(MOVIE_COLUMNS) + 
+      ") SELECT " + columnList(MOVIE_COLUMNS) + 
+      " FROM deleted_movies WHERE _id=?";
+   public static final String RESTORE_TOMBSTONE_POSTER = 
+      "UPDATE movies SET poster=" +
+      "(SELECT poster FROM deleted_movies WHERE _id=?1) WHERE _id=?1";
+   public static final String DELETE_TOMBSTONE = 
+      "DELETE FROM deleted_movies WHERE _id=?";
+
+   // deletes up to a limit of the tombstones of movies deleted before a
+   // time; binds the time and the limit
+   public static final String PURGE_TOMBSTONES = 
+      "DELETE FROM deleted_movies WHERE _id IN (SELECT _id " +
+      "FROM deleted_movies WHERE deleted<? LIMIT ?)";
+
+   // database file upkeep. New databases use incremental auto-vacuum,
+   // set before the first table is created, so free pages can be given
+   // back a few at a time; an older file is switched over by one VACUUM.
+   // ANALYZE then refreshes the statistics the query planner uses
+   public static final String SET_INCREMENTAL_VACUUM = 
+      "PRAGMA auto_vacuum=INCREMENTAL";
+   public static final String AUTO_VACUUM = "PRAGMA auto_vacuum";
+   public static final int AUTO_VACUUM_INCREMENTAL = 2;
+   public static final String PAGE_COUNT = "PRAGMA page_count";
+   public static final String FREELIST_COUNT = "PRAGMA freelist_count";
+   public static final String INCREMENTAL_VACUUM = 
+      "PRAGMA incremental_vacuum(256)"; // pages freed per statement
+
+   // up to a limit of the local changes not yet pushed, oldest first, in
+   // MOVIE_COLUMNS order followed by the sync columns below; a deleted
+   // movie's row has only its _id and sync columns, with a null name.
+   // Binds the limit
+   public static final String SYNC_CHANGES = 
+      "SELECT c.movie_id AS _id, m.name AS name, " + personColumns() + 
+      ", m.release AS release, m.budget AS budget, c.uid, c.version, " +
+      "c.modified, c.device, c.deleted, c.seq " +
+      "FROM sync_rows c LEFT JOIN movies m ON m._id=c.movie_id" + 
+      personJoins() + 
+      " WHERE c.seq>(SELECT pushed FROM sync_state) ORDER BY c.seq LIMIT ?";
+   public static final int COLUMN_SYNC_UID = 8;
+   public static final int COLUMN_SYNC_VERSION = 9;
+   public static final int COLUMN_SYNC_MODIFIED = 10;
+   public static final int COLUMN_SYNC_DEVICE = 11;
+   public static final int COLUMN_SYNC_DELETED = 12;
+   public static final int COLUMN_SYNC_SEQ = 13;
+
+   // this device's id and the last server version pulled
+   public static final String SYNC_DEVICE = "SELECT device FROM sync_state";
+   public static final String SYNC_PULLED = "SELECT pulled FROM sync_state";
+
+   // record sync progress, which never goes back; binds the last change
+   // pushed and the last version pulled, 0 to leave either as it is
+   public static final String SET_SYNC_PROGRESS = 
+      "UPDATE sync_state SET pushed=MAX(pushed, ?), pulled=MAX(pulled, ?)";
+
+   // set to 1 while synced changes are applied and back to 0 after, so
+   // the triggers don't log them as local changes; binds 1 or 0
+   public static final String SET_SYNC_APPLYING = 
+      "UPDATE sync_state SET applying=?";
+
+   // the movie_id, modified, device and deleted of the movie with a uid,
+   // and 1 if it has a local change not yet pushed; binds the uid
+   public static final String SYNC_ROW_BY_UID = 
+      "SELECT movie_id, modified, device, deleted, " +
+      "seq>(SELECT pushed FROM sync_state) FROM sync_rows WHERE uid=?";
+
+   // sets the server version of the movie with a uid; binds the version,
+   // then the uid
+   public static final String SET_SYNC_VERSION = 
+      "UPDATE sync_rows SET version=? WHERE uid=?";
+
+   // records a change applied from the server, which has no local change
+   // number; binds the _id, uid, version, modified, device and deleted
+   public static final String PUT_SYNC_ROW = 
+      "INSERT OR REPLACE INTO sync_rows " +
+      "(movie_id, uid, version, modified, device, seq, deleted) " +
+      "VALUES (?, ?, ?, ?, ?, 0, ?)";
+
+   // up to a limit of the movies logged in title_changes, in _id order:
+   // the _id, name, director and release, with a null name for a deleted
+   // movie, then the title it was last indexed under, null if none.
+   // Binds the limit
+   public static final String TITLE_CHANGES = 
+      "SELECT c.movie_id, m.name, IFNULL(p.name, ''), m.release, k.title " +
+      "FROM title_changes c LEFT JOIN movies m ON m._id=c.movie_id " +
+      "LEFT JOIN movie_people r ON r._id=c.movie_id*" + ROLES + "+" + 
+      ROLE_DIRECTOR + " LEFT JOIN people p ON p._id=r.person_id " +
+      "LEFT JOIN title_keys k ON k.movie_id=c.movie_id " +
+      "ORDER BY c.movie_id LIMIT ?";
+   public static final int COLUMN_TITLE_ID = 0;
+   public static final int COLUMN_TITLE_NAME = 1;
+   public static final int COLUMN_TITLE_DIRECTOR = 2;
+   public static final int COLUMN_TITLE_RELEASE = 3;
+   public static final int COLUMN_TITLE_INDEXED = 4;
+
+   // statements indexing one movie; each binds the movie_id (the
+   // title_trigrams _id for the trigram ones), and PUT_TITLE_KEY then
+   // the title, director and year
+   public static final String PUT_TITLE_KEY = 
+      "INSERT OR REPLACE INTO title_keys (movie_id, title, director, year) " +
+      "VALUES (?, ?, ?, ?)";
+   public static final String DELETE_TITLE_KEY = 
+      "DELETE FROM title_keys WHERE movie_id=?";
+   public static final String INSERT_TITLE_TRIGRAM = 
+      "INSERT OR IGNORE INTO title_trigrams (_id) VALUES (?)";
+   public static final String DELETE_TITLE_TRIGRAM = 
+      "DELETE FROM title_trigrams WHERE _id=?";
+   public static final String DELETE_TITLE_CHANGE = 
+      "DELETE FROM title_changes WHERE movie_id=?";
+
+   // up to a limit of the title_trigrams row IDs of one trigram, i.e. the
+   // movies with it; binds the trigram's first row ID, the next
+   // trigram's and the limit
+   public static final String TITLE_TRIGRAM_ROWS = 
+      "SELECT _id FROM title_trigrams WHERE _id>=? AND _id<? LIMIT ?";
+
+   // the number of movies with one trigram, counted no further than a
+   // limit; binds like TITLE_TRIGRAM_ROWS
+   public static final String TITLE_TRIGRAM_COUNT = 
+      "SELECT count(*) FROM (" + TITLE_TRIGRAM_ROWS + ")";
+
+   // up to a limit of the movie_ids of the movies with a normalized title;
+   // binds the title and the limit
+   public static final String TITLE_KEYS_BY_TITLE = 
+      "SELECT movie_id FROM title_keys WHERE title=? LIMIT ?";
+
+   // columns of the title_keys queries below, read into a
+   // MovieDuplicates.Key
+   public static final int COLUMN_KEY_ID = 0;
+   public static final int COLUMN_KEY_TITLE = 1;
+   public static final int COLUMN_KEY_DIRECTOR = 2;
+   public static final int COLUMN_KEY_YEAR = 3;
+
+   // up to a limit of the title_keys rows after a movie_id, in movie_id
+   // order; binds the last movie_id read (0 to start) and the limit
+   public static final String TITLE_KEYS_AFTER_ID = 
+      "SELECT movie_id, title, director, year FROM title_keys " +
+      "WHERE movie_id>? ORDER BY movie_id LIMIT ?";
+
+   // Android's SQLite allows at most 999 variables in a statement, so the
+   // queries below, and MovieQuery's for a list of _ids, take at most
+   // this many _ids; MovieStore runs longer lists a chunk at a time. Full
+   // chunks all share one SQL text and so one cached statement.
+   public static final int MAX_IDS_PER_QUERY = 500;
+
+   // append a parenthesized list of count parameters to sql, for an IN
+   // list of 1 to MAX_IDS_PER_QUERY _ids, and return sql
+   static StringBuilder appendIds(StringBuilder sql, int count)
+   {
+      if (count < 1 || count > MAX_IDS_PER_QUERY)
+         throw new IllegalArgumentException(count + " _ids in one query");
+
+      sql.append("(?");
+
+      for (int i = 1; i < count; ++i)
+         sql.append(", ?");
+
+      return sql.append(')');
+   }
+
+   // the title_keys rows with any of count movie_ids, in no order
+   public static String titleKeysByIds(int count)
+   {
+      return appendIds(new StringBuilder("SELECT movie_id, title, " +
+         "director, year FROM title_keys WHERE movie_id IN "), count)
+         .toString();
+   }
+
+   // the people of one movie, with the number of movies each is in in
+   // the same role; binds the movie's first movie_people _id and its last
+   public static final String RELATED_PEOPLE = 
+      "SELECT l.role, l.person_id, s.movies FROM movie_people l " +
+      "JOIN stats_people s ON s.role=l.role AND s.person_id=l.person_id " +
+      "WHERE l._id BETWEEN ? AND ?";
+   public static final int COLUMN_RELATED_ROLE = 0;
+   public static final int COLUMN_RELATED_PERSON = 1;
+   public static final int COLUMN_RELATED_MOVIES = 2;
+
+   // up to a limit of the movies with a person in a role, read from the
+   // movie_people_person index alone; binds the person_id, the role and
+   // the limit
+   public static final String PERSON_MOVIES = 
+      "SELECT movie_id FROM movie_people WHERE person_id=? AND role=? " +
+      "LIMIT ?";
+
+   // the number of movies, from the statistics rather than a count
+   public static final String MOVIE_COUNT = 
+      "SELECT IFNULL(SUM(movies), 0) FROM stats_years";
+
+   // the _id and poster of the movies with any of count _ids that have
+   // a poster, in no order
+   public static String postersByIds(int count)
+   {
+      return appendIds(new StringBuilder("SELECT _id, poster FROM movies " +
+         "WHERE poster IS NOT NULL AND _id IN "), count).toString();
+   }
+
+   // the rows with any of count _ids, in no order and SUMMARY_COLUMNS
+   // order
+   public static String summariesByIds(int count)
+   {
+      return appendIds(new StringBuilder("SELECT ")
+         .append(columnList(SUMMARY_COLUMNS))
+         .append(" FROM movies WHERE _id IN "), count).toString();
+   }
+
+   // the rows with any of count _ids, in no order and MOVIE_COLUMNS order
+   public static String moviesByIds(int count)
+   {
+      return appendIds(new StringBuilder("SELECT ")
+         .append(columnList(MOVIE_COLUMNS))
+         .append(" FROM movie_details WHERE _id IN "), count).toString();
+   }
+
+   // up to a limit of the rows after an _id, in _id order and
+   // MOVIE_COLUMNS order; each batch starts with a primary key search,
+   // so reading the whole table this way stays linear. Binds the last
+   // _id read (0 to start) and the limit
+   public static final String MOVIES_AFTER_ID = "SELECT " +
+      columnList(MOVIE_COLUMNS) +
+      " FROM movie_details WHERE _id>? ORDER BY _id LIMIT ?";
+
+   // the generation a snapshot taken now covers, and the statement that
+   // starts the next one once it is taken
+   public static final String SNAPSHOT_GENERATION = 
+      "SELECT generation FROM snapshot_state";
+   public static final String NEXT_SNAPSHOT_GENERATION = 
+      "UPDATE snapshot_state SET generation=generation+1";
+   public static final String SET_SNAPSHOT_GENERATION = 
+      "UPDATE snapshot_state SET generation=?";
+   public static final String CLEAR_SNAPSHOT_CHANGES = 
+      "DELETE FROM snapshot_changes";
+
+   // up to a limit of the movies changed after a generation, in _id
+   // order and MOVIE_COLUMNS order followed by the poster; a deleted
+   // movie's row has only its _id, with a null name. Binds the
+   // generation, the last _id read (0 to start) and the limit
+   public static final String CHANGES_AFTER_ID = 
+      "SELECT c.movie_id AS _id, m.name AS name, " + personColumns() + 
+      ", m.release AS release, m.budget AS budget, m.poster AS poster " +
+      "FROM snapshot_changes c LEFT JOIN movies m ON m._id=c.movie_id" + 
+      personJoins() + 
+      " WHERE c.generation>? AND c.movie_id>? ORDER BY c.movie_id LIMIT ?";
+
+   // a file of changes holds the rows CHANGES_AFTER_ID returned, with the
+   // schema VERSION as its user_version; files from before
+   // FIRST_POSTER_VERSION have no poster column
+   public static final String CREATE_CHANGES_FILE = 
+      "CREATE TABLE changes (_id INTEGER PRIMARY KEY, name TEXT, " +
+      "director TEXT, producer TEXT, actor TEXT, actress TEXT, " +
+      "release INTEGER, budget INTEGER, poster TEXT)";
+   public static final String INSERT_CHANGE = "INSERT INTO changes (" + 
+      columnList(MOVIE_COLUMNS) + ", poster) " +
+      "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+   public static final String CHANGES_FILE_AFTER_ID = "SELECT " +
+      columnList(MOVIE_COLUMNS) + 
+      " FROM changes WHERE _id>? ORDER BY _id LIMIT ?";
+
+   // up to a limit of the posters in a snapshot or changes file after an
+   // _id, in _id order, copied with RESTORE_POSTER; binds the last _id
+   // read and the limit
+   public static final String SNAPSHOT_POSTERS_AFTER_ID = 
+      "SELECT _id, poster FROM movies WHERE poster IS NOT NULL AND _id>? " +
+      "ORDER BY _id LIMIT ?";
+   public static final String CHANGES_FILE_POSTERS_AFTER_ID = 
+      "SELECT _id, poster FROM changes WHERE poster IS NOT NULL AND _id>? " +
+      "ORDER BY _id LIMIT ?";
+   public static final String RESTORE_POSTER = 
+      "UPDATE movies SET poster=?2 WHERE _id=?1";
+
+   // the AUTOINCREMENT counter of movies, read before a restore and
+   // raised again after it, so ids used before it stay unused; the
+   // counter's row goes with the table, so it is added back first
+   public static final String MOVIES_SEQUENCE = 
+      "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name='movies'";
+   public static final String ADD_MOVIES_SEQUENCE = 
+      "INSERT INTO sqlite_sequence (name, seq) SELECT 'movies', 0 " +
+      "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name='movies')";
+   public static final String RAISE_MOVIES_SEQUENCE = 
+      "UPDATE sqlite_sequence SET seq=MAX(seq, ?) WHERE name='movies'";
+
+   // tables a restore copies from a snapshot row for row, each as its
+   // name and then its columns, the integer primary key first; the
+   // search index and statistics are rebuilt once they are all in,
+   // which is much faster than inserting through movie_details. Posters
+   // are copied afterwards, from snapshots that have them
+   public static final String[][] SNAPSHOT_TABLES = {
+      { "movies_legacy", "movie_id", "release", "budget" },
+      { "people", "_id", "name" },
+      { "movies", "_id", "name", "release", "budget" },
+      { "movie_people", "_id", "movie_id", "role", "person_id" } };
+   public static final String REBUILD_SEARCH_INDEX = 
+      "INSERT INTO movies_fts(movies_fts) VALUES('rebuild')";
+
+   // full-text query returning docid and the matchinfo MovieSearch.rank
+   // expects; binds a MovieSearch.toMatchExpression result
+   public static final String SEARCH_MOVIES = 
+      "SELECT docid, matchinfo(movies_fts, '" + 
+      MovieSearch.MATCHINFO_FORMAT + "') FROM movies_fts " +
+      "WHERE movies_fts MATCH ?";
+
+   // statistics rows, read into MovieStatistics.Groups: a name ("" for
+   // an unknown year), the number of movies, the sum of their budgets
+   // and the number of them with a budget
+   public static final int STATS_COLUMN_NAME = 0;
+   public static final int STATS_COLUMN_MOVIES = 1;
+   public static final int STATS_COLUMN_BUDGET = 2;
+   public static final int STATS_COLUMN_BUDGETED = 3;
+
+   // every release year, in order
+   public static final String STATS_YEARS = 
+      "SELECT CASE year WHEN 0 THEN '' ELSE year END, movies, budget, " +
+      "budgeted FROM stats_years ORDER BY year";
+
+   // the people in a role with the highest total budget, or the most
+   // movies, ranked from the role's rows of stats_people; binds the role
+   // and the number of people
+   private static final String STATS_TOP_PEOPLE = 
+      "SELECT p.name, s.movies, s.budget, s.budgeted FROM stats_people s " +
+      "JOIN people p ON p._id=s.person_id WHERE s.role=? ORDER BY ";
+   public static final String STATS_TOP_BY_BUDGET = STATS_TOP_PEOPLE +
+      "s.budget DESC, s.movies DESC LIMIT ?";
+   public static final String STATS_TOP_BY_MOVIES = STATS_TOP_PEOPLE +
+      "s.movies DESC, s.budget DESC LIMIT ?";
+
+   // return columns separated by commas, for a SELECT
+   public static String columnList(String[] columns)
+   {
+      StringBuilder list = new StringBuilder(columns[0]);
+
+      for (int i = 1; i < columns.length; ++i)
+         list.append(", ").append(columns[i]);
+
+      return list.toString();
+   }
+
+   // up to a limit of the rows of a SNAPSHOT_TABLES table after a
+   // primary key, in key order; binds the last key read and the limit
+   public static String tableRowsAfterKey(String[] table)
+   {
+      String[] columns = Arrays.copyOfRange(table, 1, table.length);
+      return "SELECT " + columnList(columns) + " FROM " + table[0] + 
+         " WHERE " + columns[0] + ">? ORDER BY " + columns[0] + " LIMIT ?";
+   }
+
+   // inserts a row read by tableRowsAfterKey
+   public static String insertTableRow(String[] table)
+   {
+      StringBuilder sql = new StringBuilder("INSERT INTO ").append(table[0])
+         .append(" (").append(columnList(
+            Arrays.copyOfRange(table, 1, table.length))).append(") VALUES (?");
+
+      for (int i = 2; i < table.length; ++i)
+         sql.append(", ?");
+
+      return sql.append(')').toString();
+   }
+
+   // the view's person columns, '' where a role has nobody
+   private static String personColumns()
+   {
+      StringBuilder columns = new StringBuilder();
+
+      for (int role = 0; role < ROLE_COLUMNS.length; ++role)
+      {
+         if (role > 0)
+            columns.append(", ");
+
+         columns.append("IFNULL(p").append(role).append(".name, '') AS ")
+            .append(ROLE_COLUMNS[role]);
+      }
+
+      return columns.toString();
+   }
+
+   // joins from movies m to the person in each role
+   private static String personJoins()
+   {
+      StringBuilder joins = new StringBuilder();
+
+      for (int role = 0; role < ROLE_COLUMNS.length; ++role)
+      {
+         joins.append(" LEFT JOIN movie_people r").append(role)
+            .append(" ON r").append(role).append("._id=m._id*")
+            .append(ROLES).append("+").append(role)
+            .append(" LEFT JOIN people p").append(role)
+            .append(" ON p").append(role).append("._id=r").append(role)
+            .append(".person_id");
+      }
+
+      return joins.toString();
+   }
+
+   // trigger statements adding the new row's names to people
+   private static String internPeople()
+   {
+      StringBuilder statements = new StringBuilder();
+
+      for (String column : ROLE_COLUMNS)
+      {
+         statements.append("INSERT OR IGNORE INTO people (name) SELECT new.")
+            .append(column).append(" WHERE new.").append(column)
+            .append("<>''; ");
+      }
+
+      return statements.toString();
+   }
+
+   // trigger statements linking movie id to the new row's people
+   private static String linkPeople(String id)
+   {
+      StringBuilder statements = new StringBuilder();
+
+      for (int role = 0; role < ROLE_COLUMNS.length; ++role)
+      {
+         statements.append("INSERT INTO movie_people ")
+            .append("(_id, movie_id, role, person_id) SELECT ")
+            .append(id).append("*").append(ROLES).append("+").append(role)
+            .append(", ").append(id).append(", ").append(role)
+            .append(", _id FROM people ")
+            .append("WHERE name=new.").append(ROLE_COLUMNS[role])
+            .append("; ");
+      }
+
+      return statements.toString();
+   }
+
+   // trigger statements replacing the links of each role whose person
+   // changed from the old row to the new one
+   private static String relinkChangedPeople()
+   {
+      StringBuilder statements = new StringBuilder();
+
+      for (int role = 0; role < ROLES; ++role)
+      {
+         String column = ROLE_COLUMNS[role];
+         String changed = "old." + column + " IS NOT new." + column;
+         statements.append("DELETE FROM movie_people WHERE _id=old._id*")
+            .append(ROLES).append("+").append(role).append(" AND ")
+            .append(changed).append("; INSERT OR IGNORE INTO people (name) ")
+            .append("SELECT new.").append(column).append(" WHERE new.")
+            .append(column).append("<>'' AND ").append(changed)
+            .append("; INSERT INTO movie_people ")
+            .append("(_id, movie_id, role, person_id) SELECT old._id*")
+            .append(ROLES).append("+").append(role).append(", old._id, ")
+            .append(role).append(", _id FROM people WHERE name=new.")
+            .append(column).append(" AND ").append(changed).append("; ");
+      }
+
+      return statements.toString();
+   } // end method relinkChangedPeople
+
+   // trigger statement deleting the old row's links to people
+   private static String unlinkPeople()
+   {
+      return "DELETE FROM movie_people WHERE _id BETWEEN old._id*" + ROLES +
+         " AND old._id*" + ROLES + "+" + (ROLES - 1) + "; ";
+   }
+
+   // trigger statement indexing the new row's text as movie id
+   private static String indexNew(String id)
+   {
+      return "INSERT INTO movies_fts" +
+         "(docid, name, director, producer, actor, actress) VALUES (" + 
+         id + ", new.name, new.director, new.producer, new.actor, " +
+         "new.actress); ";
+   }
+
+   // trigger statement deleting the old row's people no movie uses now
+   private static String removeUnusedPeople()
+   {
+      return "DELETE FROM people WHERE name IN " +
+         "(old.director, old.producer, old.actor, old.actress) AND " +
+         "NOT EXISTS (SELECT 1 FROM movie_people " +
+         "WHERE person_id=people._id); ";
+   }
+
+   // trigger statements counting a movie with budget into the totals row
+   // of table matching where, first adding the row with key columns
+   // keyColumns set to keyValues if there is none
+   private static String addTotals(String table, String keyColumns, 
+      String keyValues, String where, String budget)
+   {
+      return "INSERT OR IGNORE INTO " + table + " (" + keyColumns + 
+         ", movies, budget, budgeted) VALUES (" + keyValues + 
+         ", 0, 0, 0); UPDATE " + table + " SET movies=movies+1, " +
+         "budget=budget+MAX(" + budget + ", 0), budgeted=budgeted+(" + 
+         budget + ">=0) WHERE " + where + "; ";
+   }
+
+   // trigger statements taking a movie with budget out of the totals row
+   // of table matching where, deleting the row once it counts no movies
+   private static String removeTotals(String table, String where, 
+      String budget)
+   {
+      return "UPDATE " + table + " SET movies=movies-1, " +
+         "budget=budget-MAX(" + budget + ", 0), budgeted=budgeted-(" + 
+         budget + ">=0) WHERE " + where + "; DELETE FROM " + table + 
+         " WHERE " + where + " AND movies=0; ";
+   }
+
+   // the budget of the movie in the movie_people row row (new or old)
+   private static String linkedBudget(String row)
+   {
+      return "IFNULL((SELECT budget FROM movies WHERE _id=" + row + 
+         ".movie_id), " + Movie.NO_BUDGET + ")";
+   }
+
+   // trigger statements moving each of a movie's people from its old
+   // budget to its new one
+   private static String changePeopleBudgets()
+   {
+      StringBuilder statements = new StringBuilder();
+
+      for (int role = 0; role < ROLES; ++role)
+      {
+         statements.append("UPDATE stats_people SET ")
+            .append("budget=budget-MAX(old.budget, 0)+MAX(new.budget, 0), ")
+            .append("budgeted=budgeted-(old.budget>=0)+(new.budget>=0) ")
+            .append("WHERE role=").append(role).append(" AND person_id=")
+            .append("(SELECT person_id FROM movie_people WHERE _id=new._id*")
+            .append(ROLES).append("+").append(role).append("); ");
+      }
+
+      return statements.toString();
+   }
+
+   // snapshot trigger statement recording the generation of a change
+   // to the movie in row ("new" or "old")
+   private static String logChange(String row)
+   {
+      return "INSERT OR REPLACE INTO snapshot_changes " + 
+         "(movie_id, generation) SELECT " + row + "._id, generation " +
+         "FROM snapshot_state; ";
+   }
+
+   // sync trigger statement recording a local write, a delete if deleted
+   // is 1, of the movie in row ("new" or "old") as the latest change
+   private static String logSyncChange(String row, int deleted)
+   {
+      return "UPDATE sync_rows SET modified=" + NOW_MS + ", " +
+         "device=(SELECT device FROM sync_state), " +
+         "seq=(SELECT seq FROM sync_state), deleted=" + deleted + 
+         " WHERE movie_id=" + row + "._id; ";
+   }
+
+   // return the statements that do, or don't, create an index or trigger
+   private static String[] selectDeferred(String[] statements, 
+      boolean deferred)
+   {
+      List<String> selected = new ArrayList<String>();
+
+      for (String statement : statements)
+      {
+         if ((statement.startsWith("CREATE INDEX") || 
+            statement.startsWith("CREATE TRIGGER")) == deferred)
+            selected.add(statement);
+      }
+
+      return selected.toArray(new String[selected.size()]);
+   }
+
+   // return first followed by second
+   private static String[] concat(String[] first, String[] second)
+   {
+      String[] all = new String[first.length + second.length];
+      System.arraycopy(first, 0, all, 0, first.length);
+      System.arraycopy(second, 0, all, first.length, second.length);
+      return all;
+   }
+
+   // not instantiable
+   private MovieSchema()
+   {
+   }
+} // end class MovieSchema
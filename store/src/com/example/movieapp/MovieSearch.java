@@ -0,0 +1,141 @@
+package com.example.movieapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+// builds full-text MATCH expressions and ranks the rows they return
+public final class MovieSearch
+{
+   // columns of the movies_fts table, in order
+   public static final String[] COLUMNS =
+      { "name", "director", "producer", "actor", "actress" };
+
+   // relative weight of a hit in each column; title hits rank highest
+   private static final double[] COLUMN_WEIGHTS = { 4.0, 2.0, 1.0, 1.5, 1.5 };
+
+   // matchinfo() format used by rank: phrases, columns, rows in the
+   // table, then hit counts for every phrase and column
+   public static final String MATCHINFO_FORMAT = "pcnx";
+
+   // orders hits from lowest to highest score
+   private static final Comparator<Hit> BY_SCORE = new Comparator<Hit>()
+   {
+      @Override
+      public int compare(Hit first, Hit second)
+      {
+         return Double.compare(first.score, second.score);
+      }
+   };
+
+   // a matching row and its score
+   public static final class Hit
+   {
+      public final long id;
+      public final double score;
+
+      // constructor
+      public Hit(long id, double score)
+      {
+         this.id = id;
+         this.score = score;
+      }
+   }
+
+   // keeps the limit best-scoring hits offered to it
+   public static final class TopHits
+   {
+      private final int limit;
+      private final PriorityQueue<Hit> hits; // lowest score at the head
+
+      // constructor
+      public TopHits(int limit)
+      {
+         this.limit = limit;
+         hits = new PriorityQueue<Hit>(limit + 1, BY_SCORE);
+      }
+
+      // consider a row for the result
+      public void offer(long id, double score)
+      {
+         if (hits.size() < limit)
+            hits.add(new Hit(id, score));
+         else if (score > hits.peek().score)
+         {
+            hits.poll(); // drop the current worst hit
+            hits.add(new Hit(id, score));
+         }
+      }
+
+      // return the kept hits, best first
+      public Hit[] toArray()
+      {
+         Hit[] result = hits.toArray(new Hit[hits.size()]);
+         Arrays.sort(result, Collections.reverseOrder(BY_SCORE));
+         return result;
+      }
+   } // end class TopHits
+
+   private MovieSearch()
+   {
+   }
+
+   // turn what the user typed into a MATCH expression where every word
+   // is a prefix term, e.g. "mat rev" becomes "mat* rev*"; return null if
+   // the text contains no searchable words
+   public static String toMatchExpression(String text)
+   {
+      StringBuilder expression = new StringBuilder();
+
+      for (String word : text.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+"))
+      {
+         if (word.length() == 0)
+            continue;
+
+         if (expression.length() > 0)
+            expression.append(' ');
+
+         expression.append(word).append('*');
+      }
+
+      return expression.length() == 0 ? null : expression.toString();
+   }
+
+   // score one row from its matchinfo(..., 'pcnx') blob: for each phrase
+   // and column, weight * idf * tf / (tf + 1), where idf uses the number
+   // of rows with a hit in that column
+   public static double rank(byte[] matchinfo)
+   {
+      ByteBuffer buffer =
+         ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+      int phraseCount = buffer.getInt(0);
+      int columnCount = buffer.getInt(4);
+      long rowCount = buffer.getInt(8) & 0xffffffffL;
+      double score = 0;
+
+      for (int phrase = 0; phrase < phraseCount; ++phrase)
+      {
+         for (int column = 0; column < columnCount; ++column)
+         {
+            int offset = 12 + 12 * (phrase * columnCount + column);
+            int hits = buffer.getInt(offset);
+
+            if (hits == 0)
+               continue;
+
+            int rowsWithHits = buffer.getInt(offset + 8);
+            double idf = Math.log(1.0 + (double) rowCount / 
+               Math.max(1, rowsWithHits));
+            double weight = column < COLUMN_WEIGHTS.length ?
+               COLUMN_WEIGHTS[column] : 1.0;
+            score += weight * idf * hits / (hits + 1.0);
+         }
+      }
+
+      return score;
+   } // end method rank
+} // end class MovieSearch
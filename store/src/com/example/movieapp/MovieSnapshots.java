@@ -0,0 +1,222 @@
+package com.example.movieapp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// keeps a folder of database snapshots: full snapshots, which are copies
+// of the database file, and changes files holding only the movies changed
+// since the snapshot before. A full snapshot and the changes files that
+// follow it form a chain, and a restore replays the latest chain. Each
+// file is named for the snapshot generation it covers, so a failed or
+// missing snapshot just ends a chain early.
+public class MovieSnapshots
+{
+   // a chain with this many changes files is ended by a full snapshot
+   public static final int MAX_CHANGES_FILES = 7;
+
+   // snapshot-g.db covers generation g; changes-s-g.db the changes after
+   // generation s up to generation g
+   private static final Pattern SNAPSHOT_NAME =
+      Pattern.compile("snapshot-(\\d+)\\.db");
+   private static final Pattern CHANGES_NAME =
+      Pattern.compile("changes-(\\d+)-(\\d+)\\.db");
+
+   // files written until the snapshot is complete
+   private static final String SNAPSHOT_PART = "snapshot.db.part";
+   private static final String CHANGES_PART = "changes.db.part";
+
+   private final MovieRepository repository; // the database copied
+   private final File folder; // holds the snapshot files
+
+   // constructor
+   public MovieSnapshots(MovieRepository repository, File folder)
+   {
+      this.repository = repository;
+      this.folder = folder;
+   }
+
+   // write the changes since the latest snapshot, or a full snapshot if
+   // there is none or its chain is full, and return the new file
+   public File backUp() throws IOException
+   {
+      if (!folder.isDirectory() && !folder.mkdirs())
+         throw new IOException("Cannot create " + folder);
+
+      List<File> chain = findChain();
+
+      if (chain.isEmpty() || chain.size() - 1 >= MAX_CHANGES_FILES)
+         return writeFullSnapshot();
+
+      File partFile = new File(folder, CHANGES_PART);
+      long since = getGeneration(chain.get(chain.size() - 1));
+      long generation = repository.writeSnapshotChanges(partFile, since);
+      return rename(partFile, "changes-" + since + "-" + generation + ".db");
+   } // end method backUp
+
+   // write a full snapshot, then delete the chains before the previous
+   // one, keeping one older chain in case the newest can't be read
+   private File writeFullSnapshot() throws IOException
+   {
+      File partFile = new File(folder, SNAPSHOT_PART);
+      long generation = repository.writeSnapshot(partFile);
+      File snapshot = rename(partFile, "snapshot-" + generation + ".db");
+
+      long previous = 0; // generation of the previous full snapshot
+
+      for (File file : listFiles())
+      {
+         Matcher matcher = SNAPSHOT_NAME.matcher(file.getName());
+
+         if (matcher.matches() && !file.equals(snapshot))
+            previous = Math.max(previous, Long.parseLong(matcher.group(1)));
+      }
+
+      for (File file : listFiles())
+      {
+         if (getGeneration(file) < previous)
+            file.delete();
+      }
+
+      return snapshot;
+   } // end method writeFullSnapshot
+
+   // replace every movie with the latest chain's and return the number of
+   // movies restored
+   public long restore() throws IOException
+   {
+      List<File> chain = findChain();
+
+      if (chain.isEmpty())
+         throw new IOException("No snapshot in " + folder);
+
+      return repository.restoreSnapshot(chain.get(0),
+         chain.subList(1, chain.size()));
+   }
+
+   // return true if there is a snapshot to restore
+   public boolean hasSnapshot()
+   {
+      return !findChain().isEmpty();
+   }
+
+   // return the latest full snapshot followed by the changes files that
+   // continue it in order, or an empty list if there is no full snapshot
+   public List<File> findChain()
+   {
+      List<File> chain = new ArrayList<File>();
+      File[] files = listFiles();
+      long generation = -1;
+
+      for (File file : files)
+      {
+         Matcher matcher = SNAPSHOT_NAME.matcher(file.getName());
+
+         if (matcher.matches() &&
+            Long.parseLong(matcher.group(1)) > generation)
+         {
+            generation = Long.parseLong(matcher.group(1));
+            chain.clear();
+            chain.add(file);
+         }
+      }
+
+      // follow the changes files, each starting where the last ended
+      for (boolean found = !chain.isEmpty(); found; )
+      {
+         found = false;
+
+         for (File file : files)
+         {
+            Matcher matcher = CHANGES_NAME.matcher(file.getName());
+
+            if (matcher.matches() &&
+               Long.parseLong(matcher.group(1)) == generation)
+            {
+               generation = Long.parseLong(matcher.group(2));
+               chain.add(file);
+               found = true;
+               break;
+            }
+         }
+      }
+
+      return chain;
+   } // end method findChain
+
+   // return the files in the folder, none if it doesn't exist
+   private File[] listFiles()
+   {
+      File[] files = folder.listFiles();
+      return files == null ? new File[0] : files;
+   }
+
+   // return the generation a snapshot or changes file covers, or
+   // Long.MAX_VALUE for any other file so it is never deleted
+   private static long getGeneration(File file)
+   {
+      Matcher matcher = SNAPSHOT_NAME.matcher(file.getName());
+
+      if (matcher.matches())
+         return Long.parseLong(matcher.group(1));
+
+      matcher = CHANGES_NAME.matcher(file.getName());
+
+      if (matcher.matches())
+         return Long.parseLong(matcher.group(2));
+
+      return Long.MAX_VALUE;
+   }
+
+   // give a complete part file its final name
+   private File rename(File partFile, String name) throws IOException
+   {
+      File file = new File(folder, name);
+
+      if (!partFile.renameTo(file))
+         throw new IOException("Cannot rename " + partFile + " to " + file);
+
+      return file;
+   }
+
+   // copy from to to, replacing to, with FileChannel.transferTo, which
+   // lets the kernel move the bytes without passing them through the Java
+   // heap; to is synced to the disk before this returns
+   public static void copyFile(File from, File to) throws IOException
+   {
+      FileInputStream in = new FileInputStream(from);
+
+      try
+      {
+         FileOutputStream out = new FileOutputStream(to);
+
+         try
+         {
+            FileChannel source = in.getChannel();
+            FileChannel target = out.getChannel();
+            long size = source.size();
+
+            // transferTo may copy less than asked for
+            for (long position = 0; position < size; )
+               position += source.transferTo(position, size - position,
+                  target);
+
+            target.force(false);
+         }
+         finally
+         {
+            out.close();
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+   } // end method copyFile
+} // end class MovieSnapshots
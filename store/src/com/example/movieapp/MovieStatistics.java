@@ -0,0 +1,119 @@
+package com.example.movieapp;
+
+import java.util.List;
+
+// totals over the movie collection as read from the statistics tables:
+// movies and budget per release year, the directors with the highest
+// total budget and the actors and actresses in the most movies
+public final class MovieStatistics
+{
+   // the totals of one year or person
+   public static final class Group
+   {
+      private final String name; // "" for movies with no release year
+      private final int movies;
+      private final long budget; // sum of the known budgets
+      private final int budgeted; // movies with a known budget
+
+      // constructor
+      public Group(String name, int movies, long budget, int budgeted)
+      {
+         this.name = name;
+         this.movies = movies;
+         this.budget = budget;
+         this.budgeted = budgeted;
+      }
+
+      public String getName()
+      {
+         return name;
+      }
+
+      public int getMovies()
+      {
+         return movies;
+      }
+
+      public long getBudget()
+      {
+         return budget;
+      }
+
+      public int getBudgeted()
+      {
+         return budgeted;
+      }
+   } // end class Group
+
+   private final List<Group> years;
+   private final List<Group> directors;
+   private final List<Group> actors;
+   private final List<Group> actresses;
+   private final int movies;
+   private final long budget;
+   private final int budgeted;
+
+   // constructor; the overall totals are the sums of the years
+   public MovieStatistics(List<Group> years, List<Group> directors,
+      List<Group> actors, List<Group> actresses)
+   {
+      this.years = years;
+      this.directors = directors;
+      this.actors = actors;
+      this.actresses = actresses;
+
+      int movies = 0;
+      long budget = 0;
+      int budgeted = 0;
+
+      for (Group year : years)
+      {
+         movies += year.movies;
+         budget += year.budget;
+         budgeted += year.budgeted;
+      }
+
+      this.movies = movies;
+      this.budget = budget;
+      this.budgeted = budgeted;
+   } // end constructor
+
+   // return every release year with movies, earliest first
+   public List<Group> getYears()
+   {
+      return years;
+   }
+
+   // return the directors with the highest total budget, highest first
+   public List<Group> getDirectors()
+   {
+      return directors;
+   }
+
+   // return the actors in the most movies, most first
+   public List<Group> getActors()
+   {
+      return actors;
+   }
+
+   // return the actresses in the most movies, most first
+   public List<Group> getActresses()
+   {
+      return actresses;
+   }
+
+   public int getMovies()
+   {
+      return movies;
+   }
+
+   public long getBudget()
+   {
+      return budget;
+   }
+
+   public int getBudgeted()
+   {
+      return budgeted;
+   }
+} // end class MovieStatistics
@@ -0,0 +1,1455 @@
+package com.example.movieapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.movieapp.MovieDatabase.Rows;
+import com.example.movieapp.MovieDatabase.Statement;
+import com.example.movieapp.MovieSearch.Hit;
+import com.example.movieapp.MovieSearch.TopHits;
+
+// the data path behind MovieRepository: the SQL each operation runs, the
+// transactions around it and the row IDs handed out to inserts, written
+// once against MovieDatabase. DatabaseConnector runs it on the device and
+// JdbcMovieRepository in the JVM module; what each keeps around the
+// database (the Movie cache, queued writes, change listeners and its
+// reference count) stays with it. Writes that share the movie statements
+// hold the insert statement's lock for their whole transaction.
+public class MovieStore
+{
+   // rows copied per query while writing or restoring a snapshot
+   private static final int SNAPSHOT_BATCH_SIZE = 1000;
+
+   // title_changes rows read per query by indexTitles, and title_keys
+   // rows per query by findAllDuplicates
+   private static final int TITLE_BATCH_SIZE = 100;
+   private static final int TITLE_KEY_BATCH_SIZE = 1000;
+
+   // highest row ID ever used: the AUTOINCREMENT counter or, for rows
+   // inserted with an explicit _id, the largest _id
+   private static final String LAST_ID_QUERY =
+      "SELECT MAX(IFNULL((SELECT seq FROM sqlite_sequence " +
+      "WHERE name='movies'), 0), IFNULL((SELECT MAX(_id) FROM movies), 0))";
+
+   // row IDs are handed out here, before the rows are written, so queued
+   // inserts can return theirs at once; every insert binds its _id
+   private final Object idLock = new Object();
+   private long lastID = -1; // last row ID handed out, -1 until read
+
+   // called after each operation with the time it began, the rows it
+   // read or wrote and, for a single query, its SQL and arguments; the
+   // default does nothing
+   protected void record(String operation, long startNanos, long rows,
+      String sql, String[] selectionArgs)
+   {
+   }
+
+   // read the last row ID used from db, unless it has been read already
+   public void readLastID(MovieDatabase db)
+   {
+      synchronized (idLock)
+      {
+         if (lastID < 0)
+            lastID = db.queryLong(LAST_ID_QUERY);
+      }
+   }
+
+   // return a new row ID; reads the last one used from db the first time
+   public long allocateID(MovieDatabase db)
+   {
+      synchronized (idLock)
+      {
+         if (lastID < 0)
+            lastID = db.queryLong(LAST_ID_QUERY);
+
+         return ++lastID;
+      }
+   }
+
+   // return a copy of movie with the given row ID
+   public static Movie withID(Movie movie, long id)
+   {
+      return new Movie(id, movie.getName(), movie.getDirector(),
+         movie.getProducer(), movie.getActor(), movie.getActress(),
+         movie.getRelease(), movie.getBudget());
+   }
+
+   // bind a String; missing values are stored as empty text
+   private static void bindText(Statement statement, int index,
+      String value)
+   {
+      statement.bindString(index, value == null ? "" : value);
+   }
+
+   // bind the seven movie columns starting at parameter 1
+   private static void bindMovie(Statement statement, Movie movie)
+   {
+      bindText(statement, 1, movie.getName());
+      bindText(statement, 2, movie.getDirector());
+      bindText(statement, 3, movie.getProducer());
+      bindText(statement, 4, movie.getActor());
+      bindText(statement, 5, movie.getActress());
+      statement.bindLong(6, movie.getRelease());
+      statement.bindLong(7, movie.getBudget());
+   }
+
+   // write every write in one transaction; a deleted movie is kept as a
+   // tombstone so the delete can be undone
+   public void commitWrites(MovieDatabase db,
+      List<PendingWrites.Write> writes)
+   {
+      Statement insert = db.getStatement(MovieSchema.INSERT_MOVIE_WITH_ID);
+      Statement update = db.getStatement(MovieSchema.UPDATE_MOVIE);
+      Statement delete = db.getStatement(MovieSchema.DELETE_MOVIE);
+      Statement tombstone = db.getStatement(MovieSchema.INSERT_TOMBSTONE);
+      long startTime = System.nanoTime();
+      long now = System.currentTimeMillis();
+
+      synchronized (insert) // insertMovies shares the insert
+      {
+         db.beginTransaction(); // readers keep going
+
+         try
+         {
+            for (PendingWrites.Write write : writes)
+            {
+               switch (write.type)
+               {
+                  case MovieChange.INSERTED:
+                     bindMovie(insert, write.movie);
+                     insert.bindLong(8, write.id);
+                     insert.execute();
+                     break;
+                  case MovieChange.UPDATED:
+                     bindMovie(update, write.movie);
+                     update.bindLong(8, write.id);
+                     update.executeUpdateDelete();
+                     break;
+                  case MovieChange.DELETED:
+                     tombstone.bindLong(1, write.id);
+                     tombstone.bindLong(2, now);
+                     tombstone.execute();
+                     delete.bindLong(1, write.id);
+                     delete.executeUpdateDelete();
+                     break;
+               }
+            }
+
+            db.setTransactionSuccessful();
+         }
+         finally
+         {
+            db.endTransaction();
+         }
+      }
+
+      record("commitWrites", startTime, writes.size(), null, null);
+   } // end method commitWrites
+
+   // inserts every Movie supplied by reader through one compiled statement,
+   // committing a transaction every batchSize rows; rows without a name
+   // are skipped. Batches committed before an IOException are kept.
+   public long insertMovies(MovieDatabase db, MovieReader reader,
+      int batchSize, MovieRepository.ProgressListener listener)
+      throws IOException
+   {
+      Statement insert = db.getStatement(MovieSchema.INSERT_MOVIE_WITH_ID);
+      long startTime = System.nanoTime();
+      long rowCount = 0;
+      Movie movie = reader.read();
+
+      while (movie != null)
+      {
+         int batchCount = 0;
+
+         synchronized (insert)
+         {
+            db.beginTransaction(); // readers keep going
+
+            try
+            {
+               for (; movie != null && batchCount < batchSize;
+                  movie = reader.read())
+               {
+                  String name = movie.getName();
+
+                  if (name == null || name.trim().length() == 0)
+                     continue; // name is required
+
+                  bindMovie(insert, movie);
+                  insert.bindLong(8, allocateID(db));
+                  insert.execute();
+                  ++batchCount;
+               }
+
+               db.setTransactionSuccessful();
+            }
+            finally
+            {
+               db.endTransaction();
+            }
+         }
+
+         rowCount += batchCount;
+
+         if (listener != null)
+         {
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            listener.onProgress(rowCount,
+               seconds > 0 ? rowCount / seconds : 0);
+         }
+      }
+
+      record("insertMovies", startTime, rowCount, null, null);
+      return rowCount;
+   } // end method insertMovies
+
+   // writes every committed Movie to writer in row ID order, one query of
+   // batchSize rows at a time: each query starts with a primary key search
+   // after the last row written, where one cursor over the whole table
+   // would re-step the query from its first row each time its
+   // CursorWindow refilled. Rows saved during the export may be written
+   // as they were before or after the save
+   public long exportMovies(MovieDatabase db, MovieWriter writer,
+      int batchSize, MovieRepository.ProgressListener listener)
+      throws IOException
+   {
+      String limit = String.valueOf(batchSize);
+      long startTime = System.nanoTime();
+      long rowCount = 0;
+      long lastID = 0;
+      int batchCount;
+
+      do
+      {
+         Rows rows = db.query(MovieSchema.MOVIES_AFTER_ID,
+            String.valueOf(lastID), limit);
+         batchCount = 0;
+
+         try
+         {
+            while (rows.next())
+            {
+               // not pooled: the Movie is dropped once written
+               Movie movie = MovieRowMapper.readMovie(rows, null);
+               writer.write(movie);
+               lastID = movie.getId();
+               ++batchCount;
+            }
+         }
+         finally
+         {
+            rows.close();
+         }
+
+         rowCount += batchCount;
+
+         if (listener != null)
+         {
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            listener.onProgress(rowCount,
+               seconds > 0 ? rowCount / seconds : 0);
+         }
+      }
+      while (batchCount == batchSize);
+
+      record("exportMovies", startTime, rowCount, null, null);
+      return rowCount;
+   } // end method exportMovies
+
+   // copies the database file, and its write-ahead log, inside a write
+   // transaction: readers keep going, and no write can land between the
+   // copy and the start of the next generation. The log is first
+   // checkpointed so little of it needs copying, then folded into the
+   // copy, which is checked before the generation is returned
+   public long writeSnapshot(MovieDatabase db, File file) throws IOException
+   {
+      long startTime = System.nanoTime();
+      long generation;
+
+      // a checkpoint can't run inside the transaction
+      db.queryLong("PRAGMA wal_checkpoint(PASSIVE)");
+      db.beginTransaction(); // holds off writers only
+
+      try
+      {
+         generation = db.queryLong(MovieSchema.SNAPSHOT_GENERATION);
+
+         File database = db.getFile();
+         File log = new File(database.getPath() + "-wal");
+         File logCopy = new File(file.getPath() + "-wal");
+         MovieSnapshots.copyFile(database, file);
+
+         if (log.exists())
+            MovieSnapshots.copyFile(log, logCopy);
+         else
+            logCopy.delete(); // left by an earlier snapshot
+
+         db.execute(MovieSchema.NEXT_SNAPSHOT_GENERATION);
+         db.setTransactionSuccessful();
+      }
+      finally
+      {
+         db.endTransaction();
+      }
+
+      finishSnapshot(db, file);
+      record("writeSnapshot", startTime, 0, null, null);
+      return generation;
+   } // end method writeSnapshot
+
+   // fold a copied write-ahead log into file and check the result
+   private static void finishSnapshot(MovieDatabase db, File file)
+      throws IOException
+   {
+      MovieDatabase copy = db.openFile(file, false);
+
+      try
+      {
+         copy.queryString("PRAGMA journal_mode=DELETE");
+         String result = copy.queryString("PRAGMA quick_check");
+
+         if (!"ok".equals(result))
+            throw new IOException("Snapshot " + file + " is damaged: " +
+               result);
+      }
+      finally
+      {
+         copy.close();
+      }
+   } // end method finishSnapshot
+
+   // writes the rows of the movies changed after generation since to a
+   // new database file, SNAPSHOT_BATCH_SIZE rows per query; the movies
+   // are read inside a write transaction so that no change made during
+   // the copy is recorded under the generation the file covers
+   public long writeSnapshotChanges(MovieDatabase db, File file,
+      long since) throws IOException
+   {
+      file.delete(); // left by a failed snapshot
+      MovieDatabase changes = db.openFile(file, false);
+
+      try
+      {
+         long startTime = System.nanoTime();
+         long rowCount = 0;
+         long generation;
+
+         // the file is checked once complete; a failed one is deleted
+         changes.queryString("PRAGMA journal_mode=OFF");
+         changes.execute(MovieSchema.CREATE_CHANGES_FILE);
+         changes.execute("PRAGMA user_version=" + MovieSchema.VERSION);
+         Statement insert = changes.compileStatement(MovieSchema.INSERT_CHANGE);
+
+         try
+         {
+            db.beginTransaction(); // holds off writers only
+
+            try
+            {
+               generation = db.queryLong(MovieSchema.SNAPSHOT_GENERATION);
+               changes.beginTransaction();
+
+               try
+               {
+                  rowCount = copyRows(db, MovieSchema.CHANGES_AFTER_ID,
+                     new String[] { String.valueOf(since), null, null },
+                     insert);
+                  changes.setTransactionSuccessful();
+               }
+               finally
+               {
+                  changes.endTransaction();
+               }
+
+               db.execute(MovieSchema.NEXT_SNAPSHOT_GENERATION);
+               db.setTransactionSuccessful();
+            }
+            finally
+            {
+               db.endTransaction();
+            }
+         }
+         finally
+         {
+            insert.close();
+         }
+
+         record("writeSnapshotChanges", startTime, rowCount, null, null);
+         return generation;
+      }
+      finally
+      {
+         changes.close();
+      }
+   } // end method writeSnapshotChanges
+
+   // run a keyset query on source in batches, binding each row's columns
+   // unchanged to write, and return the number of rows copied;
+   // args end with places for the last key read, which is the first
+   // column, and the batch size
+   private static long copyRows(MovieDatabase source, String sql,
+      String[] args, Statement write)
+   {
+      long rowCount = 0;
+      int batchCount;
+      args[args.length - 2] = "0";
+      args[args.length - 1] = String.valueOf(SNAPSHOT_BATCH_SIZE);
+
+      do
+      {
+         Rows rows = source.query(sql, args);
+         batchCount = 0;
+
+         try
+         {
+            int columnCount = rows.getColumnCount();
+
+            while (rows.next())
+            {
+               for (int i = 0; i < columnCount; ++i)
+                  write.bindObject(i + 1, rows.getObject(i));
+
+               write.execute();
+               args[args.length - 2] = rows.getString(0);
+               ++batchCount;
+            }
+         }
+         finally
+         {
+            rows.close();
+         }
+
+         rowCount += batchCount;
+      }
+      while (batchCount == SNAPSHOT_BATCH_SIZE);
+
+      return rowCount;
+   } // end method copyRows
+
+   // replaces every table with the snapshot's rows and then applies the
+   // changes files, all in one transaction, so readers see either the old
+   // movies or the restored ones. The rows are inserted again rather than
+   // the file swapped in, which can't be done safely while other
+   // connections have the database open
+   public long restoreSnapshot(MovieDatabase db, File snapshot,
+      List<File> changes) throws IOException
+   {
+      MovieDatabase source = db.openFile(snapshot, true);
+
+      try
+      {
+         long version = source.queryLong("PRAGMA user_version");
+
+         if (version < MovieSchema.FIRST_SNAPSHOT_VERSION ||
+            version > MovieSchema.VERSION)
+            throw new IOException("Cannot restore " + snapshot +
+               " from version " + version);
+
+         Statement insert =
+            db.getStatement(MovieSchema.INSERT_MOVIE_WITH_ID);
+         long startTime = System.nanoTime();
+         long rowCount;
+
+         synchronized (insert) // commitWrites shares the insert
+         {
+            db.beginTransaction(); // readers keep going
+
+            try
+            {
+               // keep the generation and the ids used past the restore
+               long generation = Math.max(
+                  db.queryLong(MovieSchema.SNAPSHOT_GENERATION),
+                  source.queryLong(MovieSchema.SNAPSHOT_GENERATION) + 1);
+               long sequence = db.queryLong(MovieSchema.MOVIES_SEQUENCE);
+
+               for (String statement : MovieSchema.DROP_STATEMENTS)
+                  db.execute(statement);
+
+               for (String statement : MovieSchema.CREATE_TABLES)
+                  db.execute(statement);
+
+               db.execute(MovieSchema.SET_SNAPSHOT_GENERATION, generation);
+
+               for (String[] table : MovieSchema.SNAPSHOT_TABLES)
+               {
+                  Statement copy =
+                     db.compileStatement(MovieSchema.insertTableRow(table));
+
+                  try
+                  {
+                     copyRows(source, MovieSchema.tableRowsAfterKey(table),
+                        new String[2], copy);
+                  }
+                  finally
+                  {
+                     copy.close();
+                  }
+               }
+
+               Statement restorePoster =
+                  db.compileStatement(MovieSchema.RESTORE_POSTER);
+
+               try
+               {
+                  if (version >= MovieSchema.FIRST_POSTER_VERSION)
+                     copyRows(source, MovieSchema.SNAPSHOT_POSTERS_AFTER_ID,
+                        new String[2], restorePoster);
+
+                  db.execute(MovieSchema.REBUILD_SEARCH_INDEX);
+
+                  for (String statement : MovieSchema.REBUILD_STATISTICS)
+                     db.execute(statement);
+
+                  for (String statement :
+                     MovieSchema.CREATE_INDEXES_AND_TRIGGERS)
+                     db.execute(statement);
+
+                  Statement delete = db.getStatement(MovieSchema.DELETE_MOVIE);
+
+                  for (File file : changes)
+                     applyChangesFile(db, file, insert, delete,
+                        restorePoster);
+               }
+               finally
+               {
+                  restorePoster.close();
+               }
+
+               // every restored movie is pushed again, as the latest write,
+               // and has its title indexed
+               for (String statement : MovieSchema.RESYNC_STATEMENTS)
+                  db.execute(statement);
+
+               db.execute(MovieSchema.REINDEX_TITLES);
+
+               // the restored rows match the snapshots, so none of them
+               // are changes
+               db.execute(MovieSchema.CLEAR_SNAPSHOT_CHANGES);
+               db.execute(MovieSchema.ADD_MOVIES_SEQUENCE);
+               db.execute(MovieSchema.RAISE_MOVIES_SEQUENCE, sequence);
+               rowCount = db.queryLong("SELECT COUNT(*) FROM movies");
+               db.setTransactionSuccessful();
+            }
+            catch (RuntimeException e)
+            {
+               throw new IOException("Cannot restore " + snapshot, e);
+            }
+            finally
+            {
+               db.endTransaction();
+            }
+         }
+
+         synchronized (idLock)
+         {
+            lastID = Math.max(lastID, db.queryLong(LAST_ID_QUERY));
+         }
+
+         record("restoreSnapshot", startTime, rowCount, null, null);
+         return rowCount;
+      }
+      finally
+      {
+         source.close();
+      }
+   } // end method restoreSnapshot
+
+   // apply the movies and posters of a changes file; called within
+   // restoreSnapshot
+   private static void applyChangesFile(MovieDatabase db, File file,
+      Statement insert, Statement delete, Statement restorePoster)
+      throws IOException
+   {
+      MovieDatabase changes = db.openFile(file, true);
+
+      try
+      {
+         applyChanges(changes, insert, delete);
+
+         if (changes.queryLong("PRAGMA user_version") >=
+            MovieSchema.FIRST_POSTER_VERSION)
+            copyRows(changes, MovieSchema.CHANGES_FILE_POSTERS_AFTER_ID,
+               new String[2], restorePoster);
+      }
+      finally
+      {
+         changes.close();
+      }
+   } // end method applyChangesFile
+
+   // replace each movie in a changes file, SNAPSHOT_BATCH_SIZE rows per
+   // query, through movie_details so the search index and statistics
+   // follow; a row without a name only deletes its movie
+   private static void applyChanges(MovieDatabase changes,
+      Statement insert, Statement delete)
+   {
+      String limit = String.valueOf(SNAPSHOT_BATCH_SIZE);
+      long lastID = 0;
+      int batchCount;
+
+      do
+      {
+         Rows rows = changes.query(MovieSchema.CHANGES_FILE_AFTER_ID,
+            String.valueOf(lastID), limit);
+         batchCount = 0;
+
+         try
+         {
+            while (rows.next())
+            {
+               lastID = rows.getLong(MovieSchema.COLUMN_ID);
+               ++batchCount;
+               delete.bindLong(1, lastID);
+               delete.executeUpdateDelete();
+
+               if (rows.isNull(MovieSchema.COLUMN_NAME))
+                  continue; // the movie was deleted
+
+               bindMovie(insert, MovieRowMapper.readMovie(rows, null));
+               insert.bindLong(8, lastID);
+               insert.execute();
+            }
+         }
+         finally
+         {
+            rows.close();
+         }
+      }
+      while (batchCount == SNAPSHOT_BATCH_SIZE);
+   } // end method applyChanges
+
+   // return the limit Movies that best match text, best first; every
+   // word of text is matched as a prefix of a word in the name, director,
+   // producer, actor or actress
+   public List<MovieSummary> searchMovies(MovieDatabase db, String text,
+      int limit)
+   {
+      List<MovieSummary> results = new ArrayList<MovieSummary>();
+      String match = MovieSearch.toMatchExpression(text);
+
+      if (match == null)
+         return results; // nothing searchable was typed
+
+      // rank every match from the index alone, keeping the best
+      TopHits topHits = new TopHits(limit);
+      String[] selectionArgs = new String[] { match };
+      long startTime = System.nanoTime();
+      Rows rows = db.query(MovieSchema.SEARCH_MOVIES, selectionArgs);
+      int matchCount = 0;
+
+      try
+      {
+         for (; rows.next(); ++matchCount)
+            topHits.offer(rows.getLong(0),
+               MovieSearch.rank(rows.getBlob(1)));
+      }
+      finally
+      {
+         rows.close();
+      }
+
+      record("searchMovies", startTime, matchCount,
+         MovieSchema.SEARCH_MOVIES, selectionArgs);
+
+      Hit[] hits = topHits.toArray();
+
+      if (hits.length == 0)
+         return results;
+
+      // look up the names of the kept rows only
+      String[] ids = new String[hits.length];
+      Map<Long, String> names = new HashMap<Long, String>();
+
+      for (int i = 0; i < hits.length; ++i)
+         ids[i] = String.valueOf(hits[i].id);
+
+      for (int start = 0; start < ids.length;
+         start += MovieSchema.MAX_IDS_PER_QUERY)
+      {
+         String[] chunk = chunk(ids, start);
+
+         for (MovieSummary row : MovieRowMapper.readSummaries(
+            db.query(MovieSchema.summariesByIds(chunk.length), chunk)))
+            names.put(row.getId(), row.getName());
+      }
+
+      for (Hit hit : hits)
+      {
+         String name = names.get(hit.id);
+
+         if (name != null) // skip rows deleted since the index was read
+            results.add(new MovieSummary(hit.id, name));
+      }
+
+      return results;
+   } // end method searchMovies
+
+   // each movie logged in title_changes gets its title_keys row and
+   // title_trigrams rows replaced, or deleted if the movie is gone; the
+   // trigrams are only rewritten if the normalized title changed. The
+   // log is read TITLE_BATCH_SIZE rows at a time, each batch read in full
+   // before its rows are deleted from the log
+   public long indexTitles(MovieDatabase db, int limit)
+   {
+      Statement putKey = db.getStatement(MovieSchema.PUT_TITLE_KEY);
+      long startTime = System.nanoTime();
+      long remaining = limit > 0 ? limit : Long.MAX_VALUE;
+      int rowCount = 0;
+      int batchCount;
+
+      synchronized (putKey) // the indexing statements are only used here
+      {
+         db.beginTransaction(); // readers keep going
+
+         try
+         {
+            do
+            {
+               int batchSize = (int) Math.min(remaining, TITLE_BATCH_SIZE);
+               long[] ids = new long[batchSize];
+               String[] indexed = new String[batchSize];
+               MovieDuplicates.Key[] keys =
+                  new MovieDuplicates.Key[batchSize];
+               Rows rows = db.query(MovieSchema.TITLE_CHANGES,
+                  String.valueOf(batchSize));
+               batchCount = 0;
+
+               try
+               {
+                  for (; rows.next(); ++batchCount)
+                  {
+                     long id = rows.getLong(MovieSchema.COLUMN_TITLE_ID);
+                     ids[batchCount] = id;
+                     indexed[batchCount] =
+                        rows.getString(MovieSchema.COLUMN_TITLE_INDEXED);
+
+                     if (!rows.isNull(MovieSchema.COLUMN_TITLE_NAME))
+                        keys[batchCount] = MovieDuplicates.Key.of(id,
+                           rows.getString(MovieSchema.COLUMN_TITLE_NAME),
+                           rows.getString(MovieSchema.COLUMN_TITLE_DIRECTOR),
+                           rows.getInt(MovieSchema.COLUMN_TITLE_RELEASE));
+                  }
+               }
+               finally
+               {
+                  rows.close();
+               }
+
+               for (int i = 0; i < batchCount; ++i)
+                  indexTitle(db, ids[i], indexed[i], keys[i]);
+
+               rowCount += batchCount;
+               remaining -= batchCount;
+            }
+            while (batchCount == TITLE_BATCH_SIZE && remaining > 0);
+
+            db.setTransactionSuccessful();
+         }
+         finally
+         {
+            db.endTransaction();
+         }
+      }
+
+      record("indexTitles", startTime, rowCount, null, null);
+      return rowCount;
+   } // end method indexTitles
+
+   // index movie id, last indexed under the normalized title indexed (or
+   // never if null), under key, or drop it from the index if key is null,
+   // and take it off title_changes; called within indexTitles
+   private static void indexTitle(MovieDatabase db, long id, String indexed,
+      MovieDuplicates.Key key)
+   {
+      if (indexed != null && (key == null || !indexed.equals(key.title)))
+      {
+         Statement deleteTrigram =
+            db.getStatement(MovieSchema.DELETE_TITLE_TRIGRAM);
+
+         for (int trigram : MovieDuplicates.trigrams(indexed))
+         {
+            deleteTrigram.bindLong(1,
+               MovieDuplicates.trigramRowId(trigram, id));
+            deleteTrigram.executeUpdateDelete();
+         }
+      }
+
+      if (key == null)
+      {
+         Statement deleteKey = db.getStatement(MovieSchema.DELETE_TITLE_KEY);
+         deleteKey.bindLong(1, id);
+         deleteKey.executeUpdateDelete();
+      }
+      else
+      {
+         if (!key.title.equals(indexed))
+         {
+            Statement insertTrigram =
+               db.getStatement(MovieSchema.INSERT_TITLE_TRIGRAM);
+
+            for (int trigram : key.getTrigrams())
+            {
+               insertTrigram.bindLong(1,
+                  MovieDuplicates.trigramRowId(trigram, id));
+               insertTrigram.execute();
+            }
+         }
+
+         Statement putKey = db.getStatement(MovieSchema.PUT_TITLE_KEY);
+         putKey.bindLong(1, id);
+         putKey.bindString(2, key.title);
+         putKey.bindString(3, key.director);
+         putKey.bindLong(4, key.year);
+         putKey.execute();
+      }
+
+      Statement deleteChange =
+         db.getStatement(MovieSchema.DELETE_TITLE_CHANGE);
+      deleteChange.bindLong(1, id);
+      deleteChange.executeUpdateDelete();
+   } // end method indexTitle
+
+   // each trigram of movie's title is counted in title_trigrams, a range
+   // of row IDs per trigram; the movies with its rarest trigrams (see
+   // MovieDuplicates.probeTrigrams) are read, and those sharing the most,
+   // along with any with the very same title, are scored
+   public List<MovieDuplicates.Match> findDuplicates(MovieDatabase db,
+      Movie movie, int limit)
+   {
+      MovieDuplicates.Key key = MovieDuplicates.Key.of(movie);
+      MovieDuplicates.Candidates candidates =
+         new MovieDuplicates.Candidates();
+      long startTime = System.nanoTime();
+      int rowCount = 0;
+      int[] trigrams = key.getTrigrams();
+      int[] counts = new int[trigrams.length];
+
+      for (int t = 0; t < trigrams.length; ++t)
+         counts[t] = (int) db.queryLong(MovieSchema.TITLE_TRIGRAM_COUNT,
+            trigramArgs(trigrams[t]));
+
+      for (int trigram : MovieDuplicates.probeTrigrams(trigrams, counts))
+      {
+         Rows rows =
+            db.query(MovieSchema.TITLE_TRIGRAM_ROWS, trigramArgs(trigram));
+
+         try
+         {
+            for (; rows.next(); ++rowCount)
+               candidates.add(
+                  MovieDuplicates.trigramMovieId(rows.getLong(0)), 1);
+         }
+         finally
+         {
+            rows.close();
+         }
+      }
+
+      // a title made only of common trigrams is still found by itself
+      Rows rows = db.query(MovieSchema.TITLE_KEYS_BY_TITLE, key.title,
+         String.valueOf(MovieDuplicates.MAX_CANDIDATES));
+
+      try
+      {
+         while (rows.next())
+            candidates.add(rows.getLong(0), trigrams.length);
+      }
+      finally
+      {
+         rows.close();
+      }
+
+      long[] ids =
+         candidates.top(MovieDuplicates.MAX_CANDIDATES, movie.getId());
+      List<MovieDuplicates.Key> keys =
+         new ArrayList<MovieDuplicates.Key>(ids.length);
+
+      if (ids.length > 0)
+      {
+         String[] args = new String[ids.length];
+
+         for (int i = 0; i < ids.length; ++i)
+            args[i] = String.valueOf(ids[i]);
+
+         rows = db.query(MovieSchema.titleKeysByIds(ids.length), args);
+
+         try
+         {
+            while (rows.next())
+               keys.add(MovieRowMapper.readTitleKey(rows));
+         }
+         finally
+         {
+            rows.close();
+         }
+      }
+
+      List<MovieDuplicates.Match> matches =
+         MovieDuplicates.rank(key, keys, limit);
+      record("findDuplicates", startTime, rowCount, null, null);
+      return matches;
+   } // end method findDuplicates
+
+   // return the arguments of a title_trigrams query for trigram
+   private static String[] trigramArgs(int trigram)
+   {
+      return new String[] {
+         String.valueOf(MovieDuplicates.firstTrigramRowId(trigram)),
+         String.valueOf(MovieDuplicates.firstTrigramRowId(trigram + 1)),
+         String.valueOf(MovieDuplicates.MAX_TRIGRAM_MOVIES + 1) };
+   }
+
+   // every title_keys row is read, TITLE_KEY_BATCH_SIZE per query, and
+   // the pairs found in memory (see MovieDuplicates.findAll)
+   public List<MovieDuplicates.Match> findAllDuplicates(MovieDatabase db,
+      int limit)
+   {
+      List<MovieDuplicates.Key> keys = new ArrayList<MovieDuplicates.Key>();
+      long startTime = System.nanoTime();
+      String[] args = { "0", String.valueOf(TITLE_KEY_BATCH_SIZE) };
+      int batchCount;
+
+      do
+      {
+         Rows rows = db.query(MovieSchema.TITLE_KEYS_AFTER_ID, args);
+         batchCount = 0;
+
+         try
+         {
+            for (; rows.next(); ++batchCount)
+               keys.add(MovieRowMapper.readTitleKey(rows));
+         }
+         finally
+         {
+            rows.close();
+         }
+
+         if (batchCount > 0)
+            args[0] = String.valueOf(keys.get(keys.size() - 1).id);
+      }
+      while (batchCount == TITLE_KEY_BATCH_SIZE);
+
+      List<MovieDuplicates.Match> matches =
+         MovieDuplicates.findAll(keys, limit);
+      record("findAllDuplicates", startTime, keys.size(), null, null);
+      return matches;
+   } // end method findAllDuplicates
+
+   // the movie's people, with their numbers of movies, are one range of
+   // movie_people and each person's movies one range of its index; no
+   // candidate is joined to anything
+   public List<MovieRelations.Related> findRelatedMovies(MovieDatabase db,
+      long id, int limit)
+   {
+      MovieRelations.Scores scores = new MovieRelations.Scores();
+      long startTime = System.nanoTime();
+      long movieCount = db.queryLong(MovieSchema.MOVIE_COUNT);
+      int rowCount = 0;
+      Rows people = db.query(MovieSchema.RELATED_PEOPLE,
+         String.valueOf(id * MovieSchema.ROLES),
+         String.valueOf(id * MovieSchema.ROLES + MovieSchema.ROLES - 1));
+
+      try
+      {
+         while (people.next())
+         {
+            int role = people.getInt(MovieSchema.COLUMN_RELATED_ROLE);
+            long movies = people.getLong(MovieSchema.COLUMN_RELATED_MOVIES);
+
+            if (movies > MovieRelations.MAX_PERSON_MOVIES)
+               continue; // says little about which movies are related
+
+            double weight = MovieRelations.weight(role, movies, movieCount);
+            Rows rows = db.query(MovieSchema.PERSON_MOVIES,
+               people.getString(MovieSchema.COLUMN_RELATED_PERSON),
+               String.valueOf(role),
+               String.valueOf(MovieRelations.MAX_PERSON_MOVIES));
+
+            try
+            {
+               for (; rows.next(); ++rowCount)
+                  scores.add(rows.getLong(0), weight);
+            }
+            finally
+            {
+               rows.close();
+            }
+         }
+      }
+      finally
+      {
+         people.close();
+      }
+
+      List<MovieRelations.Related> related = scores.top(limit, id);
+      record("findRelatedMovies", startTime, rowCount, null, null);
+      return related;
+   } // end method findRelatedMovies
+
+   // return the ids from start on, at most MovieSchema.MAX_IDS_PER_QUERY
+   // of them, for one query; ids itself if they all fit
+   private static String[] chunk(String[] ids, int start)
+   {
+      int end = Math.min(ids.length, start + MovieSchema.MAX_IDS_PER_QUERY);
+      return start == 0 && end == ids.length ? ids :
+         Arrays.copyOfRange(ids, start, end);
+   }
+
+   // as chunk, for ids as numbers
+   private static long[] chunk(long[] ids, int start)
+   {
+      int end = Math.min(ids.length, start + MovieSchema.MAX_IDS_PER_QUERY);
+      return start == 0 && end == ids.length ? ids :
+         Arrays.copyOfRange(ids, start, end);
+   }
+
+   // return query's matching rows among ids, in any order, querying them
+   // a chunk at a time; each chunk is recorded as queryMovieRows
+   public List<MovieSummary> queryMovieRows(MovieDatabase db,
+      MovieQuery query, long[] ids)
+   {
+      List<MovieSummary> rows = new ArrayList<MovieSummary>();
+
+      for (int start = 0; start < ids.length;
+         start += MovieSchema.MAX_IDS_PER_QUERY)
+      {
+         long[] chunk = chunk(ids, start);
+         rows.addAll(querySummaries(db, "queryMovieRows", query,
+            query.toSql(chunk), query.toSelectionArgs(chunk)));
+      }
+
+      return rows;
+   } // end method queryMovieRows
+
+   // run a MovieQuery's SQL and read the rows as MovieSummaries,
+   // recording it as operation; see MovieQuery.toSql
+   public List<MovieSummary> querySummaries(MovieDatabase db,
+      String operation, MovieQuery query, String sql,
+      String[] selectionArgs)
+   {
+      long startTime = System.nanoTime();
+      List<MovieSummary> rows = MovieRowMapper.readSummaries(
+         db.query(sql, selectionArgs), query);
+      record(operation, startTime, rows.size(), sql, selectionArgs);
+      return rows;
+   }
+
+   // return the Movie with the given row ID, or null if there is none,
+   // its people's names shared through names
+   public Movie readMovie(MovieDatabase db, long id, NamePool names)
+   {
+      String[] args = { String.valueOf(id) };
+      long startTime = System.nanoTime();
+      Movie movie = null;
+      Rows rows = db.query(MovieSchema.MOVIE_BY_ID, args);
+
+      try
+      {
+         if (rows.next())
+            movie = MovieRowMapper.readMovie(rows, names);
+      }
+      finally
+      {
+         rows.close();
+      }
+
+      record("getMovie", startTime, movie == null ? 0 : 1,
+         MovieSchema.MOVIE_BY_ID, args);
+      return movie;
+   } // end method readMovie
+
+   // return the Movies among ids, given as text, that exist, in no
+   // order, their people's names shared through names; each chunk of ids
+   // is one query, recorded as getMovies
+   public List<Movie> readMovies(MovieDatabase db, String[] ids,
+      NamePool names)
+   {
+      List<Movie> movies = new ArrayList<Movie>(ids.length);
+
+      for (int start = 0; start < ids.length;
+         start += MovieSchema.MAX_IDS_PER_QUERY)
+      {
+         String[] chunk = chunk(ids, start);
+         long startTime = System.nanoTime();
+         String sql = MovieSchema.moviesByIds(chunk.length);
+         Rows rows = db.query(sql, chunk);
+         int rowCount = 0;
+
+         try
+         {
+            for (; rows.next(); ++rowCount)
+               movies.add(MovieRowMapper.readMovie(rows, names));
+         }
+         finally
+         {
+            rows.close();
+         }
+
+         record("getMovies", startTime, rowCount, sql, chunk);
+      }
+
+      return movies;
+   } // end method readMovies
+
+   // set the poster path of the Movie with the given row ID, or null
+   public void setPoster(MovieDatabase db, long id, String path)
+   {
+      Statement update = db.getStatement(MovieSchema.SET_POSTER);
+      long startTime = System.nanoTime();
+
+      synchronized (update)
+      {
+         if (path == null)
+            update.bindNull(1);
+         else
+            update.bindString(1, path);
+
+         update.bindLong(2, id);
+         update.executeUpdateDelete();
+      }
+
+      record("setPoster", startTime, 1, null, null);
+   } // end method setPoster
+
+   // return the poster paths of the Movies among ids that have one; each
+   // chunk of ids is one query, recorded as getPosters
+   public Map<Long, String> getPosters(MovieDatabase db, long[] ids)
+   {
+      Map<Long, String> posters = new HashMap<Long, String>();
+
+      for (int start = 0; start < ids.length;
+         start += MovieSchema.MAX_IDS_PER_QUERY)
+      {
+         long[] chunk = chunk(ids, start);
+         String[] args = new String[chunk.length];
+
+         for (int i = 0; i < chunk.length; ++i)
+            args[i] = String.valueOf(chunk[i]);
+
+         long startTime = System.nanoTime();
+         String sql = MovieSchema.postersByIds(args.length);
+         Rows rows = db.query(sql, args);
+         int rowCount = 0;
+
+         try
+         {
+            for (; rows.next(); ++rowCount)
+               posters.put(rows.getLong(0), rows.getString(1));
+         }
+         finally
+         {
+            rows.close();
+         }
+
+         record("getPosters", startTime, rowCount, sql, args);
+      }
+
+      return posters;
+   } // end method getPosters
+
+   // return every poster path in use
+   public List<String> getPosterPaths(MovieDatabase db)
+   {
+      List<String> paths = new ArrayList<String>();
+      Rows rows = db.query(MovieSchema.POSTER_PATHS);
+
+      try
+      {
+         while (rows.next())
+            paths.add(rows.getString(0));
+      }
+      finally
+      {
+         rows.close();
+      }
+
+      return paths;
+   } // end method getPosterPaths
+
+   // return the per-year totals and the topCount directors by budget and
+   // actors and actresses by movies; the statistics tables are kept
+   // current as movies are written, so this reads one row per group
+   public MovieStatistics getStatistics(MovieDatabase db, int topCount)
+   {
+      long startTime = System.nanoTime();
+      String top = String.valueOf(topCount);
+
+      MovieStatistics statistics = new MovieStatistics(
+         MovieRowMapper.readGroups(db.query(MovieSchema.STATS_YEARS)),
+         MovieRowMapper.readGroups(db.query(MovieSchema.STATS_TOP_BY_BUDGET,
+            String.valueOf(MovieSchema.ROLE_DIRECTOR), top)),
+         MovieRowMapper.readGroups(db.query(MovieSchema.STATS_TOP_BY_MOVIES,
+            String.valueOf(MovieSchema.ROLE_ACTOR), top)),
+         MovieRowMapper.readGroups(db.query(MovieSchema.STATS_TOP_BY_MOVIES,
+            String.valueOf(MovieSchema.ROLE_ACTRESS), top)));
+
+      record("getStatistics", startTime, statistics.getYears().size(),
+         null, null);
+      return statistics;
+   } // end method getStatistics
+
+   // recompute the statistics tables from scratch in one transaction
+   public void rebuildStatistics(MovieDatabase db)
+   {
+      long startTime = System.nanoTime();
+      db.beginTransaction(); // readers keep going
+
+      try
+      {
+         for (String statement : MovieSchema.REBUILD_STATISTICS)
+            db.execute(statement);
+
+         db.setTransactionSuccessful();
+      }
+      finally
+      {
+         db.endTransaction();
+      }
+
+      record("rebuildStatistics", startTime, 0, null, null);
+   } // end method rebuildStatistics
+
+   // put back a deleted Movie from its tombstone and return true, or
+   // return false if the tombstone is gone
+   public boolean undeleteMovie(MovieDatabase db, long id)
+   {
+      String[] args = { String.valueOf(id) };
+      long startTime = System.nanoTime();
+      db.beginTransaction(); // readers keep going
+
+      try
+      {
+         if (db.queryLong(MovieSchema.TOMBSTONE_EXISTS, args) == 0)
+            return false; // purged, or undone already
+
+         db.execute(MovieSchema.RESTORE_TOMBSTONE, (Object[]) args);
+         db.execute(MovieSchema.RESTORE_TOMBSTONE_POSTER, (Object[]) args);
+         db.execute(MovieSchema.DELETE_TOMBSTONE, (Object[]) args);
+         db.setTransactionSuccessful();
+      }
+      finally
+      {
+         db.endTransaction();
+      }
+
+      record("undeleteMovie", startTime, 1, null, null);
+      return true;
+   } // end method undeleteMovie
+
+   // delete old tombstones batchSize at a time; each batch commits on its
+   // own, so queued writes wait for one batch at most
+   public long purgeDeletedMovies(MovieDatabase db, long deletedBefore,
+      int batchSize)
+   {
+      Statement purge = db.getStatement(MovieSchema.PURGE_TOMBSTONES);
+      long startTime = System.nanoTime();
+      long rowCount = 0;
+      int batchCount;
+
+      do
+      {
+         synchronized (purge)
+         {
+            purge.bindLong(1, deletedBefore);
+            purge.bindLong(2, batchSize);
+            batchCount = purge.executeUpdateDelete();
+         }
+
+         rowCount += batchCount;
+      }
+      while (batchCount == batchSize);
+
+      record("purgeDeletedMovies", startTime, rowCount, null, null);
+      return rowCount;
+   } // end method purgeDeletedMovies
+
+   // free the database file's unused pages once there are enough of them:
+   // a file made before incremental auto-vacuum is rewritten by one
+   // VACUUM, which also switches it over; later the free pages are given
+   // back a step at a time, each step a short write of its own
+   public long compactDatabase(MovieDatabase db, double fragmentation)
+   {
+      long pageCount = db.queryLong(MovieSchema.PAGE_COUNT);
+      long freePages = db.queryLong(MovieSchema.FREELIST_COUNT);
+
+      if (freePages == 0 || freePages < pageCount * fragmentation)
+         return 0;
+
+      long startTime = System.nanoTime();
+
+      if (db.queryLong(MovieSchema.AUTO_VACUUM) !=
+         MovieSchema.AUTO_VACUUM_INCREMENTAL)
+      {
+         db.execute(MovieSchema.SET_INCREMENTAL_VACUUM);
+         db.execute("VACUUM");
+      }
+      else
+      {
+         for (long left = freePages; left > 0; )
+         {
+            db.execute(MovieSchema.INCREMENTAL_VACUUM);
+            long now = db.queryLong(MovieSchema.FREELIST_COUNT);
+
+            if (now >= left)
+               break; // no more pages can be freed
+
+            left = now;
+         }
+      }
+
+      db.execute("ANALYZE");
+      record("compactDatabase", startTime, freePages, null, null);
+      return freePages;
+   } // end method compactDatabase
+
+   // return the oldest local changes not yet pushed
+   public List<SyncRecord> getSyncChanges(MovieDatabase db, int limit)
+   {
+      String[] args = { String.valueOf(limit) };
+      long startTime = System.nanoTime();
+      List<SyncRecord> changes = new ArrayList<SyncRecord>();
+      Rows rows = db.query(MovieSchema.SYNC_CHANGES, args);
+
+      try
+      {
+         while (rows.next())
+            changes.add(MovieRowMapper.readSyncRecord(rows));
+      }
+      finally
+      {
+         rows.close();
+      }
+
+      record("getSyncChanges", startTime, changes.size(),
+         MovieSchema.SYNC_CHANGES, args);
+      return changes;
+   } // end method getSyncChanges
+
+   public String getSyncDevice(MovieDatabase db)
+   {
+      return db.queryString(MovieSchema.SYNC_DEVICE);
+   }
+
+   public long getSyncVersion(MovieDatabase db)
+   {
+      return db.queryLong(MovieSchema.SYNC_PULLED);
+   }
+
+   // apply records from the sync server through movie_details in one
+   // transaction, which the triggers leave out of the change log, and
+   // return the writes made; a record already held, or losing to a local
+   // change not yet pushed, only updates the version
+   public List<PendingWrites.Write> applySyncChanges(MovieDatabase db,
+      List<SyncRecord> records, long pushed, long pulled)
+   {
+      Statement insert = db.getStatement(MovieSchema.INSERT_MOVIE_WITH_ID);
+      Statement update = db.getStatement(MovieSchema.UPDATE_MOVIE);
+      Statement delete = db.getStatement(MovieSchema.DELETE_MOVIE);
+      Statement putRow = db.getStatement(MovieSchema.PUT_SYNC_ROW);
+      List<PendingWrites.Write> writes = new ArrayList<PendingWrites.Write>();
+      long startTime = System.nanoTime();
+
+      synchronized (insert) // commitWrites shares the statements
+      {
+         db.beginTransaction(); // readers keep going
+
+         try
+         {
+            db.execute(MovieSchema.SET_SYNC_PROGRESS, pushed, pulled);
+            db.execute(MovieSchema.SET_SYNC_APPLYING, 1);
+
+            for (SyncRecord record : records)
+            {
+               long id = Movie.NO_ID; // not on this device yet
+               boolean live = false;
+               boolean keepLocal = false;
+               Rows rows =
+                  db.query(MovieSchema.SYNC_ROW_BY_UID, record.getUid());
+
+               try
+               {
+                  if (rows.next())
+                  {
+                     id = rows.getLong(0);
+                     live = rows.getInt(3) == 0;
+                     keepLocal = record.isSameWrite(rows.getLong(1),
+                        rows.getString(2)) || (rows.getInt(4) != 0 &&
+                        !record.isNewerThan(rows.getLong(1),
+                        rows.getString(2)));
+                  }
+               }
+               finally
+               {
+                  rows.close();
+               }
+
+               if (keepLocal)
+               {
+                  db.execute(MovieSchema.SET_SYNC_VERSION,
+                     record.getVersion(), record.getUid());
+                  continue;
+               }
+
+               if (record.isDeleted())
+               {
+                  if (id == Movie.NO_ID)
+                     continue; // deleted before it reached this device
+
+                  if (live)
+                  {
+                     delete.bindLong(1, id);
+                     delete.executeUpdateDelete();
+                     writes.add(new PendingWrites.Write(
+                        MovieChange.DELETED, id, null));
+                  }
+               }
+               else if (live)
+               {
+                  bindMovie(update, record.getMovie());
+                  update.bindLong(8, id);
+                  update.executeUpdateDelete();
+                  writes.add(new PendingWrites.Write(MovieChange.UPDATED,
+                     id, withID(record.getMovie(), id)));
+               }
+               else
+               {
+                  if (id == Movie.NO_ID)
+                     id = allocateID(db);
+                  else // back under its old row ID; no undo is left
+                     db.execute(MovieSchema.DELETE_TOMBSTONE, id);
+
+                  bindMovie(insert, record.getMovie());
+                  insert.bindLong(8, id);
+                  insert.execute();
+                  writes.add(new PendingWrites.Write(MovieChange.INSERTED,
+                     id, withID(record.getMovie(), id)));
+               }
+
+               putRow.bindLong(1, id);
+               putRow.bindString(2, record.getUid());
+               putRow.bindLong(3, record.getVersion());
+               putRow.bindLong(4, record.getModified());
+               putRow.bindString(5, record.getDevice());
+               putRow.bindLong(6, record.isDeleted() ? 1 : 0);
+               putRow.execute();
+            }
+
+            db.execute(MovieSchema.SET_SYNC_APPLYING, 0);
+            db.setTransactionSuccessful();
+         }
+         finally
+         {
+            db.endTransaction();
+         }
+      }
+
+      record("applySyncChanges", startTime, records.size(), null, null);
+      return writes;
+   } // end method applySyncChanges
+} // end class MovieStore
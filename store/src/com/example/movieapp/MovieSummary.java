@@ -0,0 +1,39 @@
+package com.example.movieapp;
+
+// immutable row of the movie list: just what a list cell shows, plus
+// the value the list is sorted by, which keys the next page
+public final class MovieSummary
+{
+   private final long id;
+   private final String name;
+   private final Object sortKey; // a String or a Long
+
+   // constructor for a row of a list sorted by name
+   public MovieSummary(long id, String name)
+   {
+      this(id, name, name);
+   }
+
+   // constructor for a row of a list sorted by sortKey
+   public MovieSummary(long id, String name, Object sortKey)
+   {
+      this.id = id;
+      this.name = name;
+      this.sortKey = sortKey;
+   }
+
+   public long getId()
+   {
+      return id;
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public Object getSortKey()
+   {
+      return sortKey;
+   }
+} // end class MovieSummary
@@ -0,0 +1,95 @@
+package com.example.movieapp;
+
+import java.io.IOException;
+import java.util.List;
+
+// keeps the catalog in step with the other devices through a SyncServer,
+// sending only what changed. Triggers log each local write with a change
+// number (see MovieSchema.SYNC_STATEMENTS); a sync pushes the changes
+// after the last one pushed, then pulls the records written elsewhere
+// after the last server version pulled, batchSize at a time. Each batch
+// is applied in one transaction together with the progress it makes, so
+// a sync that is cut off resumes at the batch it lost, and pushing that
+// batch again is harmless. Of two writes to a movie the later wins (see
+// SyncRecord.isNewerThan), unless the writer had already seen the
+// other, so every device ends with the same catalog.
+public class MovieSync
+{
+   // records per request
+   public static final int DEFAULT_BATCH_SIZE = 500;
+
+   private final MovieRepository repository;
+   private final SyncServer server;
+   private final int batchSize;
+
+   // constructor
+   public MovieSync(MovieRepository repository, SyncServer server,
+      int batchSize)
+   {
+      this.repository = repository;
+      this.server = server;
+      this.batchSize = batchSize;
+   }
+
+   // push the local changes, then pull the remote ones, and return the
+   // number of records sent and received; call off the GUI thread. After
+   // an IOException the next sync continues where this one stopped.
+   public long sync() throws IOException
+   {
+      return push() + pull();
+   }
+
+   // send the local changes not yet pushed and return how many were sent;
+   // the server answers each with the record it kept, which is applied
+   // should another device's write have won
+   public long push() throws IOException
+   {
+      long count = 0;
+      List<SyncRecord> changes;
+
+      do
+      {
+         changes = repository.getSyncChanges(batchSize);
+
+         if (changes.isEmpty())
+            break;
+
+         SyncBatch results = SyncBatch.fromBytes(
+            server.push(new SyncBatch(changes, 0).toBytes()));
+
+         if (results.getRecords().size() != changes.size())
+            throw new IOException("Sync server answered " +
+               results.getRecords().size() + " of " + changes.size() +
+               " records");
+
+         // changes are in change number order, so the last is the latest
+         repository.applySyncChanges(results.getRecords(),
+            changes.get(changes.size() - 1).getSeq(), 0);
+         count += changes.size();
+      }
+      while (changes.size() == batchSize);
+
+      return count;
+   } // end method push
+
+   // apply the records other devices wrote since the last pull and
+   // return how many were received
+   public long pull() throws IOException
+   {
+      String device = repository.getSyncDevice();
+      long count = 0;
+      SyncBatch batch;
+
+      do
+      {
+         batch = SyncBatch.fromBytes(server.pull(device,
+            repository.getSyncVersion(), batchSize));
+         repository.applySyncChanges(batch.getRecords(), 0,
+            batch.getThrough());
+         count += batch.getRecords().size();
+      }
+      while (batch.getRecords().size() == batchSize);
+
+      return count;
+   } // end method pull
+} // end class MovieSync
@@ -0,0 +1,11 @@
+package com.example.movieapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// destination for Movie records written one at a time to a file
+public interface MovieWriter extends Closeable
+{
+   // append movie as the next record
+   public void write(Movie movie) throws IOException;
+}
@@ -0,0 +1,42 @@
+package com.example.movieapp;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+// canonical copies of the people names read from the database, so a name
+// shared by many Movies is one String in memory however many rows it was
+// read from. Entries are weak: a name no Movie holds any more can be
+// garbage collected, unlike with String.intern. Thread-safe.
+public final class NamePool
+{
+   private final WeakHashMap<String, WeakReference<String>> names =
+      new WeakHashMap<String, WeakReference<String>>();
+
+   // return the pooled String equal to name, adding name if there is none
+   public synchronized String intern(String name)
+   {
+      if (name == null)
+         return null;
+
+      if (name.length() == 0)
+         return ""; // the constant, shared by every empty column
+
+      WeakReference<String> reference = names.get(name);
+      String pooled = reference == null ? null : reference.get();
+
+      if (pooled == null)
+      {
+         pooled = name;
+         names.put(pooled, new WeakReference<String>(pooled));
+      }
+
+      return pooled;
+   }
+
+   // return the number of names in the pool, including any not yet
+   // cleared after being collected
+   public synchronized int size()
+   {
+      return names.size();
+   }
+} // end class NamePool
@@ -0,0 +1,108 @@
+package com.example.movieapp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// writes accepted but not yet committed, at most one per row: repeated
+// writes to a row are merged so only its final state is written. Rows
+// being committed stay visible through get until the commit finishes,
+// and are queued again if it fails.
+public class PendingWrites
+{
+   // the final state of one row; movie is null for a delete
+   public static final class Write
+   {
+      public final int type; // a MovieChange type other than RESET
+      public final long id;
+      public final Movie movie;
+
+      // constructor
+      Write(int type, long id, Movie movie)
+      {
+         this.type = type;
+         this.id = id;
+         this.movie = movie;
+      }
+   } // end class Write
+
+   // queued writes in the order their rows were first written
+   private Map<Long, Write> queued = new LinkedHashMap<Long, Write>();
+
+   // writes taken by the commit in progress
+   private Map<Long, Write> committing = new LinkedHashMap<Long, Write>();
+
+   // queue an insert of movie, whose id is already allocated
+   public synchronized void insert(Movie movie)
+   {
+      queued.put(movie.getId(), 
+         new Write(MovieChange.INSERTED, movie.getId(), movie));
+   }
+
+   // queue an update; a row not yet inserted is inserted with the new values
+   public synchronized void update(Movie movie)
+   {
+      Write previous = queued.get(movie.getId());
+      int type = previous != null && previous.type == MovieChange.INSERTED ?
+         MovieChange.INSERTED : MovieChange.UPDATED;
+      queued.put(movie.getId(), new Write(type, movie.getId(), movie));
+   }
+
+   // queue a delete; a row not yet inserted is simply dropped
+   public synchronized void delete(long id)
+   {
+      Write previous = queued.get(id);
+
+      if (previous != null && previous.type == MovieChange.INSERTED)
+         queued.remove(id); // the database never saw the row
+      else
+         queued.put(id, new Write(MovieChange.DELETED, id, null));
+   }
+
+   // return the newest accepted write to row id, or null if there is none
+   public synchronized Write get(long id)
+   {
+      Write write = queued.get(id);
+      return write != null ? write : committing.get(id);
+   }
+
+   public synchronized int size()
+   {
+      return queued.size();
+   }
+
+   // move the queued writes to a commit and return them in order; they
+   // stay visible through get until finishCommit
+   public synchronized List<Write> startCommit()
+   {
+      committing = queued;
+      queued = new LinkedHashMap<Long, Write>();
+      return new ArrayList<Write>(committing.values());
+   }
+
+   // the writes returned by startCommit are committed
+   public synchronized void finishCommit()
+   {
+      committing = new LinkedHashMap<Long, Write>();
+   }
+
+   // the writes returned by startCommit weren't committed: queue them
+   // again, merged with the writes queued since as if those came after
+   public synchronized void abortCommit()
+   {
+      Map<Long, Write> newer = queued;
+      queued = committing;
+      committing = new LinkedHashMap<Long, Write>();
+
+      for (Write write : newer.values())
+      {
+         if (write.type == MovieChange.INSERTED)
+            insert(write.movie);
+         else if (write.type == MovieChange.UPDATED)
+            update(write.movie);
+         else
+            delete(write.id);
+      }
+   }
+} // end class PendingWrites
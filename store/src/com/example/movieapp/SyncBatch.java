@@ -0,0 +1,133 @@
+package com.example.movieapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// a batch of SyncRecords as sent to or from the sync server: the format
+// number, the server version the batch runs through, the record count,
+// then each record's fields in binary, the whole compressed. Movies are
+// sent without their row IDs, which differ from device to device.
+public final class SyncBatch
+{
+   private static final int FORMAT = 1; // changed with the fields below
+
+   private final List<SyncRecord> records;
+   private final long through; // 0 when it doesn't apply
+
+   // constructor
+   public SyncBatch(List<SyncRecord> records, long through)
+   {
+      this.records = Collections.unmodifiableList(records);
+      this.through = through;
+   }
+
+   public List<SyncRecord> getRecords()
+   {
+      return records;
+   }
+
+   // a pull response runs through this version, even where records the
+   // requesting device wrote itself were left out
+   public long getThrough()
+   {
+      return through;
+   }
+
+   // return the batch encoded and compressed
+   public byte[] toBytes() throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out =
+         new DataOutputStream(new GZIPOutputStream(bytes));
+
+      try
+      {
+         out.writeInt(FORMAT);
+         out.writeLong(through);
+         out.writeInt(records.size());
+
+         for (SyncRecord record : records)
+         {
+            out.writeUTF(record.getUid());
+            out.writeLong(record.getVersion());
+            out.writeLong(record.getModified());
+            out.writeUTF(record.getDevice());
+            out.writeBoolean(record.isDeleted());
+
+            if (record.isDeleted())
+               continue;
+
+            Movie movie = record.getMovie();
+            out.writeUTF(text(movie.getName()));
+            out.writeUTF(text(movie.getDirector()));
+            out.writeUTF(text(movie.getProducer()));
+            out.writeUTF(text(movie.getActor()));
+            out.writeUTF(text(movie.getActress()));
+            out.writeInt(movie.getRelease());
+            out.writeLong(movie.getBudget());
+         }
+      }
+      finally
+      {
+         out.close(); // finishes the compressed stream
+      }
+
+      return bytes.toByteArray();
+   } // end method toBytes
+
+   // return the batch in bytes made by toBytes
+   public static SyncBatch fromBytes(byte[] bytes) throws IOException
+   {
+      DataInputStream in = new DataInputStream(
+         new GZIPInputStream(new ByteArrayInputStream(bytes)));
+
+      try
+      {
+         int format = in.readInt();
+
+         if (format != FORMAT)
+            throw new IOException("Unknown sync batch format " + format);
+
+         long through = in.readLong();
+         int count = in.readInt();
+         List<SyncRecord> records = new ArrayList<SyncRecord>(count);
+
+         for (int i = 0; i < count; ++i)
+         {
+            String uid = in.readUTF();
+            long version = in.readLong();
+            long modified = in.readLong();
+            String device = in.readUTF();
+            Movie movie = null;
+
+            if (!in.readBoolean())
+               movie = new Movie(Movie.NO_ID, in.readUTF(), in.readUTF(),
+                  in.readUTF(), in.readUTF(), in.readUTF(), in.readInt(),
+                  in.readLong());
+
+            records.add(
+               new SyncRecord(uid, version, modified, device, movie, 0));
+         }
+
+         return new SyncBatch(records, through);
+      }
+      finally
+      {
+         in.close();
+      }
+   } // end method fromBytes
+
+   // missing values are sent as empty text, as the database stores them
+   private static String text(String value)
+   {
+      return value == null ? "" : value;
+   }
+} // end class SyncBatch
@@ -0,0 +1,86 @@
+package com.example.movieapp;
+
+// immutable state of one movie as exchanged with the sync server: the
+// uid that names it on every device, the server version it was written
+// at, and the time and device of the write, which decide conflicts. A
+// deleted movie has no Movie.
+public final class SyncRecord
+{
+   private final String uid;
+   private final long version; // when pushed, the version last synced
+   private final long modified; // milliseconds since 1970
+   private final String device;
+   private final Movie movie; // null if deleted
+   private final long seq; // local change number; 0 if from the server
+
+   // constructor
+   public SyncRecord(String uid, long version, long modified,
+      String device, Movie movie, long seq)
+   {
+      this.uid = uid;
+      this.version = version;
+      this.modified = modified;
+      this.device = device;
+      this.movie = movie;
+      this.seq = seq;
+   }
+
+   public String getUid()
+   {
+      return uid;
+   }
+
+   public long getVersion()
+   {
+      return version;
+   }
+
+   public long getModified()
+   {
+      return modified;
+   }
+
+   public String getDevice()
+   {
+      return device;
+   }
+
+   public Movie getMovie()
+   {
+      return movie;
+   }
+
+   public long getSeq()
+   {
+      return seq;
+   }
+
+   public boolean isDeleted()
+   {
+      return movie == null;
+   }
+
+   // true if this record's write wins over one made at modified by
+   // device: the later write wins, and of two made in the same
+   // millisecond the one from the greater device id, so every device
+   // and the server pick the same winner
+   public boolean isNewerThan(long modified, String device)
+   {
+      if (this.modified != modified)
+         return this.modified > modified;
+
+      return this.device.compareTo(device) > 0;
+   }
+
+   // true if this record holds the write made at modified by device
+   public boolean isSameWrite(long modified, String device)
+   {
+      return this.modified == modified && this.device.equals(device);
+   }
+
+   // return this record at another server version
+   public SyncRecord withVersion(long version)
+   {
+      return new SyncRecord(uid, version, modified, device, movie, seq);
+   }
+} // end class SyncRecord
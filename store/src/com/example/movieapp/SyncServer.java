@@ -0,0 +1,22 @@
+package com.example.movieapp;
+
+import java.io.IOException;
+
+// the catalog server as MovieSync sees it. Requests and responses are
+// SyncBatch bytes, as they travel over the network; any call may fail
+// with an IOException, before or after the server acts on it, so
+// pushing the same batch again must be harmless.
+public interface SyncServer
+{
+   // store the records of a pushed batch, each sent with the version it
+   // was last synced at, and return a batch holding, for each in order,
+   // the record the server now has: the one pushed, at its new version,
+   // or the newer write it lost to
+   public byte[] push(byte[] batch) throws IOException;
+
+   // return a batch of up to limit records written after version after,
+   // in version order, leaving out those last written by device; its
+   // through version is the last one it covers
+   public byte[] pull(String device, long after, int limit)
+      throws IOException;
+} // end interface SyncServer